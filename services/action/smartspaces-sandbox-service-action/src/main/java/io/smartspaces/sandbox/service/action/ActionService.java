@@ -21,7 +21,9 @@ import io.smartspaces.resource.Version;
 import io.smartspaces.resource.VersionRange;
 import io.smartspaces.service.SupportedService;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A service for working with actions.
@@ -102,4 +104,92 @@ public interface ActionService extends SupportedService {
    */
       void performAction(String actionSourceName, VersionRange actionSourceVersionRange,
           String actionName, ExecutionContext context);
-}
\ No newline at end of file
+
+  /**
+   * Perform an action asynchronously.
+   *
+   * <p>
+   * The action is looked up on the calling thread and then run on the action
+   * thread pool, subject to the concurrency limit of its action source. Lookup
+   * failures are given by the returned future rather than thrown.
+   *
+   * @param actionSourceName
+   *          the source name for the action
+   * @param actionSourceVersionRange
+   *          the version range for the action source, can be {@code null}
+   * @param actionName
+   *          the name of the action
+   * @param context
+   *          the context for the action execution
+   *
+   * @return a future which completes when the action has been performed
+   */
+  CompletableFuture<Void> performActionAsync(String actionSourceName,
+      VersionRange actionSourceVersionRange, String actionName, ExecutionContext context);
+
+  /**
+   * Perform the given action reference asynchronously.
+   *
+   * @param actionReference
+   *          the action reference
+   * @param context
+   *          the context for the action execution
+   *
+   * @return a future which completes when the action has been performed
+   */
+  CompletableFuture<Void> performActionReferenceAsync(ActionReference actionReference,
+      ExecutionContext context);
+
+  /**
+   * Perform a collection of independent actions concurrently.
+   *
+   * <p>
+   * Each action gets its own execution context holding the data of its
+   * reference merged with the supplied data, with the supplied data taking
+   * precedence. This lets the caller override reference defaults for a
+   * single call.
+   *
+   * @param actionReferences
+   *          the references for the actions to perform
+   * @param data
+   *          data to give every action, can be {@code null}
+   *
+   * @return a future which completes when all actions have been performed, it
+   *         completes exceptionally if any action failed
+   */
+  CompletableFuture<Void> performActions(Collection<ActionReference> actionReferences,
+      Map<String, ? extends Object> data);
+
+  /**
+   * Set the maximum number of actions from an action source that can run at
+   * the same time when performed asynchronously.
+   *
+   * @param actionSourceName
+   *          the name of the action source
+   * @param limit
+   *          the maximum number of concurrent actions, must be positive
+   */
+  void setActionSourceConcurrencyLimit(String actionSourceName, int limit);
+
+  /**
+   * Get an action so it can be performed later without being looked up again.
+   *
+   * <p>
+   * The action is the one the source gave when it was registered. Registering
+   * the source again does not change an action already got.
+   *
+   * @param actionSourceName
+   *          the source name for the action
+   * @param actionSourceVersionRange
+   *          the version range for the action source, can be {@code null}
+   * @param actionName
+   *          the name of the action
+   *
+   * @return the action
+   *
+   * @throws SmartSpacesException
+   *           either the source or the action could not be found
+   */
+  Action getAction(String actionSourceName, VersionRange actionSourceVersionRange,
+      String actionName) throws SmartSpacesException;
+}
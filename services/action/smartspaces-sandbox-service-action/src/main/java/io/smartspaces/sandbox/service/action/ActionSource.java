@@ -18,6 +18,10 @@ package io.smartspaces.sandbox.service.action;
 
 /**
  * A handler for actions.
+ *
+ * <p>
+ * The action service caches the actions returned by a source, so an action
+ * can be performed many times, possibly at the same time from several threads.
  * 
  * @author Keith M. Hughes
  */
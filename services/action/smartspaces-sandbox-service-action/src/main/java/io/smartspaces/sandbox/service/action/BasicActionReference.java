@@ -83,6 +83,7 @@ public class BasicActionReference implements ActionReference {
     this.data = (data != null) ? data : NO_DATA;
 
     this.actionSource = actionSource;
+    this.actionSourceVersionRange = actionSourceVersionRange;
     this.actionName = actionName;
   }
 
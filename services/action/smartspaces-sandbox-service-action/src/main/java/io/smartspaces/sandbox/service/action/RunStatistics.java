@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.action;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregate timings for all runs with the same label, such as the scheduled
+ * actions of an action source or the sequence elements of a kind.
+ *
+ * @author Keith M. Hughes
+ */
+public class RunStatistics {
+
+  /**
+   * The label of the runs.
+   */
+  private final String label;
+
+  /**
+   * The number of runs.
+   */
+  private final LongAdder numberRuns = new LongAdder();
+
+  /**
+   * The number of runs which failed.
+   */
+  private final LongAdder numberFailures = new LongAdder();
+
+  /**
+   * The total time of all runs, in nanoseconds.
+   */
+  private final LongAdder totalDuration = new LongAdder();
+
+  /**
+   * The longest run, in nanoseconds.
+   */
+  private final AtomicLong maximumDuration = new AtomicLong();
+
+  /**
+   * Construct new statistics.
+   *
+   * @param label
+   *          the label of the runs
+   */
+  public RunStatistics(String label) {
+    this.label = label;
+  }
+
+  /**
+   * Add a run.
+   *
+   * @param duration
+   *          how long the run took, in nanoseconds
+   * @param failed
+   *          {@code true} if the run failed
+   */
+  public void addRun(long duration, boolean failed) {
+    numberRuns.increment();
+    totalDuration.add(duration);
+    if (failed) {
+      numberFailures.increment();
+    }
+
+    long maximum;
+    do {
+      maximum = maximumDuration.get();
+    } while (duration > maximum && !maximumDuration.compareAndSet(maximum, duration));
+  }
+
+  /**
+   * Get the label of the runs.
+   *
+   * @return the label
+   */
+  public String getLabel() {
+    return label;
+  }
+
+  /**
+   * Get the number of runs.
+   *
+   * @return the number of runs
+   */
+  public long getNumberRuns() {
+    return numberRuns.sum();
+  }
+
+  /**
+   * Get the number of runs which failed.
+   *
+   * @return the number of failures
+   */
+  public long getNumberFailures() {
+    return numberFailures.sum();
+  }
+
+  /**
+   * Get the total time of all runs.
+   *
+   * @return the total, in nanoseconds
+   */
+  public long getTotalDuration() {
+    return totalDuration.sum();
+  }
+
+  /**
+   * Get the average time of a run.
+   *
+   * @return the average, in nanoseconds, or {@code 0} if there have been no
+   *         runs
+   */
+  public long getAverageDuration() {
+    long runs = getNumberRuns();
+
+    return (runs > 0) ? getTotalDuration() / runs : 0;
+  }
+
+  /**
+   * Get the longest run.
+   *
+   * @return the longest run, in nanoseconds
+   */
+  public long getMaximumDuration() {
+    return maximumDuration.get();
+  }
+
+  @Override
+  public String toString() {
+    return "RunStatistics [label=" + label + ", numberRuns=" + getNumberRuns()
+        + ", numberFailures=" + getNumberFailures() + ", averageDuration="
+        + getAverageDuration() + ", maximumDuration=" + getMaximumDuration() + "]";
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.action.internal;
+
+import io.smartspaces.resource.VersionRange;
+
+import java.util.Objects;
+
+/**
+ * The key for an action which has been resolved from its action source.
+ *
+ * @author Keith M. Hughes
+ */
+class ActionResolutionKey {
+
+  /**
+   * The name of the action source.
+   */
+  private final String actionSourceName;
+
+  /**
+   * The version range for the action source, can be {@code null}.
+   */
+  private final VersionRange actionSourceVersionRange;
+
+  /**
+   * The name of the action.
+   */
+  private final String actionName;
+
+  /**
+   * The hash code for the key, computed once.
+   */
+  private final int hashCode;
+
+  /**
+   * Construct a new key.
+   *
+   * @param actionSourceName
+   *          the name of the action source
+   * @param actionSourceVersionRange
+   *          the version range for the action source, can be {@code null}
+   * @param actionName
+   *          the name of the action
+   */
+  ActionResolutionKey(String actionSourceName, VersionRange actionSourceVersionRange,
+      String actionName) {
+    this.actionSourceName = actionSourceName;
+    this.actionSourceVersionRange = actionSourceVersionRange;
+    this.actionName = actionName;
+
+    hashCode = Objects.hash(actionSourceName, actionSourceVersionRange, actionName);
+  }
+
+  /**
+   * Get the name of the action source.
+   *
+   * @return the name of the action source
+   */
+  String getActionSourceName() {
+    return actionSourceName;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ActionResolutionKey)) {
+      return false;
+    }
+
+    ActionResolutionKey other = (ActionResolutionKey) obj;
+
+    return actionSourceName.equals(other.actionSourceName) && actionName.equals(other.actionName)
+        && Objects.equals(actionSourceVersionRange, other.actionSourceVersionRange);
+  }
+}
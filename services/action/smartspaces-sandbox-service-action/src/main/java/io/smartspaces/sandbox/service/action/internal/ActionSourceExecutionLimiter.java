@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.action.internal;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Limits the number of actions from a single action source which run at the
+ * same time.
+ *
+ * <p>
+ * Actions over the limit are queued rather than blocking a pool thread, and
+ * are started in order as running actions complete. If the executor refuses an
+ * action because it is shutting down, the action is run on the calling thread.
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Keith M. Hughes
+ */
+public class ActionSourceExecutionLimiter {
+
+  /**
+   * The executor actions run on.
+   */
+  private final Executor executor;
+
+  /**
+   * The maximum number of actions which can run at once.
+   */
+  private volatile int limit;
+
+  /**
+   * The number of actions currently running.
+   */
+  private int numberRunning;
+
+  /**
+   * The actions waiting to run.
+   */
+  private final Queue<Runnable> waiting = new ArrayDeque<>();
+
+  /**
+   * Construct a new limiter.
+   *
+   * @param executor
+   *          the executor actions run on
+   * @param limit
+   *          the maximum number of actions which can run at once
+   */
+  public ActionSourceExecutionLimiter(Executor executor, int limit) {
+    this.executor = executor;
+    this.limit = limit;
+  }
+
+  /**
+   * Set the maximum number of actions which can run at once.
+   *
+   * <p>
+   * Lowering the limit does not affect actions already running.
+   *
+   * @param limit
+   *          the new limit
+   */
+  public void setLimit(int limit) {
+    this.limit = limit;
+
+    startWaiting();
+  }
+
+  /**
+   * Get the maximum number of actions which can run at once.
+   *
+   * @return the limit
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Run an action when the limit allows.
+   *
+   * @param action
+   *          the action to run
+   */
+  public void execute(Runnable action) {
+    synchronized (waiting) {
+      waiting.add(action);
+    }
+
+    startWaiting();
+  }
+
+  /**
+   * Get the number of actions waiting to run.
+   *
+   * @return the number of waiting actions
+   */
+  public int getNumberWaiting() {
+    synchronized (waiting) {
+      return waiting.size();
+    }
+  }
+
+  /**
+   * Start as many waiting actions as the limit allows.
+   */
+  private void startWaiting() {
+    while (true) {
+      final Runnable action;
+      synchronized (waiting) {
+        if (numberRunning >= limit || waiting.isEmpty()) {
+          return;
+        }
+
+        action = waiting.remove();
+        numberRunning++;
+      }
+
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              action.run();
+            } finally {
+              completed();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // The executor is shutting down. The action was already accepted so
+        // run it on this thread rather than losing it.
+        try {
+          action.run();
+        } finally {
+          synchronized (waiting) {
+            numberRunning--;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * An action has completed.
+   */
+  private void completed() {
+    synchronized (waiting) {
+      numberRunning--;
+    }
+
+    startWaiting();
+  }
+}
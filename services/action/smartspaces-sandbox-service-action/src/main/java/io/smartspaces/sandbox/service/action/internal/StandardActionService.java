@@ -17,9 +17,11 @@
 package io.smartspaces.sandbox.service.action.internal;
 
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import io.smartspaces.SimpleSmartSpacesException;
 import io.smartspaces.evaluation.ExecutionContext;
+import io.smartspaces.evaluation.StandardExecutionContext;
 import io.smartspaces.resource.NamedVersionedResourceCollection;
 import io.smartspaces.resource.Version;
 import io.smartspaces.resource.VersionRange;
@@ -28,11 +30,26 @@ import io.smartspaces.sandbox.service.action.ActionReference;
 import io.smartspaces.sandbox.service.action.ActionService;
 import io.smartspaces.sandbox.service.action.ActionSource;
 import io.smartspaces.service.BaseSupportedService;
+import io.smartspaces.system.SmartSpacesEnvironment;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A service for actions.
+ *
+ * <p>
+ * Asynchronous actions run on a bounded thread pool owned by the service, which
+ * is only available between {@link #startup()} and {@link #shutdown()}. Each
+ * action source can also be given a limit on how many of its actions run at
+ * once so that, for example, a slow hardware bridge can't take every thread.
  * 
  * @author Keith M. Hughes
  */
@@ -43,17 +60,101 @@ public class StandardActionService extends BaseSupportedService implements Actio
    */
   public static Version DEFAULT_VERSION = new Version(0, 0, 0);
 
+  /**
+   * The default number of threads for performing asynchronous actions.
+   */
+  public static final int ACTION_THREAD_POOL_SIZE_DEFAULT = 16;
+
+  /**
+   * How long an idle action thread is kept, in seconds.
+   */
+  public static final long ACTION_THREAD_KEEP_ALIVE_TIME = 60;
+
   /**
    * The action sources.
    */
   private NamedVersionedResourceCollection<ActionSource> sources =
       NamedVersionedResourceCollection.newNamedVersionedResourceCollection();
 
+  /**
+   * The actions which have already been resolved.
+   */
+  private final ConcurrentMap<ActionResolutionKey, Action> resolvedActions =
+      Maps.newConcurrentMap();
+
+  /**
+   * Counts action source registrations. A resolution which sees this change
+   * while it was looking up an action does not keep its result in the cache,
+   * since it may have found the action in a source which has been replaced.
+   */
+  private final AtomicLong registrationGeneration = new AtomicLong();
+
+  /**
+   * The number of threads for performing asynchronous actions.
+   */
+  private final int actionThreadPoolSize;
+
+  /**
+   * The thread pool for asynchronous actions, {@code null} if the service is
+   * not running.
+   */
+  private volatile ThreadPoolExecutor actionExecutor;
+
+  /**
+   * The execution limiters for action sources, keyed by source name.
+   */
+  private final ConcurrentMap<String, ActionSourceExecutionLimiter> sourceLimiters =
+      Maps.newConcurrentMap();
+
+  /**
+   * The concurrency limits set for action sources, keyed by source name.
+   */
+  private final ConcurrentMap<String, Integer> sourceConcurrencyLimits = Maps.newConcurrentMap();
+
+  /**
+   * Construct a new action service with the default thread pool size.
+   */
+  public StandardActionService() {
+    this(ACTION_THREAD_POOL_SIZE_DEFAULT);
+  }
+
+  /**
+   * Construct a new action service.
+   *
+   * @param actionThreadPoolSize
+   *          the number of threads for performing asynchronous actions
+   */
+  public StandardActionService(int actionThreadPoolSize) {
+    this.actionThreadPoolSize = actionThreadPoolSize;
+  }
+
   @Override
   public String getName() {
     return SERVICE_NAME;
   }
 
+  @Override
+  public void startup() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(actionThreadPoolSize, actionThreadPoolSize,
+            ACTION_THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("action-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+
+    actionExecutor = executor;
+  }
+
+  @Override
+  public void shutdown() {
+    ThreadPoolExecutor executor = actionExecutor;
+    actionExecutor = null;
+    sourceLimiters.clear();
+
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
   @Override
   public void registerActionSource(String sourceName, ActionSource source) {
     registerActionSource(sourceName, DEFAULT_VERSION, source);
@@ -62,6 +163,15 @@ public class StandardActionService extends BaseSupportedService implements Actio
   @Override
   public void registerActionSource(String sourceName, Version sourceVersion, ActionSource source) {
     sources.addResource(sourceName, sourceVersion, source);
+    registrationGeneration.incrementAndGet();
+
+    // A new version can change what any range for the source resolves to.
+    Iterator<ActionResolutionKey> keys = resolvedActions.keySet().iterator();
+    while (keys.hasNext()) {
+      if (keys.next().getActionSourceName().equals(sourceName)) {
+        keys.remove();
+      }
+    }
   }
 
   @Override
@@ -79,13 +189,143 @@ public class StandardActionService extends BaseSupportedService implements Actio
   @Override
   public void performAction(String actionSourceName, VersionRange actionSourceVersionRange,
       String actionName, ExecutionContext context) {
+    resolveAction(actionSourceName, actionSourceVersionRange, actionName).perform(context);
+  }
+
+  @Override
+  public CompletableFuture<Void> performActionAsync(String actionSourceName,
+      VersionRange actionSourceVersionRange, String actionName, final ExecutionContext context) {
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    try {
+      final Action action = resolveAction(actionSourceName, actionSourceVersionRange, actionName);
+
+      getLimiter(actionSourceName).execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            action.perform(context);
+            future.complete(null);
+          } catch (Throwable e) {
+            future.completeExceptionally(e);
+          }
+        }
+      });
+    } catch (Throwable e) {
+      future.completeExceptionally(e);
+    }
+
+    return future;
+  }
+
+  @Override
+  public CompletableFuture<Void> performActionReferenceAsync(ActionReference actionReference,
+      ExecutionContext context) {
+    context.setValues(actionReference.getData());
+
+    return performActionAsync(actionReference.getActionSource(),
+        actionReference.getActionSourceVersionRange(), actionReference.getActionName(), context);
+  }
+
+  @Override
+  public CompletableFuture<Void> performActions(Collection<ActionReference> actionReferences,
+      Map<String, ? extends Object> data) {
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[actionReferences.size()];
+
+    int i = 0;
+    for (ActionReference actionReference : actionReferences) {
+      ExecutionContext context = newExecutionContext();
+      context.setValues((data != null) ? getMergedData(actionReference, data)
+          : actionReference.getData());
+
+      futures[i++] = performActionAsync(actionReference.getActionSource(),
+          actionReference.getActionSourceVersionRange(), actionReference.getActionName(),
+          context);
+    }
+
+    return CompletableFuture.allOf(futures);
+  }
+
+  @Override
+  public void setActionSourceConcurrencyLimit(String actionSourceName, int limit) {
+    if (limit < 1) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Concurrency limit %d for action source %s must be positive", limit, actionSourceName));
+    }
+
+    sourceConcurrencyLimits.put(actionSourceName, limit);
+
+    ActionSourceExecutionLimiter limiter = sourceLimiters.get(actionSourceName);
+    if (limiter != null) {
+      limiter.setLimit(limit);
+    }
+  }
+
+  @Override
+  public Action getAction(String actionSourceName, VersionRange actionSourceVersionRange,
+      String actionName) {
+    return resolveAction(actionSourceName, actionSourceVersionRange, actionName);
+  }
+
+  /**
+   * Find an action, using the cache of resolved actions if possible.
+   *
+   * @param actionSourceName
+   *          the source name for the action
+   * @param actionSourceVersionRange
+   *          the version range for the action source, can be {@code null}
+   * @param actionName
+   *          the name of the action
+   *
+   * @return the action
+   *
+   * @throws SimpleSmartSpacesException
+   *           either the source or the action could not be found
+   */
+  private Action resolveAction(String actionSourceName, VersionRange actionSourceVersionRange,
+      String actionName) throws SimpleSmartSpacesException {
+    ActionResolutionKey key =
+        new ActionResolutionKey(actionSourceName, actionSourceVersionRange, actionName);
+    Action action = resolvedActions.get(key);
+    if (action == null) {
+      long generation = registrationGeneration.get();
+      action = lookupAction(actionSourceName, actionSourceVersionRange, actionName);
+      resolvedActions.put(key, action);
+
+      // A registration during the lookup may already have cleared the cache,
+      // so a possibly stale action must not stay behind.
+      if (registrationGeneration.get() != generation) {
+        resolvedActions.remove(key, action);
+      }
+    }
+
+    return action;
+  }
+
+  /**
+   * Look up an action from the action sources.
+   *
+   * @param actionSourceName
+   *          the source name for the action
+   * @param actionSourceVersionRange
+   *          the version range for the action source, can be {@code null}
+   * @param actionName
+   *          the name of the action
+   *
+   * @return the action
+   *
+   * @throws SimpleSmartSpacesException
+   *           either the source or the action could not be found
+   */
+  private Action lookupAction(String actionSourceName, VersionRange actionSourceVersionRange,
+      String actionName) throws SimpleSmartSpacesException {
     ActionSource source = actionSourceVersionRange != null
         ? sources.getResource(actionSourceName, actionSourceVersionRange)
         : sources.getHighestResource(actionSourceName);
     if (source != null) {
       Action action = source.getAction(actionName);
       if (action != null) {
-        action.perform(context);
+        return action;
       } else {
         throw new SimpleSmartSpacesException(String.format("Action %s:%s for version %s not found",
             actionSourceName, actionName, actionSourceVersionRange));
@@ -97,8 +337,56 @@ public class StandardActionService extends BaseSupportedService implements Actio
     }
   }
 
+  /**
+   * Get the execution limiter for an action source.
+   *
+   * @param actionSourceName
+   *          the name of the action source
+   *
+   * @return the limiter
+   *
+   * @throws SimpleSmartSpacesException
+   *           the service is not running
+   */
+  private ActionSourceExecutionLimiter getLimiter(String actionSourceName)
+      throws SimpleSmartSpacesException {
+    ThreadPoolExecutor executor = actionExecutor;
+    if (executor == null) {
+      throw new SimpleSmartSpacesException(
+          "Asynchronous actions can only be performed while the action service is running");
+    }
+
+    ActionSourceExecutionLimiter limiter = sourceLimiters.get(actionSourceName);
+    if (limiter == null) {
+      Integer limit = sourceConcurrencyLimits.get(actionSourceName);
+      ActionSourceExecutionLimiter newLimiter = new ActionSourceExecutionLimiter(executor,
+          (limit != null) ? limit : actionThreadPoolSize);
+      limiter = sourceLimiters.putIfAbsent(actionSourceName, newLimiter);
+      if (limiter == null) {
+        limiter = newLimiter;
+      }
+    }
+
+    return limiter;
+  }
+
+  /**
+   * Create a new execution context for an action.
+   *
+   * @return the new context
+   */
+  private ExecutionContext newExecutionContext() {
+    SmartSpacesEnvironment spaceEnvironment = getSpaceEnvironment();
+
+    return new StandardExecutionContext(spaceEnvironment,
+        (spaceEnvironment != null) ? spaceEnvironment.getLog() : null);
+  }
+
   /**
    * Merge the action reference data with the supplied data.
+   *
+   * <p>
+   * Values in the supplied data replace reference values with the same name.
    * 
    * @param actionReference
    *          the action reference
@@ -109,7 +397,10 @@ public class StandardActionService extends BaseSupportedService implements Actio
    */
   private Map<String, ? extends Object> getMergedData(ActionReference actionReference,
       Map<String, ? extends Object> data) {
-    Map<String, Object> mergedMap = Maps.newHashMap(actionReference.getData());
+    Map<String, Object> mergedMap = Maps.newHashMap();
+    if (actionReference.getData() != null) {
+      mergedMap.putAll(actionReference.getData());
+    }
     mergedMap.putAll(data);
 
     return mergedMap;
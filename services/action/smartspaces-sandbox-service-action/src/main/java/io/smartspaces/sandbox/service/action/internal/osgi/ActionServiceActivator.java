@@ -16,19 +16,53 @@
 
 package io.smartspaces.sandbox.service.action.internal.osgi;
 
+import io.smartspaces.SimpleSmartSpacesException;
 import io.smartspaces.osgi.service.SmartSpacesServiceOsgiBundleActivator;
 import io.smartspaces.sandbox.service.action.internal.StandardActionService;
 import io.smartspaces.sandbox.service.scheduler.action.internal.quartz.QuartzActionSchedulerService;
+import io.smartspaces.sandbox.service.scheduler.action.internal.wheel.TimerWheelActionSchedulerService;
 
 /**
  * The OSGi bundle activator for the action service classes.
- * 
+ *
+ * <p>
+ * The Quartz action scheduler is registered unless the
+ * {@link #PROPERTY_ACTION_SCHEDULER} system property selects the timer wheel
+ * scheduler.
+ *
  * @author Keith M. Hughes
  */
 public class ActionServiceActivator extends SmartSpacesServiceOsgiBundleActivator {
+
+  /**
+   * The system property which selects the action scheduler implementation.
+   */
+  public static final String PROPERTY_ACTION_SCHEDULER = "smartspaces.service.scheduler.action";
+
+  /**
+   * The value of {@link #PROPERTY_ACTION_SCHEDULER} for the Quartz scheduler.
+   */
+  public static final String ACTION_SCHEDULER_QUARTZ = "quartz";
+
+  /**
+   * The value of {@link #PROPERTY_ACTION_SCHEDULER} for the timer wheel
+   * scheduler.
+   */
+  public static final String ACTION_SCHEDULER_TIMER_WHEEL = "wheel";
+
   @Override
   protected void allRequiredServicesAvailable() {
     registerNewSmartSpacesService(new StandardActionService());
-    registerNewSmartSpacesService(new QuartzActionSchedulerService());
+
+    String scheduler = System.getProperty(PROPERTY_ACTION_SCHEDULER, ACTION_SCHEDULER_QUARTZ);
+    if (ACTION_SCHEDULER_QUARTZ.equals(scheduler)) {
+      registerNewSmartSpacesService(new QuartzActionSchedulerService());
+    } else if (ACTION_SCHEDULER_TIMER_WHEEL.equals(scheduler)) {
+      registerNewSmartSpacesService(new TimerWheelActionSchedulerService());
+    } else {
+      throw new SimpleSmartSpacesException(String.format(
+          "Unknown action scheduler %s in system property %s, expected %s or %s", scheduler,
+          PROPERTY_ACTION_SCHEDULER, ACTION_SCHEDULER_QUARTZ, ACTION_SCHEDULER_TIMER_WHEEL));
+    }
   }
 }
@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action;
+
+import io.smartspaces.sandbox.service.action.RunStatistics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Metrics for an {@link ActionSchedulerService}.
+ *
+ * <p>
+ * The lateness of a firing is how long after its scheduled time the action
+ * started, so it includes any time spent waiting for a firing thread. A firing
+ * later than the misfire threshold, or one missed entirely, is a misfire.
+ * Schedulers which report their own misfires, as Quartz does, record firings
+ * without the threshold so a misfire is not counted twice.
+ *
+ * <p>
+ * If the number of saturated firings climbs, the firing pool is too small for
+ * the load and firings are waiting for a thread.
+ *
+ * <p>
+ * Recording is lock free and can be done from any thread.
+ *
+ * @author Keith M. Hughes
+ */
+public class ActionSchedulerMetrics {
+
+  /**
+   * The upper bounds of the lateness histogram buckets, in milliseconds. The
+   * last bucket takes everything later than the last bound.
+   */
+  public static final long[] LATENESS_BUCKET_BOUNDS =
+      { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+  /**
+   * The default lateness after which a firing is a misfire, in milliseconds.
+   */
+  public static final long MISFIRE_THRESHOLD_DEFAULT = 1000;
+
+  /**
+   * The number of firings in each lateness bucket.
+   */
+  private final LongAdder[] latenessCounts = new LongAdder[LATENESS_BUCKET_BOUNDS.length + 1];
+
+  /**
+   * The number of firings.
+   */
+  private final LongAdder numberFirings = new LongAdder();
+
+  /**
+   * The total lateness of all firings, in milliseconds.
+   */
+  private final LongAdder totalLateness = new LongAdder();
+
+  /**
+   * The latest firing, in milliseconds.
+   */
+  private final AtomicLong maximumLateness = new AtomicLong();
+
+  /**
+   * The number of misfires.
+   */
+  private final LongAdder numberMisfires = new LongAdder();
+
+  /**
+   * The number of firings which found every firing thread busy.
+   */
+  private final LongAdder numberSaturatedFirings = new LongAdder();
+
+  /**
+   * The execution statistics, keyed by action source.
+   */
+  private final ConcurrentMap<String, RunStatistics> actionSourceStatistics =
+      Maps.newConcurrentMap();
+
+  /**
+   * The number of threads in the firing pool.
+   */
+  private final int firingThreadPoolSize;
+
+  /**
+   * Gives the number of jobs waiting to fire.
+   */
+  private final IntSupplier numberPendingJobs;
+
+  /**
+   * Gives the number of firing threads performing actions.
+   */
+  private final IntSupplier numberActiveThreads;
+
+  /**
+   * Gives the number of firings waiting for a thread.
+   */
+  private final IntSupplier numberQueuedFirings;
+
+  /**
+   * The lateness after which a firing is a misfire, in milliseconds.
+   */
+  private volatile long misfireThreshold = MISFIRE_THRESHOLD_DEFAULT;
+
+  /**
+   * Construct new metrics.
+   *
+   * @param firingThreadPoolSize
+   *          the number of threads in the firing pool
+   * @param numberPendingJobs
+   *          gives the number of jobs waiting to fire
+   * @param numberActiveThreads
+   *          gives the number of firing threads performing actions
+   * @param numberQueuedFirings
+   *          gives the number of firings waiting for a thread
+   */
+  public ActionSchedulerMetrics(int firingThreadPoolSize, IntSupplier numberPendingJobs,
+      IntSupplier numberActiveThreads, IntSupplier numberQueuedFirings) {
+    this.firingThreadPoolSize = firingThreadPoolSize;
+    this.numberPendingJobs = numberPendingJobs;
+    this.numberActiveThreads = numberActiveThreads;
+    this.numberQueuedFirings = numberQueuedFirings;
+
+    for (int i = 0; i < latenessCounts.length; i++) {
+      latenessCounts[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Record a firing.
+   *
+   * @param lateness
+   *          how long after its scheduled time the firing started, in
+   *          milliseconds
+   */
+  public void recordFiring(long lateness) {
+    recordFiring(lateness, true);
+  }
+
+  /**
+   * Record a firing.
+   *
+   * @param lateness
+   *          how long after its scheduled time the firing started, in
+   *          milliseconds
+   * @param countMisfire
+   *          {@code true} if a firing later than the misfire threshold should
+   *          be counted as a misfire, {@code false} if the scheduler records
+   *          its misfires with {@link #recordMisfires(int)}
+   */
+  public void recordFiring(long lateness, boolean countMisfire) {
+    lateness = Math.max(0, lateness);
+
+    numberFirings.increment();
+    totalLateness.add(lateness);
+    latenessCounts[getLatenessBucket(lateness)].increment();
+
+    long maximum;
+    do {
+      maximum = maximumLateness.get();
+    } while (lateness > maximum && !maximumLateness.compareAndSet(maximum, lateness));
+
+    if (countMisfire && lateness > misfireThreshold) {
+      numberMisfires.increment();
+    }
+  }
+
+  /**
+   * Record misfires for fire times which were missed entirely.
+   *
+   * @param count
+   *          the number of missed fire times
+   */
+  public void recordMisfires(int count) {
+    numberMisfires.add(count);
+  }
+
+  /**
+   * Record firings which found every firing thread busy.
+   *
+   * @param count
+   *          the number of firings
+   */
+  public void recordSaturatedFirings(int count) {
+    numberSaturatedFirings.add(count);
+  }
+
+  /**
+   * Record the execution of an action.
+   *
+   * @param actionSource
+   *          the source of the action
+   * @param duration
+   *          how long the action took, in nanoseconds
+   * @param failed
+   *          {@code true} if the action failed
+   */
+  public void recordExecution(String actionSource, long duration, boolean failed) {
+    RunStatistics statistics = actionSourceStatistics.get(actionSource);
+    if (statistics == null) {
+      statistics = new RunStatistics(actionSource);
+      RunStatistics existing = actionSourceStatistics.putIfAbsent(actionSource, statistics);
+      if (existing != null) {
+        statistics = existing;
+      }
+    }
+
+    statistics.addRun(duration, failed);
+  }
+
+  /**
+   * Set the lateness after which a firing is a misfire.
+   *
+   * @param misfireThreshold
+   *          the threshold, in milliseconds
+   */
+  public void setMisfireThreshold(long misfireThreshold) {
+    this.misfireThreshold = misfireThreshold;
+  }
+
+  /**
+   * Get the lateness after which a firing is a misfire.
+   *
+   * @return the threshold, in milliseconds
+   */
+  public long getMisfireThreshold() {
+    return misfireThreshold;
+  }
+
+  /**
+   * Get the number of firings.
+   *
+   * @return the number of firings
+   */
+  public long getNumberFirings() {
+    return numberFirings.sum();
+  }
+
+  /**
+   * Get the lateness histogram.
+   *
+   * @return the number of firings in each bucket, the bounds of the buckets
+   *         are {@link #LATENESS_BUCKET_BOUNDS}
+   */
+  public long[] getLatenessHistogram() {
+    long[] histogram = new long[latenessCounts.length];
+    for (int i = 0; i < histogram.length; i++) {
+      histogram[i] = latenessCounts[i].sum();
+    }
+
+    return histogram;
+  }
+
+  /**
+   * Get an estimate of a lateness percentile from the histogram.
+   *
+   * @param percentile
+   *          the percentile, from {@code 0} to {@code 100}
+   *
+   * @return the upper bound of the bucket holding the percentile, in
+   *         milliseconds, or the maximum lateness if it is in the last bucket
+   */
+  public long getLatenessPercentile(double percentile) {
+    long[] histogram = getLatenessHistogram();
+    long total = 0;
+    for (long count : histogram) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(total * percentile / 100.0);
+    long seen = 0;
+    for (int i = 0; i < LATENESS_BUCKET_BOUNDS.length; i++) {
+      seen += histogram[i];
+      if (seen >= rank) {
+        return LATENESS_BUCKET_BOUNDS[i];
+      }
+    }
+
+    return getMaximumLateness();
+  }
+
+  /**
+   * Get the average lateness of a firing.
+   *
+   * @return the average, in milliseconds, or {@code 0} if there have been no
+   *         firings
+   */
+  public long getAverageLateness() {
+    long firings = getNumberFirings();
+
+    return (firings > 0) ? totalLateness.sum() / firings : 0;
+  }
+
+  /**
+   * Get the latest firing.
+   *
+   * @return the maximum lateness, in milliseconds
+   */
+  public long getMaximumLateness() {
+    return maximumLateness.get();
+  }
+
+  /**
+   * Get the number of misfires.
+   *
+   * @return the number of misfires
+   */
+  public long getNumberMisfires() {
+    return numberMisfires.sum();
+  }
+
+  /**
+   * Get the number of firings which found every firing thread busy.
+   *
+   * @return the number of saturated firings
+   */
+  public long getNumberSaturatedFirings() {
+    return numberSaturatedFirings.sum();
+  }
+
+  /**
+   * Get the number of jobs waiting to fire.
+   *
+   * @return the number of pending jobs
+   */
+  public int getNumberPendingJobs() {
+    return numberPendingJobs.getAsInt();
+  }
+
+  /**
+   * Get the number of threads in the firing pool.
+   *
+   * @return the pool size
+   */
+  public int getFiringThreadPoolSize() {
+    return firingThreadPoolSize;
+  }
+
+  /**
+   * Get the number of firing threads performing actions.
+   *
+   * @return the number of active threads
+   */
+  public int getNumberActiveThreads() {
+    return numberActiveThreads.getAsInt();
+  }
+
+  /**
+   * Get the number of firings waiting for a thread.
+   *
+   * @return the number of queued firings
+   */
+  public int getNumberQueuedFirings() {
+    return numberQueuedFirings.getAsInt();
+  }
+
+  /**
+   * Get how much of the firing pool is in use.
+   *
+   * @return the fraction of firing threads performing actions, from {@code 0}
+   *         to {@code 1}
+   */
+  public double getPoolSaturation() {
+    return (firingThreadPoolSize > 0)
+        ? Math.min(1.0, (double) getNumberActiveThreads() / firingThreadPoolSize) : 0;
+  }
+
+  /**
+   * Get the execution statistics for an action source.
+   *
+   * @param actionSource
+   *          the action source
+   *
+   * @return the statistics, or {@code null} if no action from the source has
+   *         been executed
+   */
+  public RunStatistics getActionSourceStatistics(String actionSource) {
+    return actionSourceStatistics.get(actionSource);
+  }
+
+  /**
+   * Get the execution statistics for all action sources.
+   *
+   * @return a copy of the statistics, keyed by action source
+   */
+  public Map<String, RunStatistics> getActionSourceStatistics() {
+    return Maps.newHashMap(actionSourceStatistics);
+  }
+
+  /**
+   * Get a one line summary of the metrics.
+   *
+   * @return the summary
+   */
+  public String getSummary() {
+    StringBuilder summary = new StringBuilder();
+    summary.append(String.format(
+        "Scheduler: %d pending jobs, %d firings, lateness avg %d ms p50 %d ms p99 %d ms max %d ms, "
+            + "%d misfires, pool %d/%d busy, %d queued, %d saturated firings",
+        getNumberPendingJobs(), getNumberFirings(), getAverageLateness(),
+        getLatenessPercentile(50), getLatenessPercentile(99), getMaximumLateness(),
+        getNumberMisfires(), getNumberActiveThreads(), firingThreadPoolSize,
+        getNumberQueuedFirings(), getNumberSaturatedFirings()));
+
+    for (RunStatistics statistics : actionSourceStatistics.values()) {
+      summary.append(String.format(", %s %d runs avg %d ms max %d ms",
+          statistics.getLabel(), statistics.getNumberRuns(),
+          TimeUnit.NANOSECONDS.toMillis(statistics.getAverageDuration()),
+          TimeUnit.NANOSECONDS.toMillis(statistics.getMaximumDuration())));
+    }
+
+    return summary.toString();
+  }
+
+  /**
+   * Get the histogram bucket for a lateness.
+   *
+   * @param lateness
+   *          the lateness, in milliseconds
+   *
+   * @return the bucket index
+   */
+  private static int getLatenessBucket(long lateness) {
+    for (int i = 0; i < LATENESS_BUCKET_BOUNDS.length; i++) {
+      if (lateness <= LATENESS_BUCKET_BOUNDS[i]) {
+        return i;
+      }
+    }
+
+    return LATENESS_BUCKET_BOUNDS.length;
+  }
+}
@@ -111,4 +111,28 @@ public interface ActionSchedulerService extends SupportedService {
    */
   void scheduleWithCron(String jobName, String groupName, String actionSource, String actionName,
       Map<String, Object> data, String schedule);
+
+  /**
+   * Set whether jobs due at the same instant are fired as a single batch.
+   *
+   * <p>
+   * A batch shares the work of setting up the firing and performs its actions
+   * in parallel, so many jobs on the same schedule do not each pay the cost of
+   * firing on their own. The default is not to batch.
+   *
+   * <p>
+   * Schedulers which cannot batch, such as the Quartz scheduler, keep firing
+   * jobs one at a time and log a warning when batching is turned on.
+   *
+   * @param batchFiring
+   *          {@code true} if jobs should be fired in batches
+   */
+  void setBatchFiring(boolean batchFiring);
+
+  /**
+   * Get the metrics for the scheduler.
+   *
+   * @return the metrics
+   */
+  ActionSchedulerMetrics getMetrics();
 }
@@ -20,6 +20,7 @@ import io.smartspaces.SmartSpacesException;
 import io.smartspaces.evaluation.ExecutionContext;
 import io.smartspaces.evaluation.StandardExecutionContext;
 import io.smartspaces.sandbox.service.action.ActionService;
+import io.smartspaces.sandbox.service.scheduler.action.ActionSchedulerMetrics;
 import io.smartspaces.sandbox.service.scheduler.action.ActionSchedulerService;
 import io.smartspaces.service.BaseSupportedService;
 import io.smartspaces.system.SmartSpacesEnvironment;
@@ -33,13 +34,16 @@ import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.quartz.JobListener;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.quartz.SchedulerFactory;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
 import org.quartz.TriggerKey;
+import org.quartz.TriggerListener;
 import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.matchers.GroupMatcher;
 import org.quartz.spi.JobFactory;
 import org.quartz.spi.TriggerFiredBundle;
 
@@ -48,10 +52,16 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A {@link ActionSchedulerService} which uses quartz.
  *
+ * <p>
+ * Batch firing is not supported, every job fires on its own.
+ *
  * @author Keith M. Hughes
  */
 public class QuartzActionSchedulerService extends BaseSupportedService
@@ -67,6 +77,21 @@ public class QuartzActionSchedulerService extends BaseSupportedService
    */
   public static final String JOB_MAP_PROPERTY_ACTION_SOURCE = "action.source";
 
+  /**
+   * The number of threads Quartz fires jobs on.
+   */
+  public static final int FIRING_THREAD_POOL_SIZE = 10;
+
+  /**
+   * The time between metrics summaries in the log, in milliseconds.
+   */
+  public static final long METRICS_SUMMARY_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+  /**
+   * The name of the listeners which record metrics.
+   */
+  private static final String METRICS_LISTENER_NAME = "smartspaces.metrics";
+
   /**
    * The quartz scheduler.
    */
@@ -77,6 +102,22 @@ public class QuartzActionSchedulerService extends BaseSupportedService
    */
   private ActionService actionService;
 
+  /**
+   * The number of jobs being run, kept by the metrics job listener.
+   */
+  private final AtomicInteger numberActiveJobs = new AtomicInteger();
+
+  /**
+   * The metrics for the scheduler.
+   */
+  private final ActionSchedulerMetrics metrics = new ActionSchedulerMetrics(
+      FIRING_THREAD_POOL_SIZE, this::getNumberPendingJobs, this::getNumberActiveJobs, () -> 0);
+
+  /**
+   * The future for the periodic metrics summary.
+   */
+  private ScheduledFuture<?> metricsSummaryFuture;
+
   @Override
   public String getName() {
     return ActionSchedulerService.SERVICE_NAME;
@@ -88,13 +129,20 @@ public class QuartzActionSchedulerService extends BaseSupportedService
       // TODO(keith): Get Smart Spaces thread pool in here.
       Properties properties = new Properties();
       properties.put("org.quartz.scheduler.skipUpdateCheck", "true");
-      properties.put("org.quartz.threadPool.threadCount", "10");
+      properties.put("org.quartz.threadPool.threadCount",
+          Integer.toString(FIRING_THREAD_POOL_SIZE));
 
       SchedulerFactory schedulerFactory = new StdSchedulerFactory(properties);
       scheduler = schedulerFactory.getScheduler();
       scheduler.setJobFactory(new MyJobFactory());
+      scheduler.getListenerManager().addJobListener(new MetricsJobListener());
+      scheduler.getListenerManager().addTriggerListener(new MetricsTriggerListener());
 
       scheduler.start();
+
+      metricsSummaryFuture = getSpaceEnvironment().getExecutorService().scheduleAtFixedRate(
+          () -> getSpaceEnvironment().getLog().info(metrics.getSummary()),
+          METRICS_SUMMARY_INTERVAL, METRICS_SUMMARY_INTERVAL, TimeUnit.MILLISECONDS);
     } catch (SchedulerException e) {
       throw new SmartSpacesException("Could not start Smart Spaces scheduler", e);
     }
@@ -102,6 +150,11 @@ public class QuartzActionSchedulerService extends BaseSupportedService
 
   @Override
   public void shutdown() {
+    if (metricsSummaryFuture != null) {
+      metricsSummaryFuture.cancel(false);
+      metricsSummaryFuture = null;
+    }
+
     try {
       scheduler.shutdown();
     } catch (SchedulerException e) {
@@ -280,6 +333,123 @@ public class QuartzActionSchedulerService extends BaseSupportedService
     }
   }
 
+  @Override
+  public void setBatchFiring(boolean batchFiring) {
+    // Quartz fires each trigger on its own, so batches are not supported.
+    if (batchFiring) {
+      getSpaceEnvironment().getLog()
+          .warn("The Quartz action scheduler does not support batch firing, "
+              + "jobs will keep firing one at a time");
+    }
+  }
+
+  @Override
+  public ActionSchedulerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Get the number of jobs known to Quartz.
+   *
+   * @return the number of jobs, or {@code 0} if the scheduler is not running
+   */
+  private int getNumberPendingJobs() {
+    try {
+      return (scheduler != null) ? scheduler.getJobKeys(GroupMatcher.anyJobGroup()).size() : 0;
+    } catch (SchedulerException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Get the number of jobs Quartz is running.
+   *
+   * <p>
+   * This is counted by the metrics job listener rather than asking Quartz,
+   * which copies its list of executing jobs on every call.
+   *
+   * @return the number of jobs
+   */
+  private int getNumberActiveJobs() {
+    return numberActiveJobs.get();
+  }
+
+  /**
+   * A Quartz job listener which records firing lateness, saturation and
+   * execution times.
+   *
+   * @author Keith M. Hughes
+   */
+  private class MetricsJobListener implements JobListener {
+
+    @Override
+    public String getName() {
+      return METRICS_LISTENER_NAME;
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext context) {
+      Date scheduledFireTime = context.getScheduledFireTime();
+      if (scheduledFireTime != null) {
+        // Quartz reports misfires to the trigger listener, so lateness alone
+        // is not counted as one here.
+        metrics.recordFiring(context.getFireTime().getTime() - scheduledFireTime.getTime(),
+            false);
+      }
+
+      if (numberActiveJobs.incrementAndGet() >= FIRING_THREAD_POOL_SIZE) {
+        metrics.recordSaturatedFirings(1);
+      }
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext context) {
+      // Nothing ran, so there is nothing to record.
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext context, JobExecutionException e) {
+      numberActiveJobs.decrementAndGet();
+      metrics.recordExecution(
+          context.getMergedJobDataMap().getString(JOB_MAP_PROPERTY_ACTION_SOURCE),
+          TimeUnit.MILLISECONDS.toNanos(context.getJobRunTime()), e != null);
+    }
+  }
+
+  /**
+   * A Quartz trigger listener which records misfires.
+   *
+   * @author Keith M. Hughes
+   */
+  private class MetricsTriggerListener implements TriggerListener {
+
+    @Override
+    public String getName() {
+      return METRICS_LISTENER_NAME;
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext context) {
+      // Firings are recorded by the job listener.
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context) {
+      return false;
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+      metrics.recordMisfires(1);
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext context,
+        Trigger.CompletedExecutionInstruction triggerInstructionCode) {
+      // Executions are recorded by the job listener.
+    }
+  }
+
   /**
    * Set the action service to use.
    * 
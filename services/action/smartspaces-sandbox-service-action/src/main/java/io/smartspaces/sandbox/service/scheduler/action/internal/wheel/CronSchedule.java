@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A cron schedule compiled into bit masks so the next fire time can be found
+ * without parsing or allocating per field.
+ *
+ * <p>
+ * The expression uses the Quartz field order, seconds, minutes, hours, day of
+ * month, month, day of week, and an optional year. Each field can be
+ * {@code *}, {@code ?}, a value, a range {@code a-b}, a step {@code a/n} or
+ * {@code a-b/n}, or a comma separated list of these. Months and days of the
+ * week can be given by their three letter names, days of the week are
+ * {@code 1} for Sunday to {@code 7} for Saturday. The Quartz {@code L},
+ * {@code W}, and {@code #} forms are not supported.
+ *
+ * <p>
+ * If both the day of month and day of week are restricted, a day matching
+ * either fires.
+ *
+ * <p>
+ * Schedules are immutable and can be shared by any number of jobs.
+ *
+ * @author Keith M. Hughes
+ */
+public class CronSchedule {
+
+  /**
+   * The first year a schedule can fire in.
+   */
+  public static final int YEAR_MINIMUM = 1970;
+
+  /**
+   * The last year a schedule can fire in.
+   */
+  public static final int YEAR_MAXIMUM = 2099;
+
+  /**
+   * The value returned when a schedule will never fire again.
+   */
+  public static final long NO_FIRE_TIME = -1;
+
+  /**
+   * The names of the months, for month 1 on.
+   */
+  private static final String[] MONTH_NAMES =
+      { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+
+  /**
+   * The names of the days of the week, for day 1 on.
+   */
+  private static final String[] DAY_NAMES = { "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT" };
+
+  /**
+   * The expression the schedule was compiled from.
+   */
+  private final String expression;
+
+  /**
+   * The time zone the schedule is in.
+   */
+  private final ZoneId zone;
+
+  /**
+   * The seconds which match, bit {@code n} for second {@code n}.
+   */
+  private final long seconds;
+
+  /**
+   * The minutes which match.
+   */
+  private final long minutes;
+
+  /**
+   * The hours which match.
+   */
+  private final long hours;
+
+  /**
+   * The days of the month which match, bit {@code n} for day {@code n}.
+   */
+  private final long daysOfMonth;
+
+  /**
+   * The months which match, bit {@code n} for month {@code n}.
+   */
+  private final long months;
+
+  /**
+   * The days of the week which match, bit {@code n} for day {@code n}.
+   */
+  private final long daysOfWeek;
+
+  /**
+   * The years which match, bit {@code n} for {@link #YEAR_MINIMUM} plus
+   * {@code n}, {@code null} for every year.
+   */
+  private final long[] years;
+
+  /**
+   * {@code true} if the day of month field is restricted.
+   */
+  private final boolean dayOfMonthRestricted;
+
+  /**
+   * {@code true} if the day of week field is restricted.
+   */
+  private final boolean dayOfWeekRestricted;
+
+  /**
+   * Compile a schedule in the default time zone.
+   *
+   * @param expression
+   *          the cron expression
+   *
+   * @return the schedule
+   *
+   * @throws SimpleSmartSpacesException
+   *           the expression is not legal
+   */
+  public static CronSchedule parse(String expression) throws SimpleSmartSpacesException {
+    return parse(expression, ZoneId.systemDefault());
+  }
+
+  /**
+   * Compile a schedule.
+   *
+   * @param expression
+   *          the cron expression
+   * @param zone
+   *          the time zone the schedule is in
+   *
+   * @return the schedule
+   *
+   * @throws SimpleSmartSpacesException
+   *           the expression is not legal
+   */
+  public static CronSchedule parse(String expression, ZoneId zone)
+      throws SimpleSmartSpacesException {
+    return new CronSchedule(expression, zone);
+  }
+
+  /**
+   * Construct a new schedule.
+   *
+   * @param expression
+   *          the cron expression
+   * @param zone
+   *          the time zone the schedule is in
+   */
+  private CronSchedule(String expression, ZoneId zone) {
+    this.expression = expression;
+    this.zone = zone;
+
+    String[] fields = expression.trim().toUpperCase().split("\\s+");
+    if (fields.length < 6 || fields.length > 7) {
+      throw new SimpleSmartSpacesException(
+          String.format("Cron expression %s must have 6 or 7 fields", expression));
+    }
+
+    seconds = parseField(fields[0], 0, 59, null);
+    minutes = parseField(fields[1], 0, 59, null);
+    hours = parseField(fields[2], 0, 23, null);
+    daysOfMonth = parseField(fields[3], 1, 31, null);
+    months = parseField(fields[4], 1, 12, MONTH_NAMES);
+    daysOfWeek = parseField(fields[5], 1, 7, DAY_NAMES);
+    dayOfMonthRestricted = isRestricted(fields[3]);
+    dayOfWeekRestricted = isRestricted(fields[5]);
+
+    if (fields.length == 7 && isRestricted(fields[6])) {
+      years = new long[(YEAR_MAXIMUM - YEAR_MINIMUM) / 64 + 1];
+      for (String part : fields[6].split(",")) {
+        addPart(part, YEAR_MINIMUM, YEAR_MAXIMUM, null, years, fields[6]);
+      }
+    } else {
+      years = null;
+    }
+  }
+
+  /**
+   * Get the first fire time after a given time.
+   *
+   * @param after
+   *          the time to start from, in milliseconds since the epoch
+   *
+   * @return the fire time, in milliseconds since the epoch, or
+   *         {@link #NO_FIRE_TIME} if the schedule will not fire again
+   */
+  public long getNextFireTime(long after) {
+    ZonedDateTime time = Instant.ofEpochMilli(after).atZone(zone).truncatedTo(ChronoUnit.SECONDS)
+        .plusSeconds(1);
+
+    while (time.getYear() <= YEAR_MAXIMUM) {
+      if (!isYearMatch(time.getYear())) {
+        time = time.plusYears(1).withDayOfYear(1).truncatedTo(ChronoUnit.DAYS);
+        continue;
+      }
+
+      if (!isSet(months, time.getMonthValue())) {
+        time = time.plusMonths(1).withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+        continue;
+      }
+
+      if (!isDayMatch(time)) {
+        time = time.plusDays(1).truncatedTo(ChronoUnit.DAYS);
+        continue;
+      }
+
+      int hour = nextSet(hours, time.getHour());
+      if (hour < 0) {
+        time = time.plusDays(1).truncatedTo(ChronoUnit.DAYS);
+        continue;
+      } else if (hour != time.getHour()) {
+        time = time.withHour(hour).truncatedTo(ChronoUnit.HOURS);
+        continue;
+      }
+
+      int minute = nextSet(minutes, time.getMinute());
+      if (minute < 0) {
+        time = time.plusHours(1).truncatedTo(ChronoUnit.HOURS);
+        continue;
+      } else if (minute != time.getMinute()) {
+        time = time.withMinute(minute).truncatedTo(ChronoUnit.MINUTES);
+        continue;
+      }
+
+      int second = nextSet(seconds, time.getSecond());
+      if (second < 0) {
+        time = time.plusMinutes(1).truncatedTo(ChronoUnit.MINUTES);
+        continue;
+      }
+
+      return time.withSecond(second).toInstant().toEpochMilli();
+    }
+
+    return NO_FIRE_TIME;
+  }
+
+  /**
+   * Get the expression the schedule was compiled from.
+   *
+   * @return the expression
+   */
+  public String getExpression() {
+    return expression;
+  }
+
+  /**
+   * Get the time zone the schedule is in.
+   *
+   * @return the time zone
+   */
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * Does the day of a time match the schedule?
+   *
+   * @param time
+   *          the time
+   *
+   * @return {@code true} if the day matches
+   */
+  private boolean isDayMatch(ZonedDateTime time) {
+    boolean dayOfMonthMatch = isSet(daysOfMonth, time.getDayOfMonth());
+
+    // Java weeks start on Monday as 1, cron weeks on Sunday as 1.
+    boolean dayOfWeekMatch = isSet(daysOfWeek, time.getDayOfWeek().getValue() % 7 + 1);
+
+    if (dayOfMonthRestricted && dayOfWeekRestricted) {
+      return dayOfMonthMatch || dayOfWeekMatch;
+    } else if (dayOfWeekRestricted) {
+      return dayOfWeekMatch;
+    } else {
+      return dayOfMonthMatch;
+    }
+  }
+
+  /**
+   * Does a year match the schedule?
+   *
+   * @param year
+   *          the year
+   *
+   * @return {@code true} if the year matches
+   */
+  private boolean isYearMatch(int year) {
+    if (years == null) {
+      return true;
+    }
+
+    int bit = year - YEAR_MINIMUM;
+
+    return bit >= 0 && (years[bit / 64] & (1L << (bit % 64))) != 0;
+  }
+
+  /**
+   * Is a bit set in a mask?
+   *
+   * @param mask
+   *          the mask
+   * @param bit
+   *          the bit
+   *
+   * @return {@code true} if the bit is set
+   */
+  private static boolean isSet(long mask, int bit) {
+    return (mask & (1L << bit)) != 0;
+  }
+
+  /**
+   * Find the first set bit in a mask at or after a given bit.
+   *
+   * @param mask
+   *          the mask
+   * @param from
+   *          the bit to start at
+   *
+   * @return the bit, or {@code -1} if none
+   */
+  private static int nextSet(long mask, int from) {
+    long remaining = mask & (-1L << from);
+
+    return (remaining != 0) ? Long.numberOfTrailingZeros(remaining) : -1;
+  }
+
+  /**
+   * Is a field restricted to some values?
+   *
+   * @param field
+   *          the field
+   *
+   * @return {@code true} if the field is not {@code *} or {@code ?}
+   */
+  private static boolean isRestricted(String field) {
+    return !"*".equals(field) && !"?".equals(field);
+  }
+
+  /**
+   * Parse a field into a mask.
+   *
+   * @param field
+   *          the field
+   * @param minimum
+   *          the smallest legal value
+   * @param maximum
+   *          the largest legal value
+   * @param names
+   *          the names for values from {@code minimum} on, can be {@code null}
+   *
+   * @return the mask
+   */
+  private static long parseField(String field, int minimum, int maximum, String[] names) {
+    long[] mask = new long[1];
+    if (!isRestricted(field)) {
+      addPart("*", minimum, maximum, names, mask, field);
+    } else {
+      for (String part : field.split(",")) {
+        addPart(part, minimum, maximum, names, mask, field);
+      }
+    }
+
+    return mask[0];
+  }
+
+  /**
+   * Add one part of a field to a mask.
+   *
+   * @param part
+   *          the part of the field
+   * @param minimum
+   *          the smallest legal value
+   * @param maximum
+   *          the largest legal value
+   * @param names
+   *          the names for values from {@code minimum} on, can be {@code null}
+   * @param mask
+   *          the mask, bit {@code n} is for value {@code n} when the minimum is
+   *          small, or {@code minimum + n} otherwise
+   * @param field
+   *          the whole field, for error messages
+   */
+  private static void addPart(String part, int minimum, int maximum, String[] names,
+      long[] mask, String field) {
+    int step = 1;
+    int slash = part.indexOf('/');
+    if (slash >= 0) {
+      // A step no larger than the maximum keeps the value loop from overflowing.
+      step = parseValue(part.substring(slash + 1), 1, maximum, null, field);
+      part = part.substring(0, slash);
+    }
+
+    int start;
+    int end;
+    if ("*".equals(part) || "?".equals(part)) {
+      start = minimum;
+      end = maximum;
+    } else {
+      int dash = part.indexOf('-');
+      if (dash >= 0) {
+        start = parseValue(part.substring(0, dash), minimum, maximum, names, field);
+        end = parseValue(part.substring(dash + 1), minimum, maximum, names, field);
+      } else {
+        start = parseValue(part, minimum, maximum, names, field);
+        end = (slash >= 0) ? maximum : start;
+      }
+    }
+
+    if (end < start) {
+      throw new SimpleSmartSpacesException(
+          String.format("Cron field %s has an empty range %d-%d", field, start, end));
+    }
+
+    int offset = (maximum < 64) ? 0 : minimum;
+    for (int value = start; value <= end; value += step) {
+      int bit = value - offset;
+      mask[bit / 64] |= 1L << (bit % 64);
+    }
+  }
+
+  /**
+   * Parse a value in a field.
+   *
+   * @param value
+   *          the value
+   * @param minimum
+   *          the smallest legal value
+   * @param maximum
+   *          the largest legal value
+   * @param names
+   *          the names for values from {@code minimum} on, can be {@code null}
+   * @param field
+   *          the whole field, for error messages
+   *
+   * @return the value
+   */
+  private static int parseValue(String value, int minimum, int maximum, String[] names,
+      String field) {
+    if (names != null) {
+      for (int i = 0; i < names.length; i++) {
+        if (names[i].equals(value)) {
+          return minimum + i;
+        }
+      }
+    }
+
+    int result;
+    try {
+      result = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new SimpleSmartSpacesException(
+          String.format("Cron field %s has unsupported value %s", field, value));
+    }
+
+    if (result < minimum || result > maximum) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Cron field %s value %d is outside %d-%d", field, result, minimum, maximum));
+    }
+
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "CronSchedule [expression=" + expression + ", zone=" + zone + "]";
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+/**
+ * What to do with a job whose fire times passed while the scheduler was not
+ * running.
+ *
+ * @author Keith M. Hughes
+ */
+public enum MisfirePolicy {
+
+  /**
+   * Fire the job once for all the missed fire times, then carry on with its
+   * schedule.
+   */
+  FIRE_ONCE,
+
+  /**
+   * Do not fire the job for the missed fire times. A job which fires once is
+   * dropped.
+   */
+  SKIP,
+
+  /**
+   * Fire the job once for each missed fire time, up to a limit, then carry on
+   * with its schedule.
+   */
+  CATCH_UP,
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+import io.smartspaces.sandbox.util.timer.TimerWheelTimeout;
+
+import java.util.Map;
+
+/**
+ * A job in a {@link TimerWheelActionSchedulerService}.
+ *
+ * <p>
+ * A job is kept small since a scheduler can hold hundreds of thousands of
+ * them. Cron schedules are shared between jobs with the same expression. The
+ * action is not kept, it is looked up through the action service, which
+ * caches it, each time the job fires, so a re-registered action source is
+ * picked up.
+ *
+ * @author Keith M. Hughes
+ */
+class ScheduledActionJob {
+
+  /**
+   * The key of the job, the group and job names.
+   */
+  private final String key;
+
+  /**
+   * The name of the job.
+   */
+  private final String jobName;
+
+  /**
+   * The name of the group the job is in.
+   */
+  private final String groupName;
+
+  /**
+   * The source of the action.
+   */
+  private final String actionSource;
+
+  /**
+   * The name of the action.
+   */
+  private final String actionName;
+
+  /**
+   * The data for the action, can be {@code null}.
+   */
+  private final Map<String, Object> data;
+
+  /**
+   * The cron schedule, {@code null} for a job which fires once.
+   */
+  private final CronSchedule cronSchedule;
+
+  /**
+   * The next time the job fires, in milliseconds since the epoch.
+   */
+  private volatile long nextFireTime;
+
+  /**
+   * The timeout for the next firing, {@code null} if none.
+   */
+  private volatile TimerWheelTimeout timeout;
+
+  /**
+   * {@code true} if the job has been removed from the scheduler.
+   */
+  private volatile boolean cancelled;
+
+  /**
+   * Construct a new job.
+   *
+   * @param key
+   *          the key of the job
+   * @param jobName
+   *          the name of the job
+   * @param groupName
+   *          the name of the group the job is in
+   * @param actionSource
+   *          the source of the action
+   * @param actionName
+   *          the name of the action
+   * @param data
+   *          the data for the action, can be {@code null}
+   * @param cronSchedule
+   *          the cron schedule, {@code null} for a job which fires once
+   * @param nextFireTime
+   *          the first time the job fires, in milliseconds since the epoch
+   */
+  ScheduledActionJob(String key, String jobName, String groupName, String actionSource,
+      String actionName, Map<String, Object> data, CronSchedule cronSchedule,
+      long nextFireTime) {
+    this.key = key;
+    this.jobName = jobName;
+    this.groupName = groupName;
+    this.actionSource = actionSource;
+    this.actionName = actionName;
+    this.data = data;
+    this.cronSchedule = cronSchedule;
+    this.nextFireTime = nextFireTime;
+  }
+
+  /**
+   * Cancel the job.
+   */
+  void cancel() {
+    cancelled = true;
+
+    TimerWheelTimeout currentTimeout = timeout;
+    if (currentTimeout != null) {
+      currentTimeout.cancel();
+    }
+  }
+
+  /**
+   * Get the key of the job.
+   *
+   * @return the key
+   */
+  String getKey() {
+    return key;
+  }
+
+  /**
+   * Get the name of the job.
+   *
+   * @return the job name
+   */
+  String getJobName() {
+    return jobName;
+  }
+
+  /**
+   * Get the name of the group the job is in.
+   *
+   * @return the group name
+   */
+  String getGroupName() {
+    return groupName;
+  }
+
+  /**
+   * Get the source of the action.
+   *
+   * @return the action source
+   */
+  String getActionSource() {
+    return actionSource;
+  }
+
+  /**
+   * Get the name of the action.
+   *
+   * @return the action name
+   */
+  String getActionName() {
+    return actionName;
+  }
+
+  /**
+   * Get the data for the action.
+   *
+   * @return the data, can be {@code null}
+   */
+  Map<String, Object> getData() {
+    return data;
+  }
+
+  /**
+   * Get the cron schedule.
+   *
+   * @return the schedule, or {@code null} for a job which fires once
+   */
+  CronSchedule getCronSchedule() {
+    return cronSchedule;
+  }
+
+  /**
+   * Get the next time the job fires.
+   *
+   * @return the fire time, in milliseconds since the epoch
+   */
+  long getNextFireTime() {
+    return nextFireTime;
+  }
+
+  /**
+   * Set the next time the job fires.
+   *
+   * @param nextFireTime
+   *          the fire time, in milliseconds since the epoch
+   */
+  void setNextFireTime(long nextFireTime) {
+    this.nextFireTime = nextFireTime;
+  }
+
+  /**
+   * Set the timeout for the next firing.
+   *
+   * @param timeout
+   *          the timeout
+   */
+  void setTimeout(TimerWheelTimeout timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * Has the job been removed from the scheduler?
+   *
+   * @return {@code true} if the job has been removed
+   */
+  boolean isCancelled() {
+    return cancelled;
+  }
+}
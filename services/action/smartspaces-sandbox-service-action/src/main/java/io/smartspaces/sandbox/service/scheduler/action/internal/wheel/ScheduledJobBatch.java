@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The jobs in a {@link TimerWheelActionSchedulerService} which fire at the
+ * same instant, placed in the timer wheel as a single entry.
+ *
+ * @author Keith M. Hughes
+ */
+class ScheduledJobBatch {
+
+  /**
+   * The time the batch fires, in milliseconds since the epoch.
+   */
+  private final long fireTime;
+
+  /**
+   * The jobs in the batch.
+   */
+  private final List<ScheduledActionJob> jobs = Lists.newArrayList();
+
+  /**
+   * {@code true} if the batch has fired and can take no more jobs.
+   */
+  private boolean closed;
+
+  /**
+   * Construct a new batch.
+   *
+   * @param fireTime
+   *          the time the batch fires, in milliseconds since the epoch
+   */
+  ScheduledJobBatch(long fireTime) {
+    this.fireTime = fireTime;
+  }
+
+  /**
+   * Get the time the batch fires.
+   *
+   * @return the fire time, in milliseconds since the epoch
+   */
+  long getFireTime() {
+    return fireTime;
+  }
+
+  /**
+   * Add a job to the batch.
+   *
+   * @param job
+   *          the job
+   *
+   * @return {@code true} if the job was added, {@code false} if the batch has
+   *         already fired
+   */
+  synchronized boolean add(ScheduledActionJob job) {
+    if (closed) {
+      return false;
+    }
+
+    jobs.add(job);
+
+    return true;
+  }
+
+  /**
+   * Close the batch so it takes no more jobs.
+   *
+   * @return the jobs in the batch which have not been cancelled
+   */
+  synchronized List<ScheduledActionJob> close() {
+    closed = true;
+
+    List<ScheduledActionJob> liveJobs = Lists.newArrayListWithCapacity(jobs.size());
+    for (ScheduledActionJob job : jobs) {
+      if (!job.isCancelled()) {
+        liveJobs.add(job);
+      }
+    }
+    jobs.clear();
+
+    return liveJobs;
+  }
+}
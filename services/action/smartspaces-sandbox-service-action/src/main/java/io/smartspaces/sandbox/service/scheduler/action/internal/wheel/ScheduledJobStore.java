@@ -0,0 +1,690 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.SmartSpacesException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A durable store for the jobs of a {@link TimerWheelActionSchedulerService}.
+ *
+ * <p>
+ * Changes to the jobs are appended to a log. Once the log has grown long
+ * enough, the scheduler writes a snapshot of every job and the log is started
+ * again. Loading the store reads the snapshot and replays the log over it.
+ * Replaying a change more than once gives the same result, so a crash between
+ * writing a snapshot and starting a new log loses nothing.
+ *
+ * <p>
+ * Each log record carries its length and a checksum. A record cut short by a
+ * crash ends the replay and is dropped.
+ *
+ * <p>
+ * Appends are flushed to the operating system but not synced to disk,
+ * snapshots are synced before they replace the previous snapshot.
+ *
+ * <p>
+ * Action data can hold {@code null}s, strings, numbers, booleans, and maps and
+ * lists of these.
+ *
+ * @author Keith M. Hughes
+ */
+public class ScheduledJobStore {
+
+  /**
+   * The name of the snapshot file.
+   */
+  public static final String SNAPSHOT_FILE_NAME = "jobs.snapshot";
+
+  /**
+   * The name of the log file.
+   */
+  public static final String LOG_FILE_NAME = "jobs.log";
+
+  /**
+   * The default number of log records which trigger a snapshot.
+   */
+  public static final int SNAPSHOT_THRESHOLD_DEFAULT = 50000;
+
+  /**
+   * The magic number at the start of a snapshot.
+   */
+  private static final int SNAPSHOT_MAGIC = 0x534a5353;
+
+  /**
+   * The version of the file formats.
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * Record type for an added job.
+   */
+  private static final byte RECORD_ADD = 1;
+
+  /**
+   * Record type for a removed job.
+   */
+  private static final byte RECORD_REMOVE = 2;
+
+  /**
+   * Record type for a new fire time for a job.
+   */
+  private static final byte RECORD_FIRE_TIME = 3;
+
+  /**
+   * Value type for {@code null}.
+   */
+  private static final byte VALUE_NULL = 0;
+
+  /**
+   * Value type for a string.
+   */
+  private static final byte VALUE_STRING = 1;
+
+  /**
+   * Value type for an integer.
+   */
+  private static final byte VALUE_INTEGER = 2;
+
+  /**
+   * Value type for a long.
+   */
+  private static final byte VALUE_LONG = 3;
+
+  /**
+   * Value type for a double.
+   */
+  private static final byte VALUE_DOUBLE = 4;
+
+  /**
+   * Value type for a boolean.
+   */
+  private static final byte VALUE_BOOLEAN = 5;
+
+  /**
+   * Value type for a map.
+   */
+  private static final byte VALUE_MAP = 6;
+
+  /**
+   * Value type for a list.
+   */
+  private static final byte VALUE_LIST = 7;
+
+  /**
+   * The directory the store is kept in.
+   */
+  private final File directory;
+
+  /**
+   * The number of log records which trigger a snapshot.
+   */
+  private final int snapshotThreshold;
+
+  /**
+   * The stream for the log, {@code null} if the store is not open.
+   */
+  private DataOutputStream logOut;
+
+  /**
+   * The number of records appended since the last snapshot.
+   */
+  private int numberLogRecords;
+
+  /**
+   * Construct a store with the default snapshot threshold.
+   *
+   * @param directory
+   *          the directory to keep the store in
+   */
+  public ScheduledJobStore(File directory) {
+    this(directory, SNAPSHOT_THRESHOLD_DEFAULT);
+  }
+
+  /**
+   * Construct a store.
+   *
+   * @param directory
+   *          the directory to keep the store in
+   * @param snapshotThreshold
+   *          the number of log records which trigger a snapshot
+   */
+  public ScheduledJobStore(File directory, int snapshotThreshold) {
+    this.directory = directory;
+    this.snapshotThreshold = snapshotThreshold;
+  }
+
+  /**
+   * Load the jobs in the store and open it for appending.
+   *
+   * @param cronCompiler
+   *          gives the compiled schedule for a cron expression
+   *
+   * @return the jobs, keyed by job key
+   */
+  synchronized Map<String, ScheduledActionJob> load(Function<String, CronSchedule> cronCompiler) {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Could not create scheduler job store directory %s", directory.getAbsolutePath()));
+    }
+
+    Map<String, ScheduledActionJob> jobs = Maps.newLinkedHashMap();
+    File snapshotFile = new File(directory, SNAPSHOT_FILE_NAME);
+    File logFile = new File(directory, LOG_FILE_NAME);
+    try {
+      if (snapshotFile.exists()) {
+        readSnapshot(snapshotFile, cronCompiler, jobs);
+      }
+
+      long validLogLength = 0;
+      if (logFile.exists()) {
+        validLogLength = replayLog(logFile, cronCompiler, jobs);
+      }
+
+      // Drop anything after the last good record before appending.
+      try (FileOutputStream truncate = new FileOutputStream(logFile, true)) {
+        truncate.getChannel().truncate(validLogLength);
+      }
+
+      logOut = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(logFile, true)));
+    } catch (IOException e) {
+      throw new SmartSpacesException(String.format("Could not read scheduler job store %s",
+          directory.getAbsolutePath()), e);
+    }
+
+    return jobs;
+  }
+
+  /**
+   * Close the store.
+   */
+  synchronized void close() {
+    if (logOut != null) {
+      try {
+        logOut.close();
+      } catch (IOException e) {
+        throw new SmartSpacesException("Could not close scheduler job store log", e);
+      } finally {
+        logOut = null;
+      }
+    }
+  }
+
+  /**
+   * Create the log record for an added job.
+   *
+   * <p>
+   * The record is made before the job is added so a job whose data cannot be
+   * stored is never added.
+   *
+   * @param job
+   *          the job
+   *
+   * @return the record
+   *
+   * @throws SimpleSmartSpacesException
+   *           the job data cannot be stored
+   */
+  byte[] newAddRecord(ScheduledActionJob job) throws SimpleSmartSpacesException {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(RECORD_ADD);
+      writeJob(job, out);
+      out.flush();
+
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new SmartSpacesException("Could not encode scheduled job", e);
+    }
+  }
+
+  /**
+   * Create the log record for a removed job.
+   *
+   * @param key
+   *          the key of the job
+   *
+   * @return the record
+   */
+  byte[] newRemoveRecord(String key) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(RECORD_REMOVE);
+      out.writeUTF(key);
+      out.flush();
+
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new SmartSpacesException("Could not encode scheduled job removal", e);
+    }
+  }
+
+  /**
+   * Create the log record for a new fire time for a job.
+   *
+   * @param key
+   *          the key of the job
+   * @param nextFireTime
+   *          the next fire time, in milliseconds since the epoch
+   *
+   * @return the record
+   */
+  byte[] newFireTimeRecord(String key, long nextFireTime) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(RECORD_FIRE_TIME);
+      out.writeUTF(key);
+      out.writeLong(nextFireTime);
+      out.flush();
+
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new SmartSpacesException("Could not encode scheduled job fire time", e);
+    }
+  }
+
+  /**
+   * Append a record to the log.
+   *
+   * @param record
+   *          the record
+   *
+   * @return {@code true} if the log has grown long enough for a snapshot
+   */
+  synchronized boolean append(byte[] record) {
+    if (logOut == null) {
+      return false;
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    try {
+      logOut.writeInt(record.length);
+      logOut.writeInt((int) crc.getValue());
+      logOut.write(record);
+      logOut.flush();
+    } catch (IOException e) {
+      throw new SmartSpacesException("Could not append to scheduler job store log", e);
+    }
+
+    return ++numberLogRecords >= snapshotThreshold;
+  }
+
+  /**
+   * Write a snapshot of the jobs and start a new log.
+   *
+   * @param jobs
+   *          every job in the scheduler
+   */
+  synchronized void snapshot(Collection<ScheduledActionJob> jobs) {
+    if (logOut == null) {
+      return;
+    }
+
+    File snapshotFile = new File(directory, SNAPSHOT_FILE_NAME);
+    File newSnapshotFile = new File(directory, SNAPSHOT_FILE_NAME + ".new");
+    File logFile = new File(directory, LOG_FILE_NAME);
+    try {
+      // Jobs can be removed while the snapshot is written, so the count goes
+      // at the end.
+      try (FileOutputStream fileOut = new FileOutputStream(newSnapshotFile)) {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+
+        int numberJobs = 0;
+        for (ScheduledActionJob job : jobs) {
+          if (!job.isCancelled()) {
+            out.writeBoolean(true);
+            writeJob(job, out);
+            numberJobs++;
+          }
+        }
+        out.writeBoolean(false);
+        out.writeInt(numberJobs);
+        out.flush();
+
+        fileOut.getFD().sync();
+      }
+
+      Files.move(newSnapshotFile.toPath(), snapshotFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      logOut.close();
+      logOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile)));
+      numberLogRecords = 0;
+    } catch (IOException e) {
+      throw new SmartSpacesException(String.format("Could not write scheduler job snapshot %s",
+          snapshotFile.getAbsolutePath()), e);
+    }
+  }
+
+  /**
+   * Read a snapshot.
+   *
+   * @param snapshotFile
+   *          the snapshot file
+   * @param cronCompiler
+   *          gives the compiled schedule for a cron expression
+   * @param jobs
+   *          the map to add the jobs to
+   *
+   * @throws IOException
+   *           the snapshot could not be read
+   */
+  private void readSnapshot(File snapshotFile, Function<String, CronSchedule> cronCompiler,
+      Map<String, ScheduledActionJob> jobs) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+      if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+        throw new SimpleSmartSpacesException(String.format(
+            "Scheduler job snapshot %s is not a known format", snapshotFile.getAbsolutePath()));
+      }
+
+      int numberJobs = 0;
+      while (in.readBoolean()) {
+        ScheduledActionJob job = readJob(in, cronCompiler);
+        jobs.put(job.getKey(), job);
+        numberJobs++;
+      }
+
+      if (in.readInt() != numberJobs) {
+        throw new SimpleSmartSpacesException(String.format(
+            "Scheduler job snapshot %s is incomplete", snapshotFile.getAbsolutePath()));
+      }
+    }
+  }
+
+  /**
+   * Replay the log.
+   *
+   * @param logFile
+   *          the log file
+   * @param cronCompiler
+   *          gives the compiled schedule for a cron expression
+   * @param jobs
+   *          the jobs to apply the log to
+   *
+   * @return the length of the log up to the end of the last good record
+   *
+   * @throws IOException
+   *           the log could not be read
+   */
+  private long replayLog(File logFile, Function<String, CronSchedule> cronCompiler,
+      Map<String, ScheduledActionJob> jobs) throws IOException {
+    long validLength = 0;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+      CRC32 crc = new CRC32();
+      while (true) {
+        byte[] record;
+        int checksum;
+        try {
+          int length = in.readInt();
+          checksum = in.readInt();
+          if (length <= 0 || length > logFile.length()) {
+            break;
+          }
+
+          record = new byte[length];
+          in.readFully(record);
+        } catch (EOFException e) {
+          break;
+        }
+
+        crc.reset();
+        crc.update(record);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+
+        applyRecord(record, cronCompiler, jobs);
+        validLength += 8 + record.length;
+        numberLogRecords++;
+      }
+    }
+
+    return validLength;
+  }
+
+  /**
+   * Apply a log record to the jobs.
+   *
+   * @param record
+   *          the record
+   * @param cronCompiler
+   *          gives the compiled schedule for a cron expression
+   * @param jobs
+   *          the jobs
+   *
+   * @throws IOException
+   *           the record could not be decoded
+   */
+  private void applyRecord(byte[] record, Function<String, CronSchedule> cronCompiler,
+      Map<String, ScheduledActionJob> jobs) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    byte type = in.readByte();
+    switch (type) {
+      case RECORD_ADD:
+        ScheduledActionJob job = readJob(in, cronCompiler);
+        jobs.put(job.getKey(), job);
+        break;
+
+      case RECORD_REMOVE:
+        jobs.remove(in.readUTF());
+        break;
+
+      case RECORD_FIRE_TIME:
+        ScheduledActionJob firedJob = jobs.get(in.readUTF());
+        long nextFireTime = in.readLong();
+        if (firedJob != null) {
+          firedJob.setNextFireTime(nextFireTime);
+        }
+        break;
+
+      default:
+        throw new SimpleSmartSpacesException(
+            String.format("Unknown scheduler job store record type %d", type));
+    }
+  }
+
+  /**
+   * Write a job.
+   *
+   * @param job
+   *          the job
+   * @param out
+   *          the stream to write to
+   *
+   * @throws IOException
+   *           the job could not be written
+   */
+  private void writeJob(ScheduledActionJob job, DataOutputStream out) throws IOException {
+    out.writeUTF(job.getKey());
+    out.writeUTF(job.getJobName());
+    out.writeUTF(job.getGroupName());
+    out.writeUTF(job.getActionSource());
+    out.writeUTF(job.getActionName());
+    CronSchedule cronSchedule = job.getCronSchedule();
+    out.writeUTF((cronSchedule != null) ? cronSchedule.getExpression() : "");
+    out.writeLong(job.getNextFireTime());
+    writeValue(job.getData(), out);
+  }
+
+  /**
+   * Read a job.
+   *
+   * @param in
+   *          the stream to read from
+   * @param cronCompiler
+   *          gives the compiled schedule for a cron expression
+   *
+   * @return the job
+   *
+   * @throws IOException
+   *           the job could not be read
+   */
+  @SuppressWarnings("unchecked")
+  private ScheduledActionJob readJob(DataInputStream in,
+      Function<String, CronSchedule> cronCompiler) throws IOException {
+    String key = in.readUTF();
+    String jobName = in.readUTF();
+    String groupName = in.readUTF();
+    String actionSource = in.readUTF();
+    String actionName = in.readUTF();
+    String cronExpression = in.readUTF();
+    long nextFireTime = in.readLong();
+    Map<String, Object> data = (Map<String, Object>) readValue(in);
+
+    CronSchedule cronSchedule =
+        cronExpression.isEmpty() ? null : cronCompiler.apply(cronExpression);
+
+    return new ScheduledActionJob(key, jobName, groupName, actionSource, actionName, data,
+        cronSchedule, nextFireTime);
+  }
+
+  /**
+   * Write a data value.
+   *
+   * @param value
+   *          the value
+   * @param out
+   *          the stream to write to
+   *
+   * @throws IOException
+   *           the value could not be written
+   */
+  private void writeValue(Object value, DataOutputStream out) throws IOException {
+    if (value == null) {
+      out.writeByte(VALUE_NULL);
+    } else if (value instanceof String) {
+      out.writeByte(VALUE_STRING);
+      out.writeUTF((String) value);
+    } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      out.writeByte(VALUE_INTEGER);
+      out.writeInt(((Number) value).intValue());
+    } else if (value instanceof Long) {
+      out.writeByte(VALUE_LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double || value instanceof Float) {
+      out.writeByte(VALUE_DOUBLE);
+      out.writeDouble(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      out.writeByte(VALUE_BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      out.writeByte(VALUE_MAP);
+      out.writeInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        out.writeUTF(entry.getKey().toString());
+        writeValue(entry.getValue(), out);
+      }
+    } else if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      out.writeByte(VALUE_LIST);
+      out.writeInt(list.size());
+      for (Object item : list) {
+        writeValue(item, out);
+      }
+    } else {
+      throw new SimpleSmartSpacesException(String.format(
+          "Scheduled job data of type %s cannot be stored", value.getClass().getName()));
+    }
+  }
+
+  /**
+   * Read a data value.
+   *
+   * @param in
+   *          the stream to read from
+   *
+   * @return the value, maps and lists cannot be modified
+   *
+   * @throws IOException
+   *           the value could not be read
+   */
+  private Object readValue(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case VALUE_NULL:
+        return null;
+
+      case VALUE_STRING:
+        return in.readUTF();
+
+      case VALUE_INTEGER:
+        return in.readInt();
+
+      case VALUE_LONG:
+        return in.readLong();
+
+      case VALUE_DOUBLE:
+        return in.readDouble();
+
+      case VALUE_BOOLEAN:
+        return in.readBoolean();
+
+      case VALUE_MAP:
+        int mapSize = in.readInt();
+        Map<String, Object> map = Maps.newHashMapWithExpectedSize(mapSize);
+        for (int i = 0; i < mapSize; i++) {
+          map.put(in.readUTF(), readValue(in));
+        }
+        return Collections.unmodifiableMap(map);
+
+      case VALUE_LIST:
+        int listSize = in.readInt();
+        List<Object> list = Lists.newArrayListWithCapacity(listSize);
+        for (int i = 0; i < listSize; i++) {
+          list.add(readValue(in));
+        }
+        return Collections.unmodifiableList(list);
+
+      default:
+        throw new SimpleSmartSpacesException(
+            String.format("Unknown scheduled job data type %d", type));
+    }
+  }
+}
@@ -0,0 +1,1001 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.configuration.Configuration;
+import io.smartspaces.evaluation.ExecutionContext;
+import io.smartspaces.evaluation.StandardExecutionContext;
+import io.smartspaces.sandbox.service.action.Action;
+import io.smartspaces.sandbox.service.action.ActionService;
+import io.smartspaces.sandbox.service.scheduler.action.ActionSchedulerMetrics;
+import io.smartspaces.sandbox.service.scheduler.action.ActionSchedulerService;
+import io.smartspaces.sandbox.util.timer.HierarchicalTimerWheel;
+import io.smartspaces.service.BaseSupportedService;
+import io.smartspaces.system.SmartSpacesEnvironment;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+
+/**
+ * An {@link ActionSchedulerService} whose jobs are entries in a
+ * {@link HierarchicalTimerWheel}.
+ *
+ * <p>
+ * Scheduling and removing a job are constant time, and a waiting job is a
+ * single wheel entry, so hundreds of thousands of jobs can be scheduled. Cron
+ * expressions are compiled once and shared by every job which uses them. When
+ * a job fires, its action is looked up through the action service's cache and
+ * performed directly on the firing pool.
+ *
+ * <p>
+ * The wheel thread only schedules the next firing of a cron job and hands the
+ * job to the firing pool, so a slow action does not make other jobs late
+ * unless the pool is exhausted.
+ *
+ * <p>
+ * Scheduling a job with the same name and group as an existing job replaces
+ * the existing job.
+ *
+ * <p>
+ * With batch firing on, all jobs due at the same instant are a single wheel
+ * entry. When the batch fires, the next fire time of each cron schedule in it
+ * is worked out once, and the jobs are split into one chunk per firing thread.
+ * Each chunk looks up the environment, the action service and each distinct
+ * action once, rather than once per job, and jobs with the same data share an
+ * execution context.
+ *
+ * <p>
+ * Lateness, misfires and pool saturation are recorded in the
+ * {@link ActionSchedulerMetrics}, and a summary is logged periodically.
+ *
+ * <p>
+ * If a {@link ScheduledJobStore} is set, jobs survive restarts. Jobs whose fire
+ * times passed while the scheduler was down are handled by the
+ * {@link MisfirePolicy} when the scheduler starts. While the scheduler runs,
+ * store records are written and snapshots taken on a single store thread, so
+ * neither the wheel thread nor callers wait for the disk.
+ *
+ * <p>
+ * Unless set on the service, the job store and misfire policy come from the
+ * system configuration when the scheduler starts, see
+ * {@link #CONFIGURATION_PROPERTY_JOB_STORE_DIRECTORY},
+ * {@link #CONFIGURATION_PROPERTY_JOB_STORE_ENABLE} and
+ * {@link #CONFIGURATION_PROPERTY_MISFIRE_POLICY}.
+ *
+ * @author Keith M. Hughes
+ */
+public class TimerWheelActionSchedulerService extends BaseSupportedService
+    implements ActionSchedulerService {
+
+  /**
+   * The configuration property for the directory the job store is kept in.
+   * Setting it turns the job store on.
+   */
+  public static final String CONFIGURATION_PROPERTY_JOB_STORE_DIRECTORY =
+      "smartspaces.service.scheduler.action.store.directory";
+
+  /**
+   * The configuration property which, when {@code true}, keeps the job store in
+   * the data directory of the service.
+   */
+  public static final String CONFIGURATION_PROPERTY_JOB_STORE_ENABLE =
+      "smartspaces.service.scheduler.action.store.enable";
+
+  /**
+   * The configuration property for the misfire policy, the name of a
+   * {@link MisfirePolicy} in any case.
+   */
+  public static final String CONFIGURATION_PROPERTY_MISFIRE_POLICY =
+      "smartspaces.service.scheduler.action.misfire.policy";
+
+  /**
+   * The group for jobs scheduled without one.
+   */
+  public static final String GROUP_NAME_DEFAULT = "DEFAULT";
+
+  /**
+   * The default number of threads in the firing pool.
+   */
+  public static final int FIRING_THREAD_POOL_SIZE_DEFAULT = 10;
+
+  /**
+   * The duration of a tick of the timer wheel, in milliseconds.
+   */
+  public static final long TICK_DURATION = 10;
+
+  /**
+   * The number of buckets on each level of the timer wheel.
+   */
+  public static final int WHEEL_SIZE = 512;
+
+  /**
+   * The number of levels of the timer wheel.
+   */
+  public static final int NUMBER_LEVELS = 4;
+
+  /**
+   * The number of seconds an idle firing thread is kept.
+   */
+  public static final long FIRING_THREAD_KEEP_ALIVE_TIME = 60;
+
+  /**
+   * The most missed fire times a job is fired for with
+   * {@link MisfirePolicy#CATCH_UP}.
+   */
+  public static final int CATCH_UP_FIRINGS_MAXIMUM = 100;
+
+  /**
+   * How long shutdown waits for the store thread to write the records queued
+   * for it, in milliseconds.
+   */
+  public static final long STORE_WRITER_SHUTDOWN_TIMEOUT = 10000;
+
+  /**
+   * The default time between metrics summaries in the log, in milliseconds.
+   */
+  public static final long METRICS_SUMMARY_INTERVAL_DEFAULT = TimeUnit.MINUTES.toMillis(5);
+
+  /**
+   * The number of threads in the firing pool.
+   */
+  private final int firingThreadPoolSize;
+
+  /**
+   * The jobs, keyed by group and job name.
+   */
+  private final ConcurrentMap<String, ScheduledActionJob> jobs = Maps.newConcurrentMap();
+
+  /**
+   * The compiled cron schedules, keyed by expression.
+   */
+  private final ConcurrentMap<String, CronSchedule> cronSchedules = Maps.newConcurrentMap();
+
+  /**
+   * The timer wheel for the jobs, {@code null} if not running.
+   */
+  private volatile HierarchicalTimerWheel timerWheel;
+
+  /**
+   * The pool jobs are performed on, {@code null} if not running.
+   */
+  private volatile ThreadPoolExecutor firingExecutor;
+
+  /**
+   * The action service, {@code null} if it should be found in the service
+   * registry.
+   */
+  private volatile ActionService actionService;
+
+  /**
+   * The store for the jobs, {@code null} if jobs are not kept over restarts.
+   */
+  private volatile ScheduledJobStore jobStore;
+
+  /**
+   * What to do with jobs which missed fire times while the scheduler was down,
+   * {@code null} if it comes from the configuration.
+   */
+  private volatile MisfirePolicy misfirePolicy;
+
+  /**
+   * The thread all job store writes happen on while the scheduler runs,
+   * {@code null} if not running or there is no store.
+   */
+  private volatile ExecutorService storeWriter;
+
+  /**
+   * {@code true} if jobs due at the same instant are fired as a batch.
+   */
+  private volatile boolean batchFiring;
+
+  /**
+   * The batches waiting to fire, keyed by fire time.
+   */
+  private final ConcurrentMap<Long, ScheduledJobBatch> batches = Maps.newConcurrentMap();
+
+  /**
+   * The metrics for the scheduler.
+   */
+  private final ActionSchedulerMetrics metrics;
+
+  /**
+   * The time between metrics summaries in the log, in milliseconds, {@code 0}
+   * for no summaries.
+   */
+  private volatile long metricsSummaryInterval = METRICS_SUMMARY_INTERVAL_DEFAULT;
+
+  /**
+   * Construct a new scheduler with the default firing pool size.
+   */
+  public TimerWheelActionSchedulerService() {
+    this(FIRING_THREAD_POOL_SIZE_DEFAULT);
+  }
+
+  /**
+   * Construct a new scheduler.
+   *
+   * @param firingThreadPoolSize
+   *          the number of threads actions are performed on
+   */
+  public TimerWheelActionSchedulerService(int firingThreadPoolSize) {
+    this.firingThreadPoolSize = firingThreadPoolSize;
+
+    metrics = new ActionSchedulerMetrics(firingThreadPoolSize, jobs::size, () -> {
+      ThreadPoolExecutor executor = firingExecutor;
+      return (executor != null) ? executor.getActiveCount() : 0;
+    }, () -> {
+      ThreadPoolExecutor executor = firingExecutor;
+      return (executor != null) ? executor.getQueue().size() : 0;
+    });
+  }
+
+  @Override
+  public String getName() {
+    return ActionSchedulerService.SERVICE_NAME;
+  }
+
+  @Override
+  public synchronized void startup() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(firingThreadPoolSize,
+        firingThreadPoolSize, FIRING_THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setNameFormat("action-scheduler-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    firingExecutor = executor;
+
+    HierarchicalTimerWheel wheel = new HierarchicalTimerWheel(TICK_DURATION,
+        TimeUnit.MILLISECONDS, WHEEL_SIZE, NUMBER_LEVELS, getLog());
+    timerWheel = wheel;
+
+    configureFromSystemConfiguration();
+
+    ScheduledJobStore store = jobStore;
+    if (store != null) {
+      storeWriter = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("action-scheduler-store").setDaemon(true).build());
+      recoverJobs(store, executor);
+    }
+
+    // Batches from an earlier run were dropped with their wheel.
+    batches.clear();
+
+    // Jobs scheduled before startup are placed now.
+    for (ScheduledActionJob job : jobs.values()) {
+      placeJob(job);
+    }
+
+    if (metricsSummaryInterval > 0) {
+      scheduleMetricsSummary(wheel);
+    }
+
+    wheel.startup();
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    HierarchicalTimerWheel wheel = timerWheel;
+    timerWheel = null;
+    if (wheel != null) {
+      wheel.shutdown();
+    }
+
+    ThreadPoolExecutor executor = firingExecutor;
+    firingExecutor = null;
+    if (executor != null) {
+      executor.shutdown();
+    }
+
+    ExecutorService writer = storeWriter;
+    storeWriter = null;
+    if (writer != null) {
+      writer.shutdown();
+      try {
+        if (!writer.awaitTermination(STORE_WRITER_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+          getLog().warn("Scheduled job store writes did not finish before shutdown");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    ScheduledJobStore store = jobStore;
+    if (store != null) {
+      try {
+        store.snapshot(jobs.values());
+      } finally {
+        store.close();
+      }
+    }
+  }
+
+  @Override
+  public void schedule(String jobName, String groupName, String actionSource, String actionName,
+      Date when) {
+    schedule(jobName, groupName, actionSource, actionName, null, when);
+  }
+
+  @Override
+  public void schedule(String jobName, String groupName, String actionSource, String actionName,
+      Map<String, Object> data, Date when) {
+    addJob(jobName, groupName, actionSource, actionName, data, null, when.getTime());
+  }
+
+  @Override
+  public void scheduleWithCron(String jobName, String groupName, String actionSource,
+      String actionName, String schedule) {
+    scheduleWithCron(jobName, groupName, actionSource, actionName, null, schedule);
+  }
+
+  @Override
+  public void scheduleWithCron(String jobName, String groupName, String actionSource,
+      String actionName, Map<String, Object> data, String schedule) {
+    CronSchedule cronSchedule;
+    try {
+      cronSchedule = getCronSchedule(schedule);
+    } catch (SimpleSmartSpacesException e) {
+      throw new SmartSpacesException(String.format("Unable to schedule job %s:%s for action %s:%s",
+          groupName, jobName, actionSource, actionName), e);
+    }
+
+    long firstFireTime = cronSchedule.getNextFireTime(System.currentTimeMillis());
+    if (firstFireTime == CronSchedule.NO_FIRE_TIME) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Cron schedule %s for job %s:%s will never fire", schedule, groupName, jobName));
+    }
+
+    addJob(jobName, groupName, actionSource, actionName, data, cronSchedule, firstFireTime);
+  }
+
+  /**
+   * Remove a job.
+   *
+   * @param jobName
+   *          the name of the job
+   * @param groupName
+   *          the name of the group the job is in, can be {@code null} for the
+   *          default group
+   *
+   * @return {@code true} if there was such a job
+   */
+  public boolean unschedule(String jobName, String groupName) {
+    ScheduledActionJob job = jobs.remove(getJobKey(jobName, groupName));
+    if (job != null) {
+      job.cancel();
+      storeRemovedJob(job);
+    }
+
+    return job != null;
+  }
+
+  /**
+   * Get the number of jobs scheduled.
+   *
+   * @return the number of jobs
+   */
+  public int getNumberJobs() {
+    return jobs.size();
+  }
+
+  /**
+   * Set the action service to use.
+   *
+   * @param actionService
+   *          the action service, {@code null} to find it in the service
+   *          registry
+   */
+  public void setActionService(ActionService actionService) {
+    this.actionService = actionService;
+  }
+
+  @Override
+  public void setBatchFiring(boolean batchFiring) {
+    this.batchFiring = batchFiring;
+  }
+
+  @Override
+  public ActionSchedulerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Set the time between metrics summaries in the log.
+   *
+   * <p>
+   * This must be set before the scheduler starts up.
+   *
+   * @param interval
+   *          the time between summaries, {@code 0} for no summaries
+   * @param unit
+   *          the units of the interval
+   */
+  public void setMetricsSummaryInterval(long interval, TimeUnit unit) {
+    this.metricsSummaryInterval = unit.toMillis(interval);
+  }
+
+  /**
+   * Set the store which keeps jobs over restarts.
+   *
+   * <p>
+   * This must be set before the scheduler starts up. A store set here is used
+   * instead of any store in the system configuration.
+   *
+   * @param jobStore
+   *          the job store, {@code null} if jobs are not kept
+   */
+  public void setJobStore(ScheduledJobStore jobStore) {
+    this.jobStore = jobStore;
+  }
+
+  /**
+   * Set what to do with jobs which missed fire times while the scheduler was
+   * down.
+   *
+   * <p>
+   * A policy set here is used instead of any policy in the system
+   * configuration. The default is {@link MisfirePolicy#FIRE_ONCE}.
+   *
+   * @param misfirePolicy
+   *          the misfire policy
+   */
+  public void setMisfirePolicy(MisfirePolicy misfirePolicy) {
+    this.misfirePolicy = misfirePolicy;
+  }
+
+  /**
+   * Take the job store and misfire policy from the system configuration if they
+   * have not been set on the service.
+   */
+  private void configureFromSystemConfiguration() {
+    SmartSpacesEnvironment spaceEnvironment = getSpaceEnvironment();
+    Configuration configuration = spaceEnvironment.getSystemConfiguration();
+
+    if (jobStore == null) {
+      String directory =
+          configuration.getPropertyString(CONFIGURATION_PROPERTY_JOB_STORE_DIRECTORY);
+      if (directory != null) {
+        jobStore = new ScheduledJobStore(new File(directory));
+      } else if (configuration.getPropertyBoolean(CONFIGURATION_PROPERTY_JOB_STORE_ENABLE,
+          false)) {
+        jobStore =
+            new ScheduledJobStore(spaceEnvironment.getFilesystem().getDataDirectory(getName()));
+      }
+    }
+
+    if (misfirePolicy == null) {
+      String policy = configuration.getPropertyString(CONFIGURATION_PROPERTY_MISFIRE_POLICY);
+      if (policy != null) {
+        try {
+          misfirePolicy = MisfirePolicy.valueOf(policy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+          throw new SimpleSmartSpacesException(
+              String.format("Unknown action scheduler misfire policy %s", policy));
+        }
+      } else {
+        misfirePolicy = MisfirePolicy.FIRE_ONCE;
+      }
+    }
+  }
+
+  /**
+   * Add a job.
+   *
+   * @param jobName
+   *          the name of the job
+   * @param groupName
+   *          the name of the group, can be {@code null} for the default group
+   * @param actionSource
+   *          the source of the action
+   * @param actionName
+   *          the name of the action
+   * @param data
+   *          the data for the action, can be {@code null}
+   * @param cronSchedule
+   *          the cron schedule, {@code null} for a job which fires once
+   * @param firstFireTime
+   *          the first time the job fires, in milliseconds since the epoch
+   */
+  private void addJob(String jobName, String groupName, String actionSource, String actionName,
+      Map<String, Object> data, CronSchedule cronSchedule, long firstFireTime) {
+    if (groupName == null) {
+      groupName = GROUP_NAME_DEFAULT;
+    }
+
+    Map<String, Object> jobData =
+        (data != null) ? Collections.unmodifiableMap(Maps.newHashMap(data)) : null;
+    ScheduledActionJob job = new ScheduledActionJob(getJobKey(jobName, groupName), jobName,
+        groupName, actionSource, actionName, jobData, cronSchedule, firstFireTime);
+
+    // The record is made first so a job which cannot be stored is never added.
+    ScheduledJobStore store = jobStore;
+    byte[] addRecord = (store != null) ? store.newAddRecord(job) : null;
+
+    ScheduledActionJob previous = jobs.put(job.getKey(), job);
+    if (previous != null) {
+      previous.cancel();
+    }
+
+    if (addRecord != null) {
+      appendToStore(store, addRecord);
+    }
+
+    placeJob(job);
+  }
+
+  /**
+   * Recover the jobs in the store and apply the misfire policy to them.
+   *
+   * <p>
+   * Jobs scheduled before startup replace recovered jobs with the same name
+   * and group.
+   *
+   * @param store
+   *          the job store
+   * @param executor
+   *          the pool to fire missed jobs on
+   */
+  private void recoverJobs(ScheduledJobStore store, ThreadPoolExecutor executor) {
+    long startTime = System.currentTimeMillis();
+    Map<String, ScheduledActionJob> storedJobs = store.load(this::getCronSchedule);
+
+    long now = System.currentTimeMillis();
+    MisfirePolicy policy = misfirePolicy;
+    int numberMisfired = 0;
+    for (ScheduledActionJob job : storedJobs.values()) {
+      if (jobs.containsKey(job.getKey())) {
+        continue;
+      }
+
+      long fireTime = job.getNextFireTime();
+      if (fireTime >= now) {
+        jobs.put(job.getKey(), job);
+        continue;
+      }
+
+      numberMisfired++;
+      CronSchedule cronSchedule = job.getCronSchedule();
+      if (cronSchedule == null) {
+        if (policy != MisfirePolicy.SKIP) {
+          executor.execute(() -> performJob(job, CronSchedule.NO_FIRE_TIME));
+        }
+        continue;
+      }
+
+      long nextFireTime;
+      if (policy == MisfirePolicy.CATCH_UP) {
+        nextFireTime = fireTime;
+        for (int i = 0; nextFireTime != CronSchedule.NO_FIRE_TIME && nextFireTime < now
+            && i < CATCH_UP_FIRINGS_MAXIMUM; i++) {
+          executor.execute(() -> performJob(job, CronSchedule.NO_FIRE_TIME));
+          nextFireTime = cronSchedule.getNextFireTime(nextFireTime);
+        }
+        if (nextFireTime != CronSchedule.NO_FIRE_TIME && nextFireTime < now) {
+          nextFireTime = cronSchedule.getNextFireTime(now);
+        }
+      } else {
+        if (policy == MisfirePolicy.FIRE_ONCE) {
+          executor.execute(() -> performJob(job, CronSchedule.NO_FIRE_TIME));
+        }
+        nextFireTime = cronSchedule.getNextFireTime(now);
+      }
+
+      if (nextFireTime != CronSchedule.NO_FIRE_TIME) {
+        job.setNextFireTime(nextFireTime);
+        jobs.put(job.getKey(), job);
+      }
+    }
+
+    // Jobs scheduled before startup are not in the store yet, and the snapshot
+    // records how the misfires were handled.
+    store.snapshot(jobs.values());
+    metrics.recordMisfires(numberMisfired);
+
+    getLog().info(String.format(
+        "Recovered %d scheduled jobs in %d msec, %d missed fire times handled with %s",
+        jobs.size(), System.currentTimeMillis() - startTime, numberMisfired, policy));
+  }
+
+  /**
+   * Record in the store that a job has been removed.
+   *
+   * @param job
+   *          the job
+   */
+  private void storeRemovedJob(ScheduledActionJob job) {
+    ScheduledJobStore store = jobStore;
+    if (store != null) {
+      appendToStore(store, store.newRemoveRecord(job.getKey()));
+    }
+  }
+
+  /**
+   * Hand a record to the store thread, which appends it to the job store and
+   * writes a snapshot if the log has grown long enough.
+   *
+   * <p>
+   * Records are dropped when the scheduler is not running. The snapshot written
+   * at startup or shutdown already holds their changes.
+   *
+   * @param store
+   *          the job store
+   * @param record
+   *          the record
+   */
+  private void appendToStore(ScheduledJobStore store, byte[] record) {
+    ExecutorService writer = storeWriter;
+    if (writer == null) {
+      return;
+    }
+
+    try {
+      writer.execute(() -> {
+        try {
+          if (store.append(record)) {
+            store.snapshot(jobs.values());
+          }
+        } catch (Throwable e) {
+          getLog().error("Could not update scheduled job store", e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Shutting down, the shutdown snapshot holds the change.
+    }
+  }
+
+  /**
+   * Place a job in the timer wheel for its next fire time.
+   *
+   * <p>
+   * Nothing is done if the scheduler is not running, the job is placed at
+   * startup.
+   *
+   * @param job
+   *          the job
+   */
+  private void placeJob(ScheduledActionJob job) {
+    HierarchicalTimerWheel wheel = timerWheel;
+    if (wheel == null || job.isCancelled()) {
+      return;
+    }
+
+    long fireTime = job.getNextFireTime();
+    if (batchFiring) {
+      placeJobInBatch(job, fireTime, wheel);
+    } else {
+      long delay = fireTime - System.currentTimeMillis();
+      job.setTimeout(
+          wheel.schedule(() -> jobDue(job), Math.max(0, delay), TimeUnit.MILLISECONDS));
+    }
+  }
+
+  /**
+   * Place a job in the batch for its fire time, placing the batch in the timer
+   * wheel if it is new.
+   *
+   * @param job
+   *          the job
+   * @param fireTime
+   *          the fire time of the job
+   * @param wheel
+   *          the timer wheel
+   */
+  private void placeJobInBatch(ScheduledActionJob job, long fireTime,
+      HierarchicalTimerWheel wheel) {
+    while (true) {
+      ScheduledJobBatch batch = batches.get(fireTime);
+      if (batch == null) {
+        ScheduledJobBatch newBatch = new ScheduledJobBatch(fireTime);
+        batch = batches.putIfAbsent(fireTime, newBatch);
+        if (batch == null) {
+          batch = newBatch;
+          long delay = fireTime - System.currentTimeMillis();
+          wheel.schedule(() -> batchDue(newBatch), Math.max(0, delay), TimeUnit.MILLISECONDS);
+        }
+      }
+
+      // A batch which has just fired takes no more jobs, a new one is needed.
+      if (batch.add(job)) {
+        return;
+      }
+      batches.remove(fireTime, batch);
+    }
+  }
+
+  /**
+   * A job has reached its fire time.
+   *
+   * <p>
+   * This is run on the wheel thread.
+   *
+   * @param job
+   *          the job
+   */
+  private void jobDue(ScheduledActionJob job) {
+    if (job.isCancelled()) {
+      return;
+    }
+
+    long fireTime = job.getNextFireTime();
+    long nextFireTime = CronSchedule.NO_FIRE_TIME;
+    CronSchedule cronSchedule = job.getCronSchedule();
+    if (cronSchedule != null) {
+      nextFireTime =
+          cronSchedule.getNextFireTime(Math.max(fireTime, System.currentTimeMillis()));
+    }
+    advanceJob(job, nextFireTime);
+
+    ThreadPoolExecutor executor = firingExecutor;
+    if (executor != null) {
+      recordSaturation(executor, 1);
+      executor.execute(() -> performJob(job, fireTime));
+    }
+  }
+
+  /**
+   * A batch has reached its fire time.
+   *
+   * <p>
+   * This is run on the wheel thread.
+   *
+   * @param batch
+   *          the batch
+   */
+  private void batchDue(ScheduledJobBatch batch) {
+    batches.remove(batch.getFireTime(), batch);
+    List<ScheduledActionJob> dueJobs = batch.close();
+    if (dueJobs.isEmpty()) {
+      return;
+    }
+
+    // Every job with the same cron schedule has the same next fire time.
+    long after = Math.max(batch.getFireTime(), System.currentTimeMillis());
+    Map<CronSchedule, Long> nextFireTimes = Maps.newHashMap();
+    for (ScheduledActionJob job : dueJobs) {
+      long nextFireTime = CronSchedule.NO_FIRE_TIME;
+      CronSchedule cronSchedule = job.getCronSchedule();
+      if (cronSchedule != null) {
+        Long cachedFireTime = nextFireTimes.get(cronSchedule);
+        if (cachedFireTime == null) {
+          cachedFireTime = cronSchedule.getNextFireTime(after);
+          nextFireTimes.put(cronSchedule, cachedFireTime);
+        }
+        nextFireTime = cachedFireTime;
+      }
+      advanceJob(job, nextFireTime);
+    }
+
+    ThreadPoolExecutor executor = firingExecutor;
+    if (executor != null) {
+      recordSaturation(executor, dueJobs.size());
+
+      long fireTime = batch.getFireTime();
+      int chunkSize = (dueJobs.size() + firingThreadPoolSize - 1) / firingThreadPoolSize;
+      for (List<ScheduledActionJob> chunk : Lists.partition(dueJobs, chunkSize)) {
+        executor.execute(() -> performJobs(chunk, fireTime));
+      }
+    }
+  }
+
+  /**
+   * Record firings as saturated if every firing thread is busy.
+   *
+   * @param executor
+   *          the firing pool
+   * @param numberFirings
+   *          the number of firings being handed to the pool
+   */
+  private void recordSaturation(ThreadPoolExecutor executor, int numberFirings) {
+    if (executor.getActiveCount() >= firingThreadPoolSize) {
+      metrics.recordSaturatedFirings(numberFirings);
+    }
+  }
+
+  /**
+   * Log a summary of the metrics after the summary interval, and keep doing
+   * so while the wheel is running.
+   *
+   * @param wheel
+   *          the timer wheel
+   */
+  private void scheduleMetricsSummary(HierarchicalTimerWheel wheel) {
+    wheel.schedule(() -> {
+      if (timerWheel == wheel) {
+        getLog().info(metrics.getSummary());
+        scheduleMetricsSummary(wheel);
+      }
+    }, metricsSummaryInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Move a job which has fired on to its next fire time, or remove it if it
+   * will not fire again.
+   *
+   * @param job
+   *          the job
+   * @param nextFireTime
+   *          the next fire time, {@link CronSchedule#NO_FIRE_TIME} if the job
+   *          will not fire again
+   */
+  private void advanceJob(ScheduledActionJob job, long nextFireTime) {
+    if (nextFireTime != CronSchedule.NO_FIRE_TIME) {
+      job.setNextFireTime(nextFireTime);
+      placeJob(job);
+
+      ScheduledJobStore store = jobStore;
+      if (store != null) {
+        appendToStore(store, store.newFireTimeRecord(job.getKey(), nextFireTime));
+      }
+    } else if (jobs.remove(job.getKey(), job)) {
+      storeRemovedJob(job);
+    }
+  }
+
+  /**
+   * Perform the action of a job.
+   *
+   * @param job
+   *          the job
+   * @param fireTime
+   *          the time the job was due, {@link CronSchedule#NO_FIRE_TIME} if it
+   *          is being fired for missed fire times
+   */
+  private void performJob(ScheduledActionJob job, long fireTime) {
+    performJobs(Collections.singletonList(job), fireTime);
+  }
+
+  /**
+   * Perform the actions of jobs, one after the other.
+   *
+   * <p>
+   * The environment, logger and action service are looked up once for all
+   * the jobs, as is each action not yet known to a job. Jobs next to each other
+   * with the same data share one execution context, so an action should not
+   * rely on values another action in the batch set in the context.
+   *
+   * @param jobsToPerform
+   *          the jobs
+   * @param fireTime
+   *          the time the jobs were due, {@link CronSchedule#NO_FIRE_TIME} if
+   *          they are being fired for missed fire times
+   */
+  private void performJobs(List<ScheduledActionJob> jobsToPerform, long fireTime) {
+    SmartSpacesEnvironment spaceEnvironment = getSpaceEnvironment();
+    Log log = spaceEnvironment.getLog();
+    ActionService service = null;
+    Map<String, Action> resolvedActions = null;
+    ExecutionContext executionContext = null;
+    Map<String, Object> executionContextData = null;
+
+    for (ScheduledActionJob job : jobsToPerform) {
+      if (fireTime != CronSchedule.NO_FIRE_TIME) {
+        metrics.recordFiring(System.currentTimeMillis() - fireTime);
+      }
+
+      long startTime = System.nanoTime();
+      boolean failed = true;
+      try {
+        // Actions are looked up on every firing so a re-registered source is
+        // picked up. The action service caches them, and each is only looked
+        // up once for the jobs fired together.
+        if (resolvedActions == null) {
+          service = getActionService();
+          resolvedActions = Maps.newHashMap();
+        }
+
+        String actionKey = job.getActionSource() + "/" + job.getActionName();
+        Action action = resolvedActions.get(actionKey);
+        if (action == null) {
+          action = service.getAction(job.getActionSource(), null, job.getActionName());
+          resolvedActions.put(actionKey, action);
+        }
+
+        Map<String, Object> jobData = job.getData();
+        if (executionContext == null || !Objects.equals(jobData, executionContextData)) {
+          executionContext = new StandardExecutionContext(spaceEnvironment, log);
+          if (jobData != null) {
+            executionContext.setValues(jobData);
+          }
+          executionContextData = jobData;
+        }
+
+        action.perform(executionContext);
+        failed = false;
+      } catch (Throwable e) {
+        log.error(String.format("Could not run scheduled job %s", job.getKey()), e);
+      } finally {
+        metrics.recordExecution(job.getActionSource(), System.nanoTime() - startTime, failed);
+      }
+    }
+  }
+
+  /**
+   * Get the action service.
+   *
+   * @return the action service
+   */
+  private ActionService getActionService() {
+    ActionService service = actionService;
+    if (service == null) {
+      service = getSpaceEnvironment().getServiceRegistry()
+          .getRequiredService(ActionService.SERVICE_NAME);
+      actionService = service;
+    }
+
+    return service;
+  }
+
+  /**
+   * Get the compiled schedule for a cron expression, compiling it if it is new.
+   *
+   * @param expression
+   *          the cron expression
+   *
+   * @return the schedule
+   */
+  private CronSchedule getCronSchedule(String expression) {
+    CronSchedule cronSchedule = cronSchedules.get(expression);
+    if (cronSchedule == null) {
+      cronSchedule = CronSchedule.parse(expression);
+      CronSchedule existing = cronSchedules.putIfAbsent(expression, cronSchedule);
+      if (existing != null) {
+        cronSchedule = existing;
+      }
+    }
+
+    return cronSchedule;
+  }
+
+  /**
+   * Get the key for a job.
+   *
+   * @param jobName
+   *          the name of the job
+   * @param groupName
+   *          the name of the group, can be {@code null} for the default group
+   *
+   * @return the key
+   */
+  private String getJobKey(String jobName, String groupName) {
+    return ((groupName != null) ? groupName : GROUP_NAME_DEFAULT) + ":" + jobName;
+  }
+
+  /**
+   * Get the logger.
+   *
+   * @return the logger
+   */
+  private Log getLog() {
+    return getSpaceEnvironment().getLog();
+  }
+}
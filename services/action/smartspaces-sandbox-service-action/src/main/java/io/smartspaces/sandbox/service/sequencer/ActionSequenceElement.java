@@ -41,6 +41,15 @@ public class ActionSequenceElement implements SequenceElement {
     this.actionReference = actionReference;
   }
 
+  /**
+   * Get the action reference the element runs.
+   *
+   * @return the action reference
+   */
+  public ActionReference getActionReference() {
+    return actionReference;
+  }
+
   @Override
   public void run(SequenceExecutionContext sequenceExecutionContext) {
     ActionService actionService = sequenceExecutionContext.getSpaceEnvironment().getServiceRegistry()
@@ -20,9 +20,16 @@ package io.smartspaces.sandbox.service.sequencer;
 import io.smartspaces.SmartSpacesException;
 import io.smartspaces.util.events.EventDelay;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * A sequence element that delays for some amount of time.
  *
+ * <p>
+ * The delay ends at a deadline on the sequence timeline rather than a fixed
+ * time after the element starts, so the time taken by earlier elements does not
+ * add up over a sequence.
+ *
  * @author Keith M. Hughes
  */
 public class DelaySequenceElement implements SequenceElement {
@@ -42,10 +49,28 @@ public class DelaySequenceElement implements SequenceElement {
     this.delay = delay;
   }
 
+  /**
+   * Get the amount of time the element delays.
+   *
+   * @return the delay
+   */
+  public EventDelay getDelay() {
+    return delay;
+  }
+
   @Override
   public void run(SequenceExecutionContext sequenceEnvironment) {
+    SequenceTimeline timeline = sequenceEnvironment.getTimeline();
+    timeline.start(System.nanoTime());
+
+    long deadline = timeline.advance(delay.getUnit().toNanos(delay.getDelay()));
     try {
-      Thread.sleep(delay.getUnit().toMillis(delay.getDelay()));
+      long remaining = deadline - System.nanoTime();
+      if (remaining > 0) {
+        TimeUnit.NANOSECONDS.sleep(remaining);
+      }
+
+      timeline.deadlineReached(this, deadline, System.nanoTime());
     } catch (InterruptedException e) {
       sequenceEnvironment.getSequencer().getLog()
           .warn("Sequencer thread interrupted in a delay element");
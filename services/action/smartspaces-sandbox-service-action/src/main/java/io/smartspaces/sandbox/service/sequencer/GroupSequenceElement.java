@@ -55,6 +55,15 @@ public class GroupSequenceElement implements SequenceElement {
     this(Lists.newArrayList(elements));
   }
 
+  /**
+   * Get the elements in the group.
+   *
+   * @return the elements, in the order they are run
+   */
+  public List<SequenceElement> getElements() {
+    return elements;
+  }
+
   @Override
   public void run(SequenceExecutionContext sequenceExecutionContext) {
     for (SequenceElement element : elements) {
@@ -62,7 +71,7 @@ public class GroupSequenceElement implements SequenceElement {
         break;
       }
 
-      element.run(sequenceExecutionContext);
+      sequenceExecutionContext.runElement(element);
     }
   }
 }
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.sandbox.service.sequencer.program.ProgramSequence;
+import io.smartspaces.sandbox.service.sequencer.program.ScheduledProgramRun;
+import io.smartspaces.sandbox.service.sequencer.program.SequenceProgram;
+import io.smartspaces.util.events.EventDelay;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A sequence element that runs a collection of branches at the same time and
+ * continues once they have joined.
+ *
+ * <p>
+ * Each branch is compiled and run on the sequencer's executor, delays in a
+ * branch do not hold a thread. Each branch runs in its own child of the
+ * sequence's execution context, so branches can set values without racing each
+ * other.
+ *
+ * <p>
+ * When the element fails, times out, or is cancelled, every branch which is
+ * still running is cancelled. A branch element which is already running is
+ * allowed to finish.
+ *
+ * <p>
+ * Each branch runs against its own fork of the sequence timeline, so the
+ * branches stay in phase with each other and with the sequence.
+ *
+ * @author Keith M. Hughes
+ */
+public class ParallelSequenceElement implements SequenceElement {
+
+  /**
+   * How the branches of a parallel element join.
+   *
+   * @author Keith M. Hughes
+   */
+  public enum JoinMode {
+
+    /**
+     * Continue once every branch has completed. The first branch failure fails
+     * the element.
+     */
+    ALL,
+
+    /**
+     * Continue once any branch has completed successfully. The other branches
+     * keep running, but are cancelled if the sequence is shut down. The element
+     * only fails if every branch fails.
+     */
+    ANY,
+
+    /**
+     * Continue once any branch has completed, successfully or not. The other
+     * branches are cancelled.
+     */
+    RACE,
+  }
+
+  /**
+   * How the branches join.
+   */
+  private final JoinMode joinMode;
+
+  /**
+   * How long to wait for the join, {@code null} to wait forever.
+   */
+  private final EventDelay timeout;
+
+  /**
+   * The branches.
+   */
+  private final List<SequenceElement> branches;
+
+  /**
+   * The compiled branches.
+   */
+  private final List<SequenceProgram> branchPrograms = Lists.newArrayList();
+
+  /**
+   * Construct a new element.
+   *
+   * @param joinMode
+   *          how the branches join
+   * @param timeout
+   *          how long to wait for the join, {@code null} to wait forever
+   * @param branches
+   *          the branches to run
+   */
+  public ParallelSequenceElement(JoinMode joinMode, EventDelay timeout,
+      List<SequenceElement> branches) {
+    this.joinMode = joinMode;
+    this.timeout = timeout;
+    this.branches = branches;
+
+    for (SequenceElement branch : branches) {
+      branchPrograms.add(SequenceProgram.compile(Collections.singletonList(branch)));
+    }
+  }
+
+  /**
+   * Get how the branches join.
+   *
+   * @return the join mode
+   */
+  public JoinMode getJoinMode() {
+    return joinMode;
+  }
+
+  /**
+   * Get how long to wait for the join.
+   *
+   * @return the timeout, or {@code null} to wait forever
+   */
+  public EventDelay getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Get the branches.
+   *
+   * @return the branches
+   */
+  public List<SequenceElement> getBranches() {
+    return branches;
+  }
+
+  @Override
+  public void run(SequenceExecutionContext sequenceExecutionContext) {
+    SequenceTimeline timeline = sequenceExecutionContext.getTimeline();
+    timeline.start(System.nanoTime());
+
+    CompletableFuture<Void> join = runAsync(sequenceExecutionContext, timeline);
+    try {
+      join.get();
+
+      timeline.resync(System.nanoTime());
+    } catch (InterruptedException e) {
+      join.cancel(false);
+
+      Thread.currentThread().interrupt();
+      throw new SmartSpacesException("Sequencer thread interrupted in a parallel element");
+    } catch (ExecutionException e) {
+      throw new SmartSpacesException("Parallel sequence element failed", e.getCause());
+    } catch (CancellationException e) {
+      throw new SmartSpacesException("Parallel sequence element cancelled");
+    }
+  }
+
+  /**
+   * Start the branches running.
+   *
+   * <p>
+   * Cancelling the returned future cancels all branches. Branches of a
+   * {@link ProgramSequence} are registered with the sequence, so shutting it
+   * down cancels any which are still running.
+   *
+   * @param sequenceExecutionContext
+   *          the context for the branches
+   * @param timeline
+   *          the timeline the branches are forked from
+   *
+   * @return a future which completes when the branches have joined
+   */
+  public CompletableFuture<Void> runAsync(SequenceExecutionContext sequenceExecutionContext,
+      SequenceTimeline timeline) {
+    ScheduledExecutorService executorService =
+        sequenceExecutionContext.getSequencer().getExecutorService();
+
+    final CompletableFuture<Void> join = new CompletableFuture<>();
+    if (branchPrograms.isEmpty()) {
+      join.complete(null);
+      return join;
+    }
+
+    final List<ScheduledProgramRun> runs = Lists.newArrayList();
+    for (SequenceProgram program : branchPrograms) {
+      SequenceTimeline branchTimeline = timeline.fork();
+      runs.add(new ScheduledProgramRun(program,
+          sequenceExecutionContext.newChildContext(branchTimeline), branchTimeline,
+          executorService));
+    }
+
+    Sequence sequence = sequenceExecutionContext.getSequence();
+    if (sequence instanceof ProgramSequence) {
+      for (ScheduledProgramRun run : runs) {
+        ((ProgramSequence) sequence).registerRun(run);
+      }
+    }
+
+    final AtomicInteger remaining = new AtomicInteger(runs.size());
+    for (ScheduledProgramRun run : runs) {
+      run.start().whenComplete((result, e) -> branchEnded(join, remaining, e));
+    }
+
+    if (timeout != null) {
+      final ScheduledFuture<?> timeoutFuture = executorService.schedule(() -> {
+        join.completeExceptionally(SimpleSmartSpacesException.newFormattedException(
+            "Parallel sequence element timed out after %d %s", timeout.getDelay(),
+            timeout.getUnit()));
+      }, timeout.getDelay(), timeout.getUnit());
+      join.whenComplete((result, e) -> timeoutFuture.cancel(false));
+    }
+
+    // A failed, timed out, or cancelled join stops the branches still running,
+    // as does a race once it has a winner.
+    join.whenComplete((result, e) -> {
+      if (e != null || joinMode == JoinMode.RACE) {
+        for (ScheduledProgramRun run : runs) {
+          run.cancel();
+        }
+      }
+    });
+
+    return join;
+  }
+
+  /**
+   * A branch has ended.
+   *
+   * @param join
+   *          the future for the join
+   * @param remaining
+   *          the number of branches still running
+   * @param e
+   *          the branch failure, or {@code null} if it completed
+   */
+  private void branchEnded(CompletableFuture<Void> join, AtomicInteger remaining, Throwable e) {
+    boolean last = remaining.decrementAndGet() == 0;
+
+    switch (joinMode) {
+      case ALL:
+        if (e != null) {
+          join.completeExceptionally(e);
+        } else if (last) {
+          join.complete(null);
+        }
+        break;
+
+      case ANY:
+        if (e == null) {
+          join.complete(null);
+        } else if (last) {
+          join.completeExceptionally(e);
+        }
+        break;
+
+      case RACE:
+        if (e != null) {
+          join.completeExceptionally(e);
+        } else {
+          join.complete(null);
+        }
+        break;
+
+      default:
+        throw SimpleSmartSpacesException.newFormattedException("Unknown join mode %s", joinMode);
+    }
+  }
+}
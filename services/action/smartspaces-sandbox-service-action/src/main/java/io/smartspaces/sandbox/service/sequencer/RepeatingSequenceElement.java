@@ -49,6 +49,24 @@ public class RepeatingSequenceElement implements SequenceElement {
     this.element = element;
   }
 
+  /**
+   * Get the number of times the element is repeated.
+   *
+   * @return the repeat count
+   */
+  public int getRepeatCount() {
+    return repeatCount;
+  }
+
+  /**
+   * Get the element being repeated.
+   *
+   * @return the element
+   */
+  public SequenceElement getElement() {
+    return element;
+  }
+
   @Override
   public void run(SequenceExecutionContext sequenceExecutionContext) {
     for (int i = 0; i < repeatCount; i++) {
@@ -56,7 +74,7 @@ public class RepeatingSequenceElement implements SequenceElement {
         break;
       }
 
-      element.run(sequenceExecutionContext);
+      sequenceExecutionContext.runElement(element);
     }
   }
 }
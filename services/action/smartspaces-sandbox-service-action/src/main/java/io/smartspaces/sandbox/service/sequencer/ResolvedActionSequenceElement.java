@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer;
+
+import io.smartspaces.sandbox.service.action.ActionReference;
+import io.smartspaces.sandbox.service.action.ActionService;
+
+/**
+ * A sequence element that performs an action through an action service which
+ * was found when the element was created, so running the element does not look
+ * up the service registry.
+ *
+ * <p>
+ * The action is still performed through the service, so the resolution cache
+ * of the service is used and a re-registered action source is picked up.
+ *
+ * @author Keith M. Hughes
+ */
+public class ResolvedActionSequenceElement extends ActionSequenceElement {
+
+  /**
+   * The action service to perform the action with.
+   */
+  private final ActionService actionService;
+
+  /**
+   * Construct a sequence element.
+   *
+   * @param actionReference
+   *          the action reference the element will run
+   * @param actionService
+   *          the action service to perform the action with
+   */
+  public ResolvedActionSequenceElement(ActionReference actionReference,
+      ActionService actionService) {
+    super(actionReference);
+
+    this.actionService = actionService;
+  }
+
+  @Override
+  public void run(SequenceExecutionContext sequenceExecutionContext) {
+    actionService.performActionReference(getActionReference(), sequenceExecutionContext);
+  }
+}
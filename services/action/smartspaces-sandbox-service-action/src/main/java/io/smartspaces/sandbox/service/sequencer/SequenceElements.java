@@ -17,10 +17,13 @@
 
 package io.smartspaces.sandbox.service.sequencer;
 
+import io.smartspaces.sandbox.service.sequencer.ParallelSequenceElement.JoinMode;
 import io.smartspaces.util.events.EventDelay;
 
 import java.util.List;
 
+import com.google.common.collect.Lists;
+
 /**
  * A collection of methods for creating sequence elements of various types.
  *
@@ -70,6 +73,37 @@ public class SequenceElements {
     return new RepeatingSequenceElement(count, new GroupSequenceElement(elements));
   }
 
+  /**
+   * Create a sequence element that runs a collection of branches at the same
+   * time and continues once all of them have completed.
+   *
+   * @param branches
+   *          the branches to run
+   *
+   * @return the parallel element
+   */
+  public static SequenceElement parallel(SequenceElement... branches) {
+    return parallel(JoinMode.ALL, null, branches);
+  }
+
+  /**
+   * Create a sequence element that runs a collection of branches at the same
+   * time.
+   *
+   * @param joinMode
+   *          how the branches join
+   * @param timeout
+   *          how long to wait for the join, {@code null} to wait forever
+   * @param branches
+   *          the branches to run
+   *
+   * @return the parallel element
+   */
+  public static SequenceElement parallel(JoinMode joinMode, EventDelay timeout,
+      SequenceElement... branches) {
+    return new ParallelSequenceElement(joinMode, timeout, Lists.newArrayList(branches));
+  }
+
   /**
    * Create an ActionElement that runs the given sequence of ActionElements in
    * order.
@@ -17,10 +17,16 @@
 package io.smartspaces.sandbox.service.sequencer;
 
 import io.smartspaces.evaluation.StandardExecutionContext;
+import io.smartspaces.sandbox.service.sequencer.trace.SequenceTracer;
 import io.smartspaces.system.SmartSpacesEnvironment;
 
 /**
  * An environment for executing a sequence.
+ *
+ * <p>
+ * Work which runs alongside the sequence, such as the branches of a parallel
+ * element, gets a child context. A child sees the values of its parent, but
+ * the values it sets are its own.
  * 
  * @author Keith M. Hughes
  */
@@ -36,6 +42,17 @@ public class SequenceExecutionContext extends StandardExecutionContext {
    */
   private final Sequence sequence;
 
+  /**
+   * The timeline for the sequence.
+   */
+  private final SequenceTimeline timeline;
+
+  /**
+   * The context this is a child of, {@code null} for the context of the
+   * sequence itself.
+   */
+  private final SequenceExecutionContext parent;
+
   /**
    * Construct a new context.
    * 
@@ -51,6 +68,47 @@ public class SequenceExecutionContext extends StandardExecutionContext {
     super(spaceEnvironment, spaceEnvironment.getLog());
     this.sequencer = sequencer;
     this.sequence = sequence;
+    this.timeline = new SequenceTimeline();
+    this.parent = null;
+  }
+
+  /**
+   * Construct a new child context.
+   * 
+   * @param parent
+   *          the context this is a child of
+   * @param timeline
+   *          the timeline the child runs against
+   */
+  private SequenceExecutionContext(SequenceExecutionContext parent, SequenceTimeline timeline) {
+    super(parent.getSpaceEnvironment(), parent.getLog());
+    this.sequencer = parent.sequencer;
+    this.sequence = parent.sequence;
+    this.timeline = timeline;
+    this.parent = parent;
+  }
+
+  /**
+   * Create a child of this context for work which runs at the same time as
+   * the work using this context.
+   * 
+   * @param timeline
+   *          the timeline the child runs against
+   * 
+   * @return the child context
+   */
+  public SequenceExecutionContext newChildContext(SequenceTimeline timeline) {
+    return new SequenceExecutionContext(this, timeline);
+  }
+
+  @Override
+  public <T> T getValue(String name) {
+    T value = super.getValue(name);
+    if (value == null && parent != null) {
+      value = parent.getValue(name);
+    }
+
+    return value;
   }
 
   /**
@@ -70,4 +128,32 @@ public class SequenceExecutionContext extends StandardExecutionContext {
   public Sequence getSequence() {
     return sequence;
   }
+
+  /**
+   * Get the timeline the sequence runs against.
+   * 
+   * @return the timeline
+   */
+  public SequenceTimeline getTimeline() {
+    return timeline;
+  }
+
+  /**
+   * Run an element in this context.
+   *
+   * <p>
+   * Sequences and elements which contain other elements run them through here
+   * so they can be traced.
+   * 
+   * @param element
+   *          the element to run
+   */
+  public void runElement(SequenceElement element) {
+    SequenceTracer tracer = sequencer.getTracer();
+    if (tracer != null) {
+      tracer.runElement(element, this);
+    } else {
+      element.run(this);
+    }
+  }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer;
+
+/**
+ * The absolute timeline a sequence runs against.
+ *
+ * <p>
+ * Each delay moves the timeline position on by its duration, and its deadline
+ * is the start of the timeline plus every delay so far. Time spent running
+ * elements between delays is absorbed by the next delay rather than added to
+ * it, so repeated cues stay phase locked to the start of the sequence.
+ *
+ * <p>
+ * How late each deadline was reached is recorded and given to the listener,
+ * if there is one.
+ *
+ * <p>
+ * All times are {@link System#nanoTime()} values or nanosecond durations.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceTimeline {
+
+  /**
+   * The time the timeline started.
+   */
+  private long startTime;
+
+  /**
+   * {@code true} if the timeline has started.
+   */
+  private boolean started;
+
+  /**
+   * The offset of the current position from the start.
+   */
+  private long offset;
+
+  /**
+   * The listener for deadlines, can be {@code null}.
+   */
+  private volatile SequenceTimelineListener listener;
+
+  /**
+   * The number of deadlines reached.
+   */
+  private long numberDeadlines;
+
+  /**
+   * The sum of the lateness of all deadlines.
+   */
+  private long totalLateness;
+
+  /**
+   * The largest lateness of any deadline.
+   */
+  private long maximumLateness;
+
+  /**
+   * Start the timeline, if it has not already been started.
+   *
+   * @param now
+   *          the current time
+   */
+  public synchronized void start(long now) {
+    if (!started) {
+      startTime = now;
+      started = true;
+    }
+  }
+
+  /**
+   * Create a new timeline which starts at the current position of this one.
+   *
+   * <p>
+   * The new timeline shares the listener but keeps its own statistics.
+   *
+   * @return the new timeline
+   */
+  public synchronized SequenceTimeline fork() {
+    SequenceTimeline timeline = new SequenceTimeline();
+    timeline.start(startTime + offset);
+    timeline.listener = listener;
+
+    return timeline;
+  }
+
+  /**
+   * Move the position on by a delay.
+   *
+   * @param delay
+   *          the delay
+   *
+   * @return the deadline for the delay
+   */
+  public synchronized long advance(long delay) {
+    offset += delay;
+
+    return startTime + offset;
+  }
+
+  /**
+   * Bring the position up to the current time if it is behind.
+   *
+   * <p>
+   * This is used after waits whose length is not known ahead, such as parallel
+   * joins, so later delays are measured from when the wait ended.
+   *
+   * @param now
+   *          the current time
+   */
+  public synchronized void resync(long now) {
+    if (now - startTime > offset) {
+      offset = now - startTime;
+    }
+  }
+
+  /**
+   * Record that a deadline has been reached.
+   *
+   * @param element
+   *          the element whose deadline it was
+   * @param deadline
+   *          the deadline
+   * @param now
+   *          the time the deadline was reached
+   */
+  public void deadlineReached(SequenceElement element, long deadline, long now) {
+    long lateness = Math.max(0, now - deadline);
+
+    synchronized (this) {
+      numberDeadlines++;
+      totalLateness += lateness;
+      maximumLateness = Math.max(maximumLateness, lateness);
+    }
+
+    SequenceTimelineListener currentListener = listener;
+    if (currentListener != null) {
+      currentListener.onDeadlineReached(element, lateness);
+    }
+  }
+
+  /**
+   * Set the listener for deadlines.
+   *
+   * @param listener
+   *          the listener, can be {@code null}
+   */
+  public void setListener(SequenceTimelineListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Get the current offset of the timeline from its start.
+   *
+   * @return the offset
+   */
+  public synchronized long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Get the number of deadlines reached.
+   *
+   * @return the number of deadlines
+   */
+  public synchronized long getNumberDeadlines() {
+    return numberDeadlines;
+  }
+
+  /**
+   * Get the average lateness of the deadlines reached.
+   *
+   * @return the average lateness, or {@code 0} if no deadlines
+   */
+  public synchronized long getAverageLateness() {
+    return (numberDeadlines > 0) ? totalLateness / numberDeadlines : 0;
+  }
+
+  /**
+   * Get the largest lateness of the deadlines reached.
+   *
+   * @return the largest lateness
+   */
+  public synchronized long getMaximumLateness() {
+    return maximumLateness;
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer;
+
+/**
+ * A listener for the deadlines of a {@link SequenceTimeline}.
+ *
+ * @author Keith M. Hughes
+ */
+public interface SequenceTimelineListener {
+
+  /**
+   * A deadline on the timeline has been reached.
+   *
+   * <p>
+   * This is called on the thread running the sequence, so should be quick.
+   *
+   * @param element
+   *          the element whose deadline it was
+   * @param lateness
+   *          how late the deadline was reached, in nanoseconds
+   */
+  void onDeadlineReached(SequenceElement element, long lateness);
+}
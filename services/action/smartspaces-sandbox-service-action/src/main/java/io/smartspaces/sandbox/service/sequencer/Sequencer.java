@@ -19,7 +19,10 @@ package io.smartspaces.sandbox.service.sequencer;
 
 import org.apache.commons.logging.Log;
 
+import java.util.concurrent.ScheduledExecutorService;
+
 import io.smartspaces.resource.managed.ManagedResource;
+import io.smartspaces.sandbox.service.sequencer.trace.SequenceTracer;
 
 /**
  * A sequencer that creates sequences of actions that take place sequentially.
@@ -41,4 +44,30 @@ public interface Sequencer extends ManagedResource {
    * @return the logger
    */
   Log getLog();
+
+  /**
+   * Get the executor the sequencer runs work on.
+   *
+   * <p>
+   * Elements which run work concurrently, such as parallel branches, use this
+   * executor.
+   *
+   * @return the executor
+   */
+  ScheduledExecutorService getExecutorService();
+
+  /**
+   * Set the tracer for the elements run by the sequences of this sequencer.
+   *
+   * @param tracer
+   *          the tracer, {@code null} to stop tracing
+   */
+  void setTracer(SequenceTracer tracer);
+
+  /**
+   * Get the tracer for the elements run by the sequences of this sequencer.
+   *
+   * @return the tracer, or {@code null} if elements are not traced
+   */
+  SequenceTracer getTracer();
 }
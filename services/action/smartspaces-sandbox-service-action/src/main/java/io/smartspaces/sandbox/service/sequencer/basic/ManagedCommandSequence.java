@@ -21,6 +21,7 @@ import io.smartspaces.SimpleSmartSpacesException;
 import io.smartspaces.sandbox.service.sequencer.Sequence;
 import io.smartspaces.sandbox.service.sequencer.SequenceElement;
 import io.smartspaces.sandbox.service.sequencer.SequenceExecutionContext;
+import io.smartspaces.sandbox.service.sequencer.SequenceTimeline;
 import io.smartspaces.util.concurrency.ManagedCommand;
 
 import java.util.ArrayList;
@@ -57,6 +58,11 @@ public class ManagedCommandSequence implements Sequence {
   private AtomicReference<SequenceState> state =
       new AtomicReference<SequenceState>(SequenceState.NOT_STARTED);
 
+  /**
+   * The execution context for the sequence.
+   */
+  private final SequenceExecutionContext sequenceExecutionContext;
+
   /**
    * Construct a new sequence.
    *
@@ -65,6 +71,9 @@ public class ManagedCommandSequence implements Sequence {
    */
   public ManagedCommandSequence(ManagedCommandSequencer scheduler) {
     this.sequencer = scheduler;
+
+    sequenceExecutionContext =
+        new SequenceExecutionContext(scheduler, this, scheduler.getSpaceEnvironment());
   }
 
   @Override
@@ -107,6 +116,19 @@ public class ManagedCommandSequence implements Sequence {
     return state.get();
   }
 
+  /**
+   * Get the timeline the sequence runs against.
+   *
+   * <p>
+   * A listener can be added to the timeline before the sequence is started to
+   * be told how late each delay ended.
+   *
+   * @return the timeline
+   */
+  public SequenceTimeline getTimeline() {
+    return sequenceExecutionContext.getTimeline();
+  }
+
   /**
    * Run the sequence.
    * 
@@ -114,8 +136,7 @@ public class ManagedCommandSequence implements Sequence {
    *          the sequencer to run under
    */
       void runSequence(ManagedCommandSequencer sequencer) {
-    SequenceExecutionContext sequenceExecutionContext =
-        new SequenceExecutionContext(sequencer, this, sequencer.getSpaceEnvironment());
+    sequenceExecutionContext.getTimeline().start(System.nanoTime());
 
     try {
       for (SequenceElement currentElement : sequencerElements) {
@@ -123,7 +144,7 @@ public class ManagedCommandSequence implements Sequence {
           break;
         }
 
-        currentElement.run(sequenceExecutionContext);
+        sequenceExecutionContext.runElement(currentElement);
       }
 
       state.set(SequenceState.COMPLETED);
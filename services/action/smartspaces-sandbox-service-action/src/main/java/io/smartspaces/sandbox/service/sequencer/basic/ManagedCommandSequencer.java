@@ -20,6 +20,7 @@ package io.smartspaces.sandbox.service.sequencer.basic;
 import io.smartspaces.sandbox.service.sequencer.Sequence;
 import io.smartspaces.sandbox.service.sequencer.SequenceElements;
 import io.smartspaces.sandbox.service.sequencer.Sequencer;
+import io.smartspaces.sandbox.service.sequencer.trace.SequenceTracer;
 import io.smartspaces.system.SmartSpacesEnvironment;
 import io.smartspaces.system.StandaloneSmartSpacesEnvironment;
 import io.smartspaces.util.SmartSpacesUtilities;
@@ -27,6 +28,8 @@ import io.smartspaces.util.concurrency.ManagedCommand;
 import io.smartspaces.util.concurrency.SimpleManagedCommands;
 import org.apache.commons.logging.Log;
 
+import java.util.concurrent.ScheduledExecutorService;
+
 /**
  * An implementation of the Sequencer interface that uses ManagedCommands.
  *
@@ -80,6 +83,11 @@ public class ManagedCommandSequencer implements Sequencer {
    */
   private final Log log;
 
+  /**
+   * The tracer for elements, {@code null} if elements are not traced.
+   */
+  private volatile SequenceTracer tracer;
+
   /**
    * Create a ManagedCommandScheduler with the given ManagedCommands instance.
    *
@@ -114,6 +122,21 @@ public class ManagedCommandSequencer implements Sequencer {
     return log;
   }
 
+  @Override
+  public ScheduledExecutorService getExecutorService() {
+    return spaceEnvironment.getExecutorService();
+  }
+
+  @Override
+  public void setTracer(SequenceTracer tracer) {
+    this.tracer = tracer;
+  }
+
+  @Override
+  public SequenceTracer getTracer() {
+    return tracer;
+  }
+
   /**
    * Start executing the sequence.
    *
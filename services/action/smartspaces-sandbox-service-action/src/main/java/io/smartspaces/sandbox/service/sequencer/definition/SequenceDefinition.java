@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.definition;
+
+import io.smartspaces.sandbox.service.sequencer.Sequence;
+import io.smartspaces.sandbox.service.sequencer.SequenceElement;
+import io.smartspaces.sandbox.service.sequencer.Sequencer;
+import io.smartspaces.sandbox.service.sequencer.program.ProgramSequence;
+import io.smartspaces.sandbox.service.sequencer.program.SequenceProgram;
+
+import java.util.List;
+
+/**
+ * A compiled sequence definition.
+ *
+ * <p>
+ * The definition is immutable and can be shared. Each call to
+ * {@link #newSequence(Sequencer)} gives a new sequence which reuses the
+ * compiled elements and program, nothing is parsed, resolved, or compiled
+ * again.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceDefinition {
+
+  /**
+   * The name of the definition.
+   */
+  private final String name;
+
+  /**
+   * The top level elements of the definition.
+   */
+  private final List<SequenceElement> elements;
+
+  /**
+   * The compiled elements.
+   */
+  private final SequenceProgram program;
+
+  /**
+   * Construct a new definition.
+   *
+   * @param name
+   *          the name of the definition
+   * @param elements
+   *          the top level elements, must not be changed after this call
+   */
+  public SequenceDefinition(String name, List<SequenceElement> elements) {
+    this.name = name;
+    this.elements = elements;
+
+    program = SequenceProgram.compile(elements);
+  }
+
+  /**
+   * Create a new sequence for the definition.
+   *
+   * @param sequencer
+   *          the sequencer for the sequence
+   *
+   * @return the new sequence, it has not been started
+   */
+  public Sequence newSequence(Sequencer sequencer) {
+    Sequence sequence = sequencer.newSequence();
+    if (sequence instanceof ProgramSequence) {
+      ((ProgramSequence) sequence).setProgram(program);
+    } else {
+      sequence.add(elements);
+    }
+
+    return sequence;
+  }
+
+  /**
+   * Get the name of the definition.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the top level elements of the definition.
+   *
+   * @return the elements, in the order they run
+   */
+  public List<SequenceElement> getElements() {
+    return elements;
+  }
+
+  /**
+   * Get the compiled elements.
+   *
+   * @return the program
+   */
+  public SequenceProgram getProgram() {
+    return program;
+  }
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.definition;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.resource.VersionRange;
+import io.smartspaces.sandbox.service.action.ActionReference;
+import io.smartspaces.sandbox.service.action.ActionService;
+import io.smartspaces.sandbox.service.action.BasicActionReference;
+import io.smartspaces.sandbox.service.sequencer.ActionSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.DelaySequenceElement;
+import io.smartspaces.sandbox.service.sequencer.GroupSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.ParallelSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.ParallelSequenceElement.JoinMode;
+import io.smartspaces.sandbox.service.sequencer.RepeatingSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.ResolvedActionSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.SequenceElement;
+import io.smartspaces.util.data.json.StandardJsonMapper;
+import io.smartspaces.util.data.json.StandardYamlMapper;
+import io.smartspaces.util.events.EventDelay;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compiles sequence definitions given as JSON, YAML, or the maps the JSON and
+ * YAML mappers produce.
+ *
+ * <p>
+ * A definition has a {@code name} and a list of {@code elements}. Each element
+ * is a map with a {@code type}.
+ *
+ * <ul>
+ * <li>{@code action} has the {@code source} and {@code action} names, an
+ * optional {@code sourceVersion} range, and optional {@code data} for the
+ * action.</li>
+ * <li>{@code delay} has a {@code delay} and an optional time {@code unit},
+ * which defaults to milliseconds.</li>
+ * <li>{@code group} has a list of {@code elements}.</li>
+ * <li>{@code repeat} has a {@code count} and a list of {@code elements}.</li>
+ * <li>{@code parallel} has a list of {@code branches}, each a list of elements,
+ * an optional {@code join} mode, which defaults to {@code all}, and an optional
+ * {@code timeout} in the time {@code unit}.</li>
+ * </ul>
+ *
+ * <p>
+ * If the compiler has an action service, every action is found when the
+ * definition is compiled, so a missing action fails the compile rather than a
+ * show, and running the action needs no lookup.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceDefinitionCompiler {
+
+  /**
+   * The field for the name of a definition.
+   */
+  public static final String FIELD_NAME = "name";
+
+  /**
+   * The field for a list of definitions.
+   */
+  public static final String FIELD_SEQUENCES = "sequences";
+
+  /**
+   * The field for a list of elements.
+   */
+  public static final String FIELD_ELEMENTS = "elements";
+
+  /**
+   * The field for the type of an element.
+   */
+  public static final String FIELD_TYPE = "type";
+
+  /**
+   * The field for the action source of an action element.
+   */
+  public static final String FIELD_SOURCE = "source";
+
+  /**
+   * The field for the action source version range of an action element.
+   */
+  public static final String FIELD_SOURCE_VERSION = "sourceVersion";
+
+  /**
+   * The field for the action name of an action element.
+   */
+  public static final String FIELD_ACTION = "action";
+
+  /**
+   * The field for the data of an action element.
+   */
+  public static final String FIELD_DATA = "data";
+
+  /**
+   * The field for the time of a delay element.
+   */
+  public static final String FIELD_DELAY = "delay";
+
+  /**
+   * The field for the time unit of an element.
+   */
+  public static final String FIELD_UNIT = "unit";
+
+  /**
+   * The field for the count of a repeat element.
+   */
+  public static final String FIELD_COUNT = "count";
+
+  /**
+   * The field for the branches of a parallel element.
+   */
+  public static final String FIELD_BRANCHES = "branches";
+
+  /**
+   * The field for the join mode of a parallel element.
+   */
+  public static final String FIELD_JOIN = "join";
+
+  /**
+   * The field for the timeout of a parallel element.
+   */
+  public static final String FIELD_TIMEOUT = "timeout";
+
+  /**
+   * The type of an action element.
+   */
+  public static final String TYPE_ACTION = "action";
+
+  /**
+   * The type of a delay element.
+   */
+  public static final String TYPE_DELAY = "delay";
+
+  /**
+   * The type of a group element.
+   */
+  public static final String TYPE_GROUP = "group";
+
+  /**
+   * The type of a repeat element.
+   */
+  public static final String TYPE_REPEAT = "repeat";
+
+  /**
+   * The type of a parallel element.
+   */
+  public static final String TYPE_PARALLEL = "parallel";
+
+  /**
+   * The time unit used when an element does not give one.
+   */
+  public static final TimeUnit UNIT_DEFAULT = TimeUnit.MILLISECONDS;
+
+  /**
+   * The action service actions are checked against and performed with,
+   * {@code null} if the service is looked up each time an action runs.
+   */
+  private final ActionService actionService;
+
+  /**
+   * Construct a compiler which leaves the action service to be looked up when
+   * actions run.
+   */
+  public SequenceDefinitionCompiler() {
+    this(null);
+  }
+
+  /**
+   * Construct a compiler.
+   *
+   * @param actionService
+   *          the service to check and perform actions with, {@code null} to
+   *          look the service up each time an action runs
+   */
+  public SequenceDefinitionCompiler(ActionService actionService) {
+    this.actionService = actionService;
+  }
+
+  /**
+   * Compile a definition from JSON.
+   *
+   * @param json
+   *          the JSON definition
+   *
+   * @return the compiled definition
+   *
+   * @throws SimpleSmartSpacesException
+   *           the definition is not legal
+   */
+  public SequenceDefinition compileJson(String json) throws SimpleSmartSpacesException {
+    return compile(StandardJsonMapper.INSTANCE.parseObject(json));
+  }
+
+  /**
+   * Compile a definition from YAML.
+   *
+   * @param yaml
+   *          the YAML definition
+   *
+   * @return the compiled definition
+   *
+   * @throws SimpleSmartSpacesException
+   *           the definition is not legal
+   */
+  public SequenceDefinition compileYaml(String yaml) throws SimpleSmartSpacesException {
+    return compile(StandardYamlMapper.INSTANCE.parseObject(yaml));
+  }
+
+  /**
+   * Compile a definition.
+   *
+   * @param data
+   *          the definition
+   *
+   * @return the compiled definition
+   *
+   * @throws SimpleSmartSpacesException
+   *           the definition is not legal
+   */
+  public SequenceDefinition compile(Map<String, Object> data)
+      throws SimpleSmartSpacesException {
+    Object name = data.get(FIELD_NAME);
+    if (name == null) {
+      throw new SimpleSmartSpacesException(
+          String.format("Sequence definition %s has no %s", data, FIELD_NAME));
+    }
+
+    return new SequenceDefinition(name.toString(),
+        compileElements(data, FIELD_ELEMENTS, name.toString()));
+  }
+
+  /**
+   * Compile every definition in a {@code sequences} list.
+   *
+   * @param data
+   *          the map holding the list
+   *
+   * @return the compiled definitions, keyed by name, in the order given
+   *
+   * @throws SimpleSmartSpacesException
+   *           a definition is not legal or a name is used more than once
+   */
+  @SuppressWarnings("unchecked")
+  public Map<String, SequenceDefinition> compileAll(Map<String, Object> data)
+      throws SimpleSmartSpacesException {
+    Map<String, SequenceDefinition> definitions = Maps.newLinkedHashMap();
+    for (Object definitionData : getList(data, FIELD_SEQUENCES, "sequence definitions")) {
+      if (!(definitionData instanceof Map)) {
+        throw new SimpleSmartSpacesException(
+            String.format("Sequence definition %s is not a map", definitionData));
+      }
+
+      SequenceDefinition definition = compile((Map<String, Object>) definitionData);
+      if (definitions.put(definition.getName(), definition) != null) {
+        throw new SimpleSmartSpacesException(String.format(
+            "Sequence definition %s is defined more than once", definition.getName()));
+      }
+    }
+
+    return definitions;
+  }
+
+  /**
+   * Compile a list of elements.
+   *
+   * @param data
+   *          the map holding the list
+   * @param field
+   *          the field for the list
+   * @param owner
+   *          a description of what holds the list, for error messages
+   *
+   * @return the elements, the list cannot be modified
+   */
+  private List<SequenceElement> compileElements(Map<String, Object> data, String field,
+      Object owner) {
+    return compileElements(getList(data, field, owner), owner);
+  }
+
+  /**
+   * Compile a list of elements.
+   *
+   * @param elementsData
+   *          the descriptions of the elements
+   * @param owner
+   *          a description of what holds the list, for error messages
+   *
+   * @return the elements, the list cannot be modified
+   */
+  @SuppressWarnings("unchecked")
+  private List<SequenceElement> compileElements(List<Object> elementsData, Object owner) {
+    List<SequenceElement> elements = Lists.newArrayList();
+    for (Object elementData : elementsData) {
+      if (!(elementData instanceof Map)) {
+        throw new SimpleSmartSpacesException(String.format(
+            "Sequence definition %s has element %s which is not a map", owner, elementData));
+      }
+
+      elements.add(compileElement((Map<String, Object>) elementData));
+    }
+
+    return Collections.unmodifiableList(elements);
+  }
+
+  /**
+   * Compile an element.
+   *
+   * @param data
+   *          the description of the element
+   *
+   * @return the element
+   */
+  private SequenceElement compileElement(Map<String, Object> data) {
+    Object type = data.get(FIELD_TYPE);
+    if (TYPE_ACTION.equals(type)) {
+      return compileAction(data);
+    } else if (TYPE_DELAY.equals(type)) {
+      return new DelaySequenceElement(new EventDelay(getLong(data, FIELD_DELAY), getUnit(data)));
+    } else if (TYPE_GROUP.equals(type)) {
+      return new GroupSequenceElement(compileElements(data, FIELD_ELEMENTS, data));
+    } else if (TYPE_REPEAT.equals(type)) {
+      return new RepeatingSequenceElement(getRepeatCount(data),
+          new GroupSequenceElement(compileElements(data, FIELD_ELEMENTS, data)));
+    } else if (TYPE_PARALLEL.equals(type)) {
+      return compileParallel(data);
+    } else {
+      throw new SimpleSmartSpacesException(
+          String.format("Sequence element %s has unknown type %s", data, type));
+    }
+  }
+
+  /**
+   * Compile an action element.
+   *
+   * @param data
+   *          the description of the element
+   *
+   * @return the element
+   */
+  @SuppressWarnings("unchecked")
+  private SequenceElement compileAction(Map<String, Object> data) {
+    String source = getString(data, FIELD_SOURCE);
+    String actionName = getString(data, FIELD_ACTION);
+
+    Object sourceVersion = data.get(FIELD_SOURCE_VERSION);
+    VersionRange sourceVersionRange =
+        (sourceVersion != null) ? VersionRange.parseVersionRange(sourceVersion.toString()) : null;
+
+    Object actionData = data.get(FIELD_DATA);
+    if (actionData != null && !(actionData instanceof Map)) {
+      throw new SimpleSmartSpacesException(
+          String.format("Action sequence element %s has %s which is not a map", data, FIELD_DATA));
+    }
+
+    Map<String, Object> referenceData = (actionData != null)
+        ? Collections.unmodifiableMap(Maps.newHashMap((Map<String, Object>) actionData))
+        : BasicActionReference.NO_DATA;
+
+    ActionReference reference = new BasicActionReference(actionName, null, source,
+        sourceVersionRange, actionName, referenceData);
+    if (actionService != null) {
+      // Fail at compile time if the action cannot be found.
+      actionService.getAction(source, sourceVersionRange, actionName);
+
+      return new ResolvedActionSequenceElement(reference, actionService);
+    } else {
+      return new ActionSequenceElement(reference);
+    }
+  }
+
+  /**
+   * Compile a parallel element.
+   *
+   * @param data
+   *          the description of the element
+   *
+   * @return the element
+   */
+  @SuppressWarnings("unchecked")
+  private SequenceElement compileParallel(Map<String, Object> data) {
+    JoinMode joinMode = JoinMode.ALL;
+    Object join = data.get(FIELD_JOIN);
+    if (join != null) {
+      try {
+        joinMode = JoinMode.valueOf(join.toString().toUpperCase());
+      } catch (IllegalArgumentException e) {
+        throw new SimpleSmartSpacesException(
+            String.format("Unknown parallel sequence element join mode %s", join));
+      }
+    }
+
+    EventDelay timeout = null;
+    if (data.get(FIELD_TIMEOUT) != null) {
+      timeout = new EventDelay(getLong(data, FIELD_TIMEOUT), getUnit(data));
+    }
+
+    List<SequenceElement> branches = Lists.newArrayList();
+    for (Object branchData : getList(data, FIELD_BRANCHES, data)) {
+      if (!(branchData instanceof List)) {
+        throw new SimpleSmartSpacesException(String.format(
+            "Parallel sequence element branch %s is not a list of elements", branchData));
+      }
+
+      branches.add(new GroupSequenceElement(compileElements((List<Object>) branchData, data)));
+    }
+
+    return new ParallelSequenceElement(joinMode, timeout, Collections.unmodifiableList(branches));
+  }
+
+  /**
+   * Get a list field.
+   *
+   * @param data
+   *          the map holding the field
+   * @param field
+   *          the field name
+   * @param owner
+   *          a description of what holds the field, for error messages
+   *
+   * @return the list
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Object> getList(Map<String, Object> data, String field, Object owner) {
+    Object value = data.get(field);
+    if (!(value instanceof List)) {
+      throw new SimpleSmartSpacesException(
+          String.format("Sequence definition %s has no %s list", owner, field));
+    }
+
+    return (List<Object>) value;
+  }
+
+  /**
+   * Get a required string field.
+   *
+   * @param data
+   *          the map holding the field
+   * @param field
+   *          the field name
+   *
+   * @return the value of the field
+   */
+  private static String getString(Map<String, Object> data, String field) {
+    Object value = data.get(field);
+    if (value == null) {
+      throw new SimpleSmartSpacesException(
+          String.format("Sequence element %s has no %s", data, field));
+    }
+
+    return value.toString();
+  }
+
+  /**
+   * Get a required numeric field.
+   *
+   * @param data
+   *          the map holding the field
+   * @param field
+   *          the field name
+   *
+   * @return the value of the field
+   */
+  private static long getLong(Map<String, Object> data, String field) {
+    Object value = data.get(field);
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+
+    try {
+      return Long.parseLong(getString(data, field));
+    } catch (NumberFormatException e) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Sequence element field %s has non-numeric value %s", field, value));
+    }
+  }
+
+  /**
+   * Get the count of a repeat element.
+   *
+   * @param data
+   *          the description of the element
+   *
+   * @return the count
+   *
+   * @throws SimpleSmartSpacesException
+   *           the count is not positive or does not fit in an int
+   */
+  private static int getRepeatCount(Map<String, Object> data) throws SimpleSmartSpacesException {
+    long count = getLong(data, FIELD_COUNT);
+    if (count < 1 || count > Integer.MAX_VALUE) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Repeat sequence element %s has %s %d which is not from 1 to %d", data, FIELD_COUNT,
+          count, Integer.MAX_VALUE));
+    }
+
+    return (int) count;
+  }
+
+  /**
+   * Get the time unit of an element.
+   *
+   * @param data
+   *          the description of the element
+   *
+   * @return the time unit
+   */
+  private static TimeUnit getUnit(Map<String, Object> data) {
+    Object unit = data.get(FIELD_UNIT);
+    if (unit == null) {
+      return UNIT_DEFAULT;
+    }
+
+    try {
+      return TimeUnit.valueOf(unit.toString().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new SimpleSmartSpacesException(
+          String.format("Sequence element %s has unknown time unit %s", data, unit));
+    }
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.program;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.sequencer.Sequence;
+import io.smartspaces.sandbox.service.sequencer.SequenceElement;
+import io.smartspaces.sandbox.service.sequencer.SequenceExecutionContext;
+import io.smartspaces.sandbox.service.sequencer.SequenceTimeline;
+import io.smartspaces.sandbox.service.sequencer.Sequencer;
+import io.smartspaces.system.SmartSpacesEnvironment;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A sequence which is compiled into a {@link SequenceProgram} when started and
+ * run as a series of continuations, one between each delay.
+ *
+ * <p>
+ * Delays are measured against the sequence timeline, see
+ * {@link #getTimeline()}, so the time spent running elements does not push
+ * later delays back.
+ *
+ * <p>
+ * A running sequence which is shut down ends in the
+ * {@link SequenceState#COMPLETED} state, so it reports that it has finished
+ * and cannot be started again. Shutting down also cancels the runs registered
+ * with {@link #registerRun(ScheduledProgramRun)} which are still going.
+ *
+ * <p>
+ * Subclasses decide how a continuation is scheduled.
+ *
+ * @author Keith M. Hughes
+ */
+public abstract class ProgramSequence implements Sequence {
+
+  /**
+   * The sequencer that created this sequence.
+   */
+  private final Sequencer sequencer;
+
+  /**
+   * The sequence elements.
+   */
+  private final List<SequenceElement> sequenceElements = new ArrayList<>();
+
+  /**
+   * The current state of the sequence.
+   */
+  private final AtomicReference<SequenceState> state =
+      new AtomicReference<SequenceState>(SequenceState.NOT_STARTED);
+
+  /**
+   * The compiled sequence, {@code null} if the elements are compiled when the
+   * sequence starts.
+   */
+  private SequenceProgram program;
+
+  /**
+   * The run of the compiled sequence, {@code null} until started.
+   */
+  private SequenceProgramRunner runner;
+
+  /**
+   * The runs inside the sequence, such as parallel branches, which have not
+   * yet ended.
+   */
+  private final Set<ScheduledProgramRun> liveRuns = Sets.newConcurrentHashSet();
+
+  /**
+   * The execution context for the sequence.
+   */
+  private final SequenceExecutionContext sequenceExecutionContext;
+
+  /**
+   * Construct a new sequence.
+   *
+   * @param sequencer
+   *          the sequencer that created this sequence
+   * @param spaceEnvironment
+   *          the space environment the sequence runs under
+   */
+  public ProgramSequence(Sequencer sequencer, SmartSpacesEnvironment spaceEnvironment) {
+    this.sequencer = sequencer;
+
+    sequenceExecutionContext = new SequenceExecutionContext(sequencer, this, spaceEnvironment);
+  }
+
+  @Override
+  public synchronized Sequence add(SequenceElement... elements) {
+    Collections.addAll(sequenceElements, elements);
+
+    return this;
+  }
+
+  @Override
+  public synchronized Sequence add(Collection<SequenceElement> elements) {
+    sequenceElements.addAll(elements);
+
+    return this;
+  }
+
+  /**
+   * Run an already compiled program rather than compiling the elements added
+   * to the sequence.
+   *
+   * <p>
+   * Programs are immutable, so one program can be shared by many sequences.
+   *
+   * @param program
+   *          the program to run
+   *
+   * @return this sequence
+   */
+  public synchronized ProgramSequence setProgram(SequenceProgram program) {
+    if (state.get() != SequenceState.NOT_STARTED) {
+      throw new SimpleSmartSpacesException("The program of a started sequence cannot be changed");
+    }
+
+    this.program = program;
+
+    return this;
+  }
+
+  @Override
+  public synchronized void startup() {
+    SequenceState currentState = state.get();
+    if (currentState == SequenceState.RUNNING) {
+      return;
+    } else if (currentState != SequenceState.NOT_STARTED) {
+      throw SimpleSmartSpacesException
+          .newFormattedException("The sequence has completed with end state %s", currentState);
+    }
+
+    state.set(SequenceState.RUNNING);
+
+    SequenceTimeline timeline = sequenceExecutionContext.getTimeline();
+    timeline.start(System.nanoTime());
+    if (program == null) {
+      program = SequenceProgram.compile(sequenceElements);
+    }
+    runner = new SequenceProgramRunner(program, timeline);
+
+    onSequenceStarted();
+    scheduleContinuation(0);
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    if (runner == null || !state.compareAndSet(SequenceState.RUNNING, SequenceState.COMPLETED)) {
+      return;
+    }
+
+    runner.cancel();
+    cancelContinuation();
+    for (ScheduledProgramRun run : Lists.newArrayList(liveRuns)) {
+      run.cancel();
+    }
+
+    onSequenceEnded();
+  }
+
+  @Override
+  public SequenceState getState() {
+    return state.get();
+  }
+
+  /**
+   * Register a run inside the sequence so that it is cancelled if the sequence
+   * is shut down.
+   *
+   * <p>
+   * The run is forgotten once it ends. A run registered after the sequence has
+   * stopped running is cancelled immediately.
+   *
+   * @param run
+   *          the run
+   */
+  public synchronized void registerRun(final ScheduledProgramRun run) {
+    if (state.get() != SequenceState.RUNNING) {
+      run.cancel();
+      return;
+    }
+
+    liveRuns.add(run);
+    run.getCompletion().whenComplete((result, e) -> liveRuns.remove(run));
+  }
+
+  /**
+   * Get the timeline the sequence runs against.
+   *
+   * <p>
+   * A listener can be added to the timeline before the sequence is started to
+   * be told how late each delay ended.
+   *
+   * @return the timeline
+   */
+  public SequenceTimeline getTimeline() {
+    return sequenceExecutionContext.getTimeline();
+  }
+
+  /**
+   * Run the sequence until its next delay and schedule the continuation.
+   */
+  protected void runContinuation() {
+    try {
+      long delay = runner.run(sequenceExecutionContext);
+      if (delay == SequenceProgramRunner.RUN_COMPLETE) {
+        if (state.compareAndSet(SequenceState.RUNNING, SequenceState.COMPLETED)) {
+          onSequenceEnded();
+        }
+      } else if (delay == SequenceProgramRunner.RUN_SUSPENDED) {
+        runner.getPendingJoin().whenComplete((result, e) -> {
+          if (e != null) {
+            sequenceFailed(e);
+          } else {
+            continueAfter(0);
+          }
+        });
+      } else {
+        continueAfter(delay);
+      }
+    } catch (Throwable e) {
+      sequenceFailed(e);
+    }
+  }
+
+  /**
+   * The sequence has failed.
+   *
+   * <p>
+   * Failures after the sequence has been shut down are ignored, they are
+   * usually caused by the shutdown.
+   *
+   * @param e
+   *          the cause of the failure
+   */
+  private void sequenceFailed(Throwable e) {
+    if (state.compareAndSet(SequenceState.RUNNING, SequenceState.ERROR)) {
+      onSequenceEnded();
+      sequencer.getLog().error("Sequence interrupted due to error", e);
+    }
+  }
+
+  /**
+   * Schedule the next continuation unless the sequence has been shut down.
+   *
+   * @param delay
+   *          the delay before the continuation, in nanoseconds
+   */
+  private synchronized void continueAfter(long delay) {
+    if (!runner.isCancelled()) {
+      scheduleContinuation(delay);
+    }
+  }
+
+  /**
+   * Schedule {@link #runContinuation()} to run after a delay.
+   *
+   * <p>
+   * Called with the sequence lock held.
+   *
+   * @param delay
+   *          the delay before the continuation, in nanoseconds
+   */
+  protected abstract void scheduleContinuation(long delay);
+
+  /**
+   * Cancel the pending continuation, if any.
+   *
+   * <p>
+   * Called with the sequence lock held.
+   */
+  protected abstract void cancelContinuation();
+
+  /**
+   * The sequence has started running.
+   */
+  protected abstract void onSequenceStarted();
+
+  /**
+   * The sequence has ended, whether it completed, failed, or was shut down.
+   */
+  protected abstract void onSequenceEnded();
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.program;
+
+import io.smartspaces.sandbox.service.sequencer.SequenceExecutionContext;
+import io.smartspaces.sandbox.service.sequencer.SequenceTimeline;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A run of a {@link SequenceProgram} as continuations on a scheduled executor,
+ * whose end is reported through a future.
+ *
+ * <p>
+ * This is used for work inside a sequence, such as the branches of a parallel
+ * element, which needs to run apart from the sequence's own continuations.
+ *
+ * @author Keith M. Hughes
+ */
+public class ScheduledProgramRun {
+
+  /**
+   * The run of the program.
+   */
+  private final SequenceProgramRunner runner;
+
+  /**
+   * The context the program runs in.
+   */
+  private final SequenceExecutionContext sequenceExecutionContext;
+
+  /**
+   * The executor the program runs on.
+   */
+  private final ScheduledExecutorService executorService;
+
+  /**
+   * The future completed when the program ends.
+   */
+  private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+  /**
+   * The future for the next continuation.
+   */
+  private Future<?> continuationFuture;
+
+  /**
+   * Construct a new run.
+   *
+   * @param program
+   *          the program to run
+   * @param sequenceExecutionContext
+   *          the context the program runs in
+   * @param timeline
+   *          the timeline the delays of the program are measured against
+   * @param executorService
+   *          the executor the program runs on
+   */
+  public ScheduledProgramRun(SequenceProgram program,
+      SequenceExecutionContext sequenceExecutionContext, SequenceTimeline timeline,
+      ScheduledExecutorService executorService) {
+    this.runner = new SequenceProgramRunner(program, timeline);
+    this.sequenceExecutionContext = sequenceExecutionContext;
+    this.executorService = executorService;
+
+    // Cancelling the future cancels the run.
+    completion.whenComplete((result, e) -> {
+      if (completion.isCancelled()) {
+        cancel();
+      }
+    });
+  }
+
+  /**
+   * Start the run.
+   *
+   * @return the future which completes when the program ends
+   */
+  public CompletableFuture<Void> start() {
+    scheduleContinuation(0);
+
+    return completion;
+  }
+
+  /**
+   * Get the future which completes when the program ends.
+   *
+   * @return the future
+   */
+  public CompletableFuture<Void> getCompletion() {
+    return completion;
+  }
+
+  /**
+   * Cancel the run.
+   *
+   * <p>
+   * An element which is already running is allowed to finish.
+   */
+  public synchronized void cancel() {
+    if (runner.isCancelled()) {
+      return;
+    }
+
+    runner.cancel();
+    if (continuationFuture != null) {
+      continuationFuture.cancel(false);
+    }
+    completion.cancel(false);
+  }
+
+  /**
+   * Run the program until it next waits.
+   */
+  private void runContinuation() {
+    try {
+      long delay = runner.run(sequenceExecutionContext);
+      if (delay == SequenceProgramRunner.RUN_COMPLETE) {
+        completion.complete(null);
+      } else if (delay == SequenceProgramRunner.RUN_SUSPENDED) {
+        runner.getPendingJoin().whenComplete((result, e) -> {
+          if (e != null) {
+            completion.completeExceptionally(e);
+          } else {
+            scheduleContinuation(0);
+          }
+        });
+      } else {
+        scheduleContinuation(delay);
+      }
+    } catch (Throwable e) {
+      completion.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Schedule the next continuation unless the run has been cancelled.
+   *
+   * @param delay
+   *          the delay before the continuation, in nanoseconds
+   */
+  private synchronized void scheduleContinuation(long delay) {
+    if (!runner.isCancelled()) {
+      continuationFuture =
+          executorService.schedule(() -> runContinuation(), delay, TimeUnit.NANOSECONDS);
+    }
+  }
+}
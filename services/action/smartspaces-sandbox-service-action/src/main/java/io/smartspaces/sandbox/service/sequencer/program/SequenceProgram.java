@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.program;
+
+import io.smartspaces.sandbox.service.sequencer.DelaySequenceElement;
+import io.smartspaces.sandbox.service.sequencer.GroupSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.ParallelSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.RepeatingSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.SequenceElement;
+import io.smartspaces.util.events.EventDelay;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+/**
+ * A sequence which has been compiled into a flat list of instructions.
+ *
+ * <p>
+ * Groups are flattened, repeats become loop instructions with a counter slot,
+ * delays become instructions which suspend the program rather than sleep, and
+ * parallel elements suspend the program until their branches join. Any other
+ * element is run in place. The program is immutable and can be run any number
+ * of times, each run keeps its position in a {@link SequenceProgramRunner}.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceProgram {
+
+  /**
+   * Run an element. The operand is the index of the element.
+   */
+  public static final int OPCODE_RUN = 0;
+
+  /**
+   * Suspend the program. The operand is the index of the delay.
+   */
+  public static final int OPCODE_DELAY = 1;
+
+  /**
+   * Start a loop. The operand is the loop slot, the target is the instruction
+   * after the loop end, which is jumped to if the loop has no iterations.
+   */
+  public static final int OPCODE_LOOP_START = 2;
+
+  /**
+   * End a loop. The operand is the loop slot, the target is the first
+   * instruction of the loop body.
+   */
+  public static final int OPCODE_LOOP_END = 3;
+
+  /**
+   * Start a parallel element and suspend until it joins. The operand is the
+   * index of the element.
+   */
+  public static final int OPCODE_PARALLEL = 4;
+
+  /**
+   * The opcode for each instruction.
+   */
+  private final int[] opcodes;
+
+  /**
+   * The operand for each instruction.
+   */
+  private final int[] operands;
+
+  /**
+   * The jump target for each instruction, only used by loops.
+   */
+  private final int[] targets;
+
+  /**
+   * The elements run by the program.
+   */
+  private final SequenceElement[] elements;
+
+  /**
+   * The delays in the program, in nanoseconds.
+   */
+  private final long[] delays;
+
+  /**
+   * The element for each delay.
+   */
+  private final DelaySequenceElement[] delayElements;
+
+  /**
+   * The iteration count of each loop slot.
+   */
+  private final int[] loopCounts;
+
+  /**
+   * Compile a list of sequence elements into a program.
+   *
+   * @param elements
+   *          the elements, in the order they are run
+   *
+   * @return the compiled program
+   */
+  public static SequenceProgram compile(List<SequenceElement> elements) {
+    SequenceProgramCompiler compiler = new SequenceProgramCompiler();
+    for (SequenceElement element : elements) {
+      compiler.compile(element);
+    }
+
+    return compiler.toProgram();
+  }
+
+  /**
+   * Construct a new program.
+   *
+   * @param opcodes
+   *          the opcode for each instruction
+   * @param operands
+   *          the operand for each instruction
+   * @param targets
+   *          the jump target for each instruction
+   * @param elements
+   *          the elements run by the program
+   * @param delays
+   *          the delays in the program, in nanoseconds
+   * @param delayElements
+   *          the element for each delay
+   * @param loopCounts
+   *          the iteration count of each loop slot
+   */
+  private SequenceProgram(int[] opcodes, int[] operands, int[] targets,
+      SequenceElement[] elements, long[] delays, DelaySequenceElement[] delayElements,
+      int[] loopCounts) {
+    this.opcodes = opcodes;
+    this.operands = operands;
+    this.targets = targets;
+    this.elements = elements;
+    this.delays = delays;
+    this.delayElements = delayElements;
+    this.loopCounts = loopCounts;
+  }
+
+  /**
+   * Get the number of instructions in the program.
+   *
+   * @return the number of instructions
+   */
+  public int getNumberInstructions() {
+    return opcodes.length;
+  }
+
+  /**
+   * Get the opcode of an instruction.
+   *
+   * @param instruction
+   *          the instruction position
+   *
+   * @return the opcode
+   */
+  public int getOpcode(int instruction) {
+    return opcodes[instruction];
+  }
+
+  /**
+   * Get the operand of an instruction.
+   *
+   * @param instruction
+   *          the instruction position
+   *
+   * @return the operand
+   */
+  public int getOperand(int instruction) {
+    return operands[instruction];
+  }
+
+  /**
+   * Get the jump target of an instruction.
+   *
+   * @param instruction
+   *          the instruction position
+   *
+   * @return the jump target
+   */
+  public int getTarget(int instruction) {
+    return targets[instruction];
+  }
+
+  /**
+   * Get an element run by the program.
+   *
+   * @param index
+   *          the element index
+   *
+   * @return the element
+   */
+  public SequenceElement getElement(int index) {
+    return elements[index];
+  }
+
+  /**
+   * Get a delay in the program.
+   *
+   * @param index
+   *          the delay index
+   *
+   * @return the delay, in nanoseconds
+   */
+  public long getDelay(int index) {
+    return delays[index];
+  }
+
+  /**
+   * Get the element for a delay in the program.
+   *
+   * @param index
+   *          the delay index
+   *
+   * @return the delay element
+   */
+  public DelaySequenceElement getDelayElement(int index) {
+    return delayElements[index];
+  }
+
+  /**
+   * Get the number of loop slots a run of the program needs.
+   *
+   * @return the number of loop slots
+   */
+  public int getNumberLoopSlots() {
+    return loopCounts.length;
+  }
+
+  /**
+   * Get the iteration count for a loop slot.
+   *
+   * @param slot
+   *          the loop slot
+   *
+   * @return the number of iterations
+   */
+  public int getLoopCount(int slot) {
+    return loopCounts[slot];
+  }
+
+  /**
+   * Compiles sequence elements into the instructions of a program.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class SequenceProgramCompiler {
+
+    /**
+     * The opcodes emitted so far.
+     */
+    private final List<Integer> opcodes = Lists.newArrayList();
+
+    /**
+     * The operands emitted so far.
+     */
+    private final List<Integer> operands = Lists.newArrayList();
+
+    /**
+     * The jump targets emitted so far.
+     */
+    private final List<Integer> targets = Lists.newArrayList();
+
+    /**
+     * The elements run by the program.
+     */
+    private final List<SequenceElement> elements = Lists.newArrayList();
+
+    /**
+     * The delays, in nanoseconds.
+     */
+    private final List<Long> delays = Lists.newArrayList();
+
+    /**
+     * The element for each delay.
+     */
+    private final List<DelaySequenceElement> delayElements = Lists.newArrayList();
+
+    /**
+     * The iteration count for each loop slot.
+     */
+    private final List<Integer> loopCounts = Lists.newArrayList();
+
+    /**
+     * Compile an element.
+     *
+     * @param element
+     *          the element to compile
+     */
+    void compile(SequenceElement element) {
+      if (element instanceof GroupSequenceElement) {
+        for (SequenceElement child : ((GroupSequenceElement) element).getElements()) {
+          compile(child);
+        }
+      } else if (element instanceof RepeatingSequenceElement) {
+        RepeatingSequenceElement repeat = (RepeatingSequenceElement) element;
+
+        int slot = loopCounts.size();
+        loopCounts.add(repeat.getRepeatCount());
+
+        int loopStart = emit(OPCODE_LOOP_START, slot, 0);
+        compile(repeat.getElement());
+        emit(OPCODE_LOOP_END, slot, loopStart + 1);
+
+        targets.set(loopStart, opcodes.size());
+      } else if (element instanceof DelaySequenceElement) {
+        DelaySequenceElement delayElement = (DelaySequenceElement) element;
+        EventDelay delay = delayElement.getDelay();
+        delays.add(delay.getUnit().toNanos(delay.getDelay()));
+        delayElements.add(delayElement);
+
+        emit(OPCODE_DELAY, delays.size() - 1, 0);
+      } else if (element instanceof ParallelSequenceElement) {
+        elements.add(element);
+
+        emit(OPCODE_PARALLEL, elements.size() - 1, 0);
+      } else {
+        elements.add(element);
+
+        emit(OPCODE_RUN, elements.size() - 1, 0);
+      }
+    }
+
+    /**
+     * Create the program from everything compiled.
+     *
+     * @return the program
+     */
+    SequenceProgram toProgram() {
+      return new SequenceProgram(Ints.toArray(opcodes), Ints.toArray(operands),
+          Ints.toArray(targets), elements.toArray(new SequenceElement[elements.size()]),
+          Longs.toArray(delays),
+          delayElements.toArray(new DelaySequenceElement[delayElements.size()]),
+          Ints.toArray(loopCounts));
+    }
+
+    /**
+     * Emit an instruction.
+     *
+     * @param opcode
+     *          the opcode
+     * @param operand
+     *          the operand
+     * @param target
+     *          the jump target
+     *
+     * @return the position of the instruction
+     */
+    private int emit(int opcode, int operand, int target) {
+      opcodes.add(opcode);
+      operands.add(operand);
+      targets.add(target);
+
+      return opcodes.size() - 1;
+    }
+  }
+}
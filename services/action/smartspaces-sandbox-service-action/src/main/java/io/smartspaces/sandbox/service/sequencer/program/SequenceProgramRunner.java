@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.program;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.sequencer.ParallelSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.SequenceExecutionContext;
+import io.smartspaces.sandbox.service.sequencer.SequenceTimeline;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single run of a {@link SequenceProgram}.
+ *
+ * <p>
+ * The runner holds nothing but a program counter and the loop counters, so a
+ * suspended run costs a few words of memory and no thread. The owner calls
+ * {@link #run(SequenceExecutionContext)} to advance the program to its next
+ * delay and is responsible for calling it again once the delay has passed, or
+ * once the pending join has completed.
+ *
+ * <p>
+ * Only one thread at a time should call {@link #run(SequenceExecutionContext)}.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceProgramRunner {
+
+  /**
+   * The value returned when the program has run to its end.
+   */
+  public static final long RUN_COMPLETE = -1;
+
+  /**
+   * The value returned when the program is waiting for a join, see
+   * {@link #getPendingJoin()}.
+   */
+  public static final long RUN_SUSPENDED = -2;
+
+  /**
+   * The program being run.
+   */
+  private final SequenceProgram program;
+
+  /**
+   * The timeline the delays of the program are measured against.
+   */
+  private final SequenceTimeline timeline;
+
+  /**
+   * The iterations left for each loop slot.
+   */
+  private final int[] loopRemaining;
+
+  /**
+   * The next instruction to run.
+   */
+  private int programCounter;
+
+  /**
+   * The delay whose deadline the program is waiting for, {@code -1} if none.
+   */
+  private int pendingDelay = -1;
+
+  /**
+   * The deadline of the pending delay.
+   */
+  private long pendingDeadline;
+
+  /**
+   * The join the program is waiting for, {@code null} if none.
+   */
+  private volatile CompletableFuture<Void> pendingJoin;
+
+  /**
+   * {@code true} if the run has been cancelled.
+   */
+  private volatile boolean cancelled;
+
+  /**
+   * Construct a new runner.
+   *
+   * @param program
+   *          the program to run
+   * @param timeline
+   *          the timeline the delays of the program are measured against
+   */
+  public SequenceProgramRunner(SequenceProgram program, SequenceTimeline timeline) {
+    this.program = program;
+    this.timeline = timeline;
+
+    loopRemaining = new int[program.getNumberLoopSlots()];
+  }
+
+  /**
+   * Run the program until it reaches a delay or its end.
+   *
+   * @param sequenceExecutionContext
+   *          the context to run the elements in
+   *
+   * @return the delay before the program should be run again, in nanoseconds,
+   *         {@link #RUN_SUSPENDED} if it should be run again when the pending
+   *         join completes, or {@link #RUN_COMPLETE} if the program has
+   *         finished or been cancelled
+   */
+  public long run(SequenceExecutionContext sequenceExecutionContext) {
+    if (pendingDelay >= 0) {
+      timeline.deadlineReached(program.getDelayElement(pendingDelay), pendingDeadline,
+          System.nanoTime());
+      pendingDelay = -1;
+    }
+
+    if (pendingJoin != null) {
+      // How long a join takes is not known ahead, so the timeline picks up
+      // from when it ended.
+      timeline.resync(System.nanoTime());
+      pendingJoin = null;
+    }
+
+    int numberInstructions = program.getNumberInstructions();
+    while (programCounter < numberInstructions && !cancelled) {
+      int instruction = programCounter++;
+      int operand = program.getOperand(instruction);
+
+      switch (program.getOpcode(instruction)) {
+        case SequenceProgram.OPCODE_RUN:
+          sequenceExecutionContext.runElement(program.getElement(operand));
+          break;
+
+        case SequenceProgram.OPCODE_DELAY:
+          long deadline = timeline.advance(program.getDelay(operand));
+          long now = System.nanoTime();
+          if (deadline - now > 0) {
+            pendingDelay = operand;
+            pendingDeadline = deadline;
+
+            return deadline - now;
+          }
+          timeline.deadlineReached(program.getDelayElement(operand), deadline, now);
+          break;
+
+        case SequenceProgram.OPCODE_PARALLEL:
+          pendingJoin = ((ParallelSequenceElement) program.getElement(operand))
+              .runAsync(sequenceExecutionContext, timeline);
+          return RUN_SUSPENDED;
+
+        case SequenceProgram.OPCODE_LOOP_START:
+          int count = program.getLoopCount(operand);
+          loopRemaining[operand] = count;
+          if (count <= 0) {
+            programCounter = program.getTarget(instruction);
+          }
+          break;
+
+        case SequenceProgram.OPCODE_LOOP_END:
+          if (--loopRemaining[operand] > 0) {
+            programCounter = program.getTarget(instruction);
+          }
+          break;
+
+        default:
+          throw SimpleSmartSpacesException.newFormattedException(
+              "Unknown sequence program opcode %d", program.getOpcode(instruction));
+      }
+    }
+
+    return RUN_COMPLETE;
+  }
+
+  /**
+   * Cancel the run.
+   *
+   * <p>
+   * An element which is already running is allowed to finish, no further
+   * instructions are run.
+   */
+  public void cancel() {
+    cancelled = true;
+
+    CompletableFuture<Void> join = pendingJoin;
+    if (join != null) {
+      join.cancel(false);
+    }
+  }
+
+  /**
+   * Get the join the program is waiting for.
+   *
+   * @return the join, or {@code null} if the program is not suspended
+   */
+  public CompletableFuture<Void> getPendingJoin() {
+    return pendingJoin;
+  }
+
+  /**
+   * Has the run been cancelled?
+   *
+   * @return {@code true} if the run has been cancelled
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.scheduled;
+
+import io.smartspaces.sandbox.service.sequencer.program.ProgramSequence;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sequence which runs as a series of continuations on a scheduled executor.
+ *
+ * @author Keith M. Hughes
+ */
+public class ScheduledSequence extends ProgramSequence {
+
+  /**
+   * The sequencer that created this sequence.
+   */
+  private final ScheduledSequencer sequencer;
+
+  /**
+   * The future for the next continuation of the sequence.
+   */
+  private Future<?> continuationFuture;
+
+  /**
+   * Construct a new sequence.
+   *
+   * @param sequencer
+   *          the sequencer that created this sequence
+   */
+  public ScheduledSequence(ScheduledSequencer sequencer) {
+    super(sequencer, sequencer.getSpaceEnvironment());
+
+    this.sequencer = sequencer;
+  }
+
+  @Override
+  protected void scheduleContinuation(long delay) {
+    continuationFuture = sequencer.getExecutorService().schedule(() -> runContinuation(), delay,
+        TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  protected void cancelContinuation() {
+    if (continuationFuture != null) {
+      continuationFuture.cancel(false);
+    }
+  }
+
+  @Override
+  protected void onSequenceStarted() {
+    sequencer.sequenceStarted(this);
+  }
+
+  @Override
+  protected void onSequenceEnded() {
+    sequencer.sequenceEnded(this);
+  }
+}
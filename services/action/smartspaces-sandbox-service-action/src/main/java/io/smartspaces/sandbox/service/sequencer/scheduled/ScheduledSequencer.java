@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.scheduled;
+
+import io.smartspaces.sandbox.service.sequencer.Sequence;
+import io.smartspaces.sandbox.service.sequencer.Sequencer;
+import io.smartspaces.sandbox.service.sequencer.trace.SequenceTracer;
+import io.smartspaces.system.SmartSpacesEnvironment;
+
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.google.common.collect.Sets;
+import org.apache.commons.logging.Log;
+
+/**
+ * A sequencer which runs sequences as continuations on a scheduled executor.
+ *
+ * <p>
+ * Each sequence is compiled into a
+ * {@link io.smartspaces.sandbox.service.sequencer.program.SequenceProgram}.
+ * The program runs on an executor thread only until it reaches a delay, then
+ * the rest of the program is scheduled to run once the delay has passed. A
+ * sequence waiting in a delay holds no thread, so thousands of long running
+ * sequences can share a small executor.
+ *
+ * <p>
+ * Elements which block, such as an action that waits on a slow device, still
+ * hold an executor thread while they run.
+ *
+ * @author Keith M. Hughes
+ */
+public class ScheduledSequencer implements Sequencer {
+
+  /**
+   * The space environment for the sequencer.
+   */
+  private final SmartSpacesEnvironment spaceEnvironment;
+
+  /**
+   * The executor the sequences run on.
+   */
+  private final ScheduledExecutorService executorService;
+
+  /**
+   * The sequences which have been started and not yet finished.
+   */
+  private final Set<ScheduledSequence> activeSequences = Sets.newConcurrentHashSet();
+
+  /**
+   * The logger for the sequencer.
+   */
+  private final Log log;
+
+  /**
+   * The tracer for elements, {@code null} if elements are not traced.
+   */
+  private volatile SequenceTracer tracer;
+
+  /**
+   * Construct a sequencer which runs on the space environment executor.
+   *
+   * @param spaceEnvironment
+   *          the space environment to execute under
+   * @param log
+   *          the logger to use
+   */
+  public ScheduledSequencer(SmartSpacesEnvironment spaceEnvironment, Log log) {
+    this(spaceEnvironment, spaceEnvironment.getExecutorService(), log);
+  }
+
+  /**
+   * Construct a sequencer.
+   *
+   * @param spaceEnvironment
+   *          the space environment to execute under
+   * @param executorService
+   *          the executor the sequences run on
+   * @param log
+   *          the logger to use
+   */
+  public ScheduledSequencer(SmartSpacesEnvironment spaceEnvironment,
+      ScheduledExecutorService executorService, Log log) {
+    this.spaceEnvironment = spaceEnvironment;
+    this.executorService = executorService;
+    this.log = log;
+  }
+
+  @Override
+  public void startup() {
+    // Nothing to do.
+  }
+
+  @Override
+  public void shutdown() {
+    for (ScheduledSequence sequence : activeSequences) {
+      sequence.shutdown();
+    }
+  }
+
+  @Override
+  public Sequence newSequence() {
+    return new ScheduledSequence(this);
+  }
+
+  @Override
+  public Log getLog() {
+    return log;
+  }
+
+  /**
+   * Get the number of sequences which have been started and not yet finished.
+   *
+   * @return the number of active sequences
+   */
+  public int getNumberActiveSequences() {
+    return activeSequences.size();
+  }
+
+  /**
+   * A sequence has started.
+   *
+   * @param sequence
+   *          the sequence
+   */
+  void sequenceStarted(ScheduledSequence sequence) {
+    activeSequences.add(sequence);
+  }
+
+  /**
+   * A sequence has finished, whether it completed, failed, or was shut down.
+   *
+   * @param sequence
+   *          the sequence
+   */
+  void sequenceEnded(ScheduledSequence sequence) {
+    activeSequences.remove(sequence);
+  }
+
+  @Override
+  public ScheduledExecutorService getExecutorService() {
+    return executorService;
+  }
+
+  @Override
+  public void setTracer(SequenceTracer tracer) {
+    this.tracer = tracer;
+  }
+
+  @Override
+  public SequenceTracer getTracer() {
+    return tracer;
+  }
+
+  /**
+   * Get the space environment.
+   *
+   * @return the space environment
+   */
+  SmartSpacesEnvironment getSpaceEnvironment() {
+    return spaceEnvironment;
+  }
+}
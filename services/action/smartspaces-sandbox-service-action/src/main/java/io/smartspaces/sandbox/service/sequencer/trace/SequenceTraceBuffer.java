@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.trace;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A fixed size ring buffer of trace records which keeps the most recent
+ * records.
+ *
+ * <p>
+ * Writers claim a slot with a single atomic increment and never block. The
+ * fields of the records are kept in parallel arrays so recording allocates
+ * nothing. Each slot carries the sequence number of the record in it, which is
+ * cleared while the slot is written, so a reader can tell a complete record
+ * from one being overwritten and skip the latter.
+ *
+ * <p>
+ * The fields are atomic arrays. Writers store them with ordered writes after
+ * clearing the sequence number and readers load them with volatile reads
+ * between the two checks of the sequence number, so neither side can reorder
+ * a field access past a check.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceTraceBuffer {
+
+  /**
+   * The default number of records kept.
+   */
+  public static final int CAPACITY_DEFAULT = 8192;
+
+  /**
+   * The mask which turns a sequence number into a slot index.
+   */
+  private final int mask;
+
+  /**
+   * The sequence number of the next record written.
+   */
+  private final AtomicLong nextSequence = new AtomicLong();
+
+  /**
+   * The sequence number plus one of the record in each slot, {@code 0} while
+   * the slot is being written.
+   */
+  private final AtomicLongArray published;
+
+  /**
+   * The start time of the record in each slot.
+   */
+  private final AtomicLongArray startTimes;
+
+  /**
+   * The duration of the record in each slot.
+   */
+  private final AtomicLongArray durations;
+
+  /**
+   * The label ID of the record in each slot.
+   */
+  private final AtomicIntegerArray labelIds;
+
+  /**
+   * The depth of the record in each slot.
+   */
+  private final AtomicIntegerArray depths;
+
+  /**
+   * The outcome of the record in each slot.
+   */
+  private final AtomicIntegerArray outcomes;
+
+  /**
+   * The thread ID of the record in each slot.
+   */
+  private final AtomicLongArray threadIds;
+
+  /**
+   * Construct a buffer with the default capacity.
+   */
+  public SequenceTraceBuffer() {
+    this(CAPACITY_DEFAULT);
+  }
+
+  /**
+   * Construct a buffer.
+   *
+   * @param capacity
+   *          the number of records kept, must be a power of two
+   */
+  public SequenceTraceBuffer(int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw SimpleSmartSpacesException
+          .newFormattedException("Trace buffer capacity %d is not a power of two", capacity);
+    }
+
+    mask = capacity - 1;
+    published = new AtomicLongArray(capacity);
+    startTimes = new AtomicLongArray(capacity);
+    durations = new AtomicLongArray(capacity);
+    labelIds = new AtomicIntegerArray(capacity);
+    depths = new AtomicIntegerArray(capacity);
+    outcomes = new AtomicIntegerArray(capacity);
+    threadIds = new AtomicLongArray(capacity);
+  }
+
+  /**
+   * Add a record, overwriting the oldest if the buffer is full.
+   *
+   * @param startTime
+   *          the time the element started
+   * @param duration
+   *          how long the element ran, in nanoseconds
+   * @param labelId
+   *          the ID of the element label
+   * @param depth
+   *          how deeply the element was nested
+   * @param outcome
+   *          the outcome of the element
+   * @param threadId
+   *          the ID of the thread which ran the element
+   */
+  public void record(long startTime, long duration, int labelId, int depth, byte outcome,
+      long threadId) {
+    long sequence = nextSequence.getAndIncrement();
+    int slot = (int) (sequence & mask);
+
+    published.set(slot, 0);
+    startTimes.lazySet(slot, startTime);
+    durations.lazySet(slot, duration);
+    labelIds.lazySet(slot, labelId);
+    depths.lazySet(slot, depth);
+    outcomes.lazySet(slot, outcome);
+    threadIds.lazySet(slot, threadId);
+    published.set(slot, sequence + 1);
+  }
+
+  /**
+   * Get a copy of the records in the buffer, oldest first.
+   *
+   * <p>
+   * Records being written while the copy is made are left out.
+   *
+   * @return the records
+   */
+  public List<SequenceTraceRecord> snapshot() {
+    long end = nextSequence.get();
+    long start = Math.max(0, end - getCapacity());
+
+    List<SequenceTraceRecord> records = Lists.newArrayList();
+    for (long sequence = start; sequence < end; sequence++) {
+      int slot = (int) (sequence & mask);
+      if (published.get(slot) != sequence + 1) {
+        continue;
+      }
+
+      SequenceTraceRecord record = new SequenceTraceRecord(startTimes.get(slot),
+          durations.get(slot), labelIds.get(slot), depths.get(slot),
+          (byte) outcomes.get(slot), threadIds.get(slot));
+
+      if (published.get(slot) == sequence + 1) {
+        records.add(record);
+      }
+    }
+
+    return records;
+  }
+
+  /**
+   * Get the number of records the buffer keeps.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Get the number of records ever added, including those overwritten.
+   *
+   * @return the number of records
+   */
+  public long getNumberRecorded() {
+    return nextSequence.get();
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.trace;
+
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.sandbox.service.action.RunStatistics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes the contents of a {@link SequenceTracer} in a compact binary format.
+ *
+ * <p>
+ * All values are big endian. The trace is
+ *
+ * <ul>
+ * <li>the magic number {@link #MAGIC} as an int and the format
+ * {@link #VERSION} as a short</li>
+ * <li>the wall clock time in milliseconds and the {@link System#nanoTime()} at
+ * export as longs, so record start times can be placed in wall clock time</li>
+ * <li>the number of labels as an int, followed by each label in modified UTF-8
+ * as written by {@link DataOutputStream#writeUTF(String)}, in label ID
+ * order</li>
+ * <li>the number of records as an int, followed by each record as its start
+ * time and duration as longs, label ID as an int, depth as a short, outcome as
+ * a byte, and thread ID as a long</li>
+ * </ul>
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceTraceExporter {
+
+  /**
+   * The magic number at the start of a trace, {@code "SQTR"}.
+   */
+  public static final int MAGIC = 0x53515452;
+
+  /**
+   * The version of the trace format.
+   */
+  public static final short VERSION = 1;
+
+  /**
+   * Write a trace to a file.
+   *
+   * @param tracer
+   *          the tracer to write
+   * @param file
+   *          the file to write to
+   */
+  public void export(SequenceTracer tracer, File file) {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      export(tracer, out);
+    } catch (IOException e) {
+      throw new SmartSpacesException(
+          String.format("Could not write sequence trace file %s", file.getAbsolutePath()), e);
+    }
+  }
+
+  /**
+   * Write a trace to a stream.
+   *
+   * <p>
+   * The stream is not closed.
+   *
+   * @param tracer
+   *          the tracer to write
+   * @param out
+   *          the stream to write to
+   *
+   * @throws IOException
+   *           the trace could not be written
+   */
+  public void export(SequenceTracer tracer, OutputStream out) throws IOException {
+    // Snapshot the records before the labels so every label ID is covered.
+    List<SequenceTraceRecord> records = tracer.getBuffer().snapshot();
+    List<RunStatistics> labels = tracer.getStatistics();
+
+    DataOutputStream dataOut = new DataOutputStream(out);
+    dataOut.writeInt(MAGIC);
+    dataOut.writeShort(VERSION);
+    dataOut.writeLong(System.currentTimeMillis());
+    dataOut.writeLong(System.nanoTime());
+
+    dataOut.writeInt(labels.size());
+    for (RunStatistics label : labels) {
+      dataOut.writeUTF(label.getLabel());
+    }
+
+    dataOut.writeInt(records.size());
+    for (SequenceTraceRecord record : records) {
+      dataOut.writeLong(record.getStartTime());
+      dataOut.writeLong(record.getDuration());
+      dataOut.writeInt(record.getLabelId());
+      dataOut.writeShort(record.getDepth());
+      dataOut.writeByte(record.getOutcome());
+      dataOut.writeLong(record.getThreadId());
+    }
+
+    dataOut.flush();
+  }
+}
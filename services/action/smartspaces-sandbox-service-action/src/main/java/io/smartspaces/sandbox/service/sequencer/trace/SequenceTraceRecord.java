@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.trace;
+
+/**
+ * The trace of a single run of a sequence element.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceTraceRecord {
+
+  /**
+   * The outcome of an element which completed.
+   */
+  public static final byte OUTCOME_COMPLETED = 0;
+
+  /**
+   * The outcome of an element which failed.
+   */
+  public static final byte OUTCOME_FAILED = 1;
+
+  /**
+   * The time the element started, from {@link System#nanoTime()}.
+   */
+  private final long startTime;
+
+  /**
+   * How long the element ran, in nanoseconds.
+   */
+  private final long duration;
+
+  /**
+   * The ID of the element label, see {@link SequenceTracer#getLabel(int)}.
+   */
+  private final int labelId;
+
+  /**
+   * How deeply the element was nested in other traced elements.
+   */
+  private final int depth;
+
+  /**
+   * The outcome of the element.
+   */
+  private final byte outcome;
+
+  /**
+   * The ID of the thread which ran the element.
+   */
+  private final long threadId;
+
+  /**
+   * Construct a new record.
+   *
+   * @param startTime
+   *          the time the element started, from {@link System#nanoTime()}
+   * @param duration
+   *          how long the element ran, in nanoseconds
+   * @param labelId
+   *          the ID of the element label
+   * @param depth
+   *          how deeply the element was nested in other traced elements
+   * @param outcome
+   *          the outcome of the element
+   * @param threadId
+   *          the ID of the thread which ran the element
+   */
+  public SequenceTraceRecord(long startTime, long duration, int labelId, int depth, byte outcome,
+      long threadId) {
+    this.startTime = startTime;
+    this.duration = duration;
+    this.labelId = labelId;
+    this.depth = depth;
+    this.outcome = outcome;
+    this.threadId = threadId;
+  }
+
+  /**
+   * Get the time the element started.
+   *
+   * @return the start time, from {@link System#nanoTime()}
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * Get how long the element ran.
+   *
+   * @return the duration, in nanoseconds
+   */
+  public long getDuration() {
+    return duration;
+  }
+
+  /**
+   * Get the ID of the element label.
+   *
+   * @return the label ID
+   */
+  public int getLabelId() {
+    return labelId;
+  }
+
+  /**
+   * Get how deeply the element was nested in other traced elements.
+   *
+   * <p>
+   * The groups and repeats of a program sequence are compiled away, so they do
+   * not add to the depth.
+   *
+   * @return the depth, {@code 0} for an element run directly by the sequence
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Get the outcome of the element.
+   *
+   * @return the outcome
+   */
+  public byte getOutcome() {
+    return outcome;
+  }
+
+  /**
+   * Get the ID of the thread which ran the element.
+   *
+   * @return the thread ID
+   */
+  public long getThreadId() {
+    return threadId;
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.trace;
+
+import io.smartspaces.sandbox.service.action.ActionReference;
+import io.smartspaces.sandbox.service.action.RunStatistics;
+import io.smartspaces.sandbox.service.sequencer.ActionSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.SequenceElement;
+import io.smartspaces.sandbox.service.sequencer.SequenceExecutionContext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+/**
+ * A tracer for the elements run by sequences.
+ *
+ * <p>
+ * Every element run through
+ * {@link SequenceExecutionContext#runElement(SequenceElement)} while the
+ * tracer is set on the sequencer is timed. The timing, nesting, and outcome of
+ * the run go into a {@link SequenceTraceBuffer} and are added to the
+ * statistics for the element label.
+ *
+ * <p>
+ * Nesting is only seen for elements which run other elements through the
+ * context. Program sequences compile groups, repeats, and parallel elements
+ * away, so they have no records of their own and the elements inside them are
+ * traced at the depth of the sequence.
+ *
+ * <p>
+ * Elements are labelled by their class, except action elements, which are
+ * labelled by their action source and action name so slow action sources can
+ * be found.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceTracer {
+
+  /**
+   * The buffer of recent runs.
+   */
+  private final SequenceTraceBuffer buffer;
+
+  /**
+   * The label IDs, keyed by element class or by action label.
+   */
+  private final ConcurrentMap<Object, Integer> labelIds = Maps.newConcurrentMap();
+
+  /**
+   * The label ID of each element which has been run, so the label key is only
+   * built the first time an element runs. Elements are compared by identity
+   * and are dropped when they are no longer used.
+   */
+  private final ConcurrentMap<SequenceElement, Integer> elementLabelIds =
+      new MapMaker().weakKeys().makeMap();
+
+  /**
+   * The statistics for each label, indexed by label ID.
+   */
+  private final List<RunStatistics> statistics = new CopyOnWriteArrayList<>();
+
+  /**
+   * How deeply the current thread is nested in traced elements.
+   */
+  private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+  /**
+   * Construct a tracer with a buffer of the default capacity.
+   */
+  public SequenceTracer() {
+    this(new SequenceTraceBuffer());
+  }
+
+  /**
+   * Construct a tracer.
+   *
+   * @param buffer
+   *          the buffer for recent runs
+   */
+  public SequenceTracer(SequenceTraceBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Run an element and trace the run.
+   *
+   * @param element
+   *          the element to run
+   * @param sequenceExecutionContext
+   *          the context to run the element in
+   */
+  public void runElement(SequenceElement element,
+      SequenceExecutionContext sequenceExecutionContext) {
+    int labelId = getLabelId(element);
+    int[] currentDepth = depth.get();
+    int elementDepth = currentDepth[0]++;
+
+    boolean failed = true;
+    long startTime = System.nanoTime();
+    try {
+      element.run(sequenceExecutionContext);
+      failed = false;
+    } finally {
+      long duration = System.nanoTime() - startTime;
+      currentDepth[0]--;
+
+      buffer.record(startTime, duration, labelId, elementDepth,
+          failed ? SequenceTraceRecord.OUTCOME_FAILED : SequenceTraceRecord.OUTCOME_COMPLETED,
+          Thread.currentThread().getId());
+      statistics.get(labelId).addRun(duration, failed);
+    }
+  }
+
+  /**
+   * Get the buffer of recent runs.
+   *
+   * @return the buffer
+   */
+  public SequenceTraceBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Get the label for a label ID.
+   *
+   * @param labelId
+   *          the label ID
+   *
+   * @return the label
+   */
+  public String getLabel(int labelId) {
+    return statistics.get(labelId).getLabel();
+  }
+
+  /**
+   * Get the statistics for every label, indexed by label ID.
+   *
+   * @return the statistics
+   */
+  public List<RunStatistics> getStatistics() {
+    return Collections.unmodifiableList(statistics);
+  }
+
+  /**
+   * Get the statistics for a label.
+   *
+   * @param label
+   *          the label
+   *
+   * @return the statistics, or {@code null} if no element with the label has
+   *         been run
+   */
+  public RunStatistics getStatistics(String label) {
+    for (RunStatistics labelStatistics : statistics) {
+      if (labelStatistics.getLabel().equals(label)) {
+        return labelStatistics;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Get the statistics for every label, keyed by label.
+   *
+   * @return the statistics
+   */
+  public Map<String, RunStatistics> getStatisticsByLabel() {
+    Map<String, RunStatistics> byLabel = Maps.newLinkedHashMap();
+    for (RunStatistics labelStatistics : statistics) {
+      byLabel.put(labelStatistics.getLabel(), labelStatistics);
+    }
+
+    return byLabel;
+  }
+
+  /**
+   * Get the ID of the label for an element, adding the label if it is new.
+   *
+   * @param element
+   *          the element
+   *
+   * @return the label ID
+   */
+  private int getLabelId(SequenceElement element) {
+    Integer labelId = elementLabelIds.get(element);
+    if (labelId == null) {
+      labelId = findLabelId(element);
+      elementLabelIds.put(element, labelId);
+    }
+
+    return labelId;
+  }
+
+  /**
+   * Find the ID of the label for an element which has not been run before,
+   * adding the label if it is new.
+   *
+   * @param element
+   *          the element
+   *
+   * @return the label ID
+   */
+  private int findLabelId(SequenceElement element) {
+    Object key;
+    if (element instanceof ActionSequenceElement) {
+      ActionReference reference = ((ActionSequenceElement) element).getActionReference();
+      key = "action:" + reference.getActionSource() + "/" + reference.getActionName();
+    } else {
+      key = element.getClass();
+    }
+
+    Integer labelId = labelIds.get(key);
+    if (labelId == null) {
+      labelId = addLabel(key);
+    }
+
+    return labelId;
+  }
+
+  /**
+   * Add a new label.
+   *
+   * @param key
+   *          the key for the label
+   *
+   * @return the label ID
+   */
+  private synchronized int addLabel(Object key) {
+    Integer labelId = labelIds.get(key);
+    if (labelId == null) {
+      String label = key.toString();
+      if (key instanceof Class) {
+        // Anonymous classes have no simple name.
+        Class<?> elementClass = (Class<?>) key;
+        label = elementClass.getSimpleName().isEmpty() ? elementClass.getName()
+            : elementClass.getSimpleName();
+      }
+
+      statistics.add(new RunStatistics(label));
+      labelId = statistics.size() - 1;
+      labelIds.put(key, labelId);
+    }
+
+    return labelId;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.wheel;
+
+import io.smartspaces.sandbox.service.sequencer.program.ProgramSequence;
+import io.smartspaces.sandbox.util.timer.TimerWheelTimeout;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sequence whose delays are timer wheel entries.
+ *
+ * @author Keith M. Hughes
+ */
+public class TimerWheelSequence extends ProgramSequence {
+
+  /**
+   * The sequencer that created this sequence.
+   */
+  private final TimerWheelSequencer sequencer;
+
+  /**
+   * The task which runs the next continuation.
+   */
+  private final Runnable continuationTask;
+
+  /**
+   * The wheel entry for the next continuation, {@code null} if none.
+   */
+  private TimerWheelTimeout continuationTimeout;
+
+  /**
+   * Construct a new sequence.
+   *
+   * @param sequencer
+   *          the sequencer that created this sequence
+   */
+  public TimerWheelSequence(TimerWheelSequencer sequencer) {
+    super(sequencer, sequencer.getSpaceEnvironment());
+
+    this.sequencer = sequencer;
+
+    final Executor executor = sequencer.getContinuationExecutor();
+    if (executor != TimerWheelSequencer.INLINE_CONTINUATIONS) {
+      continuationTask = () -> executor.execute(() -> runContinuation());
+    } else {
+      continuationTask = () -> runContinuation();
+    }
+  }
+
+  @Override
+  protected void scheduleContinuation(long delay) {
+    continuationTimeout =
+        sequencer.getTimerWheel().schedule(continuationTask, delay, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  protected void cancelContinuation() {
+    if (continuationTimeout != null) {
+      continuationTimeout.cancel();
+    }
+  }
+
+  @Override
+  protected void onSequenceStarted() {
+    sequencer.sequenceStarted(this);
+  }
+
+  @Override
+  protected void onSequenceEnded() {
+    sequencer.sequenceEnded(this);
+  }
+}
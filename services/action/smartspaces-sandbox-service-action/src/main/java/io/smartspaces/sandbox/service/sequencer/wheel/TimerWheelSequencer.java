@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.wheel;
+
+import io.smartspaces.sandbox.service.sequencer.Sequence;
+import io.smartspaces.sandbox.service.sequencer.Sequencer;
+import io.smartspaces.sandbox.service.sequencer.trace.SequenceTracer;
+import io.smartspaces.sandbox.util.timer.HierarchicalTimerWheel;
+import io.smartspaces.system.SmartSpacesEnvironment;
+
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.google.common.collect.Sets;
+import org.apache.commons.logging.Log;
+
+/**
+ * A sequencer whose delays are entries in a {@link HierarchicalTimerWheel}.
+ *
+ * <p>
+ * Each sequence is compiled into a
+ * {@link io.smartspaces.sandbox.service.sequencer.program.SequenceProgram}, a
+ * small state machine which is advanced from one delay to the next. A waiting
+ * sequence is a single wheel entry, so one wheel thread can drive tens of
+ * thousands of active sequences with tick precision. Shutting a sequence down
+ * unlinks its wheel entry in constant time.
+ *
+ * <p>
+ * By default the elements between delays run on the executor of the space
+ * environment, so an element which blocks, such as an action making a network
+ * call, does not hold up the delays of every other sequence. Sequences whose
+ * elements never block can opt in to {@link #INLINE_CONTINUATIONS} to save the
+ * hand off.
+ *
+ * @author Keith M. Hughes
+ */
+public class TimerWheelSequencer implements Sequencer {
+
+  /**
+   * The continuation executor which runs continuations on the wheel thread.
+   * Only for sequences whose elements never block.
+   */
+  public static final Executor INLINE_CONTINUATIONS = Runnable::run;
+
+  /**
+   * The space environment for the sequencer.
+   */
+  private final SmartSpacesEnvironment spaceEnvironment;
+
+  /**
+   * The timer wheel for delays.
+   */
+  private final HierarchicalTimerWheel timerWheel;
+
+  /**
+   * {@code true} if the sequencer created the wheel and so manages its life.
+   */
+  private final boolean ownsTimerWheel;
+
+  /**
+   * The executor for continuations.
+   */
+  private final Executor continuationExecutor;
+
+  /**
+   * The sequences which have been started and not yet finished.
+   */
+  private final Set<TimerWheelSequence> activeSequences = Sets.newConcurrentHashSet();
+
+  /**
+   * The logger for the sequencer.
+   */
+  private final Log log;
+
+  /**
+   * The tracer for elements, {@code null} if elements are not traced.
+   */
+  private volatile SequenceTracer tracer;
+
+  /**
+   * Construct a sequencer with its own timer wheel which runs continuations on
+   * the executor of the space environment.
+   *
+   * @param spaceEnvironment
+   *          the space environment to execute under
+   * @param log
+   *          the logger to use
+   */
+  public TimerWheelSequencer(SmartSpacesEnvironment spaceEnvironment, Log log) {
+    this.spaceEnvironment = spaceEnvironment;
+    this.timerWheel = new HierarchicalTimerWheel(log);
+    this.ownsTimerWheel = true;
+    this.continuationExecutor = spaceEnvironment.getExecutorService();
+    this.log = log;
+  }
+
+  /**
+   * Construct a sequencer on a shared timer wheel.
+   *
+   * <p>
+   * The caller is responsible for starting and shutting down the wheel.
+   *
+   * @param spaceEnvironment
+   *          the space environment to execute under
+   * @param timerWheel
+   *          the timer wheel for delays
+   * @param continuationExecutor
+   *          the executor for continuations, {@link #INLINE_CONTINUATIONS} to
+   *          run them on the wheel thread, {@code null} for the executor of
+   *          the space environment
+   * @param log
+   *          the logger to use
+   */
+  public TimerWheelSequencer(SmartSpacesEnvironment spaceEnvironment,
+      HierarchicalTimerWheel timerWheel, Executor continuationExecutor, Log log) {
+    this.spaceEnvironment = spaceEnvironment;
+    this.timerWheel = timerWheel;
+    this.ownsTimerWheel = false;
+    this.continuationExecutor = (continuationExecutor != null) ? continuationExecutor
+        : spaceEnvironment.getExecutorService();
+    this.log = log;
+  }
+
+  @Override
+  public void startup() {
+    if (ownsTimerWheel) {
+      timerWheel.startup();
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    for (TimerWheelSequence sequence : activeSequences) {
+      sequence.shutdown();
+    }
+
+    if (ownsTimerWheel) {
+      timerWheel.shutdown();
+    }
+  }
+
+  @Override
+  public Sequence newSequence() {
+    return new TimerWheelSequence(this);
+  }
+
+  @Override
+  public Log getLog() {
+    return log;
+  }
+
+  @Override
+  public ScheduledExecutorService getExecutorService() {
+    return spaceEnvironment.getExecutorService();
+  }
+
+  @Override
+  public void setTracer(SequenceTracer tracer) {
+    this.tracer = tracer;
+  }
+
+  @Override
+  public SequenceTracer getTracer() {
+    return tracer;
+  }
+
+  /**
+   * Get the number of sequences which have been started and not yet finished.
+   *
+   * @return the number of active sequences
+   */
+  public int getNumberActiveSequences() {
+    return activeSequences.size();
+  }
+
+  /**
+   * A sequence has started.
+   *
+   * @param sequence
+   *          the sequence
+   */
+  void sequenceStarted(TimerWheelSequence sequence) {
+    activeSequences.add(sequence);
+  }
+
+  /**
+   * A sequence has finished, whether it completed, failed, or was shut down.
+   *
+   * @param sequence
+   *          the sequence
+   */
+  void sequenceEnded(TimerWheelSequence sequence) {
+    activeSequences.remove(sequence);
+  }
+
+  /**
+   * Get the timer wheel.
+   *
+   * @return the timer wheel
+   */
+  HierarchicalTimerWheel getTimerWheel() {
+    return timerWheel;
+  }
+
+  /**
+   * Get the executor for continuations.
+   *
+   * @return the executor, {@link #INLINE_CONTINUATIONS} to run on the wheel
+   *         thread
+   */
+  Executor getContinuationExecutor() {
+    return continuationExecutor;
+  }
+
+  /**
+   * Get the space environment.
+   *
+   * @return the space environment
+   */
+  SmartSpacesEnvironment getSpaceEnvironment() {
+    return spaceEnvironment;
+  }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.util.timer;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.util.resource.ManagedResource;
+
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+
+/**
+ * A hierarchical timer wheel.
+ *
+ * <p>
+ * Each level of the wheel is a ring of buckets. A bucket on level {@code n}
+ * covers {@code wheelSize^n} ticks. A timeout is placed on the lowest level
+ * whose ring spans its deadline, and is moved down a level each time the wheel
+ * reaches its bucket, until it expires from the bottom level. Scheduling and
+ * cancelling are constant time, and advancing the wheel only touches the
+ * buckets for the ticks which have passed.
+ *
+ * <p>
+ * The wheel can be advanced by hand with {@link #advanceTo(long)}, or started
+ * as a managed resource, in which case a single thread advances the wheel every
+ * tick and runs the expired tasks. Tasks run by the wheel thread must be short,
+ * anything long should be handed to an executor.
+ *
+ * @author Keith M. Hughes
+ */
+public class HierarchicalTimerWheel implements ManagedResource {
+
+  /**
+   * The default duration of a tick, in milliseconds.
+   */
+  public static final long TICK_DURATION_DEFAULT = 1;
+
+  /**
+   * The default number of buckets on each level.
+   */
+  public static final int WHEEL_SIZE_DEFAULT = 256;
+
+  /**
+   * The default number of levels.
+   */
+  public static final int NUMBER_LEVELS_DEFAULT = 4;
+
+  /**
+   * The duration of a tick, in nanoseconds.
+   */
+  private final long tickDuration;
+
+  /**
+   * The number of buckets on each level.
+   */
+  private final int wheelSize;
+
+  /**
+   * The buckets for each level.
+   */
+  private final TimerWheelTimeout[][] levels;
+
+  /**
+   * The number of ticks covered by a bucket on each level.
+   */
+  private final long[] levelSpans;
+
+  /**
+   * The time of tick 0, as a {@link System#nanoTime()} value.
+   */
+  private final long startTime;
+
+  /**
+   * The last tick which has been processed.
+   */
+  private long currentTick;
+
+  /**
+   * The number of timeouts waiting in the wheel.
+   */
+  private int numberPending;
+
+  /**
+   * The logger for task failures.
+   */
+  private final Log log;
+
+  /**
+   * The thread advancing the wheel, {@code null} if not started.
+   */
+  private Thread wheelThread;
+
+  /**
+   * {@code true} while the wheel thread should keep running.
+   */
+  private volatile boolean running;
+
+  /**
+   * Construct a wheel with the default tick duration and size.
+   *
+   * @param log
+   *          the logger for task failures
+   */
+  public HierarchicalTimerWheel(Log log) {
+    this(TICK_DURATION_DEFAULT, TimeUnit.MILLISECONDS, WHEEL_SIZE_DEFAULT, NUMBER_LEVELS_DEFAULT,
+        log);
+  }
+
+  /**
+   * Construct a wheel.
+   *
+   * @param tickDuration
+   *          the duration of a tick
+   * @param unit
+   *          the unit for the tick duration
+   * @param wheelSize
+   *          the number of buckets on each level
+   * @param numberLevels
+   *          the number of levels, timeouts further out than the top level
+   *          covers are carried around the top level until they are in range
+   * @param log
+   *          the logger for task failures
+   */
+  public HierarchicalTimerWheel(long tickDuration, TimeUnit unit, int wheelSize,
+      int numberLevels, Log log) {
+    if (tickDuration <= 0 || wheelSize < 2 || numberLevels < 1) {
+      throw SimpleSmartSpacesException.newFormattedException(
+          "Illegal timer wheel tick duration %d, size %d, or levels %d", tickDuration, wheelSize,
+          numberLevels);
+    }
+
+    this.tickDuration = unit.toNanos(tickDuration);
+    this.wheelSize = wheelSize;
+    this.log = log;
+
+    levels = new TimerWheelTimeout[numberLevels][wheelSize];
+    levelSpans = new long[numberLevels];
+    long span = 1;
+    for (int level = 0; level < numberLevels; level++) {
+      levelSpans[level] = span;
+      span *= wheelSize;
+
+      for (int bucket = 0; bucket < wheelSize; bucket++) {
+        levels[level][bucket] = new TimerWheelTimeout();
+      }
+    }
+
+    startTime = System.nanoTime();
+  }
+
+  @Override
+  public synchronized void startup() {
+    if (wheelThread != null) {
+      return;
+    }
+
+    running = true;
+    ThreadFactory threadFactory =
+        new ThreadFactoryBuilder().setNameFormat("timer-wheel-%d").setDaemon(true).build();
+    wheelThread = threadFactory.newThread(() -> runWheel());
+    wheelThread.start();
+  }
+
+  @Override
+  public void shutdown() {
+    Thread thread;
+    synchronized (this) {
+      thread = wheelThread;
+      wheelThread = null;
+      running = false;
+    }
+
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      try {
+        thread.join(TimeUnit.NANOSECONDS.toMillis(tickDuration) + 1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Schedule a task to run after a delay.
+   *
+   * @param task
+   *          the task to run
+   * @param delay
+   *          the delay before the task is run
+   * @param unit
+   *          the unit for the delay
+   *
+   * @return the timeout for the task
+   */
+  public TimerWheelTimeout schedule(Runnable task, long delay, TimeUnit unit) {
+    return scheduleAt(task, System.nanoTime() + unit.toNanos(delay));
+  }
+
+  /**
+   * Schedule a task to run at a given time.
+   *
+   * <p>
+   * A deadline in the past runs the task on the next tick.
+   *
+   * @param task
+   *          the task to run
+   * @param deadline
+   *          when the task should run, as a {@link System#nanoTime()} value
+   *
+   * @return the timeout for the task
+   */
+  public synchronized TimerWheelTimeout scheduleAt(Runnable task, long deadline) {
+    // Round up so a task never runs before its deadline.
+    long deadlineTick = -Math.floorDiv(-(deadline - startTime), tickDuration);
+    deadlineTick = Math.max(deadlineTick, currentTick + 1);
+
+    TimerWheelTimeout timeout = new TimerWheelTimeout(this, task, deadline, deadlineTick);
+    place(timeout);
+    numberPending++;
+
+    return timeout;
+  }
+
+  /**
+   * Get the number of timeouts waiting in the wheel.
+   *
+   * @return the number of pending timeouts
+   */
+  public synchronized int getNumberPending() {
+    return numberPending;
+  }
+
+  /**
+   * Get the duration of a tick.
+   *
+   * @return the tick duration, in nanoseconds
+   */
+  public long getTickDuration() {
+    return tickDuration;
+  }
+
+  /**
+   * Advance the wheel to a given time and run every task which has expired.
+   *
+   * <p>
+   * Tasks are run on the calling thread, in deadline tick order, after the
+   * wheel lock has been released, so tasks can schedule new timeouts.
+   *
+   * @param now
+   *          the time to advance to, as a {@link System#nanoTime()} value
+   *
+   * @return the number of tasks run
+   */
+  public int advanceTo(long now) {
+    List<TimerWheelTimeout> expired = Lists.newArrayList();
+    synchronized (this) {
+      long targetTick = Math.floorDiv(now - startTime, tickDuration);
+      while (currentTick < targetTick) {
+        processTick(++currentTick, expired);
+      }
+    }
+
+    for (TimerWheelTimeout timeout : expired) {
+      try {
+        timeout.getTask().run();
+      } catch (Throwable e) {
+        log.error("Timer wheel task failed", e);
+      }
+    }
+
+    return expired.size();
+  }
+
+  /**
+   * Cancel a timeout.
+   *
+   * @param timeout
+   *          the timeout to cancel
+   *
+   * @return {@code true} if the timeout was cancelled by this call
+   */
+  synchronized boolean cancel(TimerWheelTimeout timeout) {
+    if (timeout.bucket == null) {
+      return false;
+    }
+
+    timeout.unlink();
+    timeout.markCancelled();
+    numberPending--;
+
+    return true;
+  }
+
+  /**
+   * Process a single tick.
+   *
+   * @param tick
+   *          the tick
+   * @param expired
+   *          the list to add expired timeouts to
+   */
+  private void processTick(long tick, List<TimerWheelTimeout> expired) {
+    // Move timeouts down from the highest level first, so anything landing in
+    // the bottom bucket for this tick expires this tick.
+    for (int level = levels.length - 1; level > 0; level--) {
+      long span = levelSpans[level];
+      TimerWheelTimeout bucket = levels[level][(int) ((tick / span) % wheelSize)];
+      if (tick % span == 0 && !bucket.isEmpty()) {
+        // Empty the bucket before placing, a timeout beyond the top level can
+        // land back in the same bucket.
+        List<TimerWheelTimeout> cascaded = Lists.newArrayList();
+        while (!bucket.isEmpty()) {
+          TimerWheelTimeout timeout = bucket.next;
+          timeout.unlink();
+          cascaded.add(timeout);
+        }
+        for (TimerWheelTimeout timeout : cascaded) {
+          place(timeout);
+        }
+      }
+    }
+
+    TimerWheelTimeout bucket = levels[0][(int) (tick % wheelSize)];
+    while (!bucket.isEmpty()) {
+      TimerWheelTimeout timeout = bucket.next;
+      timeout.unlink();
+      timeout.markExpired();
+      numberPending--;
+      expired.add(timeout);
+    }
+  }
+
+  /**
+   * Place a timeout in the bucket for its deadline relative to the current
+   * tick.
+   *
+   * @param timeout
+   *          the timeout
+   */
+  private void place(TimerWheelTimeout timeout) {
+    long ticksAway = Math.max(timeout.deadlineTick - currentTick, 0);
+
+    int level = 0;
+    while (level < levels.length - 1 && ticksAway >= levelSpans[level + 1]) {
+      level++;
+    }
+
+    long deadlineTick = Math.max(timeout.deadlineTick, currentTick);
+    levels[level][(int) ((deadlineTick / levelSpans[level]) % wheelSize)].append(timeout);
+  }
+
+  /**
+   * Advance the wheel in real time until shut down.
+   */
+  private void runWheel() {
+    long nextTickTime = startTime + (currentTickSnapshot() + 1) * tickDuration;
+    while (running) {
+      long now = System.nanoTime();
+      if (now < nextTickTime) {
+        LockSupport.parkNanos(this, nextTickTime - now);
+        continue;
+      }
+
+      advanceTo(now);
+      nextTickTime = startTime + (currentTickSnapshot() + 1) * tickDuration;
+    }
+  }
+
+  /**
+   * Get the current tick.
+   *
+   * @return the last tick processed
+   */
+  private synchronized long currentTickSnapshot() {
+    return currentTick;
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.util.timer;
+
+/**
+ * A task scheduled on a {@link HierarchicalTimerWheel}.
+ *
+ * <p>
+ * The timeout is a node in a doubly linked list for its wheel bucket, so
+ * cancelling it only unlinks the node.
+ *
+ * @author Keith M. Hughes
+ */
+public class TimerWheelTimeout {
+
+  /**
+   * The wheel the timeout was scheduled on.
+   */
+  private final HierarchicalTimerWheel wheel;
+
+  /**
+   * The task to run when the timeout expires.
+   */
+  private final Runnable task;
+
+  /**
+   * The deadline for the timeout, as a {@link System#nanoTime()} value.
+   */
+  private final long deadline;
+
+  /**
+   * The wheel tick the timeout expires on.
+   */
+  final long deadlineTick;
+
+  /**
+   * The bucket holding the timeout, {@code null} if in no bucket.
+   */
+  TimerWheelTimeout bucket;
+
+  /**
+   * The previous timeout in the bucket.
+   */
+  TimerWheelTimeout previous;
+
+  /**
+   * The next timeout in the bucket.
+   */
+  TimerWheelTimeout next;
+
+  /**
+   * {@code true} if the timeout has been cancelled.
+   */
+  private volatile boolean cancelled;
+
+  /**
+   * {@code true} if the timeout has expired.
+   */
+  private volatile boolean expired;
+
+  /**
+   * Construct a bucket head, which links to itself.
+   */
+  TimerWheelTimeout() {
+    this(null, null, 0, 0);
+  }
+
+  /**
+   * Construct a new timeout.
+   *
+   * @param wheel
+   *          the wheel the timeout was scheduled on
+   * @param task
+   *          the task to run
+   * @param deadline
+   *          the deadline, as a {@link System#nanoTime()} value
+   * @param deadlineTick
+   *          the wheel tick the timeout expires on
+   */
+  TimerWheelTimeout(HierarchicalTimerWheel wheel, Runnable task, long deadline,
+      long deadlineTick) {
+    this.wheel = wheel;
+    this.task = task;
+    this.deadline = deadline;
+    this.deadlineTick = deadlineTick;
+
+    previous = this;
+    next = this;
+  }
+
+  /**
+   * Get the task for the timeout.
+   *
+   * @return the task
+   */
+  public Runnable getTask() {
+    return task;
+  }
+
+  /**
+   * Get the deadline for the timeout.
+   *
+   * @return the deadline, as a {@link System#nanoTime()} value
+   */
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Cancel the timeout.
+   *
+   * <p>
+   * Does nothing if the timeout has already expired or been cancelled.
+   *
+   * @return {@code true} if the timeout was cancelled by this call
+   */
+  public boolean cancel() {
+    return wheel.cancel(this);
+  }
+
+  /**
+   * Has the timeout been cancelled?
+   *
+   * @return {@code true} if cancelled
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Has the timeout expired?
+   *
+   * @return {@code true} if the task has been, or is being, run
+   */
+  public boolean isExpired() {
+    return expired;
+  }
+
+  /**
+   * Mark the timeout cancelled.
+   */
+  void markCancelled() {
+    cancelled = true;
+  }
+
+  /**
+   * Mark the timeout expired.
+   */
+  void markExpired() {
+    expired = true;
+  }
+
+  /**
+   * Add a timeout to the end of this bucket.
+   *
+   * @param timeout
+   *          the timeout to add
+   */
+  void append(TimerWheelTimeout timeout) {
+    timeout.bucket = this;
+    timeout.previous = previous;
+    timeout.next = this;
+    previous.next = timeout;
+    previous = timeout;
+  }
+
+  /**
+   * Remove the timeout from its bucket.
+   */
+  void unlink() {
+    previous.next = next;
+    next.previous = previous;
+    previous = this;
+    next = this;
+    bucket = null;
+  }
+
+  /**
+   * Is this bucket empty?
+   *
+   * @return {@code true} if the bucket has no timeouts
+   */
+  boolean isEmpty() {
+    return next == this;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action;
+
+import io.smartspaces.sandbox.service.action.RunStatistics;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link ActionSchedulerMetrics}.
+ *
+ * @author Keith M. Hughes
+ */
+public class ActionSchedulerMetricsTest {
+  private ActionSchedulerMetrics metrics;
+
+  @Before
+  public void setup() {
+    metrics = new ActionSchedulerMetrics(10, () -> 42, () -> 10, () -> 3);
+  }
+
+  /**
+   * Test the lateness histogram, percentiles and misfires.
+   */
+  @Test
+  public void testLateness() {
+    for (int i = 0; i < 98; i++) {
+      metrics.recordFiring(3);
+    }
+    metrics.recordFiring(150);
+    metrics.recordFiring(30000);
+
+    long[] histogram = metrics.getLatenessHistogram();
+    Assert.assertEquals(98, histogram[2]);
+    Assert.assertEquals(1, histogram[7]);
+    Assert.assertEquals(1, histogram[ActionSchedulerMetrics.LATENESS_BUCKET_BOUNDS.length]);
+
+    Assert.assertEquals(100, metrics.getNumberFirings());
+    Assert.assertEquals(5, metrics.getLatenessPercentile(50));
+    Assert.assertEquals(200, metrics.getLatenessPercentile(99));
+    Assert.assertEquals(30000, metrics.getLatenessPercentile(100));
+    Assert.assertEquals(30000, metrics.getMaximumLateness());
+    Assert.assertEquals(1, metrics.getNumberMisfires());
+  }
+
+  /**
+   * Test that a late firing from a scheduler which reports its own misfires is
+   * only counted once.
+   */
+  @Test
+  public void testReportedMisfires() {
+    metrics.recordMisfires(1);
+    metrics.recordFiring(30000, false);
+
+    Assert.assertEquals(1, metrics.getNumberFirings());
+    Assert.assertEquals(30000, metrics.getMaximumLateness());
+    Assert.assertEquals(1, metrics.getNumberMisfires());
+  }
+
+  /**
+   * Test the pool gauges and per source execution times.
+   */
+  @Test
+  public void testPoolAndExecutions() {
+    metrics.recordSaturatedFirings(5);
+    metrics.recordExecution("lights", 2000000, false);
+    metrics.recordExecution("lights", 4000000, true);
+
+    Assert.assertEquals(42, metrics.getNumberPendingJobs());
+    Assert.assertEquals(3, metrics.getNumberQueuedFirings());
+    Assert.assertEquals(1.0, metrics.getPoolSaturation(), 0.0001);
+    Assert.assertEquals(5, metrics.getNumberSaturatedFirings());
+
+    RunStatistics statistics = metrics.getActionSourceStatistics("lights");
+    Assert.assertEquals(2, statistics.getNumberRuns());
+    Assert.assertEquals(1, statistics.getNumberFailures());
+    Assert.assertEquals(3000000, statistics.getAverageDuration());
+    Assert.assertEquals(4000000, statistics.getMaximumDuration());
+    Assert.assertTrue(metrics.getSummary().contains("lights 2 runs avg 3 ms max 4 ms"));
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * Tests for the {@link CronSchedule}.
+ *
+ * @author Keith M. Hughes
+ */
+public class CronScheduleTest {
+
+  /**
+   * Test a schedule firing every few seconds.
+   */
+  @Test
+  public void testSecondSteps() {
+    CronSchedule schedule = CronSchedule.parse("0/15 * * * * ?", ZoneOffset.UTC);
+
+    Assert.assertEquals(time(2016, 3, 1, 10, 0, 15),
+        schedule.getNextFireTime(time(2016, 3, 1, 10, 0, 0)));
+    Assert.assertEquals(time(2016, 3, 1, 10, 1, 0),
+        schedule.getNextFireTime(time(2016, 3, 1, 10, 0, 50)));
+  }
+
+  /**
+   * Test a step as large as the field allows.
+   */
+  @Test
+  public void testLargestStep() {
+    CronSchedule schedule = CronSchedule.parse("0/59 * * * * ?", ZoneOffset.UTC);
+
+    Assert.assertEquals(time(2016, 3, 1, 10, 0, 59),
+        schedule.getNextFireTime(time(2016, 3, 1, 10, 0, 0)));
+    Assert.assertEquals(time(2016, 3, 1, 10, 1, 0),
+        schedule.getNextFireTime(time(2016, 3, 1, 10, 0, 59)));
+  }
+
+  /**
+   * Test that a step larger than the field allows is rejected rather than
+   * overflowing.
+   */
+  @Test(expected = SimpleSmartSpacesException.class)
+  public void testStepTooLarge() {
+    CronSchedule.parse("30/2147483647 * * * * ?");
+  }
+
+  /**
+   * Test a daily schedule rolling over the end of a month and year.
+   */
+  @Test
+  public void testDailyRollover() {
+    CronSchedule schedule = CronSchedule.parse("0 30 18 * * ?", ZoneOffset.UTC);
+
+    Assert.assertEquals(time(2016, 3, 1, 18, 30, 0),
+        schedule.getNextFireTime(time(2016, 2, 29, 19, 0, 0)));
+    Assert.assertEquals(time(2017, 1, 1, 18, 30, 0),
+        schedule.getNextFireTime(time(2016, 12, 31, 18, 30, 0)));
+  }
+
+  /**
+   * Test days of the week by name and ranges of hours.
+   */
+  @Test
+  public void testDaysOfWeek() {
+    CronSchedule schedule = CronSchedule.parse("0 0 9-17/4 ? * MON-FRI", ZoneOffset.UTC);
+
+    // 2016-03-05 is a Saturday.
+    Assert.assertEquals(time(2016, 3, 7, 9, 0, 0),
+        schedule.getNextFireTime(time(2016, 3, 5, 12, 0, 0)));
+    Assert.assertEquals(time(2016, 3, 7, 13, 0, 0),
+        schedule.getNextFireTime(time(2016, 3, 7, 9, 0, 0)));
+    Assert.assertEquals(time(2016, 3, 8, 9, 0, 0),
+        schedule.getNextFireTime(time(2016, 3, 7, 17, 0, 0)));
+  }
+
+  /**
+   * Test that a schedule limited to past years never fires.
+   */
+  @Test
+  public void testYearsExhausted() {
+    CronSchedule schedule = CronSchedule.parse("0 0 0 1 JAN ? 2015", ZoneOffset.UTC);
+
+    Assert.assertEquals(CronSchedule.NO_FIRE_TIME,
+        schedule.getNextFireTime(time(2016, 3, 1, 0, 0, 0)));
+  }
+
+  /**
+   * Test that unsupported forms are rejected.
+   */
+  @Test(expected = SimpleSmartSpacesException.class)
+  public void testUnsupported() {
+    CronSchedule.parse("0 0 0 L * ?");
+  }
+
+  /**
+   * Get a UTC time.
+   *
+   * @return the time in milliseconds since the epoch
+   */
+  private long time(int year, int month, int day, int hour, int minute, int second) {
+    return ZonedDateTime.of(year, month, day, hour, minute, second, 0, ZoneOffset.UTC).toInstant()
+        .toEpochMilli();
+  }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+import io.smartspaces.configuration.Configuration;
+import io.smartspaces.sandbox.service.action.Action;
+import io.smartspaces.sandbox.service.action.ActionService;
+import io.smartspaces.system.SmartSpacesEnvironment;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link ScheduledJobStore} and recovering jobs in the
+ * {@link TimerWheelActionSchedulerService}.
+ *
+ * @author Keith M. Hughes
+ */
+public class ScheduledJobStoreTest {
+  private File directory;
+  private SmartSpacesEnvironment spaceEnvironment;
+  private Configuration configuration;
+  private ActionService actionService;
+  private AtomicInteger performed;
+  private TimerWheelJobMarker marker;
+  private TimerWheelActionSchedulerService scheduler;
+
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("jobstore").toFile();
+
+    spaceEnvironment = Mockito.mock(SmartSpacesEnvironment.class);
+    Mockito.when(spaceEnvironment.getLog()).thenReturn(Mockito.mock(Log.class));
+    configuration = Mockito.mock(Configuration.class);
+    Mockito.when(spaceEnvironment.getSystemConfiguration()).thenReturn(configuration);
+
+    performed = new AtomicInteger();
+    Action action = (context) -> performed.incrementAndGet();
+
+    actionService = Mockito.mock(ActionService.class);
+    Mockito.when(actionService.getAction("source", null, "action")).thenReturn(action);
+    marker = new TimerWheelJobMarker();
+    Mockito.when(actionService.getAction(TimerWheelJobMarker.ACTION_SOURCE, null,
+        TimerWheelJobMarker.ACTION_NAME)).thenReturn(marker.getAction());
+  }
+
+  @After
+  public void cleanup() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+    }
+
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  /**
+   * Test that jobs and their data survive a restart.
+   */
+  @Test
+  public void testRestart() throws Exception {
+    scheduler = newScheduler(MisfirePolicy.FIRE_ONCE);
+
+    int numberJobs = 100000;
+    Date when = new Date(System.currentTimeMillis() + 3600000);
+    Map<String, Object> data = Maps.newHashMap();
+    data.put("brightness", 0.5);
+    data.put("lights", Lists.newArrayList("kitchen", "hall"));
+    for (int i = 0; i < numberJobs; i++) {
+      scheduler.schedule("job" + i, "lights", "source", "action", data, when);
+    }
+    scheduler.scheduleWithCron("cron", null, "source", "action", "0 0 0 * * ?");
+    scheduler.unschedule("job0", "lights");
+    scheduler.shutdown();
+
+    scheduler = newScheduler(MisfirePolicy.FIRE_ONCE);
+
+    Assert.assertEquals(numberJobs, scheduler.getNumberJobs());
+    Assert.assertEquals(0, performed.get());
+
+    scheduler.shutdown();
+    ScheduledJobStore store = new ScheduledJobStore(directory);
+    Map<String, ScheduledActionJob> jobs = store.load(CronSchedule::parse);
+    store.close();
+
+    ScheduledActionJob job = jobs.get("lights:job1");
+    Assert.assertEquals(when.getTime(), job.getNextFireTime());
+    Assert.assertEquals(0.5, job.getData().get("brightness"));
+    Assert.assertEquals(Lists.newArrayList("kitchen", "hall"), job.getData().get("lights"));
+    Assert.assertEquals("0 0 0 * * ?", jobs.get("DEFAULT:cron").getCronSchedule().getExpression());
+    Assert.assertNull(jobs.get("lights:job0"));
+  }
+
+  /**
+   * Test that a missed cron job fires once with the fire once policy.
+   */
+  @Test
+  public void testMisfireFireOnce() throws Exception {
+    storeMissedJobs();
+    scheduler = newScheduler(MisfirePolicy.FIRE_ONCE);
+
+    waitFor(2);
+
+    Assert.assertEquals(1, scheduler.getNumberJobs());
+  }
+
+  /**
+   * Test that missed jobs do not fire with the skip policy.
+   */
+  @Test
+  public void testMisfireSkip() throws Exception {
+    storeMissedJobs();
+    scheduler = newScheduler(MisfirePolicy.SKIP);
+
+    waitFor(0);
+    Assert.assertEquals(1, scheduler.getNumberJobs());
+  }
+
+  /**
+   * Test that a missed cron job fires for every missed fire time with the
+   * catch up policy.
+   */
+  @Test
+  public void testMisfireCatchUp() throws Exception {
+    storeMissedJobs();
+    scheduler = newScheduler(MisfirePolicy.CATCH_UP);
+
+    waitFor(4);
+
+    Assert.assertEquals(1, scheduler.getNumberJobs());
+  }
+
+  /**
+   * Test that the store and misfire policy are taken from the system
+   * configuration when they are not set on the scheduler.
+   */
+  @Test
+  public void testConfiguredStore() throws Exception {
+    storeMissedJobs();
+    Mockito.when(configuration.getPropertyString(
+        TimerWheelActionSchedulerService.CONFIGURATION_PROPERTY_JOB_STORE_DIRECTORY))
+        .thenReturn(directory.getAbsolutePath());
+    Mockito.when(configuration.getPropertyString(
+        TimerWheelActionSchedulerService.CONFIGURATION_PROPERTY_MISFIRE_POLICY))
+        .thenReturn("catch_up");
+
+    scheduler = new TimerWheelActionSchedulerService(1);
+    scheduler.setSpaceEnvironment(spaceEnvironment);
+    scheduler.setActionService(actionService);
+    scheduler.startup();
+
+    waitFor(4);
+
+    Assert.assertEquals(1, scheduler.getNumberJobs());
+  }
+
+  /**
+   * Test that jobs keep being scheduled and fired while a snapshot of the store
+   * is held up.
+   */
+  @Test
+  public void testFiringDuringSnapshot() throws Exception {
+    final AtomicBoolean blockSnapshots = new AtomicBoolean();
+    final CountDownLatch snapshotStarted = new CountDownLatch(1);
+    final CountDownLatch releaseSnapshot = new CountDownLatch(1);
+    ScheduledJobStore store = new ScheduledJobStore(directory, 1) {
+      @Override
+      synchronized void snapshot(Collection<ScheduledActionJob> jobs) {
+        if (blockSnapshots.get()) {
+          snapshotStarted.countDown();
+          try {
+            releaseSnapshot.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+
+        super.snapshot(jobs);
+      }
+    };
+
+    scheduler = new TimerWheelActionSchedulerService(1);
+    scheduler.setSpaceEnvironment(spaceEnvironment);
+    scheduler.setActionService(actionService);
+    scheduler.setJobStore(store);
+    scheduler.setMisfirePolicy(MisfirePolicy.SKIP);
+    scheduler.startup();
+
+    blockSnapshots.set(true);
+    scheduler.schedule("later", null, "source", "action",
+        new Date(System.currentTimeMillis() + 3600000));
+    Assert.assertTrue(snapshotStarted.await(5, TimeUnit.SECONDS));
+
+    int numberJobs = 10;
+    try {
+      Date when = new Date(System.currentTimeMillis() + 50);
+      for (int i = 0; i < numberJobs; i++) {
+        scheduler.schedule("job" + i, null, "source", "action", when);
+      }
+
+      waitFor(numberJobs, when.getTime());
+    } finally {
+      blockSnapshots.set(false);
+      releaseSnapshot.countDown();
+    }
+    scheduler.shutdown();
+
+    ScheduledJobStore reloaded = new ScheduledJobStore(directory);
+    Map<String, ScheduledActionJob> jobs = reloaded.load(CronSchedule::parse);
+    reloaded.close();
+    Assert.assertEquals(Sets.newHashSet("DEFAULT:later"), jobs.keySet());
+  }
+
+  /**
+   * Test that a log record cut short by a crash is dropped.
+   */
+  @Test
+  public void testTornLog() throws Exception {
+    ScheduledJobStore store = new ScheduledJobStore(directory);
+    store.load(CronSchedule::parse);
+    store.append(store.newAddRecord(newJob("job", null, System.currentTimeMillis() + 3600000)));
+    store.close();
+
+    try (FileOutputStream out =
+        new FileOutputStream(new File(directory, ScheduledJobStore.LOG_FILE_NAME), true)) {
+      out.write(new byte[] { 0, 0, 0, 100, 1, 2, 3 });
+    }
+
+    store = new ScheduledJobStore(directory);
+    Assert.assertEquals(1, store.load(CronSchedule::parse).size());
+    store.append(store.newRemoveRecord("DEFAULT:job"));
+    store.close();
+
+    store = new ScheduledJobStore(directory);
+    Assert.assertEquals(0, store.load(CronSchedule::parse).size());
+    store.close();
+  }
+
+  /**
+   * Store a one shot job and an hourly cron job which both missed three hours
+   * of fire times.
+   */
+  private void storeMissedJobs() {
+    long now = System.currentTimeMillis();
+    CronSchedule hourly = CronSchedule.parse("0 0 * * * ?");
+    long missedFireTime = hourly.getNextFireTime(now - 3 * 3600000);
+
+    ScheduledJobStore store = new ScheduledJobStore(directory);
+    store.load(CronSchedule::parse);
+    store.append(store.newAddRecord(newJob("once", null, now - 1000)));
+    store.append(store.newAddRecord(newJob("hourly", hourly, missedFireTime)));
+    store.close();
+  }
+
+  /**
+   * Create a new job for the test action.
+   *
+   * @param jobName
+   *          the name of the job
+   * @param cronSchedule
+   *          the cron schedule, can be {@code null}
+   * @param nextFireTime
+   *          the next fire time
+   *
+   * @return the job
+   */
+  private ScheduledActionJob newJob(String jobName, CronSchedule cronSchedule,
+      long nextFireTime) {
+    return new ScheduledActionJob("DEFAULT:" + jobName, jobName, "DEFAULT", "source", "action",
+        null, cronSchedule, nextFireTime);
+  }
+
+  /**
+   * Create and start a scheduler using the store directory.
+   *
+   * @param misfirePolicy
+   *          the misfire policy
+   *
+   * @return the scheduler
+   */
+  private TimerWheelActionSchedulerService newScheduler(MisfirePolicy misfirePolicy) {
+    // One firing thread, so the marker shows when earlier jobs have finished.
+    TimerWheelActionSchedulerService newScheduler = new TimerWheelActionSchedulerService(1);
+    newScheduler.setSpaceEnvironment(spaceEnvironment);
+    newScheduler.setActionService(actionService);
+    newScheduler.setJobStore(new ScheduledJobStore(directory));
+    newScheduler.setMisfirePolicy(misfirePolicy);
+    newScheduler.startup();
+
+    return newScheduler;
+  }
+
+  /**
+   * Wait for the jobs fired for missed fire times during startup and check
+   * how many times the action was performed.
+   *
+   * @param expected
+   *          the number of times
+   */
+  private void waitFor(int expected) throws Exception {
+    waitFor(expected, System.currentTimeMillis());
+  }
+
+  /**
+   * Wait for the jobs due by a time and check how many times the action was
+   * performed.
+   *
+   * @param expected
+   *          the number of times
+   * @param time
+   *          the time, in milliseconds since the epoch
+   */
+  private void waitFor(int expected, long time) throws Exception {
+    marker.waitForJobsDueBy(scheduler, time);
+
+    Assert.assertEquals(expected, performed.get());
+  }
+}
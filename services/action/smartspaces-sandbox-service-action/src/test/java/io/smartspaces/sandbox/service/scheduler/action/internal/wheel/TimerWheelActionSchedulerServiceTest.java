@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+import io.smartspaces.configuration.Configuration;
+import io.smartspaces.sandbox.service.action.Action;
+import io.smartspaces.sandbox.service.action.ActionService;
+import io.smartspaces.sandbox.service.action.internal.StandardActionService;
+import io.smartspaces.sandbox.service.scheduler.action.ActionSchedulerMetrics;
+import io.smartspaces.system.SmartSpacesEnvironment;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link TimerWheelActionSchedulerService}.
+ *
+ * @author Keith M. Hughes
+ */
+public class TimerWheelActionSchedulerServiceTest {
+  private TimerWheelActionSchedulerService scheduler;
+  private ActionService actionService;
+  private AtomicInteger performed;
+  private AtomicInteger performedData;
+  private TimerWheelJobMarker marker;
+
+  @Before
+  public void setup() {
+    SmartSpacesEnvironment spaceEnvironment = Mockito.mock(SmartSpacesEnvironment.class);
+    Mockito.when(spaceEnvironment.getLog()).thenReturn(Mockito.mock(Log.class));
+    Mockito.when(spaceEnvironment.getSystemConfiguration())
+        .thenReturn(Mockito.mock(Configuration.class));
+
+    performed = new AtomicInteger();
+    performedData = new AtomicInteger();
+    Action action = (context) -> {
+      performed.incrementAndGet();
+      Object value = context.getValue("value");
+      if (value != null) {
+        performedData.addAndGet((Integer) value);
+      }
+    };
+
+    actionService = Mockito.mock(ActionService.class);
+    Mockito.when(actionService.getAction("source", null, "action")).thenReturn(action);
+    marker = new TimerWheelJobMarker();
+    Mockito.when(actionService.getAction(TimerWheelJobMarker.ACTION_SOURCE, null,
+        TimerWheelJobMarker.ACTION_NAME)).thenReturn(marker.getAction());
+
+    // One firing thread, so the marker shows when earlier jobs have finished.
+    scheduler = new TimerWheelActionSchedulerService(1);
+    scheduler.setSpaceEnvironment(spaceEnvironment);
+    scheduler.setActionService(actionService);
+    scheduler.startup();
+  }
+
+  @After
+  public void cleanup() {
+    scheduler.shutdown();
+  }
+
+  /**
+   * Test that a job fires once with its data.
+   */
+  @Test
+  public void testFireOnce() throws Exception {
+    Map<String, Object> data = Maps.newHashMap();
+    data.put("value", 5);
+    Date when = new Date(System.currentTimeMillis() + 50);
+    scheduler.schedule("job", null, "source", "action", data, when);
+    Assert.assertEquals(1, scheduler.getNumberJobs());
+
+    marker.waitForJobsDueBy(scheduler, when.getTime());
+
+    Assert.assertEquals(1, performed.get());
+    Assert.assertEquals(5, performedData.get());
+    Assert.assertEquals(0, scheduler.getNumberJobs());
+  }
+
+  /**
+   * Test that many jobs due at the same time all fire.
+   */
+  @Test
+  public void testManyJobs() throws Exception {
+    int numberJobs = 100000;
+    Date when = new Date(System.currentTimeMillis() + 200);
+    for (int i = 0; i < numberJobs; i++) {
+      scheduler.schedule("job" + i, "lights", "source", "action", when);
+    }
+
+    waitFor(performed, numberJobs);
+
+    Assert.assertEquals(numberJobs, performed.get());
+  }
+
+  /**
+   * Test that an unscheduled job does not fire.
+   */
+  @Test
+  public void testUnschedule() throws Exception {
+    Date when = new Date(System.currentTimeMillis() + 100);
+    scheduler.schedule("job", null, "source", "action", when);
+    Assert.assertTrue(scheduler.unschedule("job", null));
+
+    marker.waitForJobsDueBy(scheduler, when.getTime());
+
+    Assert.assertEquals(0, performed.get());
+  }
+
+  /**
+   * Test that a cron job fires repeatedly.
+   */
+  @Test
+  public void testCron() throws Exception {
+    scheduler.scheduleWithCron("job", null, "source", "action", "* * * * * ?");
+
+    waitFor(performed, 2);
+
+    Assert.assertEquals(1, scheduler.getNumberJobs());
+  }
+
+  /**
+   * Test that a cron job picks up the action of a source registered again
+   * after the job first fired.
+   */
+  @Test
+  public void testCronFollowsReregisteredSource() throws Exception {
+    StandardActionService standardActionService = new StandardActionService(1);
+    standardActionService.startup();
+    try {
+      final AtomicInteger newPerformed = new AtomicInteger();
+      standardActionService.registerActionSource("source",
+          (actionName) -> (context) -> performed.incrementAndGet());
+      scheduler.setActionService(standardActionService);
+
+      scheduler.scheduleWithCron("job", null, "source", "action", "* * * * * ?");
+      waitFor(performed, 1);
+
+      standardActionService.registerActionSource("source",
+          (actionName) -> (context) -> newPerformed.incrementAndGet());
+      waitFor(newPerformed, 1);
+
+      Assert.assertEquals(1, performed.get());
+    } finally {
+      scheduler.unschedule("job", null);
+      standardActionService.shutdown();
+    }
+  }
+
+  /**
+   * Test that many jobs due at the same instant fire as a batch.
+   */
+  @Test
+  public void testBatchFiring() throws Exception {
+    scheduler.setBatchFiring(true);
+
+    int numberJobs = 10000;
+    Date when = new Date(System.currentTimeMillis() + 200);
+    Map<String, Object> data = Maps.newHashMap();
+    data.put("value", 1);
+    for (int i = 0; i < numberJobs; i++) {
+      scheduler.schedule("job" + i, "lights", "source", "action", data, when);
+    }
+    scheduler.unschedule("job0", "lights");
+
+    marker.waitForJobsDueBy(scheduler, when.getTime());
+
+    Assert.assertEquals(numberJobs - 1, performed.get());
+    Assert.assertEquals(numberJobs - 1, performedData.get());
+    Assert.assertEquals(0, scheduler.getNumberJobs());
+  }
+
+  /**
+   * Test that cron jobs sharing a schedule keep firing as a batch.
+   */
+  @Test
+  public void testBatchFiringCron() throws Exception {
+    scheduler.setBatchFiring(true);
+
+    int numberJobs = 200;
+    for (int i = 0; i < numberJobs; i++) {
+      scheduler.scheduleWithCron("job" + i, null, "source", "action", "* * * * * ?");
+    }
+
+    waitFor(performed, 2 * numberJobs);
+
+    Assert.assertEquals(numberJobs, scheduler.getNumberJobs());
+  }
+
+  /**
+   * Test that firings and executions are recorded in the metrics.
+   */
+  @Test
+  public void testMetrics() throws Exception {
+    int numberJobs = 100;
+    Date when = new Date(System.currentTimeMillis() + 50);
+    for (int i = 0; i < numberJobs; i++) {
+      scheduler.schedule("job" + i, null, "source", "action", when);
+    }
+    scheduler.schedule("later", null, "source", "action",
+        new Date(System.currentTimeMillis() + 3600000));
+
+    ActionSchedulerMetrics metrics = scheduler.getMetrics();
+    Assert.assertEquals(numberJobs + 1, metrics.getNumberPendingJobs());
+
+    marker.waitForJobsDueBy(scheduler, when.getTime());
+
+    // The marker job is also a firing.
+    Assert.assertEquals(1, metrics.getNumberPendingJobs());
+    Assert.assertEquals(numberJobs + 1, metrics.getNumberFirings());
+    Assert.assertEquals(0, metrics.getNumberMisfires());
+    Assert.assertEquals(numberJobs,
+        metrics.getActionSourceStatistics("source").getNumberRuns());
+    Assert.assertEquals(0, metrics.getActionSourceStatistics("source").getNumberFailures());
+    Assert.assertEquals(1, metrics.getFiringThreadPoolSize());
+  }
+
+  /**
+   * Wait for a counter to reach a value.
+   *
+   * @param counter
+   *          the counter
+   * @param expected
+   *          the value to wait for
+   */
+  private void waitFor(AtomicInteger counter, int expected) throws Exception {
+    long end = System.currentTimeMillis() + 5000;
+    while (counter.get() < expected && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+
+    Assert.assertEquals(expected, counter.get());
+  }
+}
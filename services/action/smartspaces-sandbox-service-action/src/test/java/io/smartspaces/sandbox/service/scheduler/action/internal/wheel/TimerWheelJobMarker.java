@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.scheduler.action.internal.wheel;
+
+import io.smartspaces.sandbox.service.action.Action;
+
+import org.junit.Assert;
+
+import java.util.Date;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Marker jobs for tests which show that a timer wheel scheduler has performed
+ * every job due by a time, so a test can check that a job did not fire without
+ * sleeping.
+ *
+ * <p>
+ * A marker job is scheduled a couple of ticks after the time. The wheel fires
+ * jobs in time order, so when the scheduler has a single firing thread every
+ * job due by the time has finished once the marker has run. Jobs fired for
+ * missed fire times during startup are queued before anything the wheel fires.
+ *
+ * @author Keith M. Hughes
+ */
+public class TimerWheelJobMarker {
+
+  /**
+   * The action source for marker jobs.
+   */
+  public static final String ACTION_SOURCE = "marker";
+
+  /**
+   * The action name for marker jobs.
+   */
+  public static final String ACTION_NAME = "marker";
+
+  /**
+   * How long to wait for a marker job before failing, in milliseconds.
+   */
+  public static final long MARKER_TIMEOUT = 5000;
+
+  /**
+   * Released each time a marker job is performed.
+   */
+  private final Semaphore markersPerformed = new Semaphore(0);
+
+  /**
+   * The number of marker jobs scheduled, for unique job names.
+   */
+  private final AtomicInteger numberMarkers = new AtomicInteger();
+
+  /**
+   * The action the action service should give for
+   * {@link #ACTION_SOURCE} and {@link #ACTION_NAME}.
+   */
+  private final Action action = (context) -> markersPerformed.release();
+
+  /**
+   * Get the action for marker jobs.
+   *
+   * @return the action
+   */
+  public Action getAction() {
+    return action;
+  }
+
+  /**
+   * Wait until a scheduler has performed every job due by a time.
+   *
+   * @param scheduler
+   *          the scheduler, which must have one firing thread
+   * @param time
+   *          the time, in milliseconds since the epoch
+   */
+  public void waitForJobsDueBy(TimerWheelActionSchedulerService scheduler, long time)
+      throws InterruptedException {
+    scheduler.schedule("marker" + numberMarkers.incrementAndGet(), ACTION_SOURCE, ACTION_SOURCE,
+        ACTION_NAME, new Date(time + 2 * TimerWheelActionSchedulerService.TICK_DURATION));
+
+    Assert.assertTrue(markersPerformed.tryAcquire(MARKER_TIMEOUT, TimeUnit.MILLISECONDS));
+  }
+}
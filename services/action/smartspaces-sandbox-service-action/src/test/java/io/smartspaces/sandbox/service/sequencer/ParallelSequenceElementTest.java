@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer;
+
+import io.smartspaces.sandbox.service.sequencer.ParallelSequenceElement.JoinMode;
+import io.smartspaces.sandbox.service.sequencer.Sequence.SequenceState;
+import io.smartspaces.sandbox.service.sequencer.scheduled.ScheduledSequencer;
+import io.smartspaces.system.SmartSpacesEnvironment;
+import io.smartspaces.util.events.EventDelay;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link ParallelSequenceElement}.
+ *
+ * @author Keith M. Hughes
+ */
+public class ParallelSequenceElementTest {
+
+  /**
+   * A delay long enough that it never ends during a test, in milliseconds.
+   */
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+  private ScheduledThreadPoolExecutor executorService;
+  private ScheduledSequencer sequencer;
+  private List<String> actual;
+
+  @Before
+  public void setup() {
+    executorService = new ScheduledThreadPoolExecutor(2);
+    executorService.setRemoveOnCancelPolicy(true);
+    sequencer = new ScheduledSequencer(Mockito.mock(SmartSpacesEnvironment.class),
+        executorService, Mockito.mock(Log.class));
+    actual = new CopyOnWriteArrayList<>();
+  }
+
+  @After
+  public void cleanup() {
+    sequencer.shutdown();
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Test that join all waits for every branch.
+   */
+  @Test
+  public void testJoinAll() throws Exception {
+    CountDownLatch fastDone = new CountDownLatch(1);
+
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(
+        SequenceElements.parallel(SequenceElements.group(await(fastDone), record("slow")),
+            SequenceElements.group(record("fast"), countDown(fastDone))),
+        record("after"));
+    sequence.startup();
+
+    SequenceTestSupport.waitForState(sequence, SequenceState.COMPLETED);
+
+    Assert.assertEquals(Lists.newArrayList("fast", "slow", "after"), actual);
+  }
+
+  /**
+   * Test that a race continues on the first branch and cancels the others.
+   */
+  @Test
+  public void testRace() throws Exception {
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(SequenceElements.parallel(JoinMode.RACE, null, branch("slow", HOUR),
+        record("fast")), record("after"));
+    sequence.startup();
+
+    SequenceTestSupport.waitForState(sequence, SequenceState.COMPLETED);
+    waitForNoScheduledWork();
+
+    Assert.assertEquals(Lists.newArrayList("fast", "after"), actual);
+  }
+
+  /**
+   * Test that a timeout fails the sequence and cancels the branches.
+   */
+  @Test
+  public void testTimeout() throws Exception {
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(SequenceElements.parallel(JoinMode.ALL,
+        new EventDelay(50, TimeUnit.MILLISECONDS), branch("slow", HOUR)), record("after"));
+    sequence.startup();
+
+    SequenceTestSupport.waitForState(sequence, SequenceState.ERROR);
+    waitForNoScheduledWork();
+
+    Assert.assertTrue(actual.isEmpty());
+  }
+
+  /**
+   * Test that shutting down the sequence cancels the branches.
+   */
+  @Test
+  public void testShutdownCancelsBranches() throws Exception {
+    CountDownLatch branchesStarted = new CountDownLatch(2);
+
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(SequenceElements.parallel(
+        SequenceElements.group(countDown(branchesStarted), branch("a", HOUR)),
+        SequenceElements.group(countDown(branchesStarted), branch("b", HOUR))));
+    sequence.startup();
+    Assert.assertTrue(branchesStarted.await(5, TimeUnit.SECONDS));
+
+    sequence.shutdown();
+
+    Assert.assertEquals(SequenceState.COMPLETED, sequence.getState());
+    Assert.assertTrue(executorService.getQueue().isEmpty());
+    Assert.assertTrue(actual.isEmpty());
+  }
+
+  /**
+   * Test that shutting down the sequence cancels the branches which lost a
+   * join any and are still running.
+   */
+  @Test
+  public void testShutdownCancelsAnyLosers() throws Exception {
+    CountDownLatch afterJoin = new CountDownLatch(1);
+
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(
+        SequenceElements.parallel(JoinMode.ANY, null, branch("slow", HOUR), record("fast")),
+        record("after"), countDown(afterJoin),
+        SequenceElements.delay(new EventDelay(HOUR, TimeUnit.MILLISECONDS)));
+    sequence.startup();
+    Assert.assertTrue(afterJoin.await(5, TimeUnit.SECONDS));
+
+    // The losing branch may still be on its way to its delay.
+    Assert.assertTrue(
+        SequenceTestSupport.waitUntil(() -> !executorService.getQueue().isEmpty()));
+
+    sequence.shutdown();
+
+    Assert.assertEquals(SequenceState.COMPLETED, sequence.getState());
+    Assert.assertTrue(executorService.getQueue().isEmpty());
+    Assert.assertEquals(Lists.newArrayList("fast", "after"), actual);
+  }
+
+  /**
+   * Test that branches see the values of the sequence but keep the values they
+   * set to themselves.
+   */
+  @Test
+  public void testBranchValues() throws Exception {
+    CountDownLatch bothSet = new CountDownLatch(2);
+
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(context -> context.setValue("shared", "s"),
+        SequenceElements.parallel(
+            SequenceElements.group(context -> context.setValue("branch", "a"),
+                countDown(bothSet), await(bothSet), read("a", "branch"), read("a", "shared")),
+            SequenceElements.group(context -> context.setValue("branch", "b"),
+                countDown(bothSet), await(bothSet), read("b", "branch"), read("b", "shared"))),
+        read("after", "branch"));
+    sequence.startup();
+
+    SequenceTestSupport.waitForState(sequence, SequenceState.COMPLETED);
+
+    Assert.assertEquals(Sets.newHashSet("a=a", "a=s", "b=b", "b=s", "after=null"),
+        Sets.newHashSet(actual));
+    Assert.assertEquals("after=null", actual.get(actual.size() - 1));
+  }
+
+  /**
+   * Create a branch which delays and then records its name.
+   *
+   * @param name
+   *          the name to record
+   * @param delay
+   *          the delay in milliseconds
+   *
+   * @return the branch
+   */
+  private SequenceElement branch(String name, long delay) {
+    return SequenceElements.group(
+        SequenceElements.delay(new EventDelay(delay, TimeUnit.MILLISECONDS)), record(name));
+  }
+
+  /**
+   * Create an element which records a name.
+   *
+   * @param name
+   *          the name to record
+   *
+   * @return the element
+   */
+  private SequenceElement record(String name) {
+    return SequenceElements.runnable(() -> actual.add(name));
+  }
+
+  /**
+   * Create an element which counts down a latch.
+   *
+   * @param latch
+   *          the latch
+   *
+   * @return the element
+   */
+  private SequenceElement countDown(CountDownLatch latch) {
+    return SequenceElements.runnable(() -> latch.countDown());
+  }
+
+  /**
+   * Create an element which waits for a latch.
+   *
+   * @param latch
+   *          the latch
+   *
+   * @return the element
+   */
+  private SequenceElement await(CountDownLatch latch) {
+    return SequenceElements.runnable(() -> {
+      try {
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+  }
+
+  /**
+   * Create an element which records a value from its context.
+   *
+   * @param label
+   *          the label for the recorded value
+   * @param name
+   *          the name of the value
+   *
+   * @return the element
+   */
+  private SequenceElement read(String label, String name) {
+    return context -> actual.add(label + "=" + context.getValue(name));
+  }
+
+  /**
+   * Wait for the executor to have no scheduled work.
+   */
+  private void waitForNoScheduledWork() throws Exception {
+    Assert.assertTrue(
+        SequenceTestSupport.waitUntil(() -> executorService.getQueue().isEmpty()));
+  }
+}
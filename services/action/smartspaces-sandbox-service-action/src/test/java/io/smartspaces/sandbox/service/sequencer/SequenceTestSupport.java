@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.sequencer.Sequence.SequenceState;
+
+import org.junit.Assert;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Helpers shared by the sequencer tests.
+ *
+ * @author Keith M. Hughes
+ */
+public final class SequenceTestSupport {
+
+  /**
+   * How long to wait for something to happen before failing, in milliseconds.
+   */
+  public static final long WAIT_TIMEOUT = 5000;
+
+  /**
+   * How long to sleep between checks while waiting, in milliseconds.
+   */
+  private static final long WAIT_POLL_INTERVAL = 5;
+
+  /**
+   * Wait for a sequence to reach a state.
+   *
+   * @param sequence
+   *          the sequence
+   * @param expected
+   *          the expected state
+   */
+  public static void waitForState(Sequence sequence, SequenceState expected)
+      throws InterruptedException {
+    waitUntil(() -> sequence.getState() == expected);
+
+    Assert.assertEquals(expected, sequence.getState());
+  }
+
+  /**
+   * Wait for a condition to become true, giving up after
+   * {@link #WAIT_TIMEOUT}.
+   *
+   * @param condition
+   *          the condition
+   *
+   * @return {@code true} if the condition became true
+   */
+  public static boolean waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long end = System.currentTimeMillis() + WAIT_TIMEOUT;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() >= end) {
+        return false;
+      }
+      Thread.sleep(WAIT_POLL_INTERVAL);
+    }
+
+    return true;
+  }
+
+  /**
+   * Assert that an operation is rejected.
+   *
+   * @param operation
+   *          the operation
+   */
+  public static void assertRejected(Runnable operation) {
+    assertRejected(operation, "");
+  }
+
+  /**
+   * Assert that an operation is rejected with a message which names
+   * something.
+   *
+   * @param operation
+   *          the operation
+   * @param named
+   *          what the message must contain
+   */
+  public static void assertRejected(Runnable operation, String named) {
+    try {
+      operation.run();
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains(named));
+    }
+  }
+
+  /**
+   * Do not construct.
+   */
+  private SequenceTestSupport() {
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.definition;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.action.Action;
+import io.smartspaces.sandbox.service.action.internal.StandardActionService;
+import io.smartspaces.sandbox.service.sequencer.ParallelSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.ResolvedActionSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.Sequence;
+import io.smartspaces.sandbox.service.sequencer.Sequence.SequenceState;
+import io.smartspaces.sandbox.service.sequencer.SequenceTestSupport;
+import io.smartspaces.sandbox.service.sequencer.scheduled.ScheduledSequencer;
+import io.smartspaces.system.SmartSpacesEnvironment;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link SequenceDefinitionCompiler}.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceDefinitionCompilerTest {
+  private ScheduledThreadPoolExecutor executorService;
+  private ScheduledSequencer sequencer;
+  private StandardActionService actionService;
+  private AtomicInteger numberLookups;
+  private List<Object> performed;
+
+  @Before
+  public void setup() {
+    executorService = new ScheduledThreadPoolExecutor(2);
+    sequencer = new ScheduledSequencer(Mockito.mock(SmartSpacesEnvironment.class),
+        executorService, Mockito.mock(Log.class));
+
+    performed = new CopyOnWriteArrayList<>();
+    Action action = (context) -> performed.add(context.getValue("light"));
+
+    numberLookups = new AtomicInteger();
+    actionService = new StandardActionService(1);
+    actionService.registerActionSource("hue", (actionName) -> {
+      numberLookups.incrementAndGet();
+      return "flash".equals(actionName) ? action : null;
+    });
+  }
+
+  @After
+  public void cleanup() {
+    sequencer.shutdown();
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Test that a definition compiles to the expected elements and can be run
+   * more than once without the actions being found again.
+   */
+  @Test
+  public void testCompileAndRun() throws Exception {
+    Map<String, Object> definitionData = definition("show",
+        element("type", "repeat", "count", 2, "elements",
+            Lists.newArrayList(flash(1), element("type", "delay", "delay", 5))),
+        element("type", "parallel", "join", "all", "branches",
+            Lists.newArrayList(Lists.newArrayList(flash(2)), Lists.newArrayList(flash(3)))));
+
+    SequenceDefinition definition =
+        new SequenceDefinitionCompiler(actionService).compile(definitionData);
+    Assert.assertEquals("show", definition.getName());
+    Assert.assertEquals(2, definition.getElements().size());
+    Assert.assertTrue(definition.getElements().get(1) instanceof ParallelSequenceElement);
+
+    for (int run = 0; run < 2; run++) {
+      Sequence sequence = definition.newSequence(sequencer);
+      sequence.startup();
+      SequenceTestSupport.waitForState(sequence, SequenceState.COMPLETED);
+    }
+
+    Assert.assertEquals(8, performed.size());
+    Assert.assertEquals(Lists.newArrayList(1, 1), performed.subList(0, 2));
+    Assert.assertEquals(1, numberLookups.get());
+  }
+
+  /**
+   * Test that actions are resolved when compiled.
+   */
+  @Test
+  public void testActionsResolved() {
+    SequenceDefinition definition =
+        new SequenceDefinitionCompiler(actionService).compile(definition("show", flash(1)));
+
+    Assert.assertTrue(definition.getElements().get(0) instanceof ResolvedActionSequenceElement);
+  }
+
+  /**
+   * Test that an unknown action is rejected when compiled.
+   */
+  @Test
+  public void testUnknownAction() {
+    SequenceTestSupport.assertRejected(() -> new SequenceDefinitionCompiler(actionService)
+        .compile(definition("show", element("type", "action", "source", "hue", "action", "dim"))));
+  }
+
+  /**
+   * Test that a compiled action element performs the action of a source
+   * registered again after it was compiled.
+   */
+  @Test
+  public void testReregisteredSource() throws Exception {
+    SequenceDefinition definition =
+        new SequenceDefinitionCompiler(actionService).compile(definition("show", flash(1)));
+
+    final List<Object> newPerformed = new CopyOnWriteArrayList<>();
+    actionService.registerActionSource("hue",
+        (actionName) -> (context) -> newPerformed.add(context.getValue("light")));
+
+    Sequence sequence = definition.newSequence(sequencer);
+    sequence.startup();
+    SequenceTestSupport.waitForState(sequence, SequenceState.COMPLETED);
+
+    Assert.assertTrue(performed.isEmpty());
+    Assert.assertEquals(Lists.newArrayList(1), newPerformed);
+  }
+
+  /**
+   * Test that several definitions can be compiled together.
+   */
+  @Test
+  public void testCompileAll() {
+    Map<String, Object> data = Maps.newHashMap();
+    data.put(SequenceDefinitionCompiler.FIELD_SEQUENCES,
+        Lists.newArrayList(definition("a", flash(1)), definition("b", flash(2))));
+
+    Map<String, SequenceDefinition> definitions =
+        new SequenceDefinitionCompiler().compileAll(data);
+
+    Assert.assertEquals(Lists.newArrayList("a", "b"), Lists.newArrayList(definitions.keySet()));
+  }
+
+  /**
+   * Test that an unknown element type is rejected.
+   */
+  @Test(expected = SimpleSmartSpacesException.class)
+  public void testUnknownType() {
+    new SequenceDefinitionCompiler().compile(definition("show", element("type", "bogus")));
+  }
+
+  /**
+   * Test that repeat counts which are not positive are rejected.
+   */
+  @Test
+  public void testRepeatCountNotPositive() {
+    SequenceTestSupport.assertRejected(
+        () -> new SequenceDefinitionCompiler().compile(definition("show", repeat(0))), "0");
+    SequenceTestSupport.assertRejected(
+        () -> new SequenceDefinitionCompiler().compile(definition("show", repeat(-2))), "-2");
+  }
+
+  /**
+   * Test that repeat counts too large for an int are rejected rather than
+   * truncated.
+   */
+  @Test
+  public void testRepeatCountTooLarge() {
+    long count = Integer.MAX_VALUE + 1L;
+    SequenceTestSupport.assertRejected(
+        () -> new SequenceDefinitionCompiler().compile(definition("show", repeat(count))),
+        Long.toString(count));
+  }
+
+  /**
+   * Test that definitions and elements which are not maps are rejected.
+   */
+  @Test
+  public void testNotMaps() {
+    Map<String, Object> data = Maps.newHashMap();
+    data.put(SequenceDefinitionCompiler.FIELD_SEQUENCES, Lists.newArrayList("show"));
+    SequenceTestSupport.assertRejected(() -> new SequenceDefinitionCompiler().compileAll(data),
+        "show");
+
+    SequenceTestSupport.assertRejected(() -> new SequenceDefinitionCompiler()
+        .compile(element("name", "show", "elements", Lists.newArrayList("flash"))), "show");
+
+    SequenceTestSupport.assertRejected(() -> new SequenceDefinitionCompiler().compile(
+        definition("show", element("type", "group", "elements", Lists.newArrayList(flash(1), 7)))),
+        "7");
+
+    SequenceTestSupport.assertRejected(() -> new SequenceDefinitionCompiler().compile(
+        definition("show", element("type", "action", "source", "hue", "action", "flash", "data",
+            "bright"))),
+        "bright");
+  }
+
+  /**
+   * Create a definition description.
+   *
+   * @param name
+   *          the name of the definition
+   * @param elements
+   *          the element descriptions
+   *
+   * @return the definition description
+   */
+  @SafeVarargs
+  private final Map<String, Object> definition(String name, Map<String, Object>... elements) {
+    return element("name", name, "elements", Lists.newArrayList(elements));
+  }
+
+  /**
+   * Create an action element description.
+   *
+   * @param light
+   *          the light for the action data
+   *
+   * @return the element description
+   */
+  private Map<String, Object> flash(int light) {
+    Map<String, Object> data = Maps.newHashMap();
+    data.put("light", light);
+
+    return element("type", "action", "source", "hue", "action", "flash", "data", data);
+  }
+
+  /**
+   * Create a repeat element description around one action.
+   *
+   * @param count
+   *          the repeat count
+   *
+   * @return the element description
+   */
+  private Map<String, Object> repeat(long count) {
+    return element("type", "repeat", "count", count, "elements", Lists.newArrayList(flash(1)));
+  }
+
+  /**
+   * Create a description from pairs of field names and values.
+   *
+   * @param fields
+   *          the field names and values
+   *
+   * @return the description
+   */
+  private Map<String, Object> element(Object... fields) {
+    Map<String, Object> data = Maps.newHashMap();
+    for (int i = 0; i < fields.length; i += 2) {
+      data.put(fields[i].toString(), fields[i + 1]);
+    }
+
+    return data;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.scheduled;
+
+import io.smartspaces.sandbox.service.sequencer.Sequence;
+import io.smartspaces.sandbox.service.sequencer.Sequence.SequenceState;
+import io.smartspaces.sandbox.service.sequencer.SequenceElements;
+import io.smartspaces.sandbox.service.sequencer.SequenceTestSupport;
+import io.smartspaces.sandbox.service.sequencer.program.ProgramSequence;
+import io.smartspaces.system.SmartSpacesEnvironment;
+import io.smartspaces.util.events.EventDelay;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link ScheduledSequencer}.
+ *
+ * @author Keith M. Hughes
+ */
+public class ScheduledSequencerTest {
+  private ScheduledThreadPoolExecutor executorService;
+  private ScheduledSequencer sequencer;
+
+  @Before
+  public void setup() {
+    executorService = new ScheduledThreadPoolExecutor(1);
+
+    SmartSpacesEnvironment spaceEnvironment = Mockito.mock(SmartSpacesEnvironment.class);
+    sequencer =
+        new ScheduledSequencer(spaceEnvironment, executorService, Mockito.mock(Log.class));
+    sequencer.startup();
+  }
+
+  @After
+  public void cleanup() {
+    sequencer.shutdown();
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Test that groups, repeats, and delays run in order.
+   */
+  @Test
+  public void testElementOrder() throws Exception {
+    final List<String> actual = new CopyOnWriteArrayList<>();
+
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(SequenceElements.runnable(() -> actual.add("a")),
+        SequenceElements.delay(new EventDelay(10, TimeUnit.MILLISECONDS)),
+        SequenceElements.repeat(3, SequenceElements.runnable(() -> actual.add("b")),
+            SequenceElements.delay(new EventDelay(1, TimeUnit.MILLISECONDS))),
+        SequenceElements.repeat(0, SequenceElements.runnable(() -> actual.add("x"))),
+        SequenceElements.group(SequenceElements.runnable(() -> actual.add("c"))));
+    sequence.startup();
+
+    SequenceTestSupport.waitForState(sequence, SequenceState.COMPLETED);
+
+    Assert.assertEquals(Lists.newArrayList("a", "b", "b", "b", "c"), actual);
+    Assert.assertEquals(0, sequencer.getNumberActiveSequences());
+  }
+
+  /**
+   * Test that many delayed sequences share a single thread.
+   */
+  @Test
+  public void testDelaysDoNotHoldThreads() throws Exception {
+    int numberSequences = 1000;
+    final CountDownLatch delaysStarted = new CountDownLatch(numberSequences);
+    final CountDownLatch completed = new CountDownLatch(numberSequences);
+
+    List<Sequence> sequences = Lists.newArrayList();
+    for (int i = 0; i < numberSequences; i++) {
+      Sequence sequence = sequencer.newSequence();
+      sequence.add(SequenceElements.runnable(() -> delaysStarted.countDown()),
+          SequenceElements.delay(new EventDelay(200, TimeUnit.MILLISECONDS)),
+          SequenceElements.runnable(() -> completed.countDown()));
+      sequences.add(sequence);
+    }
+
+    for (Sequence sequence : sequences) {
+      sequence.startup();
+    }
+
+    // A delay holding the single thread would stop the other sequences
+    // reaching their delays for the whole delay.
+    Assert.assertTrue(delaysStarted.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+    for (Sequence sequence : sequences) {
+      SequenceTestSupport.waitForState(sequence, SequenceState.COMPLETED);
+    }
+  }
+
+  /**
+   * Test that shutting down a sequence stops it in a delay.
+   */
+  @Test
+  public void testShutdownInDelay() throws Exception {
+    executorService.setRemoveOnCancelPolicy(true);
+
+    final AtomicInteger ran = new AtomicInteger();
+    final CountDownLatch delayStarted = new CountDownLatch(1);
+
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(SequenceElements.runnable(() -> delayStarted.countDown()),
+        SequenceElements.delay(new EventDelay(1, TimeUnit.HOURS)),
+        SequenceElements.runnable(() -> ran.incrementAndGet()));
+    sequence.startup();
+    Assert.assertTrue(delayStarted.await(5, TimeUnit.SECONDS));
+
+    sequence.shutdown();
+
+    Assert.assertEquals(SequenceState.COMPLETED, sequence.getState());
+    Assert.assertTrue(executorService.getQueue().isEmpty());
+    Assert.assertEquals(0, ran.get());
+    Assert.assertEquals(0, sequencer.getNumberActiveSequences());
+
+    SequenceTestSupport.assertRejected(sequence::startup);
+  }
+
+  /**
+   * Test that the time spent running elements does not push back later delays.
+   */
+  @Test
+  public void testDelaysStayPhaseLocked() throws Exception {
+    sequencer.shutdown();
+    executorService.shutdownNow();
+
+    final List<Long> requestedDelays = new CopyOnWriteArrayList<>();
+    executorService = new ScheduledThreadPoolExecutor(1) {
+      @Override
+      public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        requestedDelays.add(unit.toNanos(delay));
+
+        return super.schedule(command, delay, unit);
+      }
+    };
+    sequencer = new ScheduledSequencer(Mockito.mock(SmartSpacesEnvironment.class),
+        executorService, Mockito.mock(Log.class));
+    sequencer.startup();
+
+    final AtomicInteger deadlines = new AtomicInteger();
+
+    int numberBeats = 10;
+    ProgramSequence sequence = (ProgramSequence) sequencer.newSequence();
+    sequence.add(SequenceElements.repeat(numberBeats, SequenceElements.runnable(() -> {
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }), SequenceElements.delay(new EventDelay(20, TimeUnit.MILLISECONDS))));
+    sequence.getTimeline().setListener((element, lateness) -> deadlines.incrementAndGet());
+
+    sequence.startup();
+    SequenceTestSupport.waitForState(sequence, SequenceState.COMPLETED);
+
+    // Each beat starts no earlier than its deadline and runs for at least 10ms,
+    // so a delay measured from the end of the beat would ask for the full 20ms.
+    Assert.assertEquals(numberBeats + 1, requestedDelays.size());
+    for (long requestedDelay : requestedDelays) {
+      Assert.assertTrue("Requested " + requestedDelay + "ns",
+          requestedDelay <= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    Assert.assertEquals(numberBeats, deadlines.get());
+    Assert.assertEquals(numberBeats, sequence.getTimeline().getNumberDeadlines());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(20 * numberBeats),
+        sequence.getTimeline().getOffset());
+  }
+}
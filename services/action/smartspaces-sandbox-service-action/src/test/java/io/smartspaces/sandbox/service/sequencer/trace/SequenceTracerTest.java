@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.trace;
+
+import io.smartspaces.sandbox.service.action.RunStatistics;
+import io.smartspaces.sandbox.service.sequencer.GroupSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.RunnableSequenceElement;
+import io.smartspaces.sandbox.service.sequencer.Sequence;
+import io.smartspaces.sandbox.service.sequencer.Sequence.SequenceState;
+import io.smartspaces.sandbox.service.sequencer.SequenceElements;
+import io.smartspaces.sandbox.service.sequencer.SequenceExecutionContext;
+import io.smartspaces.sandbox.service.sequencer.SequenceTestSupport;
+import io.smartspaces.sandbox.service.sequencer.scheduled.ScheduledSequencer;
+import io.smartspaces.system.SmartSpacesEnvironment;
+
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests for the {@link SequenceTracer}.
+ *
+ * @author Keith M. Hughes
+ */
+public class SequenceTracerTest {
+  private ScheduledThreadPoolExecutor executorService;
+  private ScheduledSequencer sequencer;
+  private SequenceTracer tracer;
+
+  @Before
+  public void setup() {
+    executorService = new ScheduledThreadPoolExecutor(1);
+    sequencer = new ScheduledSequencer(Mockito.mock(SmartSpacesEnvironment.class),
+        executorService, Mockito.mock(Log.class));
+    tracer = new SequenceTracer(new SequenceTraceBuffer(16));
+    sequencer.setTracer(tracer);
+  }
+
+  @After
+  public void cleanup() {
+    sequencer.shutdown();
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Test that runs are counted per label and failures are recorded.
+   */
+  @Test
+  public void testStatistics() throws Exception {
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(SequenceElements.repeat(3, SequenceElements.runnable(() -> {
+    })), SequenceElements.runnable(() -> {
+      throw new RuntimeException("Expected failure");
+    }));
+    sequence.startup();
+    SequenceTestSupport.waitForState(sequence, SequenceState.ERROR);
+
+    RunStatistics statistics = tracer.getStatistics(RunnableSequenceElement.class.getSimpleName());
+    Assert.assertEquals(4, statistics.getNumberRuns());
+    Assert.assertEquals(1, statistics.getNumberFailures());
+
+    List<SequenceTraceRecord> records = tracer.getBuffer().snapshot();
+    Assert.assertEquals(4, records.size());
+    Assert.assertEquals(SequenceTraceRecord.OUTCOME_FAILED, records.get(3).getOutcome());
+  }
+
+  /**
+   * Test that elements run inside others are recorded with their nesting.
+   */
+  @Test
+  public void testNesting() throws Exception {
+    SequenceExecutionContext context = new SequenceExecutionContext(sequencer,
+        sequencer.newSequence(), Mockito.mock(SmartSpacesEnvironment.class));
+    context.runElement(
+        new GroupSequenceElement(new GroupSequenceElement(SequenceElements.runnable(() -> {
+        }))));
+
+    List<SequenceTraceRecord> records = tracer.getBuffer().snapshot();
+    Assert.assertEquals(3, records.size());
+    Assert.assertEquals(2, records.get(0).getDepth());
+    Assert.assertEquals(1, records.get(1).getDepth());
+    Assert.assertEquals(0, records.get(2).getDepth());
+    Assert.assertEquals(GroupSequenceElement.class.getSimpleName(),
+        tracer.getLabel(records.get(2).getLabelId()));
+  }
+
+  /**
+   * Test that the buffer keeps only the most recent records.
+   */
+  @Test
+  public void testBufferWraps() {
+    SequenceTraceBuffer buffer = new SequenceTraceBuffer(4);
+    for (int i = 0; i < 10; i++) {
+      buffer.record(i, 1, 0, 0, SequenceTraceRecord.OUTCOME_COMPLETED, 1);
+    }
+
+    List<SequenceTraceRecord> records = buffer.snapshot();
+    Assert.assertEquals(4, records.size());
+    Assert.assertEquals(6, records.get(0).getStartTime());
+    Assert.assertEquals(9, records.get(3).getStartTime());
+    Assert.assertEquals(10, buffer.getNumberRecorded());
+  }
+
+  /**
+   * Test that snapshots taken while records are being overwritten only hold
+   * whole records.
+   */
+  @Test
+  public void testSnapshotWhileRecording() throws Exception {
+    final SequenceTraceBuffer buffer = new SequenceTraceBuffer(8);
+    final AtomicBoolean running = new AtomicBoolean(true);
+
+    Thread writer = new Thread(() -> {
+      for (int value = 1; running.get(); value++) {
+        // Every field of a record comes from the same value.
+        buffer.record(value, value, value, value, (byte) value, value);
+      }
+    });
+    writer.start();
+
+    try {
+      for (int i = 0; i < 10000; i++) {
+        for (SequenceTraceRecord record : buffer.snapshot()) {
+          long value = record.getStartTime();
+          Assert.assertEquals(value, record.getDuration());
+          Assert.assertEquals((int) value, record.getLabelId());
+          Assert.assertEquals((int) value, record.getDepth());
+          Assert.assertEquals((byte) value, record.getOutcome());
+          Assert.assertEquals(value, record.getThreadId());
+        }
+      }
+    } finally {
+      running.set(false);
+      writer.join();
+    }
+  }
+
+  /**
+   * Test the binary export.
+   */
+  @Test
+  public void testExport() throws Exception {
+    SequenceExecutionContext context = new SequenceExecutionContext(sequencer,
+        sequencer.newSequence(), Mockito.mock(SmartSpacesEnvironment.class));
+    context.runElement(SequenceElements.runnable(() -> {
+    }));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SequenceTraceExporter().export(tracer, out);
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    Assert.assertEquals(SequenceTraceExporter.MAGIC, in.readInt());
+    Assert.assertEquals(SequenceTraceExporter.VERSION, in.readShort());
+    in.readLong();
+    in.readLong();
+    Assert.assertEquals(1, in.readInt());
+    Assert.assertEquals(RunnableSequenceElement.class.getSimpleName(), in.readUTF());
+    Assert.assertEquals(1, in.readInt());
+    long startTime = in.readLong();
+    Assert.assertTrue(in.readLong() >= 0);
+    Assert.assertEquals(0, in.readInt());
+    Assert.assertEquals(0, in.readShort());
+    Assert.assertEquals(SequenceTraceRecord.OUTCOME_COMPLETED, in.readByte());
+    Assert.assertEquals(Thread.currentThread().getId(), in.readLong());
+    Assert.assertEquals(-1, in.read());
+    Assert.assertEquals(tracer.getBuffer().snapshot().get(0).getStartTime(), startTime);
+  }
+}
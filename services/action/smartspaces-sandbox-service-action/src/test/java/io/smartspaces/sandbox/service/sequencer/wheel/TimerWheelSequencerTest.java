@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.sequencer.wheel;
+
+import io.smartspaces.sandbox.service.sequencer.Sequence;
+import io.smartspaces.sandbox.service.sequencer.Sequence.SequenceState;
+import io.smartspaces.sandbox.service.sequencer.SequenceElements;
+import io.smartspaces.sandbox.service.sequencer.SequenceTestSupport;
+import io.smartspaces.system.SmartSpacesEnvironment;
+import io.smartspaces.util.events.EventDelay;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link TimerWheelSequencer}.
+ *
+ * @author Keith M. Hughes
+ */
+public class TimerWheelSequencerTest {
+  private ScheduledExecutorService executorService;
+  private TimerWheelSequencer sequencer;
+
+  @Before
+  public void setup() {
+    executorService = new ScheduledThreadPoolExecutor(4);
+
+    SmartSpacesEnvironment spaceEnvironment = Mockito.mock(SmartSpacesEnvironment.class);
+    Mockito.when(spaceEnvironment.getExecutorService()).thenReturn(executorService);
+
+    sequencer = new TimerWheelSequencer(spaceEnvironment, Mockito.mock(Log.class));
+    sequencer.startup();
+  }
+
+  @After
+  public void cleanup() {
+    sequencer.shutdown();
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Test that many sequences with repeated delays all complete on the one
+   * wheel thread.
+   */
+  @Test
+  public void testManySequences() throws Exception {
+    final AtomicInteger count = new AtomicInteger();
+
+    int numberSequences = 10000;
+    List<Sequence> sequences = Lists.newArrayList();
+    for (int i = 0; i < numberSequences; i++) {
+      Sequence sequence = sequencer.newSequence();
+      sequence.add(SequenceElements.repeat(3,
+          SequenceElements.delay(new EventDelay(20, TimeUnit.MILLISECONDS)),
+          SequenceElements.runnable(() -> count.incrementAndGet())));
+      sequences.add(sequence);
+    }
+
+    for (Sequence sequence : sequences) {
+      sequence.startup();
+    }
+    for (Sequence sequence : sequences) {
+      SequenceTestSupport.waitForState(sequence, SequenceState.COMPLETED);
+    }
+
+    Assert.assertEquals(3 * numberSequences, count.get());
+    Assert.assertEquals(0, sequencer.getNumberActiveSequences());
+  }
+
+  /**
+   * Test that an element which blocks does not hold up the delays of other
+   * sequences.
+   */
+  @Test
+  public void testBlockingElement() throws Exception {
+    final CountDownLatch blocking = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    Sequence blocked = sequencer.newSequence();
+    blocked.add(SequenceElements.delay(new EventDelay(1, TimeUnit.MILLISECONDS)),
+        SequenceElements.runnable(() -> {
+          blocking.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }));
+    blocked.startup();
+    Assert.assertTrue(blocking.await(5, TimeUnit.SECONDS));
+
+    try {
+      Sequence other = sequencer.newSequence();
+      other.add(SequenceElements.delay(new EventDelay(20, TimeUnit.MILLISECONDS)),
+          SequenceElements.runnable(() -> {
+          }));
+      other.startup();
+
+      SequenceTestSupport.waitForState(other, SequenceState.COMPLETED);
+      Assert.assertEquals(SequenceState.RUNNING, blocked.getState());
+    } finally {
+      release.countDown();
+    }
+
+    SequenceTestSupport.waitForState(blocked, SequenceState.COMPLETED);
+  }
+
+  /**
+   * Test that shutting down a sequence removes its pending delay.
+   */
+  @Test
+  public void testShutdownInDelay() throws Exception {
+    final AtomicInteger ran = new AtomicInteger();
+    final CountDownLatch delayStarted = new CountDownLatch(1);
+
+    Sequence sequence = sequencer.newSequence();
+    sequence.add(SequenceElements.runnable(() -> delayStarted.countDown()),
+        SequenceElements.delay(new EventDelay(1, TimeUnit.HOURS)),
+        SequenceElements.runnable(() -> ran.incrementAndGet()));
+    sequence.startup();
+    Assert.assertTrue(delayStarted.await(5, TimeUnit.SECONDS));
+
+    sequence.shutdown();
+
+    Assert.assertEquals(SequenceState.COMPLETED, sequence.getState());
+    Assert.assertEquals(0, ran.get());
+    Assert.assertEquals(0, sequencer.getTimerWheel().getNumberPending());
+    Assert.assertEquals(0, sequencer.getNumberActiveSequences());
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.util.timer;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.logging.Log;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link HierarchicalTimerWheel}.
+ *
+ * <p>
+ * The wheels are advanced by hand with small sizes so that timeouts move
+ * between levels.
+ *
+ * @author Keith M. Hughes
+ */
+public class HierarchicalTimerWheelTest {
+  private HierarchicalTimerWheel wheel;
+  private long tick;
+  private long base;
+
+  @Before
+  public void setup() {
+    wheel = new HierarchicalTimerWheel(1, TimeUnit.MILLISECONDS, 4, 3, Mockito.mock(Log.class));
+    tick = wheel.getTickDuration();
+    base = System.nanoTime();
+  }
+
+  /**
+   * Test that timeouts on every level, and beyond the top level, expire on
+   * their tick and in order.
+   */
+  @Test
+  public void testExpiryAcrossLevels() {
+    final List<Long> expired = Lists.newArrayList();
+    final long[] now = new long[1];
+
+    Random random = new Random(42);
+    List<Long> deadlines = Lists.newArrayList();
+    for (int i = 0; i < 500; i++) {
+      deadlines.add(base + (1 + random.nextInt(200)) * tick);
+    }
+    for (final Long deadline : deadlines) {
+      wheel.scheduleAt(() -> {
+        Assert.assertTrue(now[0] >= deadline);
+        Assert.assertTrue(now[0] < deadline + 2 * tick);
+        expired.add(deadline);
+      }, deadline);
+    }
+
+    for (now[0] = base; now[0] < base + 210 * tick; now[0] += tick) {
+      wheel.advanceTo(now[0]);
+    }
+
+    Assert.assertEquals(deadlines.size(), expired.size());
+    for (int i = 1; i < expired.size(); i++) {
+      Assert.assertTrue(expired.get(i - 1) <= expired.get(i) + tick);
+    }
+    Assert.assertEquals(0, wheel.getNumberPending());
+  }
+
+  /**
+   * Test that a cancelled timeout does not run.
+   */
+  @Test
+  public void testCancel() {
+    final List<String> ran = Lists.newArrayList();
+
+    TimerWheelTimeout keep = wheel.scheduleAt(() -> ran.add("keep"), base + 50 * tick);
+    TimerWheelTimeout cancel = wheel.scheduleAt(() -> ran.add("cancel"), base + 50 * tick);
+
+    Assert.assertTrue(cancel.cancel());
+    Assert.assertFalse(cancel.cancel());
+    Assert.assertEquals(1, wheel.getNumberPending());
+
+    wheel.advanceTo(base + 60 * tick);
+
+    Assert.assertEquals(Lists.newArrayList("keep"), ran);
+    Assert.assertTrue(keep.isExpired());
+    Assert.assertTrue(cancel.isCancelled());
+    Assert.assertFalse(keep.cancel());
+  }
+
+  /**
+   * Test that a task can schedule another task from inside the wheel.
+   */
+  @Test
+  public void testRescheduleFromTask() {
+    final List<String> ran = Lists.newArrayList();
+
+    wheel.scheduleAt(
+        () -> wheel.scheduleAt(() -> ran.add("second"), base + 20 * tick),
+        base + 10 * tick);
+
+    wheel.advanceTo(base + 15 * tick);
+    Assert.assertTrue(ran.isEmpty());
+
+    wheel.advanceTo(base + 25 * tick);
+    Assert.assertEquals(Lists.newArrayList("second"), ran);
+  }
+}
@@ -16,19 +16,30 @@
 
 package io.smartspaces.service.action.internal;
 
+import io.smartspaces.evaluation.ExecutionContext;
 import io.smartspaces.evaluation.StandardExecutionContext;
 import io.smartspaces.sandbox.service.action.Action;
+import io.smartspaces.sandbox.service.action.ActionReference;
 import io.smartspaces.sandbox.service.action.ActionSource;
 import io.smartspaces.sandbox.service.action.BasicActionReference;
 import io.smartspaces.sandbox.service.action.internal.StandardActionService;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Test the {@link StandardActionService}.
@@ -40,7 +51,13 @@ public class StandardActionServiceTest {
 
   @Before
   public void setup() {
-    actionService = new StandardActionService();
+    actionService = new StandardActionService(4);
+    actionService.startup();
+  }
+
+  @After
+  public void cleanup() {
+    actionService.shutdown();
   }
 
   @Test
@@ -85,4 +102,209 @@ public class StandardActionServiceTest {
     String value = context.getValue("foo1");
     Assert.assertEquals("bar1", value);
   }
+
+  /**
+   * Test that resolved actions are cached until their source is registered
+   * again.
+   */
+  @Test
+  public void testResolvedActionCache() {
+    String actionName = "bar";
+    Action action = Mockito.mock(Action.class);
+    ActionSource source = Mockito.mock(ActionSource.class);
+    Mockito.when(source.getAction(actionName)).thenReturn(action);
+
+    String sourceName = "foo";
+    actionService.registerActionSource(sourceName, source);
+
+    StandardExecutionContext context = new StandardExecutionContext(null, null);
+    actionService.performAction(sourceName, actionName, context);
+    actionService.performAction(sourceName, actionName, context);
+
+    Mockito.verify(source, Mockito.times(1)).getAction(actionName);
+    Mockito.verify(action, Mockito.times(2)).perform(context);
+
+    Action newAction = Mockito.mock(Action.class);
+    ActionSource newSource = Mockito.mock(ActionSource.class);
+    Mockito.when(newSource.getAction(actionName)).thenReturn(newAction);
+    actionService.registerActionSource(sourceName, newSource);
+
+    actionService.performAction(sourceName, actionName, context);
+
+    Mockito.verify(newAction, Mockito.times(1)).perform(context);
+    Mockito.verify(action, Mockito.times(2)).perform(context);
+  }
+
+  /**
+   * Test that a lookup which finishes after its source is registered again
+   * does not leave the old action in the cache.
+   */
+  @Test
+  public void testResolutionRacingRegistration() throws Exception {
+    final String actionName = "bar";
+    final String sourceName = "foo";
+    final CountDownLatch lookupStarted = new CountDownLatch(1);
+    final CountDownLatch registered = new CountDownLatch(1);
+    final Action oldAction = Mockito.mock(Action.class);
+    actionService.registerActionSource(sourceName, new ActionSource() {
+      @Override
+      public Action getAction(String name) {
+        lookupStarted.countDown();
+        try {
+          registered.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+
+        return oldAction;
+      }
+    });
+
+    final StandardExecutionContext context = new StandardExecutionContext(null, null);
+    Thread performer = new Thread(() -> actionService.performAction(sourceName, actionName,
+        context));
+    performer.start();
+    Assert.assertTrue(lookupStarted.await(5, TimeUnit.SECONDS));
+
+    Action newAction = Mockito.mock(Action.class);
+    ActionSource newSource = Mockito.mock(ActionSource.class);
+    Mockito.when(newSource.getAction(actionName)).thenReturn(newAction);
+    actionService.registerActionSource(sourceName, newSource);
+    registered.countDown();
+    performer.join(5000);
+
+    actionService.performAction(sourceName, actionName, context);
+
+    Mockito.verify(oldAction, Mockito.times(1)).perform(context);
+    Mockito.verify(newAction, Mockito.times(1)).perform(context);
+  }
+
+  /**
+   * Test that fanned out actions run at the same time.
+   */
+  @Test
+  public void testPerformActionsConcurrently() throws Exception {
+    final CountDownLatch allStarted = new CountDownLatch(3);
+    Action action = new Action() {
+      @Override
+      public void perform(ExecutionContext context) {
+        allStarted.countDown();
+        try {
+          // Only completes if every action is running at once.
+          if (!allStarted.await(5, TimeUnit.SECONDS)) {
+            throw new RuntimeException("Actions did not run concurrently");
+          }
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+
+    String sourceName = "foo";
+    ActionSource source = Mockito.mock(ActionSource.class);
+    Mockito.when(source.getAction("bar")).thenReturn(action);
+    actionService.registerActionSource(sourceName, source);
+
+    List<ActionReference> references = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      references.add(new BasicActionReference("ref" + i, null, sourceName, null, "bar", null));
+    }
+
+    actionService.performActions(references, null).get(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Test that the supplied data for fanned out actions takes precedence over
+   * the reference data.
+   */
+  @Test
+  public void testPerformActionsDataPrecedence() throws Exception {
+    final Map<String, Object> seen = new ConcurrentHashMap<>();
+    Action action = new Action() {
+      @Override
+      public void perform(ExecutionContext context) {
+        String reference = context.getValue("reference");
+        seen.put(reference + ".level", context.getValue("level"));
+        seen.put(reference + ".color", context.getValue("color"));
+      }
+    };
+
+    String sourceName = "foo";
+    ActionSource source = Mockito.mock(ActionSource.class);
+    Mockito.when(source.getAction("bar")).thenReturn(action);
+    actionService.registerActionSource(sourceName, source);
+
+    List<ActionReference> references = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      Map<String, Object> referenceData = new HashMap<>();
+      referenceData.put("reference", "ref" + i);
+      referenceData.put("level", i);
+      referenceData.put("color", "red");
+      references.add(
+          new BasicActionReference("ref" + i, null, sourceName, null, "bar", referenceData));
+    }
+
+    Map<String, Object> data = new HashMap<>();
+    data.put("color", "blue");
+    actionService.performActions(references, data).get(10, TimeUnit.SECONDS);
+
+    Assert.assertEquals(0, seen.get("ref0.level"));
+    Assert.assertEquals(1, seen.get("ref1.level"));
+    Assert.assertEquals("blue", seen.get("ref0.color"));
+    Assert.assertEquals("blue", seen.get("ref1.color"));
+  }
+
+  /**
+   * Test that an action source concurrency limit is honored.
+   */
+  @Test
+  public void testSourceConcurrencyLimit() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maximumRunning = new AtomicInteger();
+    Action action = new Action() {
+      @Override
+      public void perform(ExecutionContext context) {
+        int nowRunning = running.incrementAndGet();
+        maximumRunning.set(Math.max(maximumRunning.get(), nowRunning));
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        } finally {
+          running.decrementAndGet();
+        }
+      }
+    };
+
+    String sourceName = "foo";
+    ActionSource source = Mockito.mock(ActionSource.class);
+    Mockito.when(source.getAction("bar")).thenReturn(action);
+    actionService.registerActionSource(sourceName, source);
+    actionService.setActionSourceConcurrencyLimit(sourceName, 1);
+
+    List<ActionReference> references = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      references.add(new BasicActionReference("ref" + i, null, sourceName, null, "bar", null));
+    }
+
+    actionService.performActions(references, null).get(10, TimeUnit.SECONDS);
+
+    Assert.assertEquals(1, maximumRunning.get());
+  }
+
+  /**
+   * Test that an unknown action source fails the future rather than throwing.
+   */
+  @Test
+  public void testAsyncUnknownSource() throws Exception {
+    CompletableFuture<Void> future = actionService.performActionAsync("foo", null, "bar",
+        new StandardExecutionContext(null, null));
+
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      Assert.fail();
+    } catch (ExecutionException e) {
+      // Expected
+    }
+  }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.dmx;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.util.resource.ManagedResource;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Transmits a DMX universe buffer to a DMX endpoint at a fixed frame rate.
+ *
+ * <p>
+ * Frames are only sent when channels in the buffer have changed, so writers
+ * can update the buffer as often as they like without flooding the endpoint.
+ *
+ * @author Keith M. Hughes
+ */
+public class DmxFrameScheduler implements ManagedResource {
+
+  /**
+   * The default number of frames per second. DMX512 can carry about 44 full
+   * universe frames per second.
+   */
+  public static final double FRAME_RATE_DEFAULT = 40.0;
+
+  /**
+   * The endpoint the frames are sent to.
+   */
+  private final DmxControlEndpoint endpoint;
+
+  /**
+   * The buffer holding the universe.
+   */
+  private final DmxUniverseBuffer universe;
+
+  /**
+   * The time between frames, in microseconds.
+   */
+  private final long framePeriod;
+
+  /**
+   * The executor service for scheduling frames.
+   */
+  private final ScheduledExecutorService executorService;
+
+  /**
+   * The logger to use.
+   */
+  private final Log log;
+
+  /**
+   * The future for the frame task, {@code null} if not running.
+   */
+  private ScheduledFuture<?> frameFuture;
+
+  /**
+   * Construct a new scheduler.
+   *
+   * @param endpoint
+   *          the endpoint to send frames to
+   * @param universe
+   *          the buffer holding the universe
+   * @param framesPerSecond
+   *          the maximum number of frames to send per second
+   * @param executorService
+   *          the executor service for scheduling frames
+   * @param log
+   *          the logger to use
+   *
+   * @throws SimpleSmartSpacesException
+   *           the frame rate is not positive or is too high to schedule
+   */
+  public DmxFrameScheduler(DmxControlEndpoint endpoint, DmxUniverseBuffer universe,
+      double framesPerSecond, ScheduledExecutorService executorService, Log log)
+      throws SimpleSmartSpacesException {
+    if (!(framesPerSecond > 0) || framesPerSecond > TimeUnit.SECONDS.toMicros(1)) {
+      throw new SimpleSmartSpacesException(
+          String.format("DMX frame rate %s is not between 0 and one per microsecond",
+              framesPerSecond));
+    }
+
+    this.endpoint = endpoint;
+    this.universe = universe;
+    this.framePeriod = (long) (TimeUnit.SECONDS.toMicros(1) / framesPerSecond);
+    this.executorService = executorService;
+    this.log = log;
+  }
+
+  @Override
+  public synchronized void startup() {
+    if (frameFuture != null) {
+      return;
+    }
+
+    frameFuture = executorService.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        sendFrame();
+      }
+    }, framePeriod, framePeriod, TimeUnit.MICROSECONDS);
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    if (frameFuture != null) {
+      frameFuture.cancel(false);
+      frameFuture = null;
+    }
+  }
+
+  /**
+   * Get the universe buffer being transmitted.
+   *
+   * @return the universe buffer
+   */
+  public DmxUniverseBuffer getUniverse() {
+    return universe;
+  }
+
+  /**
+   * Send a frame if anything has changed.
+   */
+  private void sendFrame() {
+    try {
+      universe.writeDmxData(endpoint);
+    } catch (Throwable e) {
+      // An exception would stop all future frames.
+      log.error("Could not send DMX frame", e);
+    }
+  }
+}
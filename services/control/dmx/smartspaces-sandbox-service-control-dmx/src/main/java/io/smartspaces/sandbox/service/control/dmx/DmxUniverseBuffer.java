@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.dmx;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+/**
+ * A buffer holding the values of every channel in a DMX universe.
+ *
+ * <p>
+ * Writers set channel values in the buffer, which never allocates. Writing the
+ * buffer to an endpoint only sends the range of channels which has changed
+ * since the last write, so a {@link DmxFrameScheduler} can send it at a fixed
+ * frame rate no matter how quickly values are being set.
+ *
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Keith M. Hughes
+ */
+public class DmxUniverseBuffer implements DmxData {
+
+  /**
+   * The marker for no channels having changed.
+   */
+  private static final int NO_CHANGE = -1;
+
+  /**
+   * The channel values, indexed by channel. Index {@code 0} is not used.
+   */
+  private final byte[] values = new byte[DmxControlEndpoint.DMX_CHANNEL_MAXIMUM + 1];
+
+  /**
+   * The lowest channel changed since the last write, or {@link #NO_CHANGE}.
+   */
+  private int changedMinimum = NO_CHANGE;
+
+  /**
+   * The highest channel changed since the last write, or {@link #NO_CHANGE}.
+   */
+  private int changedMaximum = NO_CHANGE;
+
+  /**
+   * The number of times channels have been marked as changed. Used to tell
+   * whether there were more changes while the buffer was being written.
+   */
+  private long changeCount;
+
+  /**
+   * Set the value of a channel.
+   *
+   * @param channel
+   *          the channel, from {@code 1} to {@code 512}
+   * @param value
+   *          the value, from {@code 0} to {@code 255}
+   */
+  public synchronized void setChannelValue(int channel, int value) {
+    checkChannelRange(channel, 1);
+
+    byte newValue = (byte) (value & 0xff);
+    if (values[channel] != newValue) {
+      values[channel] = newValue;
+      markChanged(channel, channel);
+    }
+  }
+
+  /**
+   * Set the values of a range of consecutive channels.
+   *
+   * @param channel
+   *          the first channel, from {@code 1} to {@code 512}
+   * @param data
+   *          the array holding the values
+   * @param offset
+   *          the position in the array of the first value
+   * @param length
+   *          the number of values to set
+   */
+  public synchronized void setChannelValues(int channel, byte[] data, int offset, int length) {
+    checkChannelRange(channel, length);
+
+    System.arraycopy(data, offset, values, channel, length);
+    markChanged(channel, channel + length - 1);
+  }
+
+  /**
+   * Get the value of a channel.
+   *
+   * @param channel
+   *          the channel, from {@code 1} to {@code 512}
+   *
+   * @return the value, from {@code 0} to {@code 255}
+   */
+  public synchronized int getChannelValue(int channel) {
+    checkChannelRange(channel, 1);
+
+    return values[channel] & 0xff;
+  }
+
+  /**
+   * Have any channels changed since the buffer was last written?
+   *
+   * @return {@code true} if there are changes to write
+   */
+  public synchronized boolean isChanged() {
+    return changedMinimum != NO_CHANGE;
+  }
+
+  /**
+   * Mark every channel as changed so the entire universe is sent on the next
+   * write.
+   */
+  public synchronized void markAllChanged() {
+    changedMinimum = DmxControlEndpoint.DMX_CHANNEL_MINIMUM;
+    changedMaximum = DmxControlEndpoint.DMX_CHANNEL_MAXIMUM;
+    changeCount++;
+  }
+
+  /**
+   * Write the changed channels to the endpoint.
+   *
+   * <p>
+   * Does nothing if no channels have changed. The changed range is only
+   * cleared once the endpoint write succeeds, so channels which failed to be
+   * sent are sent again on the next write.
+   *
+   * @param endpoint
+   *          the DMX endpoint to be written to
+   */
+  @Override
+  public void writeDmxData(DmxControlEndpoint endpoint) {
+    int startChannel;
+    int[] frame;
+    long writtenChangeCount;
+    synchronized (this) {
+      if (changedMinimum == NO_CHANGE) {
+        return;
+      }
+
+      startChannel = changedMinimum;
+      frame = new int[changedMaximum - changedMinimum + 1];
+      for (int i = 0; i < frame.length; i++) {
+        frame[i] = values[startChannel + i] & 0xff;
+      }
+      writtenChangeCount = changeCount;
+    }
+
+    endpoint.writeDmxData(startChannel, frame);
+
+    synchronized (this) {
+      // Changes made during the write keep the whole range, which is then
+      // sent again on the next write.
+      if (changeCount == writtenChangeCount) {
+        changedMinimum = NO_CHANGE;
+        changedMaximum = NO_CHANGE;
+      }
+    }
+  }
+
+  /**
+   * Extend the changed range to include a range of channels.
+   *
+   * @param firstChannel
+   *          the first channel changed
+   * @param lastChannel
+   *          the last channel changed
+   */
+  private void markChanged(int firstChannel, int lastChannel) {
+    changeCount++;
+    if (changedMinimum == NO_CHANGE) {
+      changedMinimum = firstChannel;
+      changedMaximum = lastChannel;
+    } else {
+      changedMinimum = Math.min(changedMinimum, firstChannel);
+      changedMaximum = Math.max(changedMaximum, lastChannel);
+    }
+  }
+
+  /**
+   * Check that a range of channels is in the universe.
+   *
+   * @param channel
+   *          the first channel
+   * @param length
+   *          the number of channels
+   */
+  private void checkChannelRange(int channel, int length) {
+    if (channel < DmxControlEndpoint.DMX_CHANNEL_MINIMUM
+        || channel + length > DmxControlEndpoint.DMX_CHANNEL_MAXIMUM + 1) {
+      throw new SimpleSmartSpacesException(String.format(
+          "The DMX channel %d + data of length %d goes outside of the DMX range", channel,
+          length));
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.dmx;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the {@link DmxUniverseBuffer}.
+ *
+ * @author Keith M. Hughes
+ */
+public class DmxUniverseBufferTest {
+  private DmxUniverseBuffer universe;
+  private RecordingEndpoint endpoint;
+
+  @Before
+  public void setup() {
+    universe = new DmxUniverseBuffer();
+    endpoint = new RecordingEndpoint();
+  }
+
+  /**
+   * Test that only the range of changed channels is written.
+   */
+  @Test
+  public void testChangedRange() {
+    Assert.assertFalse(universe.isChanged());
+    universe.writeDmxData(endpoint);
+    Assert.assertTrue(endpoint.writes.isEmpty());
+
+    universe.setChannelValue(10, 100);
+    universe.setChannelValue(7, 300);
+    Assert.assertTrue(universe.isChanged());
+    Assert.assertEquals(44, universe.getChannelValue(7));
+
+    universe.writeDmxData(endpoint);
+    Assert.assertEquals(Lists.newArrayList("7:[44, 0, 0, 100]"), endpoint.writes);
+    Assert.assertFalse(universe.isChanged());
+
+    // Setting the same value again is not a change.
+    universe.setChannelValue(10, 100);
+    Assert.assertFalse(universe.isChanged());
+  }
+
+  /**
+   * Test setting ranges of channels and marking the whole universe.
+   */
+  @Test
+  public void testChannelValues() {
+    universe.setChannelValues(511, new byte[] { 1, 2, 3 }, 1, 2);
+    universe.writeDmxData(endpoint);
+    Assert.assertEquals(Lists.newArrayList("511:[2, 3]"), endpoint.writes);
+
+    universe.markAllChanged();
+    universe.writeDmxData(endpoint);
+    Assert.assertEquals(DmxControlEndpoint.DMX_CHANNEL_MAXIMUM, endpoint.lastLength);
+  }
+
+  /**
+   * Test that channels outside of the universe are rejected.
+   */
+  @Test
+  public void testChannelRange() {
+    assertRejected(() -> universe.setChannelValue(0, 1));
+    assertRejected(() -> universe.setChannelValue(513, 1));
+    assertRejected(() -> universe.setChannelValues(512, new byte[2], 0, 2));
+    Assert.assertFalse(universe.isChanged());
+  }
+
+  /**
+   * Test that channels are kept as changed when the endpoint write fails.
+   */
+  @Test
+  public void testFailedWrite() {
+    universe.setChannelValue(3, 30);
+    endpoint.fail = true;
+    try {
+      universe.writeDmxData(endpoint);
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+    Assert.assertTrue(universe.isChanged());
+
+    endpoint.fail = false;
+    universe.writeDmxData(endpoint);
+    Assert.assertEquals(Lists.newArrayList("3:[30]"), endpoint.writes);
+    Assert.assertFalse(universe.isChanged());
+  }
+
+  /**
+   * Test that a change made while a write is in progress is not lost.
+   */
+  @Test
+  public void testChangeDuringWrite() {
+    universe.setChannelValue(3, 30);
+    endpoint.duringWrite = () -> universe.setChannelValue(5, 50);
+
+    universe.writeDmxData(endpoint);
+    Assert.assertTrue(universe.isChanged());
+
+    endpoint.duringWrite = null;
+    universe.writeDmxData(endpoint);
+    Assert.assertEquals(Lists.newArrayList("3:[30]", "3:[30, 0, 50]"), endpoint.writes);
+    Assert.assertFalse(universe.isChanged());
+  }
+
+  /**
+   * Assert that an operation is rejected as outside of the DMX range.
+   *
+   * @param operation
+   *          the operation
+   */
+  private void assertRejected(Runnable operation) {
+    try {
+      operation.run();
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * An endpoint which records the writes made to it.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class RecordingEndpoint implements DmxControlEndpoint {
+
+    /**
+     * The writes made, as the start channel and the values.
+     */
+    private final List<String> writes = Lists.newArrayList();
+
+    /**
+     * The number of values in the last write.
+     */
+    private int lastLength;
+
+    /**
+     * {@code true} if writes should fail.
+     */
+    private boolean fail;
+
+    /**
+     * Run during a write, can be {@code null}.
+     */
+    private Runnable duringWrite;
+
+    @Override
+    public void startup() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public void writeDmxData(int channel, int... data) {
+      if (fail) {
+        throw new SimpleSmartSpacesException("DMX write failed");
+      }
+      if (duringWrite != null) {
+        duringWrite.run();
+      }
+
+      lastLength = data.length;
+      writes.add(channel + ":" + Arrays.toString(data));
+    }
+
+    @Override
+    public void writeDmxData(DmxData data) {
+      data.writeDmxData(this);
+    }
+  }
+}
@@ -18,10 +18,10 @@
 package io.smartspaces.example.activity.control.opensoundcontrol.server;
 
 import io.smartspaces.activity.impl.BaseActivity;
-import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlMethod;
 import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerCommunicationEndpoint;
 import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerCommunicationEndpointService;
-import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerPacket;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlTypedArguments;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlTypedMethod;
 import io.smartspaces.service.audio.player.AudioTrackPlayer;
 import io.smartspaces.service.audio.player.AudioTrackPlayerService;
 import io.smartspaces.service.audio.player.PlayableAudioTrack;
@@ -64,6 +64,11 @@ public class OpenSoundControlServerExampleActivity extends BaseActivity {
    */
   public static final String CONFIGURATION_PROPERTY_OPEN_SOUND_CONTROL_TRACK_MAP = "space.opensoundcontrol.trackmap";
 
+  /**
+   * The OSC signature of the play method, which takes the sound ID.
+   */
+  public static final String PLAY_METHOD_SIGNATURE = ",s";
+
   /**
    * The map of recording names to the track to be played.
    */
@@ -87,12 +92,13 @@ public class OpenSoundControlServerExampleActivity extends BaseActivity {
     addManagedResource(oscServer);
 
     String methodAddress = getConfiguration().getRequiredPropertyString(CONFIGURATION_PROPERTY_OPEN_SOUND_CONTROL_METHOD_ADDRESS);
-    oscServer.registerMethod(methodAddress, new OpenSoundControlMethod() {
-      @Override
-      public void invoke(OpenSoundControlServerPacket packet) {
-        handleOscPacket(packet);
-      }
-    });
+    oscServer.registerTypedMethod(methodAddress, PLAY_METHOD_SIGNATURE,
+        new OpenSoundControlTypedMethod() {
+          @Override
+          public void invoke(String address, OpenSoundControlTypedArguments arguments) {
+            handleOscPacket(arguments);
+          }
+        });
 
     populateTrackMap();
 
@@ -119,12 +125,12 @@ public class OpenSoundControlServerExampleActivity extends BaseActivity {
   /**
    * Handle an incoming OSC packet.
    *
-   * @param packet
-   *          the packet to handle
+   * @param arguments
+   *          the arguments of the packet to handle
    */
-  private void handleOscPacket(OpenSoundControlServerPacket packet) {
+  private void handleOscPacket(OpenSoundControlTypedArguments arguments) {
     if (isActivated()) {
-      String trackToPlay = packet.getStringArgument(0);
+      String trackToPlay = arguments.getString(0);
 
       final PlayableAudioTrack track = soundIdToTrack.get(trackToPlay);
       if (track != null) {
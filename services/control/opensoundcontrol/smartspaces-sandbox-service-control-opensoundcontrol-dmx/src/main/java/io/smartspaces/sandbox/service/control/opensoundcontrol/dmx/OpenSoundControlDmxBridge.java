@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.dmx;
+
+import io.smartspaces.sandbox.service.control.dmx.DmxUniverseBuffer;
+import io.smartspaces.util.resource.ManagedResource;
+
+/**
+ * A bridge which writes the arguments of Open Sound Control messages into DMX
+ * universes.
+ *
+ * <p>
+ * Values are written straight into a {@link DmxUniverseBuffer} on the OSC
+ * thread and a frame scheduler per universe transmits them, so neither the
+ * activity thread nor the OSC thread waits on the DMX hardware.
+ *
+ * @author Keith M. Hughes
+ */
+public interface OpenSoundControlDmxBridge extends ManagedResource {
+
+  /**
+   * Get the mapping table for the bridge.
+   *
+   * @return the mapping table
+   */
+  OpenSoundControlDmxMappingTable getMappingTable();
+
+  /**
+   * Get the buffer for a universe.
+   *
+   * @param universe
+   *          the universe number
+   *
+   * @return the buffer for the universe, or {@code null} if the bridge has no
+   *         such universe
+   */
+  DmxUniverseBuffer getUniverse(int universe);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.dmx;
+
+import io.smartspaces.sandbox.service.control.dmx.DmxControlEndpoint;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerCommunicationEndpoint;
+import io.smartspaces.service.SupportedService;
+
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * A service for creating bridges from Open Sound Control to DMX.
+ *
+ * @author Keith M. Hughes
+ */
+public interface OpenSoundControlDmxBridgeService extends SupportedService {
+
+  /**
+   * The name for the service.
+   */
+  String SERVICE_NAME = "control.opensoundcontrol.dmx";
+
+  /**
+   * Create a new bridge.
+   *
+   * <p>
+   * The bridge does not start up or shut down the OSC and DMX endpoints, they
+   * should be managed by the caller.
+   *
+   * @param oscEndpoint
+   *          the OSC endpoint messages will come in on
+   * @param mappingTable
+   *          the mappings from OSC addresses to DMX channels
+   * @param dmxEndpoints
+   *          the DMX endpoints, keyed by the universe number used in the
+   *          mapping table
+   * @param log
+   *          the logger to use
+   *
+   * @return the new bridge
+   */
+  OpenSoundControlDmxBridge newBridge(OpenSoundControlServerCommunicationEndpoint oscEndpoint,
+      OpenSoundControlDmxMappingTable mappingTable, Map<Integer, DmxControlEndpoint> dmxEndpoints,
+      Log log);
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.dmx;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.control.dmx.DmxControlEndpoint;
+
+/**
+ * A mapping from the arguments of messages sent to an OSC address onto a range
+ * of channels in a DMX universe.
+ *
+ * <p>
+ * Argument {@code n} of a message is written to channel {@code channel + n}.
+ * Input values are clamped to the input range, normalized, put through the
+ * scaling curve and then scaled onto the output range. The whole calculation
+ * is done once when the mapping is created and stored in a lookup table, so
+ * scaling a value is an array access.
+ *
+ * <p>
+ * Instances are immutable.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlDmxMapping {
+
+  /**
+   * The number of entries in the lookup table.
+   */
+  public static final int LOOKUP_TABLE_SIZE = 1024;
+
+  /**
+   * The default minimum input value.
+   */
+  public static final double INPUT_MINIMUM_DEFAULT = 0.0;
+
+  /**
+   * The default maximum input value.
+   */
+  public static final double INPUT_MAXIMUM_DEFAULT = 1.0;
+
+  /**
+   * The OSC address the mapping is for.
+   */
+  private final String address;
+
+  /**
+   * The DMX universe the mapping writes to.
+   */
+  private final int universe;
+
+  /**
+   * The first DMX channel written to.
+   */
+  private final int channel;
+
+  /**
+   * The number of channels written to.
+   */
+  private final int numberChannels;
+
+  /**
+   * The scaling curve.
+   */
+  private final OpenSoundControlDmxScalingCurve curve;
+
+  /**
+   * The minimum input value.
+   */
+  private final double inputMinimum;
+
+  /**
+   * The maximum input value.
+   */
+  private final double inputMaximum;
+
+  /**
+   * The DMX value for the minimum input.
+   */
+  private final int outputMinimum;
+
+  /**
+   * The DMX value for the maximum input.
+   */
+  private final int outputMaximum;
+
+  /**
+   * The multiplier which takes an input value offset by the minimum to a lookup
+   * table index.
+   */
+  private final double lookupScale;
+
+  /**
+   * The DMX values for evenly spaced normalized inputs.
+   */
+  private final byte[] lookupTable = new byte[LOOKUP_TABLE_SIZE];
+
+  /**
+   * Construct a new mapping.
+   *
+   * @param address
+   *          the OSC address
+   * @param universe
+   *          the DMX universe
+   * @param channel
+   *          the first DMX channel
+   * @param numberChannels
+   *          the number of channels
+   * @param curve
+   *          the scaling curve
+   * @param inputMinimum
+   *          the minimum input value
+   * @param inputMaximum
+   *          the maximum input value
+   * @param outputMinimum
+   *          the DMX value for the minimum input
+   * @param outputMaximum
+   *          the DMX value for the maximum input
+   */
+  public OpenSoundControlDmxMapping(String address, int universe, int channel,
+      int numberChannels, OpenSoundControlDmxScalingCurve curve, double inputMinimum,
+      double inputMaximum, int outputMinimum, int outputMaximum) {
+    if (numberChannels < 1 || channel < DmxControlEndpoint.DMX_CHANNEL_MINIMUM
+        || channel + numberChannels > DmxControlEndpoint.DMX_CHANNEL_MAXIMUM + 1) {
+      throw new SimpleSmartSpacesException(String.format(
+          "OSC address %s maps to DMX channels %d to %d which are outside of the DMX range",
+          address, channel, channel + numberChannels - 1));
+    }
+    if (inputMaximum <= inputMinimum) {
+      throw new SimpleSmartSpacesException(String.format(
+          "OSC address %s has an empty input range", address));
+    }
+    checkOutputValue(address, outputMinimum);
+    checkOutputValue(address, outputMaximum);
+
+    this.address = address;
+    this.universe = universe;
+    this.channel = channel;
+    this.numberChannels = numberChannels;
+    this.curve = curve;
+    this.inputMinimum = inputMinimum;
+    this.inputMaximum = inputMaximum;
+    this.outputMinimum = outputMinimum;
+    this.outputMaximum = outputMaximum;
+
+    lookupScale = (LOOKUP_TABLE_SIZE - 1) / (inputMaximum - inputMinimum);
+    for (int i = 0; i < LOOKUP_TABLE_SIZE; i++) {
+      double curved = curve.apply((double) i / (LOOKUP_TABLE_SIZE - 1));
+      lookupTable[i] =
+          (byte) Math.round(outputMinimum + curved * (outputMaximum - outputMinimum));
+    }
+  }
+
+  /**
+   * Get the DMX value for an input value.
+   *
+   * @param value
+   *          the input value
+   *
+   * @return the DMX value
+   */
+  public int scale(double value) {
+    int index = (int) ((value - inputMinimum) * lookupScale + 0.5);
+    if (index < 0) {
+      index = 0;
+    } else if (index >= LOOKUP_TABLE_SIZE) {
+      index = LOOKUP_TABLE_SIZE - 1;
+    }
+
+    return lookupTable[index] & 0xff;
+  }
+
+  /**
+   * Get a copy of this mapping for another address and starting channel.
+   *
+   * @param newAddress
+   *          the address for the copy
+   * @param newChannel
+   *          the first channel for the copy
+   *
+   * @return the copy
+   */
+  public OpenSoundControlDmxMapping withAddress(String newAddress, int newChannel) {
+    return new OpenSoundControlDmxMapping(newAddress, universe, newChannel, numberChannels,
+        curve, inputMinimum, inputMaximum, outputMinimum, outputMaximum);
+  }
+
+  /**
+   * Get the OSC address the mapping is for.
+   *
+   * @return the OSC address
+   */
+  public String getAddress() {
+    return address;
+  }
+
+  /**
+   * Get the DMX universe the mapping writes to.
+   *
+   * @return the DMX universe
+   */
+  public int getUniverse() {
+    return universe;
+  }
+
+  /**
+   * Get the first DMX channel written to.
+   *
+   * @return the first channel
+   */
+  public int getChannel() {
+    return channel;
+  }
+
+  /**
+   * Get the number of channels written to.
+   *
+   * @return the number of channels
+   */
+  public int getNumberChannels() {
+    return numberChannels;
+  }
+
+  /**
+   * Get the scaling curve.
+   *
+   * @return the scaling curve
+   */
+  public OpenSoundControlDmxScalingCurve getCurve() {
+    return curve;
+  }
+
+  /**
+   * Get the minimum input value.
+   *
+   * @return the minimum input value
+   */
+  public double getInputMinimum() {
+    return inputMinimum;
+  }
+
+  /**
+   * Get the maximum input value.
+   *
+   * @return the maximum input value
+   */
+  public double getInputMaximum() {
+    return inputMaximum;
+  }
+
+  /**
+   * Get the DMX value for the minimum input.
+   *
+   * @return the DMX value for the minimum input
+   */
+  public int getOutputMinimum() {
+    return outputMinimum;
+  }
+
+  /**
+   * Get the DMX value for the maximum input.
+   *
+   * @return the DMX value for the maximum input
+   */
+  public int getOutputMaximum() {
+    return outputMaximum;
+  }
+
+  @Override
+  public String toString() {
+    return "OpenSoundControlDmxMapping [address=" + address + ", universe=" + universe
+        + ", channel=" + channel + ", numberChannels=" + numberChannels + ", curve=" + curve
+        + ", inputMinimum=" + inputMinimum + ", inputMaximum=" + inputMaximum
+        + ", outputMinimum=" + outputMinimum + ", outputMaximum=" + outputMaximum + "]";
+  }
+
+  /**
+   * Check that an output value is a legal DMX value.
+   *
+   * @param address
+   *          the OSC address of the mapping
+   * @param value
+   *          the value to check
+   */
+  private static void checkOutputValue(String address, int value) {
+    if (value < DmxControlEndpoint.DMX_VALUE_MINIMUM
+        || value > DmxControlEndpoint.DMX_VALUE_MAXIMUM) {
+      throw new SimpleSmartSpacesException(String.format(
+          "OSC address %s has DMX output value %d outside of 0 to 255", address, value));
+    }
+  }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.dmx;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.control.dmx.DmxControlEndpoint;
+import io.smartspaces.sandbox.service.control.dmx.DmxFrameScheduler;
+import io.smartspaces.util.data.json.StandardJsonMapper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A table of mappings from OSC addresses to DMX channels.
+ *
+ * <p>
+ * Tables are usually read from JSON, for example
+ *
+ * <pre>
+ * {
+ *   "frameRate": 40,
+ *   "mappings": [
+ *     { "address": "/mixer/fader/{1-16}", "universe": 0, "channel": 1,
+ *       "curve": "square" },
+ *     { "address": "/rgb", "universe": 0, "channel": 100, "channels": 3,
+ *       "inputMinimum": 0, "inputMaximum": 255 }
+ *   ]
+ * }
+ * </pre>
+ *
+ * <p>
+ * An address can contain one numeric range of the form {@code {first-last}}.
+ * The mapping is then expanded into one mapping per number in the range, each
+ * one placed {@code channels} channels after the one before. Any other use of
+ * braces in an address is an error.
+ *
+ * <p>
+ * Instances are immutable.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlDmxMappingTable {
+
+  /**
+   * The table field giving the frame rate.
+   */
+  public static final String FIELD_FRAME_RATE = "frameRate";
+
+  /**
+   * The table field giving the list of mappings.
+   */
+  public static final String FIELD_MAPPINGS = "mappings";
+
+  /**
+   * The mapping field giving the OSC address.
+   */
+  public static final String FIELD_ADDRESS = "address";
+
+  /**
+   * The mapping field giving the DMX universe.
+   */
+  public static final String FIELD_UNIVERSE = "universe";
+
+  /**
+   * The mapping field giving the first DMX channel.
+   */
+  public static final String FIELD_CHANNEL = "channel";
+
+  /**
+   * The mapping field giving the number of DMX channels.
+   */
+  public static final String FIELD_CHANNELS = "channels";
+
+  /**
+   * The mapping field giving the scaling curve.
+   */
+  public static final String FIELD_CURVE = "curve";
+
+  /**
+   * The mapping field giving the minimum input value.
+   */
+  public static final String FIELD_INPUT_MINIMUM = "inputMinimum";
+
+  /**
+   * The mapping field giving the maximum input value.
+   */
+  public static final String FIELD_INPUT_MAXIMUM = "inputMaximum";
+
+  /**
+   * The mapping field giving the DMX value for the minimum input.
+   */
+  public static final String FIELD_OUTPUT_MINIMUM = "outputMinimum";
+
+  /**
+   * The mapping field giving the DMX value for the maximum input.
+   */
+  public static final String FIELD_OUTPUT_MAXIMUM = "outputMaximum";
+
+  /**
+   * The default DMX universe.
+   */
+  public static final int UNIVERSE_DEFAULT = 0;
+
+  /**
+   * The pattern for a numeric range in an address.
+   */
+  private static final Pattern ADDRESS_RANGE_PATTERN = Pattern.compile("\\{(\\d+)-(\\d+)\\}");
+
+  /**
+   * The mappings, with all address ranges expanded.
+   */
+  private final List<OpenSoundControlDmxMapping> mappings;
+
+  /**
+   * The number of DMX frames to send per second.
+   */
+  private final double frameRate;
+
+  /**
+   * Construct a new table.
+   *
+   * @param mappings
+   *          the mappings, address ranges must already be expanded
+   * @param frameRate
+   *          the number of DMX frames to send per second
+   *
+   * @throws SimpleSmartSpacesException
+   *           more than one mapping is given for an address, or the frame rate
+   *           is not positive
+   */
+  public OpenSoundControlDmxMappingTable(List<OpenSoundControlDmxMapping> mappings,
+      double frameRate) throws SimpleSmartSpacesException {
+    if (!(frameRate > 0) || Double.isInfinite(frameRate)) {
+      throw new SimpleSmartSpacesException(
+          String.format("OSC to DMX mapping table frame rate %s is not positive", frameRate));
+    }
+
+    Set<String> addresses = Sets.newHashSet();
+    for (OpenSoundControlDmxMapping mapping : mappings) {
+      if (!addresses.add(mapping.getAddress())) {
+        throw new SimpleSmartSpacesException(String.format(
+            "OSC address %s is mapped more than once", mapping.getAddress()));
+      }
+    }
+
+    this.mappings = Collections.unmodifiableList(Lists.newArrayList(mappings));
+    this.frameRate = frameRate;
+  }
+
+  /**
+   * Read a mapping table from JSON.
+   *
+   * @param json
+   *          the JSON description of the table
+   *
+   * @return the mapping table
+   *
+   * @throws SimpleSmartSpacesException
+   *           the table description is not legal
+   */
+  public static OpenSoundControlDmxMappingTable fromJson(String json)
+      throws SimpleSmartSpacesException {
+    return fromData(StandardJsonMapper.INSTANCE.parseObject(json));
+  }
+
+  /**
+   * Read a mapping table from a map, such as one produced by the JSON or YAML
+   * mappers.
+   *
+   * @param data
+   *          the description of the table
+   *
+   * @return the mapping table
+   *
+   * @throws SimpleSmartSpacesException
+   *           the table description is not legal
+   */
+  @SuppressWarnings("unchecked")
+  public static OpenSoundControlDmxMappingTable fromData(Map<String, Object> data)
+      throws SimpleSmartSpacesException {
+    double frameRate =
+        getDouble(data, FIELD_FRAME_RATE, DmxFrameScheduler.FRAME_RATE_DEFAULT);
+
+    Object mappingsData = data.get(FIELD_MAPPINGS);
+    if (!(mappingsData instanceof List)) {
+      throw new SimpleSmartSpacesException(String.format(
+          "OSC to DMX mapping table has no %s list", FIELD_MAPPINGS));
+    }
+
+    List<OpenSoundControlDmxMapping> mappings = Lists.newArrayList();
+    for (Object mappingData : (List<Object>) mappingsData) {
+      if (!(mappingData instanceof Map)) {
+        throw new SimpleSmartSpacesException(String.format(
+            "OSC to DMX mapping %s is not a map of mapping fields", mappingData));
+      }
+
+      addMappings((Map<String, Object>) mappingData, mappings);
+    }
+
+    return new OpenSoundControlDmxMappingTable(mappings, frameRate);
+  }
+
+  /**
+   * Get the mappings.
+   *
+   * @return the mappings, with all address ranges expanded
+   */
+  public List<OpenSoundControlDmxMapping> getMappings() {
+    return mappings;
+  }
+
+  /**
+   * Get the number of DMX frames to send per second.
+   *
+   * @return the frame rate
+   */
+  public double getFrameRate() {
+    return frameRate;
+  }
+
+  /**
+   * Add the mappings given by a mapping description.
+   *
+   * @param data
+   *          the mapping description
+   * @param mappings
+   *          the list to add the mappings to
+   */
+  private static void addMappings(Map<String, Object> data,
+      List<OpenSoundControlDmxMapping> mappings) {
+    Object address = data.get(FIELD_ADDRESS);
+    if (address == null) {
+      throw new SimpleSmartSpacesException(String.format(
+          "OSC to DMX mapping %s has no %s", data, FIELD_ADDRESS));
+    }
+
+    int universe = getInt(data, FIELD_UNIVERSE, UNIVERSE_DEFAULT);
+    int channel = getInt(data, FIELD_CHANNEL, DmxControlEndpoint.DMX_CHANNEL_MINIMUM);
+    int numberChannels = getInt(data, FIELD_CHANNELS, 1);
+
+    Object curveName = data.get(FIELD_CURVE);
+    OpenSoundControlDmxScalingCurve curve = OpenSoundControlDmxScalingCurve.LINEAR;
+    if (curveName != null) {
+      try {
+        curve = OpenSoundControlDmxScalingCurve.valueOf(curveName.toString().toUpperCase());
+      } catch (IllegalArgumentException e) {
+        throw new SimpleSmartSpacesException(String.format(
+            "Unknown OSC to DMX scaling curve %s", curveName));
+      }
+    }
+
+    double inputMinimum =
+        getDouble(data, FIELD_INPUT_MINIMUM, OpenSoundControlDmxMapping.INPUT_MINIMUM_DEFAULT);
+    double inputMaximum =
+        getDouble(data, FIELD_INPUT_MAXIMUM, OpenSoundControlDmxMapping.INPUT_MAXIMUM_DEFAULT);
+    int outputMinimum = getInt(data, FIELD_OUTPUT_MINIMUM, DmxControlEndpoint.DMX_VALUE_MINIMUM);
+    int outputMaximum = getInt(data, FIELD_OUTPUT_MAXIMUM, DmxControlEndpoint.DMX_VALUE_MAXIMUM);
+
+    OpenSoundControlDmxMapping mapping =
+        new OpenSoundControlDmxMapping(address.toString(), universe, channel, numberChannels,
+            curve, inputMinimum, inputMaximum, outputMinimum, outputMaximum);
+
+    Matcher matcher = ADDRESS_RANGE_PATTERN.matcher(mapping.getAddress());
+    if (!matcher.find()) {
+      checkNoRange(mapping.getAddress(), mapping.getAddress());
+      mappings.add(mapping);
+
+      return;
+    }
+
+    String prefix = mapping.getAddress().substring(0, matcher.start());
+    String suffix = mapping.getAddress().substring(matcher.end());
+    checkNoRange(mapping.getAddress(), prefix + suffix);
+
+    int first;
+    int last;
+    try {
+      first = Integer.parseInt(matcher.group(1));
+      last = Integer.parseInt(matcher.group(2));
+    } catch (NumberFormatException e) {
+      throw new SimpleSmartSpacesException(String.format(
+          "OSC address %s has a range with numbers which are too large", mapping.getAddress()));
+    }
+    if (last < first) {
+      throw new SimpleSmartSpacesException(String.format(
+          "OSC address %s has an empty range", mapping.getAddress()));
+    }
+
+    for (int i = first; i <= last; i++) {
+      mappings.add(mapping.withAddress(prefix + i + suffix,
+          channel + (i - first) * numberChannels));
+    }
+  }
+
+  /**
+   * Check that part of an address has no range left in it.
+   *
+   * @param address
+   *          the full address
+   * @param addressPart
+   *          the part of the address to check
+   *
+   * @throws SimpleSmartSpacesException
+   *           the part has braces in it
+   */
+  private static void checkNoRange(String address, String addressPart)
+      throws SimpleSmartSpacesException {
+    if (addressPart.indexOf('{') != -1 || addressPart.indexOf('}') != -1) {
+      throw new SimpleSmartSpacesException(String.format(
+          "OSC address %s has a malformed range, only one range of the form {first-last} "
+              + "is allowed",
+          address));
+    }
+  }
+
+  /**
+   * Get an integer field.
+   *
+   * @param data
+   *          the map holding the field
+   * @param field
+   *          the field name
+   * @param defaultValue
+   *          the value if the field is not there
+   *
+   * @return the value of the field
+   */
+  private static int getInt(Map<String, Object> data, String field, int defaultValue) {
+    Object value = data.get(field);
+
+    return (value != null) ? toNumber(field, value).intValue() : defaultValue;
+  }
+
+  /**
+   * Get a double field.
+   *
+   * @param data
+   *          the map holding the field
+   * @param field
+   *          the field name
+   * @param defaultValue
+   *          the value if the field is not there
+   *
+   * @return the value of the field
+   */
+  private static double getDouble(Map<String, Object> data, String field, double defaultValue) {
+    Object value = data.get(field);
+
+    return (value != null) ? toNumber(field, value).doubleValue() : defaultValue;
+  }
+
+  /**
+   * Convert a field value to a number.
+   *
+   * @param field
+   *          the field name
+   * @param value
+   *          the field value
+   *
+   * @return the number
+   */
+  private static Number toNumber(String field, Object value) {
+    if (value instanceof Number) {
+      return (Number) value;
+    }
+
+    try {
+      return Double.parseDouble(value.toString());
+    } catch (NumberFormatException e) {
+      throw new SimpleSmartSpacesException(String.format(
+          "OSC to DMX mapping field %s has non-numeric value %s", field, value));
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.dmx;
+
+/**
+ * The curves which can be used for scaling OSC values onto DMX values.
+ *
+ * @author Keith M. Hughes
+ */
+public enum OpenSoundControlDmxScalingCurve {
+
+  /**
+   * The output is proportional to the input.
+   */
+  LINEAR {
+    @Override
+    public double apply(double value) {
+      return value;
+    }
+  },
+
+  /**
+   * The output is the square of the input. This gives dimmers a more even
+   * perceived brightness across a fader's travel.
+   */
+  SQUARE {
+    @Override
+    public double apply(double value) {
+      return value * value;
+    }
+  },
+
+  /**
+   * The output is the cube of the input.
+   */
+  CUBE {
+    @Override
+    public double apply(double value) {
+      return value * value * value;
+    }
+  },
+
+  /**
+   * The output is the square root of the input.
+   */
+  SQUARE_ROOT {
+    @Override
+    public double apply(double value) {
+      return Math.sqrt(value);
+    }
+  },
+
+  /**
+   * The output is the inverse of the input, {@code 1} gives {@code 0}.
+   */
+  INVERTED {
+    @Override
+    public double apply(double value) {
+      return 1.0 - value;
+    }
+  };
+
+  /**
+   * Apply the curve to a value.
+   *
+   * @param value
+   *          the value, from {@code 0} to {@code 1}
+   *
+   * @return the curved value, from {@code 0} to {@code 1}
+   */
+  public abstract double apply(double value);
+}
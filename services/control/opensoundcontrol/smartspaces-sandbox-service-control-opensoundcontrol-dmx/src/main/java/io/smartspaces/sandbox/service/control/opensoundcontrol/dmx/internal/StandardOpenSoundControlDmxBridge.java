@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.dmx.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.control.dmx.DmxControlEndpoint;
+import io.smartspaces.sandbox.service.control.dmx.DmxFrameScheduler;
+import io.smartspaces.sandbox.service.control.dmx.DmxUniverseBuffer;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerCommunicationEndpoint;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlTypedArguments;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlTypedMethod;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.dmx.OpenSoundControlDmxBridge;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.dmx.OpenSoundControlDmxMapping;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.dmx.OpenSoundControlDmxMappingTable;
+import io.smartspaces.service.control.opensoundcontrol.OpenSoundControlConstants;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.commons.logging.Log;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The standard implementation of an OSC to DMX bridge.
+ *
+ * <p>
+ * Each mapped address gets typed OSC methods for all float and all int
+ * arguments, so arguments are read as primitives and scaled through the
+ * mapping's lookup table straight into the universe buffer.
+ *
+ * @author Keith M. Hughes
+ */
+public class StandardOpenSoundControlDmxBridge implements OpenSoundControlDmxBridge {
+
+  /**
+   * The OSC endpoint messages come in on.
+   */
+  private final OpenSoundControlServerCommunicationEndpoint oscEndpoint;
+
+  /**
+   * The mapping table.
+   */
+  private final OpenSoundControlDmxMappingTable mappingTable;
+
+  /**
+   * The universe buffers, keyed by universe number.
+   */
+  private final Map<Integer, DmxUniverseBuffer> universes = Maps.newHashMap();
+
+  /**
+   * The frame schedulers for all universes.
+   */
+  private final List<DmxFrameScheduler> frameSchedulers = Lists.newArrayList();
+
+  /**
+   * The OSC methods registered, in the same order as the mappings.
+   */
+  private final List<OpenSoundControlTypedMethod[]> methods = Lists.newArrayList();
+
+  /**
+   * The logger to use.
+   */
+  private final Log log;
+
+  /**
+   * Construct a new bridge.
+   *
+   * @param oscEndpoint
+   *          the OSC endpoint messages will come in on
+   * @param mappingTable
+   *          the mapping table
+   * @param dmxEndpoints
+   *          the DMX endpoints keyed by universe number
+   * @param executorService
+   *          the executor service for the frame schedulers
+   * @param log
+   *          the logger to use
+   *
+   * @throws SimpleSmartSpacesException
+   *           a mapping uses a universe which has no endpoint
+   */
+  public StandardOpenSoundControlDmxBridge(
+      OpenSoundControlServerCommunicationEndpoint oscEndpoint,
+      OpenSoundControlDmxMappingTable mappingTable, Map<Integer, DmxControlEndpoint> dmxEndpoints,
+      ScheduledExecutorService executorService, Log log) throws SimpleSmartSpacesException {
+    this.oscEndpoint = oscEndpoint;
+    this.mappingTable = mappingTable;
+    this.log = log;
+
+    for (OpenSoundControlDmxMapping mapping : mappingTable.getMappings()) {
+      int universeNumber = mapping.getUniverse();
+      DmxUniverseBuffer universe = universes.get(universeNumber);
+      if (universe == null) {
+        DmxControlEndpoint dmxEndpoint = dmxEndpoints.get(universeNumber);
+        if (dmxEndpoint == null) {
+          throw new SimpleSmartSpacesException(String.format(
+              "OSC address %s maps to DMX universe %d which has no DMX endpoint",
+              mapping.getAddress(), universeNumber));
+        }
+
+        universe = new DmxUniverseBuffer();
+        universes.put(universeNumber, universe);
+        frameSchedulers.add(new DmxFrameScheduler(dmxEndpoint, universe,
+            mappingTable.getFrameRate(), executorService, log));
+      }
+
+      methods.add(new OpenSoundControlTypedMethod[] { new FloatMappingMethod(mapping, universe),
+          new IntMappingMethod(mapping, universe) });
+    }
+  }
+
+  @Override
+  public void startup() {
+    log.info(String.format("Starting OSC to DMX bridge with %d mappings", methods.size()));
+
+    for (DmxFrameScheduler frameScheduler : frameSchedulers) {
+      frameScheduler.startup();
+    }
+
+    List<OpenSoundControlDmxMapping> mappings = mappingTable.getMappings();
+    for (int i = 0; i < mappings.size(); i++) {
+      OpenSoundControlDmxMapping mapping = mappings.get(i);
+      OpenSoundControlTypedMethod[] mappingMethods = methods.get(i);
+
+      oscEndpoint.registerTypedMethod(mapping.getAddress(),
+          getSignature(OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT32,
+              mapping.getNumberChannels()), mappingMethods[0]);
+      oscEndpoint.registerTypedMethod(mapping.getAddress(),
+          getSignature(OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT32,
+              mapping.getNumberChannels()), mappingMethods[1]);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    log.info("Shutting down OSC to DMX bridge");
+
+    List<OpenSoundControlDmxMapping> mappings = mappingTable.getMappings();
+    for (int i = 0; i < mappings.size(); i++) {
+      for (OpenSoundControlTypedMethod method : methods.get(i)) {
+        oscEndpoint.unregisterTypedMethod(mappings.get(i).getAddress(), method);
+      }
+    }
+
+    for (DmxFrameScheduler frameScheduler : frameSchedulers) {
+      frameScheduler.shutdown();
+    }
+  }
+
+  @Override
+  public OpenSoundControlDmxMappingTable getMappingTable() {
+    return mappingTable;
+  }
+
+  @Override
+  public DmxUniverseBuffer getUniverse(int universe) {
+    return universes.get(universe);
+  }
+
+  /**
+   * Get the OSC signature for a number of arguments all of the same type.
+   *
+   * @param type
+   *          the argument type
+   * @param numberArguments
+   *          the number of arguments
+   *
+   * @return the signature
+   */
+  private static String getSignature(byte type, int numberArguments) {
+    return Strings.repeat(String.valueOf((char) type), numberArguments);
+  }
+
+  /**
+   * A method writing float arguments into a universe.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class FloatMappingMethod implements OpenSoundControlTypedMethod {
+
+    /**
+     * The mapping for the method.
+     */
+    private final OpenSoundControlDmxMapping mapping;
+
+    /**
+     * The universe to write to.
+     */
+    private final DmxUniverseBuffer universe;
+
+    /**
+     * Construct a new method.
+     *
+     * @param mapping
+     *          the mapping for the method
+     * @param universe
+     *          the universe to write to
+     */
+    FloatMappingMethod(OpenSoundControlDmxMapping mapping, DmxUniverseBuffer universe) {
+      this.mapping = mapping;
+      this.universe = universe;
+    }
+
+    @Override
+    public void invoke(String address, OpenSoundControlTypedArguments arguments) {
+      int channel = mapping.getChannel();
+      for (int i = 0; i < arguments.getNumberArguments(); i++) {
+        universe.setChannelValue(channel + i, mapping.scale(arguments.getFloat(i)));
+      }
+    }
+  }
+
+  /**
+   * A method writing int arguments into a universe.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class IntMappingMethod implements OpenSoundControlTypedMethod {
+
+    /**
+     * The mapping for the method.
+     */
+    private final OpenSoundControlDmxMapping mapping;
+
+    /**
+     * The universe to write to.
+     */
+    private final DmxUniverseBuffer universe;
+
+    /**
+     * Construct a new method.
+     *
+     * @param mapping
+     *          the mapping for the method
+     * @param universe
+     *          the universe to write to
+     */
+    IntMappingMethod(OpenSoundControlDmxMapping mapping, DmxUniverseBuffer universe) {
+      this.mapping = mapping;
+      this.universe = universe;
+    }
+
+    @Override
+    public void invoke(String address, OpenSoundControlTypedArguments arguments) {
+      int channel = mapping.getChannel();
+      for (int i = 0; i < arguments.getNumberArguments(); i++) {
+        universe.setChannelValue(channel + i, mapping.scale(arguments.getInt(i)));
+      }
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.dmx.internal;
+
+import io.smartspaces.sandbox.service.control.dmx.DmxControlEndpoint;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerCommunicationEndpoint;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.dmx.OpenSoundControlDmxBridge;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.dmx.OpenSoundControlDmxBridgeService;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.dmx.OpenSoundControlDmxMappingTable;
+import io.smartspaces.service.BaseSupportedService;
+
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * The standard implementation of the OSC to DMX bridge service.
+ *
+ * @author Keith M. Hughes
+ */
+public class StandardOpenSoundControlDmxBridgeService extends BaseSupportedService implements
+    OpenSoundControlDmxBridgeService {
+
+  @Override
+  public String getName() {
+    return SERVICE_NAME;
+  }
+
+  @Override
+  public OpenSoundControlDmxBridge newBridge(
+      OpenSoundControlServerCommunicationEndpoint oscEndpoint,
+      OpenSoundControlDmxMappingTable mappingTable, Map<Integer, DmxControlEndpoint> dmxEndpoints,
+      Log log) {
+    return new StandardOpenSoundControlDmxBridge(oscEndpoint, mappingTable, dmxEndpoints,
+        getSpaceEnvironment().getExecutorService(), log);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.dmx;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests for the {@link OpenSoundControlDmxMappingTable}.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlDmxMappingTableTest {
+
+  /**
+   * Test reading a table with all of the mapping fields.
+   */
+  @Test
+  public void testReadTable() {
+    OpenSoundControlDmxMappingTable table = OpenSoundControlDmxMappingTable.fromJson(
+        "{\"frameRate\": 30, \"mappings\": [{\"address\": \"/rgb\", \"universe\": 2, "
+            + "\"channel\": 100, \"channels\": 3, \"curve\": \"square_root\", "
+            + "\"inputMinimum\": 0, \"inputMaximum\": 255, \"outputMinimum\": 10, "
+            + "\"outputMaximum\": 200}]}");
+
+    Assert.assertEquals(30.0, table.getFrameRate(), 0.0);
+    Assert.assertEquals(1, table.getMappings().size());
+
+    OpenSoundControlDmxMapping mapping = table.getMappings().get(0);
+    Assert.assertEquals("/rgb", mapping.getAddress());
+    Assert.assertEquals(2, mapping.getUniverse());
+    Assert.assertEquals(100, mapping.getChannel());
+    Assert.assertEquals(3, mapping.getNumberChannels());
+    Assert.assertEquals(OpenSoundControlDmxScalingCurve.SQUARE_ROOT, mapping.getCurve());
+    Assert.assertEquals(255.0, mapping.getInputMaximum(), 0.0);
+    Assert.assertEquals(10, mapping.getOutputMinimum());
+    Assert.assertEquals(200, mapping.getOutputMaximum());
+  }
+
+  /**
+   * Test expanding an address range into one mapping per number.
+   */
+  @Test
+  public void testRangeExpansion() {
+    List<OpenSoundControlDmxMapping> mappings = OpenSoundControlDmxMappingTable.fromJson(
+        "{\"mappings\": [{\"address\": \"/fader/{3-5}/level\", \"channel\": 10, "
+            + "\"channels\": 2}]}")
+        .getMappings();
+
+    Assert.assertEquals(3, mappings.size());
+    Assert.assertEquals("/fader/3/level", mappings.get(0).getAddress());
+    Assert.assertEquals(10, mappings.get(0).getChannel());
+    Assert.assertEquals("/fader/4/level", mappings.get(1).getAddress());
+    Assert.assertEquals(12, mappings.get(1).getChannel());
+    Assert.assertEquals("/fader/5/level", mappings.get(2).getAddress());
+    Assert.assertEquals(14, mappings.get(2).getChannel());
+  }
+
+  /**
+   * Test a range with a single number.
+   */
+  @Test
+  public void testSingleNumberRange() {
+    List<OpenSoundControlDmxMapping> mappings = OpenSoundControlDmxMappingTable
+        .fromJson("{\"mappings\": [{\"address\": \"/fader/{7-7}\", \"channel\": 4}]}")
+        .getMappings();
+
+    Assert.assertEquals(1, mappings.size());
+    Assert.assertEquals("/fader/7", mappings.get(0).getAddress());
+    Assert.assertEquals(4, mappings.get(0).getChannel());
+  }
+
+  /**
+   * Test that reversed and malformed ranges are rejected.
+   */
+  @Test
+  public void testBadRanges() {
+    assertRejected("{\"mappings\": [{\"address\": \"/fader/{5-3}\"}]}");
+    assertRejected("{\"mappings\": [{\"address\": \"/fader/{3-}\"}]}");
+    assertRejected("{\"mappings\": [{\"address\": \"/fader/{a-b}\"}]}");
+    assertRejected("{\"mappings\": [{\"address\": \"/fader/{1-2\"}]}");
+    assertRejected("{\"mappings\": [{\"address\": \"/fader/{1-2}/{1-2}\"}]}");
+    assertRejected("{\"mappings\": [{\"address\": \"/fader/{1-99999999999}\"}]}");
+  }
+
+  /**
+   * Test that a range running past the last DMX channel is rejected.
+   */
+  @Test
+  public void testRangePastLastChannel() {
+    assertRejected("{\"mappings\": [{\"address\": \"/fader/{1-3}\", \"channel\": 511}]}");
+  }
+
+  /**
+   * Test that other bad tables are rejected.
+   */
+  @Test
+  public void testBadTables() {
+    assertRejected("{}");
+    assertRejected("{\"mappings\": [\"/fader\"]}");
+    assertRejected("{\"mappings\": [{\"channel\": 1}]}");
+    assertRejected("{\"mappings\": [{\"address\": \"/a\", \"curve\": \"wavy\"}]}");
+    assertRejected("{\"mappings\": [{\"address\": \"/a\", \"channel\": \"one\"}]}");
+    assertRejected("{\"mappings\": [{\"address\": \"/a\"}, {\"address\": \"/a\"}]}");
+    assertRejected("{\"mappings\": [{\"address\": \"/fader/{1-2}\"}, "
+        + "{\"address\": \"/fader/2\", \"channel\": 10}]}");
+  }
+
+  /**
+   * Test that frame rates which are not positive are rejected.
+   */
+  @Test
+  public void testBadFrameRates() {
+    assertRejected("{\"frameRate\": 0, \"mappings\": [{\"address\": \"/a\"}]}");
+    assertRejected("{\"frameRate\": -10, \"mappings\": [{\"address\": \"/a\"}]}");
+  }
+
+  /**
+   * Assert that a table is rejected.
+   *
+   * @param json
+   *          the JSON for the table
+   */
+  private void assertRejected(String json) {
+    try {
+      OpenSoundControlDmxMappingTable.fromJson(json);
+      Assert.fail("Table was accepted: " + json);
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.dmx;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link OpenSoundControlDmxMapping}.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlDmxMappingTest {
+
+  /**
+   * Test linear scaling at the ends and middle of the input range.
+   */
+  @Test
+  public void testLinearScaling() {
+    OpenSoundControlDmxMapping mapping = newMapping(OpenSoundControlDmxScalingCurve.LINEAR, 0, 255);
+
+    Assert.assertEquals(0, mapping.scale(0.0));
+    Assert.assertEquals(255, mapping.scale(1.0));
+    Assert.assertEquals(128, mapping.scale(0.5));
+  }
+
+  /**
+   * Test that inputs outside of the input range are clamped.
+   */
+  @Test
+  public void testClamping() {
+    OpenSoundControlDmxMapping mapping = newMapping(OpenSoundControlDmxScalingCurve.LINEAR, 0, 255);
+
+    Assert.assertEquals(0, mapping.scale(-0.1));
+    Assert.assertEquals(0, mapping.scale(-1.0e12));
+    Assert.assertEquals(255, mapping.scale(1.1));
+    Assert.assertEquals(255, mapping.scale(1.0e12));
+    Assert.assertEquals(0, mapping.scale(Double.NaN));
+  }
+
+  /**
+   * Test scaling onto a narrower output range from a wider input range.
+   */
+  @Test
+  public void testRanges() {
+    OpenSoundControlDmxMapping mapping = new OpenSoundControlDmxMapping("/a", 0, 1, 1,
+        OpenSoundControlDmxScalingCurve.LINEAR, -100.0, 100.0, 20, 220);
+
+    Assert.assertEquals(20, mapping.scale(-100.0));
+    Assert.assertEquals(120, mapping.scale(0.0));
+    Assert.assertEquals(220, mapping.scale(100.0));
+  }
+
+  /**
+   * Test the curves at the ends of the input range.
+   */
+  @Test
+  public void testCurveEnds() {
+    for (OpenSoundControlDmxScalingCurve curve : OpenSoundControlDmxScalingCurve.values()) {
+      OpenSoundControlDmxMapping mapping = newMapping(curve, 0, 255);
+      boolean inverted = curve == OpenSoundControlDmxScalingCurve.INVERTED;
+
+      Assert.assertEquals(curve.name(), inverted ? 255 : 0, mapping.scale(0.0));
+      Assert.assertEquals(curve.name(), inverted ? 0 : 255, mapping.scale(1.0));
+    }
+
+    Assert.assertEquals(64,
+        newMapping(OpenSoundControlDmxScalingCurve.SQUARE, 0, 255).scale(0.5));
+    Assert.assertEquals(180,
+        newMapping(OpenSoundControlDmxScalingCurve.SQUARE_ROOT, 0, 255).scale(0.5));
+  }
+
+  /**
+   * Test that an output range which runs downwards is followed.
+   */
+  @Test
+  public void testReversedOutput() {
+    OpenSoundControlDmxMapping mapping = newMapping(OpenSoundControlDmxScalingCurve.LINEAR, 255, 0);
+
+    Assert.assertEquals(255, mapping.scale(0.0));
+    Assert.assertEquals(0, mapping.scale(1.0));
+  }
+
+  /**
+   * Test that copies for other addresses keep the scaling.
+   */
+  @Test
+  public void testWithAddress() {
+    OpenSoundControlDmxMapping mapping =
+        newMapping(OpenSoundControlDmxScalingCurve.SQUARE, 0, 100).withAddress("/b", 20);
+
+    Assert.assertEquals("/b", mapping.getAddress());
+    Assert.assertEquals(20, mapping.getChannel());
+    Assert.assertEquals(OpenSoundControlDmxScalingCurve.SQUARE, mapping.getCurve());
+    Assert.assertEquals(100, mapping.scale(1.0));
+  }
+
+  /**
+   * Test that illegal mappings are rejected.
+   */
+  @Test
+  public void testIllegalMappings() {
+    assertRejected(() -> new OpenSoundControlDmxMapping("/a", 0, 0, 1,
+        OpenSoundControlDmxScalingCurve.LINEAR, 0.0, 1.0, 0, 255));
+    assertRejected(() -> new OpenSoundControlDmxMapping("/a", 0, 510, 4,
+        OpenSoundControlDmxScalingCurve.LINEAR, 0.0, 1.0, 0, 255));
+    assertRejected(() -> new OpenSoundControlDmxMapping("/a", 0, 1, 0,
+        OpenSoundControlDmxScalingCurve.LINEAR, 0.0, 1.0, 0, 255));
+    assertRejected(() -> new OpenSoundControlDmxMapping("/a", 0, 1, 1,
+        OpenSoundControlDmxScalingCurve.LINEAR, 1.0, 1.0, 0, 255));
+    assertRejected(() -> new OpenSoundControlDmxMapping("/a", 0, 1, 1,
+        OpenSoundControlDmxScalingCurve.LINEAR, 0.0, 1.0, 0, 256));
+    assertRejected(() -> new OpenSoundControlDmxMapping("/a", 0, 1, 1,
+        OpenSoundControlDmxScalingCurve.LINEAR, 0.0, 1.0, -1, 255));
+  }
+
+  /**
+   * Create a mapping for inputs from {@code 0} to {@code 1}.
+   *
+   * @param curve
+   *          the scaling curve
+   * @param outputMinimum
+   *          the DMX value for the minimum input
+   * @param outputMaximum
+   *          the DMX value for the maximum input
+   *
+   * @return the mapping
+   */
+  private OpenSoundControlDmxMapping newMapping(OpenSoundControlDmxScalingCurve curve,
+      int outputMinimum, int outputMaximum) {
+    return new OpenSoundControlDmxMapping("/a", 0, 1, 1, curve, 0.0, 1.0, outputMinimum,
+        outputMaximum);
+  }
+
+  /**
+   * Assert that creating a mapping is rejected.
+   *
+   * @param creation
+   *          creates the mapping
+   */
+  private void assertRejected(Runnable creation) {
+    try {
+      creation.run();
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+}
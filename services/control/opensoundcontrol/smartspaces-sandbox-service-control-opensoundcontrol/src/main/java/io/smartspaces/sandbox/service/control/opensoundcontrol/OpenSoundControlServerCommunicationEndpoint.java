@@ -17,6 +17,7 @@
 
 package io.smartspaces.sandbox.service.control.opensoundcontrol;
 
+import io.smartspaces.SmartSpacesException;
 import io.smartspaces.util.resource.ManagedResource;
 
 /**
@@ -65,6 +66,42 @@ public interface OpenSoundControlServerCommunicationEndpoint extends ManagedReso
    */
   void unregisterMethod(String oscAddress, OpenSoundControlMethod method);
 
+  /**
+   * Register a typed method for a specific OSC address.
+   *
+   * <p>
+   * The method is only invoked for messages whose type tags exactly match the
+   * signature. Messages which do not match are logged and not given to the
+   * method.
+   *
+   * @param oscAddress
+   *          the OSC address the method will handle
+   * @param signature
+   *          the argument type tags the method accepts, e.g. {@code ,ffi}, the
+   *          leading comma is optional
+   * @param method
+   *          the method for the addressed packets
+   *
+   * @throws SmartSpacesException
+   *           the signature contains an unsupported type
+   */
+  void registerTypedMethod(String oscAddress, String signature, OpenSoundControlTypedMethod method)
+      throws SmartSpacesException;
+
+  /**
+   * Unregister a typed method for a specific OSC address.
+   *
+   * <p>
+   * Does nothing if the method has not been registered for the particular
+   * address.
+   *
+   * @param oscAddress
+   *          the OSC address the method was handling
+   * @param method
+   *          the method for the addressed packets
+   */
+  void unregisterTypedMethod(String oscAddress, OpenSoundControlTypedMethod method);
+
   /**
    * Register a method for handling unknown OSC messages.
    *
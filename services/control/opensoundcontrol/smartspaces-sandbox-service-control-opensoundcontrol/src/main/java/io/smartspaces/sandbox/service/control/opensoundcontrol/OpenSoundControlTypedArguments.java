@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol;
+
+/**
+ * The arguments of an Open Sound Control message whose type tags have already
+ * been matched against the signature of an {@link OpenSoundControlTypedMethod}.
+ *
+ * <p>
+ * Values are read directly from the message, so asking for an argument as a
+ * type other than the one in the signature gives an exception.
+ *
+ * <p>
+ * Instances are reused between messages. They must not be kept after the
+ * method invocation they were given to has returned.
+ *
+ * @author Keith M. Hughes
+ */
+public interface OpenSoundControlTypedArguments {
+
+  /**
+   * Get the number of arguments.
+   *
+   * @return the number of arguments
+   */
+  int getNumberArguments();
+
+  /**
+   * Get an int32 argument.
+   *
+   * @param arg
+   *          the argument position
+   *
+   * @return the value
+   */
+  int getInt(int arg);
+
+  /**
+   * Get an int64 argument.
+   *
+   * @param arg
+   *          the argument position
+   *
+   * @return the value
+   */
+  long getLong(int arg);
+
+  /**
+   * Get a float32 argument.
+   *
+   * @param arg
+   *          the argument position
+   *
+   * @return the value
+   */
+  float getFloat(int arg);
+
+  /**
+   * Get a float64 argument.
+   *
+   * @param arg
+   *          the argument position
+   *
+   * @return the value
+   */
+  double getDouble(int arg);
+
+  /**
+   * Get a string argument.
+   *
+   * @param arg
+   *          the argument position
+   *
+   * @return the value
+   */
+  String getString(int arg);
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol;
+
+/**
+ * An Open Sound Control method which is bound to a specific argument
+ * signature.
+ *
+ * <p>
+ * The type tags of incoming messages are checked against the signature before
+ * the method is invoked, so the arguments can be read as primitives without
+ * any further type checks or boxing.
+ *
+ * @author Keith M. Hughes
+ */
+public interface OpenSoundControlTypedMethod {
+
+  /**
+   * Invoke the method on an Open Sound Control message.
+   *
+   * @param address
+   *          the OSC address of the message
+   * @param arguments
+   *          the arguments of the message, only valid for the duration of the
+   *          call
+   */
+  void invoke(String address, OpenSoundControlTypedArguments arguments);
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlTypedArguments;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.internal.SmartSpacesOpenSoundControlPacketParser.SmartSpacesOpenSoundControlServerPacket;
+import io.smartspaces.service.control.opensoundcontrol.OpenSoundControlConstants;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A decoder for Open Sound Control arguments which has been compiled for a
+ * specific argument signature.
+ *
+ * <p>
+ * The signature is validated once when the decoder is compiled. Decoding a
+ * message is then a byte comparison of its type tags against the signature
+ * and, for signatures without strings, a lookup of precomputed argument
+ * offsets. Values are read straight out of the message as primitives.
+ *
+ * <p>
+ * The decoder reuses a single arguments object, so it is not thread safe. The
+ * callers need to protect it.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlArgumentDecoder {
+
+  /**
+   * The character which can start a signature.
+   */
+  public static final char SIGNATURE_DESIGNATOR = ',';
+
+  /**
+   * The marker for an argument offset which can only be known once the message
+   * is seen.
+   */
+  private static final int OFFSET_VARIABLE = -1;
+
+  /**
+   * The number of bytes in an OSC int32.
+   */
+  private static final int NUMBER_BYTES_INT32 = 4;
+
+  /**
+   * The number of bytes in an OSC int64 or float64.
+   */
+  private static final int NUMBER_BYTES_INT64 = 8;
+
+  /**
+   * The size of an OSC byte boundary.
+   */
+  private static final int BYTE_BOUNDARY = 4;
+
+  /**
+   * The type tags of the signature, without the leading comma.
+   */
+  private final byte[] typeTags;
+
+  /**
+   * The offset of each argument from the start of the arguments. Offsets after
+   * the first string argument are {@link #OFFSET_VARIABLE}.
+   */
+  private final int[] fixedOffsets;
+
+  /**
+   * The number of bytes taken by the arguments, or {@link #OFFSET_VARIABLE} if
+   * the signature has strings.
+   */
+  private final int fixedLength;
+
+  /**
+   * The arguments given to methods.
+   */
+  private final DecodedArguments arguments;
+
+  /**
+   * Compile a decoder for a signature.
+   *
+   * @param signature
+   *          the type tags of the signature, the leading comma is optional
+   *
+   * @return the decoder
+   *
+   * @throws SimpleSmartSpacesException
+   *           the signature contains an unsupported type
+   */
+  public static OpenSoundControlArgumentDecoder compile(String signature)
+      throws SimpleSmartSpacesException {
+    String typeTags =
+        (!signature.isEmpty() && signature.charAt(0) == SIGNATURE_DESIGNATOR) ? signature
+            .substring(1) : signature;
+
+    return new OpenSoundControlArgumentDecoder(typeTags.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Construct a new decoder.
+   *
+   * @param typeTags
+   *          the type tags of the signature, without the leading comma
+   */
+  private OpenSoundControlArgumentDecoder(byte[] typeTags) {
+    this.typeTags = typeTags;
+
+    fixedOffsets = new int[typeTags.length];
+    int offset = 0;
+    for (int i = 0; i < typeTags.length; i++) {
+      fixedOffsets[i] = offset;
+
+      if (offset != OFFSET_VARIABLE) {
+        int size = getFixedSize(typeTags[i]);
+        offset = (size != OFFSET_VARIABLE) ? offset + size : OFFSET_VARIABLE;
+      } else {
+        // Still validate the type.
+        getFixedSize(typeTags[i]);
+      }
+    }
+    fixedLength = offset;
+
+    arguments = new DecodedArguments(typeTags);
+  }
+
+  /**
+   * Get the signature the decoder was compiled for.
+   *
+   * @return the signature, including the leading comma
+   */
+  public String getSignature() {
+    return SIGNATURE_DESIGNATOR + new String(typeTags, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Does the packet match the signature of the decoder?
+   *
+   * @param packet
+   *          the packet to check
+   *
+   * @return {@code true} if the packet type tags are exactly the signature
+   */
+  public boolean matches(SmartSpacesOpenSoundControlServerPacket packet) {
+    int typeTagsStart = packet.getTypeTagsStart();
+    if (packet.getTypeTagsEnd() - typeTagsStart != typeTags.length) {
+      return false;
+    }
+
+    byte[] requestData = packet.getRequestData();
+    for (int i = 0; i < typeTags.length; i++) {
+      if (requestData[typeTagsStart + i] != typeTags[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Decode the arguments of a packet.
+   *
+   * <p>
+   * The packet must already have been checked with
+   * {@link #matches(SmartSpacesOpenSoundControlServerPacket)}.
+   *
+   * @param packet
+   *          the packet to decode
+   *
+   * @return the arguments, which are reused on the next call
+   *
+   * @throws SimpleSmartSpacesException
+   *           the arguments run past the end of the packet
+   */
+  public OpenSoundControlTypedArguments decode(SmartSpacesOpenSoundControlServerPacket packet)
+      throws SimpleSmartSpacesException {
+    byte[] requestData = packet.getRequestData();
+    int argumentsStart = packet.getArgumentsStart();
+    int parseEnd = packet.getParseEnd();
+
+    int[] offsets = arguments.offsets;
+    int argumentsEnd;
+    if (fixedLength != OFFSET_VARIABLE) {
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = argumentsStart + fixedOffsets[i];
+      }
+      argumentsEnd = argumentsStart + fixedLength;
+    } else {
+      int pos = argumentsStart;
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] = pos;
+
+        int size = getFixedSize(typeTags[i]);
+        if (size != OFFSET_VARIABLE) {
+          pos += size;
+        } else {
+          while (pos < parseEnd && requestData[pos] != 0) {
+            pos++;
+          }
+          pos += BYTE_BOUNDARY - (pos % BYTE_BOUNDARY);
+        }
+      }
+      argumentsEnd = pos;
+    }
+
+    if (argumentsEnd > parseEnd) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Open Sound Control arguments for signature %s overrun the packet", getSignature()));
+    }
+
+    arguments.requestData = requestData;
+
+    return arguments;
+  }
+
+  /**
+   * Get the number of bytes an argument type takes.
+   *
+   * @param type
+   *          the type tag
+   *
+   * @return the number of bytes, or {@link #OFFSET_VARIABLE} for strings
+   *
+   * @throws SimpleSmartSpacesException
+   *           the type is not supported
+   */
+  private static int getFixedSize(byte type) throws SimpleSmartSpacesException {
+    switch (type) {
+      case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_STRING:
+        return OFFSET_VARIABLE;
+      case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT32:
+      case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT32:
+        return NUMBER_BYTES_INT32;
+      case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT64:
+      case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT64:
+        return NUMBER_BYTES_INT64;
+      default:
+        throw new SimpleSmartSpacesException(String.format(
+            "Unsupported Open Sound Control type %c in signature", (char) type));
+    }
+  }
+
+  /**
+   * The arguments of a message which matched the signature.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class DecodedArguments implements OpenSoundControlTypedArguments {
+
+    /**
+     * The type tags of the signature.
+     */
+    private final byte[] typeTags;
+
+    /**
+     * The position of each argument in the request data.
+     */
+    private final int[] offsets;
+
+    /**
+     * The request data of the current message.
+     */
+    private byte[] requestData;
+
+    /**
+     * Construct new arguments.
+     *
+     * @param typeTags
+     *          the type tags of the signature
+     */
+    DecodedArguments(byte[] typeTags) {
+      this.typeTags = typeTags;
+      this.offsets = new int[typeTags.length];
+    }
+
+    @Override
+    public int getNumberArguments() {
+      return typeTags.length;
+    }
+
+    @Override
+    public int getInt(int arg) {
+      checkType(arg, OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT32);
+
+      return readInt(offsets[arg]);
+    }
+
+    @Override
+    public long getLong(int arg) {
+      checkType(arg, OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT64);
+
+      return readLong(offsets[arg]);
+    }
+
+    @Override
+    public float getFloat(int arg) {
+      checkType(arg, OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT32);
+
+      return Float.intBitsToFloat(readInt(offsets[arg]));
+    }
+
+    @Override
+    public double getDouble(int arg) {
+      checkType(arg, OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT64);
+
+      return Double.longBitsToDouble(readLong(offsets[arg]));
+    }
+
+    @Override
+    public String getString(int arg) {
+      checkType(arg, OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_STRING);
+
+      int start = offsets[arg];
+      int end = start;
+      while (end < requestData.length && requestData[end] != 0) {
+        end++;
+      }
+
+      return new String(requestData, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check that an argument has the expected type.
+     *
+     * @param arg
+     *          the argument position
+     * @param type
+     *          the expected type
+     */
+    private void checkType(int arg, byte type) {
+      if (arg < 0 || arg >= typeTags.length || typeTags[arg] != type) {
+        throw new SimpleSmartSpacesException(String.format(
+            "The Open sound Control argument at position %d is not of type %c", arg, (char) type));
+      }
+    }
+
+    /**
+     * Read a big endian int32.
+     *
+     * @param pos
+     *          the position in the request data
+     *
+     * @return the value
+     */
+    private int readInt(int pos) {
+      return ((requestData[pos] & 0xff) << 24) | ((requestData[pos + 1] & 0xff) << 16)
+          | ((requestData[pos + 2] & 0xff) << 8) | (requestData[pos + 3] & 0xff);
+    }
+
+    /**
+     * Read a big endian int64.
+     *
+     * @param pos
+     *          the position in the request data
+     *
+     * @return the value
+     */
+    private long readLong(int pos) {
+      return ((long) readInt(pos) << 32) | (readInt(pos + 4) & 0xffffffffL);
+    }
+  }
+}
@@ -19,7 +19,10 @@ package io.smartspaces.sandbox.service.control.opensoundcontrol.internal;
 
 import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlMethod;
 import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerPacket;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlTypedMethod;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.internal.SmartSpacesOpenSoundControlPacketParser.SmartSpacesOpenSoundControlServerPacket;
 
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -41,6 +44,11 @@ public class OpenSoundControlMethodCollection {
    */
   private List<OpenSoundControlMethod> methods = Lists.newArrayList();
 
+  /**
+   * The typed methods.
+   */
+  private List<TypedMethodBinding> typedMethods = Lists.newArrayList();
+
   /**
    * Add a new method to the collection.
    *
@@ -64,6 +72,39 @@ public class OpenSoundControlMethodCollection {
     methods.remove(method);
   }
 
+  /**
+   * Add a new typed method to the collection.
+   *
+   * @param signature
+   *          the signature the method accepts
+   * @param method
+   *          the method to add
+   */
+  public void addTypedMethod(String signature, OpenSoundControlTypedMethod method) {
+    typedMethods.add(new TypedMethodBinding(OpenSoundControlArgumentDecoder.compile(signature),
+        method));
+  }
+
+  /**
+   * Remove a typed method from the collection.
+   *
+   * <p>
+   * Does nothing if the method is not in the collection.
+   *
+   * @param method
+   *          the method to remove
+   */
+  public void removeTypedMethod(OpenSoundControlTypedMethod method) {
+    Iterator<TypedMethodBinding> bindings = typedMethods.iterator();
+    while (bindings.hasNext()) {
+      if (bindings.next().method == method) {
+        bindings.remove();
+
+        return;
+      }
+    }
+  }
+
   /**
    * Handle a packet.
    *
@@ -80,5 +121,80 @@ public class OpenSoundControlMethodCollection {
         log.error("An Open Sound Control method has failed", e);
       }
     }
+
+    if (!typedMethods.isEmpty()) {
+      handleTypedPacket(packet, log);
+    }
+  }
+
+  /**
+   * Handle a packet for the typed methods.
+   *
+   * @param packet
+   *          the packet to handle
+   * @param log
+   *          a logger to use
+   */
+  private void handleTypedPacket(OpenSoundControlServerPacket packet, Log log) {
+    if (!(packet instanceof SmartSpacesOpenSoundControlServerPacket)) {
+      log.error(String.format("Typed Open Sound Control methods can not decode packet %s", packet));
+
+      return;
+    }
+
+    SmartSpacesOpenSoundControlServerPacket smartSpacesPacket =
+        (SmartSpacesOpenSoundControlServerPacket) packet;
+    boolean matched = false;
+    for (TypedMethodBinding binding : typedMethods) {
+      OpenSoundControlArgumentDecoder decoder = binding.decoder;
+      if (decoder.matches(smartSpacesPacket)) {
+        matched = true;
+        try {
+          binding.method.invoke(packet.getAddress(), decoder.decode(smartSpacesPacket));
+        } catch (Throwable e) {
+          log.error("An Open Sound Control method has failed", e);
+        }
+      }
+    }
+
+    // Several signatures can be registered for an address, so only complain if
+    // nothing took the packet.
+    if (!matched && methods.isEmpty()) {
+      log.warn(String.format(
+          "Open Sound Control packet for address %s does not match any method signature",
+          packet.getAddress()));
+    }
+  }
+
+  /**
+   * A typed method and the decoder for its signature.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class TypedMethodBinding {
+
+    /**
+     * The decoder for the method signature.
+     */
+    private final OpenSoundControlArgumentDecoder decoder;
+
+    /**
+     * The method.
+     */
+    private final OpenSoundControlTypedMethod method;
+
+    /**
+     * Construct a new binding.
+     *
+     * @param decoder
+     *          the decoder for the method signature
+     * @param method
+     *          the method
+     */
+    TypedMethodBinding(OpenSoundControlArgumentDecoder decoder,
+        OpenSoundControlTypedMethod method) {
+      this.decoder = decoder;
+      this.method = method;
+    }
   }
 }
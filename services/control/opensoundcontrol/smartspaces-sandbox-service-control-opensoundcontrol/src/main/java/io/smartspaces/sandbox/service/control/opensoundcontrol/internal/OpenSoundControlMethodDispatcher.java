@@ -19,6 +19,7 @@ package io.smartspaces.sandbox.service.control.opensoundcontrol.internal;
 
 import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlMethod;
 import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerPacket;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlTypedMethod;
 
 import java.util.Map;
 
@@ -71,13 +72,22 @@ public class OpenSoundControlMethodDispatcher {
    *          the method to be added
    */
   public synchronized void addMethod(String oscAddress, OpenSoundControlMethod method) {
-    OpenSoundControlMethodCollection collection = collections.get(oscAddress);
-    if (collection == null) {
-      collection = new OpenSoundControlMethodCollection();
-      collections.put(oscAddress, collection);
-    }
+    getCollection(oscAddress).addMethod(method);
+  }
 
-    collection.addMethod(method);
+  /**
+   * Add in a new typed method into the dispatcher.
+   *
+   * @param oscAddress
+   *          the address the method will respond to
+   * @param signature
+   *          the signature the method accepts
+   * @param method
+   *          the method to be added
+   */
+  public synchronized void addTypedMethod(String oscAddress, String signature,
+      OpenSoundControlTypedMethod method) {
+    getCollection(oscAddress).addTypedMethod(signature, method);
   }
 
   /**
@@ -95,6 +105,22 @@ public class OpenSoundControlMethodDispatcher {
     }
   }
 
+  /**
+   * Remove a typed method from the dispatcher.
+   *
+   * @param oscAddress
+   *          the address the method will respond to
+   * @param method
+   *          the method to be removed
+   */
+  public synchronized void removeTypedMethod(String oscAddress,
+      OpenSoundControlTypedMethod method) {
+    OpenSoundControlMethodCollection collection = collections.get(oscAddress);
+    if (collection != null) {
+      collection.removeTypedMethod(method);
+    }
+  }
+
   /**
    * Register a method for unknown OSC messages.
    *
@@ -138,4 +164,22 @@ public class OpenSoundControlMethodDispatcher {
       unknownMessageMethods.handlePacket(packet, log);
     }
   }
+
+  /**
+   * Get the method collection for an address, creating it if necessary.
+   *
+   * @param oscAddress
+   *          the address
+   *
+   * @return the collection for the address
+   */
+  private OpenSoundControlMethodCollection getCollection(String oscAddress) {
+    OpenSoundControlMethodCollection collection = collections.get(oscAddress);
+    if (collection == null) {
+      collection = new OpenSoundControlMethodCollection();
+      collections.put(oscAddress, collection);
+    }
+
+    return collection;
+  }
 }
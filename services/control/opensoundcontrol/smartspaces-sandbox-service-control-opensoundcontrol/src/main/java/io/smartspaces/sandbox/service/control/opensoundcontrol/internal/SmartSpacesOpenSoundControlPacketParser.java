@@ -24,6 +24,7 @@ import io.smartspaces.service.control.opensoundcontrol.OpenSoundControlConstants
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Parser for reading a Open Sound control packet.
@@ -32,6 +33,23 @@ import java.util.Arrays;
  */
 public class SmartSpacesOpenSoundControlPacketParser {
 
+  /**
+   * The bytes which start an OSC bundle, including the 0 terminator.
+   *
+   * <p>
+   * TODO(keith): Move into OSCConstants.
+   */
+  public static final byte[] OPEN_SOUND_CONTROL_BUNDLE_DESIGNATOR =
+      { '#', 'b', 'u', 'n', 'd', 'l', 'e', 0 };
+
+  /**
+   * The number of bytes in an OSC bundle time tag.
+   *
+   * <p>
+   * TODO(keith): Move into OSCConstants.
+   */
+  public static final int OPEN_SOUND_CONTROL_NUMBER_BYTES_TIME_TAG = 8;
+
   /**
    * Parse the request data to get the packet.
    *
@@ -41,16 +59,125 @@ public class SmartSpacesOpenSoundControlPacketParser {
    * @return the server packet
    */
   public OpenSoundControlServerPacket parsePacket(byte[] requestData) {
+    return parsePacket(requestData, 0, requestData.length);
+  }
+
+  /**
+   * Parse a message from a portion of the request data to get the packet.
+   *
+   * @param requestData
+   *          the request data which has come in
+   * @param offset
+   *          the offset in the data where the message starts
+   * @param length
+   *          the number of bytes in the message
+   *
+   * @return the server packet
+   */
+  public OpenSoundControlServerPacket parsePacket(byte[] requestData, int offset, int length) {
     SmartSpacesOpenSoundControlServerPacket packet =
-        new SmartSpacesOpenSoundControlServerPacket(requestData);
+        new SmartSpacesOpenSoundControlServerPacket(requestData, offset, length);
     packet.parse();
 
     return packet;
   }
 
+  /**
+   * Parse the request data into all of the messages it contains.
+   *
+   * <p>
+   * The request data can either be a single message or a bundle. Bundles can
+   * be nested. Bundle time tags are ignored, all messages are treated as
+   * immediate.
+   *
+   * @param requestData
+   *          the request data which has come in
+   * @param packets
+   *          the list to add the parsed packets to
+   */
+  public void parsePackets(byte[] requestData, List<OpenSoundControlServerPacket> packets) {
+    parsePackets(requestData, 0, requestData.length, packets);
+  }
+
+  /**
+   * Is the request data an OSC bundle?
+   *
+   * @param requestData
+   *          the request data
+   * @param offset
+   *          the offset in the data where the packet starts
+   * @param length
+   *          the number of bytes in the packet
+   *
+   * @return {@code true} if the data is a bundle
+   */
+  public boolean isBundle(byte[] requestData, int offset, int length) {
+    if (length < OPEN_SOUND_CONTROL_BUNDLE_DESIGNATOR.length) {
+      return false;
+    }
+
+    for (int i = 0; i < OPEN_SOUND_CONTROL_BUNDLE_DESIGNATOR.length; i++) {
+      if (requestData[offset + i] != OPEN_SOUND_CONTROL_BUNDLE_DESIGNATOR[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Parse a portion of the request data into all of the messages it contains.
+   *
+   * @param requestData
+   *          the request data which has come in
+   * @param offset
+   *          the offset in the data where the packet starts
+   * @param length
+   *          the number of bytes in the packet
+   * @param packets
+   *          the list to add the parsed packets to
+   */
+  private void parsePackets(byte[] requestData, int offset, int length,
+      List<OpenSoundControlServerPacket> packets) {
+    if (!isBundle(requestData, offset, length)) {
+      packets.add(parsePacket(requestData, offset, length));
+
+      return;
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(requestData).order(ByteOrder.BIG_ENDIAN);
+
+    int sizeLength = SmartSpacesOpenSoundControlServerPacket.OPEN_SOUND_CONTROL_NUMBER_BYTES_INT32;
+    int end = offset + length;
+    int elementPos = offset + OPEN_SOUND_CONTROL_BUNDLE_DESIGNATOR.length
+        + OPEN_SOUND_CONTROL_NUMBER_BYTES_TIME_TAG;
+    while (elementPos + sizeLength <= end) {
+      int elementSize = buffer.getInt(elementPos);
+      elementPos += sizeLength;
+      if (elementSize < 0 || elementPos + elementSize > end) {
+        throw new SimpleSmartSpacesException(String.format(
+            "Open Sound Control bundle element of size %d overruns the bundle", elementSize));
+      }
+
+      parsePackets(requestData, elementPos, elementSize, packets);
+      elementPos += elementSize;
+    }
+
+    // Left over bytes are a truncated element size or time tag.
+    if (elementPos != end) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Open Sound Control bundle of %d bytes does not end on an element boundary", length));
+    }
+  }
+
   /**
    * The Smart Spaces representation of the server packet.
    *
+   * <p>
+   * Arguments are decoded the first time they are asked for, so methods which
+   * read the message through an {@link OpenSoundControlArgumentDecoder} never
+   * box them. This class is not thread safe.
+   *
    * @author Keith M. Hughes
    */
   static class SmartSpacesOpenSoundControlServerPacket implements
@@ -119,15 +246,36 @@ public class SmartSpacesOpenSoundControlPacketParser {
     private String address;
 
     /**
-     * The Open Sound control arguments for the packet.
+     * The Open Sound control arguments for the packet, {@code null} until they
+     * have been decoded.
      */
     private Object[] arguments;
 
+    /**
+     * The position of the first type tag in the request data.
+     */
+    private int typeTagsStart;
+
+    /**
+     * The position just past the last type tag in the request data.
+     */
+    private int typeTagsEnd;
+
+    /**
+     * The position of the first argument in the request data.
+     */
+    private int argumentsStart;
+
     /**
      * Current position for parsing.
      */
     private int parsePos;
 
+    /**
+     * The position just past the last byte of the packet in the request data.
+     */
+    private final int parseEnd;
+
     /**
      * Construct a new server packet.
      *
@@ -135,7 +283,23 @@ public class SmartSpacesOpenSoundControlPacketParser {
      *          the request data
      */
     public SmartSpacesOpenSoundControlServerPacket(byte[] requestData) {
+      this(requestData, 0, requestData.length);
+    }
+
+    /**
+     * Construct a new server packet from a portion of the request data.
+     *
+     * @param requestData
+     *          the request data
+     * @param offset
+     *          the offset in the data where the packet starts
+     * @param length
+     *          the number of bytes in the packet
+     */
+    public SmartSpacesOpenSoundControlServerPacket(byte[] requestData, int offset, int length) {
       this.requestData = requestData;
+      this.parsePos = offset;
+      this.parseEnd = offset + length;
     }
 
     @Override
@@ -145,11 +309,13 @@ public class SmartSpacesOpenSoundControlPacketParser {
 
     @Override
     public int getNumberArguments() {
-      return arguments.length;
+      return typeTagsEnd - typeTagsStart;
     }
 
     @Override
     public Object[] getArguments() {
+      decodeArguments();
+
       return arguments;
     }
 
@@ -206,6 +372,7 @@ public class SmartSpacesOpenSoundControlPacketParser {
     @Override
     public boolean isIntArgument(int arg) {
       checkArgumentPosition(arg);
+      decodeArguments();
 
       return arguments[arg] instanceof Integer;
     }
@@ -213,6 +380,7 @@ public class SmartSpacesOpenSoundControlPacketParser {
     @Override
     public boolean isLongArgument(int arg) {
       checkArgumentPosition(arg);
+      decodeArguments();
 
       return arguments[arg] instanceof Long;
     }
@@ -220,6 +388,7 @@ public class SmartSpacesOpenSoundControlPacketParser {
     @Override
     public boolean isFloatArgument(int arg) {
       checkArgumentPosition(arg);
+      decodeArguments();
 
       return arguments[arg] instanceof Float;
     }
@@ -227,6 +396,7 @@ public class SmartSpacesOpenSoundControlPacketParser {
     @Override
     public boolean isDoubleArgument(int arg) {
       checkArgumentPosition(arg);
+      decodeArguments();
 
       return arguments[arg] instanceof Double;
     }
@@ -234,6 +404,7 @@ public class SmartSpacesOpenSoundControlPacketParser {
     @Override
     public boolean isStringArgument(int arg) {
       checkArgumentPosition(arg);
+      decodeArguments();
 
       return arguments[arg] instanceof String;
     }
@@ -241,74 +412,192 @@ public class SmartSpacesOpenSoundControlPacketParser {
     @Override
     public String toString() {
       return "SmartSpacesOpenSoundControlServerPacket [address=" + address + ", arguments="
-          + Arrays.toString(arguments) + "]";
+          + Arrays.toString(getArguments()) + "]";
+    }
+
+    /**
+     * Get the request data the packet is in.
+     *
+     * @return the request data
+     */
+    byte[] getRequestData() {
+      return requestData;
+    }
+
+    /**
+     * Get the position of the first type tag in the request data.
+     *
+     * @return the position of the first type tag
+     */
+    int getTypeTagsStart() {
+      return typeTagsStart;
+    }
+
+    /**
+     * Get the position just past the last type tag in the request data.
+     *
+     * @return the position just past the last type tag
+     */
+    int getTypeTagsEnd() {
+      return typeTagsEnd;
+    }
+
+    /**
+     * Get the position of the first argument in the request data.
+     *
+     * @return the position of the first argument
+     */
+    int getArgumentsStart() {
+      return argumentsStart;
+    }
+
+    /**
+     * Get the position just past the last byte of the packet in the request
+     * data.
+     *
+     * @return the end of the packet
+     */
+    int getParseEnd() {
+      return parseEnd;
     }
 
     /**
      * Parse the packet.
+     *
+     * <p>
+     * Only the address and the location of the type tags and arguments are
+     * found. The arguments themselves are only decoded if asked for.
      */
     private void parse() {
       address = parseString();
 
-      parseArguments();
+      findArguments();
     }
 
     /**
-     * Parse the arguments out of the packet.
+     * Find the type tags and the start of the arguments in the packet.
      */
-    private void parseArguments() {
+    private void findArguments() {
       // See if there are arguments.
-      if (parsePos < requestData.length
+      if (parsePos < parseEnd
           && requestData[parsePos] == OPEN_SOUND_CONTROL_TYPE_STRING_DESIGNATOR) {
         // +1 because we want to start after the comma.
-        int argTypesStart = parsePos + 1;
-        if (argTypesStart < requestData.length) {
+        typeTagsStart = parsePos + 1;
+        if (typeTagsStart < parseEnd) {
           findStringEnd();
-          int argTypesEnd = parsePos;
+          typeTagsEnd = parsePos;
           moveToNextBoundary();
-          if (argTypesStart < argTypesEnd) {
-            arguments = new Object[argTypesEnd - argTypesStart];
-
-            ByteBuffer buffer = ByteBuffer.wrap(requestData).order(ByteOrder.BIG_ENDIAN);
-
-            int argPos = 0;
-            for (int typePos = argTypesStart; typePos < argTypesEnd; typePos++) {
-              switch (requestData[typePos]) {
-                case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_STRING:
-                  arguments[argPos++] = parseString();
-                  break;
-                case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT32:
-                  arguments[argPos++] = buffer.getInt(parsePos);
-                  parsePos += OPEN_SOUND_CONTROL_NUMBER_BYTES_INT32;
-                  break;
-                case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT64:
-                  arguments[argPos++] = buffer.getLong(parsePos);
-                  parsePos += OPEN_SOUND_CONTROL_NUMBER_BYTES_INT64;
-                  break;
-                case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT32:
-                  arguments[argPos++] = buffer.getFloat(parsePos);
-                  parsePos += OPEN_SOUND_CONTROL_NUMBER_BYTES_FLOAT32;
-                  break;
-                case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT64:
-                  arguments[argPos++] = buffer.getFloat(parsePos);
-                  parsePos += OPEN_SOUND_CONTROL_NUMBER_BYTES_FLOAT64;
-                  break;
-                default:
-                  throw new SimpleSmartSpacesException(
-                      String.format("Unsupported Open Sound Control type"));
-              }
-            }
-          } else {
-            // Is type, but then packet ends. That's fine.
-            arguments = NO_ARGS;
-          }
         } else {
           // Is type, but then packet ends. That's fine.
-          arguments = NO_ARGS;
+          typeTagsEnd = typeTagsStart;
         }
       } else {
+        typeTagsStart = parsePos;
+        typeTagsEnd = parsePos;
+      }
+
+      argumentsStart = parsePos;
+    }
+
+    /**
+     * Decode the arguments out of the packet if it hasn't been done already.
+     */
+    private void decodeArguments() {
+      if (arguments != null) {
+        return;
+      }
+
+      if (typeTagsStart == typeTagsEnd) {
         arguments = NO_ARGS;
+
+        return;
+      }
+
+      Object[] decodedArguments = new Object[typeTagsEnd - typeTagsStart];
+
+      ByteBuffer buffer = ByteBuffer.wrap(requestData).order(ByteOrder.BIG_ENDIAN);
+
+      parsePos = argumentsStart;
+      int argPos = 0;
+      for (int typePos = typeTagsStart; typePos < typeTagsEnd; typePos++) {
+        switch (requestData[typePos]) {
+          case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_STRING:
+            decodedArguments[argPos++] = parseString();
+            checkArgumentEnd(typePos);
+            break;
+          case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT32:
+            checkArgumentBytes(OPEN_SOUND_CONTROL_NUMBER_BYTES_INT32, typePos);
+            decodedArguments[argPos++] = buffer.getInt(parsePos);
+            parsePos += OPEN_SOUND_CONTROL_NUMBER_BYTES_INT32;
+            break;
+          case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT64:
+            checkArgumentBytes(OPEN_SOUND_CONTROL_NUMBER_BYTES_INT64, typePos);
+            decodedArguments[argPos++] = buffer.getLong(parsePos);
+            parsePos += OPEN_SOUND_CONTROL_NUMBER_BYTES_INT64;
+            break;
+          case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT32:
+            checkArgumentBytes(OPEN_SOUND_CONTROL_NUMBER_BYTES_FLOAT32, typePos);
+            decodedArguments[argPos++] = buffer.getFloat(parsePos);
+            parsePos += OPEN_SOUND_CONTROL_NUMBER_BYTES_FLOAT32;
+            break;
+          case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT64:
+            checkArgumentBytes(OPEN_SOUND_CONTROL_NUMBER_BYTES_FLOAT64, typePos);
+            decodedArguments[argPos++] = buffer.getDouble(parsePos);
+            parsePos += OPEN_SOUND_CONTROL_NUMBER_BYTES_FLOAT64;
+            break;
+          default:
+            throw new SimpleSmartSpacesException(String.format(
+                "Unsupported Open Sound Control type %c", (char) requestData[typePos]));
+        }
       }
+
+      arguments = decodedArguments;
+    }
+
+    /**
+     * Check that an argument of a given size fits in the packet at the current
+     * parsing position and throw an exception if it does not.
+     *
+     * <p>
+     * Packets can be elements of a bundle, so reading past the end of the
+     * packet would decode bytes of the next element.
+     *
+     * @param size
+     *          the number of bytes in the argument
+     * @param typePos
+     *          the position of the type tag of the argument
+     */
+    private void checkArgumentBytes(int size, int typePos) {
+      if (parsePos + size > parseEnd) {
+        throwArgumentOverrun(typePos);
+      }
+    }
+
+    /**
+     * Check that the argument just parsed, including its padding, ended inside
+     * the packet and throw an exception if it did not.
+     *
+     * @param typePos
+     *          the position of the type tag of the argument
+     */
+    private void checkArgumentEnd(int typePos) {
+      if (parsePos > parseEnd) {
+        throwArgumentOverrun(typePos);
+      }
+    }
+
+    /**
+     * Throw the exception for an argument which runs past the end of the
+     * packet.
+     *
+     * @param typePos
+     *          the position of the type tag of the argument
+     */
+    private void throwArgumentOverrun(int typePos) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Open Sound Control argument %d of type %c for address %s runs past the end of the "
+              + "packet",
+          typePos - typeTagsStart, (char) requestData[typePos], address));
     }
 
     /**
@@ -338,7 +627,7 @@ public class SmartSpacesOpenSoundControlPacketParser {
      * terminator.
      */
     private void findStringEnd() {
-      while (parsePos < requestData.length && requestData[parsePos] != 0) {
+      while (parsePos < parseEnd && requestData[parsePos] != 0) {
         parsePos++;
       }
     }
@@ -358,12 +647,12 @@ public class SmartSpacesOpenSoundControlPacketParser {
      *          the argument to check
      */
     private void checkArgumentPosition(int arg) {
-      if (arg < 0 || arg >= arguments.length) {
+      if (arg < 0 || arg >= getNumberArguments()) {
         throw new SimpleSmartSpacesException(
             String
                 .format(
                     "Argument out of range for Open Sound Control packets, position is %d, number arguments is %d",
-                    arg, arguments.length));
+                    arg, getNumberArguments()));
       }
     }
   }
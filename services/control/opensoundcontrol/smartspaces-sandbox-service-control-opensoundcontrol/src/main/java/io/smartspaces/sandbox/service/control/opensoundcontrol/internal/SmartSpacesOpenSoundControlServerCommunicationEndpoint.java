@@ -19,12 +19,18 @@ package io.smartspaces.sandbox.service.control.opensoundcontrol.internal;
 
 import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlMethod;
 import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerCommunicationEndpoint;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerPacket;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlTypedMethod;
 import io.smartspaces.service.comm.network.server.UdpServerNetworkCommunicationEndpoint;
 import io.smartspaces.service.comm.network.server.UdpServerNetworkCommunicationEndpointListener;
 import io.smartspaces.service.comm.network.server.UdpServerRequest;
 
+import java.util.List;
+
 import org.apache.commons.logging.Log;
 
+import com.google.common.collect.Lists;
+
 /**
  * A Open Sound Control server endpoint implementation by those crazy folks at
  * Smart Spaces.
@@ -107,6 +113,17 @@ public class SmartSpacesOpenSoundControlServerCommunicationEndpoint implements
     dispatcher.removeMethod(oscAddress, handler);
   }
 
+  @Override
+  public void registerTypedMethod(String oscAddress, String signature,
+      OpenSoundControlTypedMethod method) {
+    dispatcher.addTypedMethod(oscAddress, signature, method);
+  }
+
+  @Override
+  public void unregisterTypedMethod(String oscAddress, OpenSoundControlTypedMethod method) {
+    dispatcher.removeTypedMethod(oscAddress, method);
+  }
+
   @Override
   public void registerUnknownMessageMethod(OpenSoundControlMethod method) {
     dispatcher.addUnknownMessageMethod(method);
@@ -131,7 +148,16 @@ public class SmartSpacesOpenSoundControlServerCommunicationEndpoint implements
    */
   private void handleServerRequest(UdpServerRequest serverRequest) {
     try {
-      dispatcher.handleIncomingPacket(packetParser.parsePacket(serverRequest.getRequest()));
+      byte[] requestData = serverRequest.getRequest();
+      if (!packetParser.isBundle(requestData, 0, requestData.length)) {
+        dispatcher.handleIncomingPacket(packetParser.parsePacket(requestData));
+      } else {
+        List<OpenSoundControlServerPacket> packets = Lists.newArrayList();
+        packetParser.parsePackets(requestData, packets);
+        for (OpenSoundControlServerPacket packet : packets) {
+          dispatcher.handleIncomingPacket(packet);
+        }
+      }
     } catch (Throwable e) {
       log.error("Error while handling incoming Open Sound Control packet", e);
     }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.internal.benchmark;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * The configuration for an Open Sound Control benchmark run.
+ *
+ * <p>
+ * Configurations are read from command line arguments of the form
+ * {@code name=value}, for example
+ * {@code port=53001 rate=20000 duration=10 addresses=64 bundle=4 mix=f:4,fff:2,i:2,s:1}.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlBenchmarkConfiguration {
+
+  /**
+   * The argument name for the server port.
+   */
+  public static final String ARGUMENT_PORT = "port";
+
+  /**
+   * The argument name for the target send rate, in packets per second.
+   */
+  public static final String ARGUMENT_RATE = "rate";
+
+  /**
+   * The argument name for the duration of the run, in seconds.
+   */
+  public static final String ARGUMENT_DURATION = "duration";
+
+  /**
+   * The argument name for the number of distinct OSC addresses.
+   */
+  public static final String ARGUMENT_ADDRESSES = "addresses";
+
+  /**
+   * The argument name for the number of messages per packet.
+   */
+  public static final String ARGUMENT_BUNDLE = "bundle";
+
+  /**
+   * The argument name for the message mix.
+   */
+  public static final String ARGUMENT_MIX = "mix";
+
+  /**
+   * The separator between entries in the message mix.
+   */
+  public static final String MIX_ENTRY_SEPARATOR = ",";
+
+  /**
+   * The separator between the signature and weight of a message mix entry.
+   */
+  public static final String MIX_WEIGHT_SEPARATOR = ":";
+
+  /**
+   * The port for the OSC server.
+   */
+  private int port = 53001;
+
+  /**
+   * The target send rate in packets per second. {@code 0} means as fast as
+   * possible.
+   */
+  private int rate = 10000;
+
+  /**
+   * The duration of the run, in seconds.
+   */
+  private int duration = 10;
+
+  /**
+   * The number of distinct addresses the messages will be sent to.
+   */
+  private int addressCardinality = 16;
+
+  /**
+   * The number of messages in each packet. A value of {@code 1} means messages
+   * are not bundled.
+   */
+  private int bundleSize = 1;
+
+  /**
+   * The map of argument signatures, without the leading comma, to their
+   * relative weight in the mix.
+   */
+  private Map<String, Integer> messageMix = Maps.newLinkedHashMap();
+
+  /**
+   * Construct a configuration with the default values.
+   */
+  public OpenSoundControlBenchmarkConfiguration() {
+    messageMix.put("f", 1);
+  }
+
+  /**
+   * Parse a configuration from command line arguments.
+   *
+   * @param args
+   *          the command line arguments
+   *
+   * @return the configuration
+   */
+  public static OpenSoundControlBenchmarkConfiguration parse(String[] args) {
+    OpenSoundControlBenchmarkConfiguration configuration =
+        new OpenSoundControlBenchmarkConfiguration();
+
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator <= 0) {
+        throw new SimpleSmartSpacesException(
+            String.format("Benchmark argument %s is not of the form name=value", arg));
+      }
+
+      String name = arg.substring(0, separator);
+      String value = arg.substring(separator + 1);
+      if (ARGUMENT_PORT.equals(name)) {
+        configuration.port = Integer.parseInt(value);
+      } else if (ARGUMENT_RATE.equals(name)) {
+        configuration.rate = Integer.parseInt(value);
+      } else if (ARGUMENT_DURATION.equals(name)) {
+        configuration.duration = Integer.parseInt(value);
+      } else if (ARGUMENT_ADDRESSES.equals(name)) {
+        configuration.addressCardinality = Integer.parseInt(value);
+      } else if (ARGUMENT_BUNDLE.equals(name)) {
+        configuration.bundleSize = Integer.parseInt(value);
+      } else if (ARGUMENT_MIX.equals(name)) {
+        configuration.messageMix = parseMessageMix(value);
+      } else {
+        throw new SimpleSmartSpacesException(
+            String.format("Unknown benchmark argument %s", name));
+      }
+    }
+
+    return configuration;
+  }
+
+  /**
+   * Parse a message mix of the form {@code signature:weight,...}.
+   *
+   * @param value
+   *          the message mix description
+   *
+   * @return the map of signatures to weights
+   */
+  private static Map<String, Integer> parseMessageMix(String value) {
+    Map<String, Integer> mix = Maps.newLinkedHashMap();
+    for (String entry : value.split(MIX_ENTRY_SEPARATOR)) {
+      String[] parts = entry.split(MIX_WEIGHT_SEPARATOR);
+      int weight = (parts.length > 1) ? Integer.parseInt(parts[1]) : 1;
+      mix.put(parts[0], weight);
+    }
+
+    return mix;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public int getRate() {
+    return rate;
+  }
+
+  public int getDuration() {
+    return duration;
+  }
+
+  public int getAddressCardinality() {
+    return addressCardinality;
+  }
+
+  public int getBundleSize() {
+    return bundleSize;
+  }
+
+  public Map<String, Integer> getMessageMix() {
+    return messageMix;
+  }
+
+  /**
+   * Get the number of messages the run is expected to send.
+   *
+   * @return the number of messages, or {@code -1} if the rate is not limited
+   */
+  public long getExpectedNumberMessages() {
+    return (rate > 0) ? (long) rate * duration * bundleSize : -1;
+  }
+
+  @Override
+  public String toString() {
+    return "OpenSoundControlBenchmarkConfiguration [port=" + port + ", rate=" + rate
+        + ", duration=" + duration + ", addressCardinality=" + addressCardinality
+        + ", bundleSize=" + bundleSize + ", messageMix=" + messageMix + "]";
+  }
+}
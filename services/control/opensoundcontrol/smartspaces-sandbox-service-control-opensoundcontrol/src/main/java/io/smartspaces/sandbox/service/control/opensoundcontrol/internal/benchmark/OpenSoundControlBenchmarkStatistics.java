@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.internal.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics collected during an Open Sound Control benchmark run.
+ *
+ * <p>
+ * Latency samples are stored in a preallocated array so that recording does not
+ * allocate. Once the array is full, further samples are counted but not kept.
+ *
+ * <p>
+ * This class is thread safe for recording.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlBenchmarkStatistics {
+
+  /**
+   * The most latency samples kept, used when the number of messages in a run
+   * is not known ahead of time.
+   */
+  public static final int MAXIMUM_SAMPLES = 10000000;
+
+  /**
+   * The latency samples, in nanoseconds.
+   */
+  private final long[] latencies;
+
+  /**
+   * The next position to write a latency sample into.
+   */
+  private final AtomicInteger latencyPos = new AtomicInteger();
+
+  /**
+   * The number of messages received.
+   */
+  private final AtomicLong numberMessagesReceived = new AtomicLong();
+
+  /**
+   * Create a statistics collector with room for the messages of a run.
+   *
+   * @param expectedNumberMessages
+   *          the number of messages the run is expected to send, negative if
+   *          not known
+   *
+   * @return the statistics collector
+   */
+  public static OpenSoundControlBenchmarkStatistics newForMessages(long expectedNumberMessages) {
+    int maximumSamples = MAXIMUM_SAMPLES;
+    if (expectedNumberMessages >= 0) {
+      maximumSamples = (int) Math.min(expectedNumberMessages, MAXIMUM_SAMPLES);
+    }
+
+    return new OpenSoundControlBenchmarkStatistics(maximumSamples);
+  }
+
+  /**
+   * Construct a statistics collector.
+   *
+   * @param maximumSamples
+   *          the maximum number of latency samples to keep
+   */
+  public OpenSoundControlBenchmarkStatistics(int maximumSamples) {
+    latencies = new long[maximumSamples];
+  }
+
+  /**
+   * Record the receipt of a message.
+   *
+   * @param latency
+   *          the time from sending to dispatching the message, in nanoseconds
+   */
+  public void recordMessage(long latency) {
+    numberMessagesReceived.incrementAndGet();
+
+    int pos = latencyPos.getAndIncrement();
+    if (pos < latencies.length) {
+      latencies[pos] = latency;
+    }
+  }
+
+  /**
+   * Get the number of messages received.
+   *
+   * @return the number of messages received
+   */
+  public long getNumberMessagesReceived() {
+    return numberMessagesReceived.get();
+  }
+
+  /**
+   * Get a latency percentile.
+   *
+   * <p>
+   * This should only be called once recording has stopped.
+   *
+   * @param percentile
+   *          the percentile, from {@code 0} to {@code 100}
+   *
+   * @return the latency at the percentile, in nanoseconds, or {@code 0} if no
+   *         samples
+   */
+  public long getLatencyPercentile(double percentile) {
+    int numberSamples = Math.min(latencyPos.get(), latencies.length);
+    if (numberSamples == 0) {
+      return 0;
+    }
+
+    long[] sorted = Arrays.copyOf(latencies, numberSamples);
+    Arrays.sort(sorted);
+
+    int index = (int) Math.ceil(percentile / 100.0 * numberSamples) - 1;
+
+    return sorted[Math.max(0, Math.min(index, numberSamples - 1))];
+  }
+
+  /**
+   * Create a report for the run.
+   *
+   * @param numberMessagesSent
+   *          the number of messages sent during the run
+   * @param numberPacketsSent
+   *          the number of packets sent during the run
+   * @param elapsedTime
+   *          the elapsed time of the run, in nanoseconds
+   *
+   * @return the report
+   */
+  public String toReport(long numberMessagesSent, long numberPacketsSent, long elapsedTime) {
+    double seconds = elapsedTime / (double) TimeUnit.SECONDS.toNanos(1);
+    long received = getNumberMessagesReceived();
+    double dropRate =
+        (numberMessagesSent > 0) ? 1.0 - (double) received / numberMessagesSent : 0.0;
+
+    return String.format(
+        "packets sent %d (%.0f/s), messages sent %d, messages received %d (%.0f/s), "
+            + "drop rate %.4f%%, latency usec p50 %.1f p99 %.1f p99.9 %.1f max %.1f",
+        numberPacketsSent, numberPacketsSent / seconds, numberMessagesSent, received,
+        received / seconds, dropRate * 100.0, toMicroseconds(getLatencyPercentile(50)),
+        toMicroseconds(getLatencyPercentile(99)), toMicroseconds(getLatencyPercentile(99.9)),
+        toMicroseconds(getLatencyPercentile(100)));
+  }
+
+  /**
+   * Convert nanoseconds to microseconds.
+   *
+   * @param nanoseconds
+   *          the time in nanoseconds
+   *
+   * @return the time in microseconds
+   */
+  private double toMicroseconds(long nanoseconds) {
+    return nanoseconds / 1000.0;
+  }
+}
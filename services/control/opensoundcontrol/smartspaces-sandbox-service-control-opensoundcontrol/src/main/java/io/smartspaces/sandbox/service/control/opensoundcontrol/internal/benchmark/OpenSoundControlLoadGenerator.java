@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.internal.benchmark;
+
+import io.smartspaces.SmartSpacesException;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A generator of Open Sound Control load.
+ *
+ * <p>
+ * All packets are encoded before the run starts. The first argument of every
+ * message is an int64 which is stamped with {@link System#nanoTime()} just
+ * before the packet is sent so receivers in the same JVM can calculate the
+ * dispatch latency.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlLoadGenerator {
+
+  /**
+   * The prefix for all addresses generated.
+   */
+  public static final String BENCHMARK_ADDRESS_PREFIX = "/benchmark/";
+
+  /**
+   * The type tag for the send timestamp argument.
+   */
+  public static final String TIMESTAMP_TYPE_TAG = "h";
+
+  /**
+   * The number of distinct packets that are pre-encoded and cycled through.
+   */
+  public static final int NUMBER_PACKET_TEMPLATES = 1024;
+
+  /**
+   * The value used for string arguments.
+   */
+  private static final String STRING_ARGUMENT_VALUE = "benchmark";
+
+  /**
+   * How long to park when the generator is ahead of its target rate, in
+   * nanoseconds.
+   */
+  private static final long PACING_PARK_TIME = TimeUnit.MICROSECONDS.toNanos(50);
+
+  /**
+   * The encoded packet templates.
+   */
+  private final List<byte[]> packets = Lists.newArrayList();
+
+  /**
+   * The offsets of the timestamp arguments in each packet template.
+   */
+  private final List<int[]> timestampOffsets = Lists.newArrayList();
+
+  /**
+   * The configuration for the run.
+   */
+  private final OpenSoundControlBenchmarkConfiguration configuration;
+
+  /**
+   * The number of packets sent.
+   */
+  private long numberPacketsSent;
+
+  /**
+   * The number of messages sent.
+   */
+  private long numberMessagesSent;
+
+  /**
+   * Construct a new generator.
+   *
+   * @param configuration
+   *          the benchmark configuration
+   */
+  public OpenSoundControlLoadGenerator(OpenSoundControlBenchmarkConfiguration configuration) {
+    this.configuration = configuration;
+
+    generatePacketTemplates();
+  }
+
+  /**
+   * Get the address for a given address index.
+   *
+   * @param index
+   *          the index of the address
+   *
+   * @return the address
+   */
+  public static String getAddress(int index) {
+    return BENCHMARK_ADDRESS_PREFIX + index;
+  }
+
+  /**
+   * Get the pre-encoded packets.
+   *
+   * <p>
+   * The timestamps in the packets are only set when the packets are sent over
+   * the network. Use {@link #stampPacket(int)} to set them otherwise.
+   *
+   * @return the packets
+   */
+  public List<byte[]> getPackets() {
+    return packets;
+  }
+
+  /**
+   * Set the timestamps in a packet to the current time.
+   *
+   * @param packetIndex
+   *          the index of the packet
+   *
+   * @return the packet
+   */
+  public byte[] stampPacket(int packetIndex) {
+    byte[] packet = packets.get(packetIndex);
+    ByteBuffer buffer = ByteBuffer.wrap(packet).order(ByteOrder.BIG_ENDIAN);
+
+    long now = System.nanoTime();
+    for (int offset : timestampOffsets.get(packetIndex)) {
+      buffer.putLong(offset, now);
+    }
+
+    return packet;
+  }
+
+  /**
+   * Send load to a UDP server on the local host for the configured duration.
+   *
+   * <p>
+   * This method blocks until the run is complete.
+   *
+   * @param port
+   *          the port of the server
+   */
+  public void sendLoad(int port) {
+    try (DatagramSocket socket = new DatagramSocket()) {
+      InetAddress localHost = InetAddress.getLoopbackAddress();
+
+      long rate = configuration.getRate();
+      long startTime = System.nanoTime();
+      long endTime = startTime + TimeUnit.SECONDS.toNanos(configuration.getDuration());
+
+      int packetIndex = 0;
+      long now;
+      while ((now = System.nanoTime()) < endTime) {
+        if (rate > 0) {
+          long targetSent = (now - startTime) * rate / TimeUnit.SECONDS.toNanos(1);
+          if (numberPacketsSent >= targetSent) {
+            LockSupport.parkNanos(PACING_PARK_TIME);
+            continue;
+          }
+        }
+
+        byte[] packet = stampPacket(packetIndex);
+        socket.send(new DatagramPacket(packet, packet.length, localHost, port));
+
+        numberPacketsSent++;
+        numberMessagesSent += timestampOffsets.get(packetIndex).length;
+        packetIndex = (packetIndex + 1) % packets.size();
+      }
+    } catch (IOException e) {
+      throw new SmartSpacesException("Could not send Open Sound Control load", e);
+    }
+  }
+
+  /**
+   * Get the number of packets sent.
+   *
+   * @return the number of packets sent
+   */
+  public long getNumberPacketsSent() {
+    return numberPacketsSent;
+  }
+
+  /**
+   * Get the number of messages sent.
+   *
+   * <p>
+   * This is larger than the number of packets when bundling.
+   *
+   * @return the number of messages sent
+   */
+  public long getNumberMessagesSent() {
+    return numberMessagesSent;
+  }
+
+  /**
+   * Generate all packet templates from the configuration.
+   */
+  private void generatePacketTemplates() {
+    OpenSoundControlMessageEncoder encoder = new OpenSoundControlMessageEncoder();
+    Random random = new Random(0);
+
+    List<String> weightedSignatures = Lists.newArrayList();
+    for (Map.Entry<String, Integer> entry : configuration.getMessageMix().entrySet()) {
+      for (int i = 0; i < entry.getValue(); i++) {
+        weightedSignatures.add(entry.getKey());
+      }
+    }
+
+    int bundleSize = Math.max(1, configuration.getBundleSize());
+    for (int i = 0; i < NUMBER_PACKET_TEMPLATES; i++) {
+      List<byte[]> messages = Lists.newArrayList();
+      int[] offsets = new int[bundleSize];
+
+      // The header of a bundle is the designator plus the time tag, and each
+      // element is preceded by its size.
+      int packetOffset = (bundleSize > 1) ? 16 : 0;
+      for (int j = 0; j < bundleSize; j++) {
+        String address = getAddress(random.nextInt(configuration.getAddressCardinality()));
+        String signature =
+            weightedSignatures.get(random.nextInt(weightedSignatures.size()));
+        String typeTags = TIMESTAMP_TYPE_TAG + signature;
+
+        byte[] message =
+            encoder.encodeMessage(address, typeTags, newArguments(typeTags, random));
+        messages.add(message);
+
+        if (bundleSize > 1) {
+          packetOffset += 4;
+        }
+        offsets[j] = packetOffset + encoder.getArgumentsOffset(address, typeTags);
+        packetOffset += message.length;
+      }
+
+      packets.add((bundleSize > 1) ? encoder.encodeBundle(messages) : messages.get(0));
+      timestampOffsets.add(offsets);
+    }
+  }
+
+  /**
+   * Create random arguments for a set of type tags.
+   *
+   * @param typeTags
+   *          the type tags
+   * @param random
+   *          the random number generator to use
+   *
+   * @return the arguments
+   */
+  private Object[] newArguments(String typeTags, Random random) {
+    Object[] arguments = new Object[typeTags.length()];
+    for (int i = 0; i < arguments.length; i++) {
+      switch (typeTags.charAt(i)) {
+        case 'i':
+          arguments[i] = random.nextInt();
+          break;
+        case 'h':
+          arguments[i] = 0L;
+          break;
+        case 'f':
+          arguments[i] = random.nextFloat();
+          break;
+        case 'd':
+          arguments[i] = random.nextDouble();
+          break;
+        default:
+          arguments[i] = STRING_ARGUMENT_VALUE;
+      }
+    }
+
+    return arguments;
+  }
+}
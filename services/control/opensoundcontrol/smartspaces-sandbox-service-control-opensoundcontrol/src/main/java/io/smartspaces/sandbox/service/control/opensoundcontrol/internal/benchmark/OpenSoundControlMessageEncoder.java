@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.internal.benchmark;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.internal.SmartSpacesOpenSoundControlPacketParser;
+import io.smartspaces.service.control.opensoundcontrol.OpenSoundControlConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * An encoder for Open Sound Control messages and bundles.
+ *
+ * <p>
+ * This is only meant for generating load, it is not optimized.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlMessageEncoder {
+
+  /**
+   * The size of an OSC byte boundary.
+   */
+  private static final int OPEN_SOUND_CONTROL_BYTE_BOUNDARY = 4;
+
+  /**
+   * The time tag that means "immediately".
+   */
+  private static final long OPEN_SOUND_CONTROL_TIME_TAG_IMMEDIATE = 1;
+
+  /**
+   * Encode a message.
+   *
+   * @param address
+   *          the OSC address for the message
+   * @param typeTags
+   *          the argument type tags, without the leading comma
+   * @param arguments
+   *          the arguments, must match the type tags
+   *
+   * @return the encoded message
+   */
+  public byte[] encodeMessage(String address, String typeTags, Object... arguments) {
+    if (typeTags.length() != arguments.length) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Open Sound Control type tags %s do not match %d arguments", typeTags,
+          arguments.length));
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeString(out, address);
+    writeString(out, "," + typeTags);
+
+    for (int i = 0; i < arguments.length; i++) {
+      Object argument = arguments[i];
+      switch (typeTags.charAt(i)) {
+        case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_STRING:
+          writeString(out, (String) argument);
+          break;
+        case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT32:
+          writeBytes(out, newBuffer(4).putInt(((Number) argument).intValue()));
+          break;
+        case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_INT64:
+          writeBytes(out, newBuffer(8).putLong(((Number) argument).longValue()));
+          break;
+        case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT32:
+          writeBytes(out, newBuffer(4).putFloat(((Number) argument).floatValue()));
+          break;
+        case OpenSoundControlConstants.OPEN_SOUND_CONTROL_ARGUMENT_TYPE_FLOAT64:
+          writeBytes(out, newBuffer(8).putDouble(((Number) argument).doubleValue()));
+          break;
+        default:
+          throw new SimpleSmartSpacesException(String.format(
+              "Unsupported Open Sound Control type %c", typeTags.charAt(i)));
+      }
+    }
+
+    return out.toByteArray();
+  }
+
+  /**
+   * Encode a bundle of already encoded messages.
+   *
+   * <p>
+   * The bundle has the immediate time tag.
+   *
+   * @param messages
+   *          the encoded messages
+   *
+   * @return the encoded bundle
+   */
+  public byte[] encodeBundle(List<byte[]> messages) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(SmartSpacesOpenSoundControlPacketParser.OPEN_SOUND_CONTROL_BUNDLE_DESIGNATOR, 0,
+        SmartSpacesOpenSoundControlPacketParser.OPEN_SOUND_CONTROL_BUNDLE_DESIGNATOR.length);
+    writeBytes(out, newBuffer(8).putLong(OPEN_SOUND_CONTROL_TIME_TAG_IMMEDIATE));
+
+    for (byte[] message : messages) {
+      writeBytes(out, newBuffer(4).putInt(message.length));
+      out.write(message, 0, message.length);
+    }
+
+    return out.toByteArray();
+  }
+
+  /**
+   * Get the offset of the first argument of an encoded message.
+   *
+   * @param address
+   *          the OSC address for the message
+   * @param typeTags
+   *          the argument type tags, without the leading comma
+   *
+   * @return the offset of the first argument
+   */
+  public int getArgumentsOffset(String address, String typeTags) {
+    return getPaddedLength(address) + getPaddedLength("," + typeTags);
+  }
+
+  /**
+   * Get the number of bytes an OSC string takes, including the terminator and
+   * padding.
+   *
+   * @param string
+   *          the string
+   *
+   * @return the padded length of the string
+   */
+  private int getPaddedLength(String string) {
+    int length = string.getBytes(StandardCharsets.UTF_8).length;
+
+    return length + OPEN_SOUND_CONTROL_BYTE_BOUNDARY - (length % OPEN_SOUND_CONTROL_BYTE_BOUNDARY);
+  }
+
+  /**
+   * Write an OSC string, with its terminator and padding.
+   *
+   * @param out
+   *          the stream to write to
+   * @param string
+   *          the string to write
+   */
+  private void writeString(ByteArrayOutputStream out, String string) {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.write(bytes, 0, bytes.length);
+
+    int padding = getPaddedLength(string) - bytes.length;
+    for (int i = 0; i < padding; i++) {
+      out.write(0);
+    }
+  }
+
+  /**
+   * Create a new big endian buffer.
+   *
+   * @param size
+   *          the size of the buffer
+   *
+   * @return the buffer
+   */
+  private ByteBuffer newBuffer(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+  }
+
+  /**
+   * Write the contents of a buffer.
+   *
+   * @param out
+   *          the stream to write to
+   * @param buffer
+   *          the buffer to write
+   */
+  private void writeBytes(ByteArrayOutputStream out, ByteBuffer buffer) {
+    out.write(buffer.array(), 0, buffer.capacity());
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.internal.benchmark;
+
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlMethod;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerPacket;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.internal.OpenSoundControlMethodDispatcher;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.internal.SmartSpacesOpenSoundControlPacketParser;
+import io.smartspaces.system.StandaloneSmartSpacesEnvironment;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A micro-benchmark for parsing and dispatching Open Sound Control packets
+ * without any network I/O.
+ *
+ * <p>
+ * The same packet templates as the load generator are parsed and dispatched to
+ * methods which do nothing but consume an argument. A number of warmup rounds
+ * are run before the measured rounds so the JIT has settled. See
+ * {@link OpenSoundControlBenchmarkConfiguration} for the arguments, only the
+ * address cardinality, bundle size, message mix, and duration are used.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlParserBenchmark {
+
+  /**
+   * The number of warmup rounds.
+   */
+  public static final int NUMBER_WARMUP_ROUNDS = 5;
+
+  /**
+   * The number of measured rounds.
+   */
+  public static final int NUMBER_MEASURED_ROUNDS = 5;
+
+  /**
+   * A sink for consumed argument values so the JIT can not remove the work.
+   */
+  private static volatile long sink;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          the benchmark arguments
+   */
+  public static void main(String[] args) {
+    OpenSoundControlBenchmarkConfiguration configuration =
+        OpenSoundControlBenchmarkConfiguration.parse(args);
+    System.out.println(configuration);
+
+    OpenSoundControlLoadGenerator generator = new OpenSoundControlLoadGenerator(configuration);
+    List<byte[]> packets = generator.getPackets();
+
+    StandaloneSmartSpacesEnvironment spaceEnvironment =
+        StandaloneSmartSpacesEnvironment.newStandaloneSmartSpacesEnvironment();
+
+    SmartSpacesOpenSoundControlPacketParser parser = new SmartSpacesOpenSoundControlPacketParser();
+    OpenSoundControlMethodDispatcher dispatcher =
+        new OpenSoundControlMethodDispatcher(spaceEnvironment.getLog());
+    OpenSoundControlMethod method = new OpenSoundControlMethod() {
+      @Override
+      public void invoke(OpenSoundControlServerPacket packet) {
+        sink += packet.getLongArgument(0);
+      }
+    };
+    for (int i = 0; i < configuration.getAddressCardinality(); i++) {
+      dispatcher.addMethod(OpenSoundControlLoadGenerator.getAddress(i), method);
+    }
+
+    long roundTime = TimeUnit.SECONDS.toNanos(Math.max(1, configuration.getDuration()))
+        / (NUMBER_WARMUP_ROUNDS + NUMBER_MEASURED_ROUNDS);
+    try {
+      for (int round = 0; round < NUMBER_WARMUP_ROUNDS + NUMBER_MEASURED_ROUNDS; round++) {
+        long numberMessages = runRound(parser, dispatcher, packets, roundTime);
+
+        double messagesPerSecond =
+            numberMessages / (roundTime / (double) TimeUnit.SECONDS.toNanos(1));
+        System.out.format("%s round %d: %.0f messages/s%n",
+            (round < NUMBER_WARMUP_ROUNDS) ? "warmup" : "measured", round, messagesPerSecond);
+      }
+    } finally {
+      spaceEnvironment.shutdown();
+    }
+  }
+
+  /**
+   * Parse and dispatch packets for a given amount of time.
+   *
+   * @param parser
+   *          the packet parser
+   * @param dispatcher
+   *          the method dispatcher
+   * @param packets
+   *          the packets to cycle through
+   * @param roundTime
+   *          how long the round should last, in nanoseconds
+   *
+   * @return the number of messages dispatched
+   */
+  private static long runRound(SmartSpacesOpenSoundControlPacketParser parser,
+      OpenSoundControlMethodDispatcher dispatcher, List<byte[]> packets, long roundTime) {
+    List<OpenSoundControlServerPacket> parsed = Lists.newArrayList();
+
+    long numberMessages = 0;
+    long endTime = System.nanoTime() + roundTime;
+    int packetIndex = 0;
+    while (System.nanoTime() < endTime) {
+      // Check the clock only every so often so the clock is not the benchmark.
+      for (int i = 0; i < 64; i++) {
+        parsed.clear();
+        parser.parsePackets(packets.get(packetIndex), parsed);
+        for (OpenSoundControlServerPacket packet : parsed) {
+          dispatcher.handleIncomingPacket(packet);
+        }
+
+        numberMessages += parsed.size();
+        packetIndex = (packetIndex + 1) % packets.size();
+      }
+    }
+
+    return numberMessages;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.internal.benchmark;
+
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlMethod;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerCommunicationEndpoint;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerCommunicationEndpointService;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerPacket;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.internal.SmartSpacesOpenSoundControlServerCommunicationEndpointService;
+import io.smartspaces.service.comm.network.server.internal.netty.NettyUdpServerNetworkCommunicationEndpointService;
+import io.smartspaces.system.StandaloneSmartSpacesEnvironment;
+import io.smartspaces.util.SmartSpacesUtilities;
+
+/**
+ * A benchmark that drives an Open Sound Control server endpoint over loopback
+ * UDP.
+ *
+ * <p>
+ * Every address used by the load generator has a method registered which
+ * records the dispatch latency. The report gives the packet and message rates,
+ * the drop rate, and latency percentiles from send to method invocation. See
+ * {@link OpenSoundControlBenchmarkConfiguration} for the arguments.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlServerBenchmark {
+
+  /**
+   * How long to wait for in-flight packets to be dispatched after the
+   * generator stops, in milliseconds.
+   */
+  public static final long DRAIN_DELAY = 2000;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          the benchmark arguments
+   */
+  public static void main(String[] args) {
+    OpenSoundControlBenchmarkConfiguration configuration =
+        OpenSoundControlBenchmarkConfiguration.parse(args);
+
+    StandaloneSmartSpacesEnvironment spaceEnvironment =
+        StandaloneSmartSpacesEnvironment.newStandaloneSmartSpacesEnvironment();
+    spaceEnvironment.getServiceRegistry()
+        .registerService(new NettyUdpServerNetworkCommunicationEndpointService());
+    spaceEnvironment.getServiceRegistry()
+        .registerService(new SmartSpacesOpenSoundControlServerCommunicationEndpointService());
+
+    OpenSoundControlServerCommunicationEndpointService serverService =
+        spaceEnvironment.getServiceRegistry()
+            .getRequiredService(OpenSoundControlServerCommunicationEndpointService.SERVICE_NAME);
+    OpenSoundControlServerCommunicationEndpoint endpoint =
+        serverService.newUdpEndpoint(configuration.getPort(), spaceEnvironment.getLog());
+
+    final OpenSoundControlBenchmarkStatistics statistics =
+        OpenSoundControlBenchmarkStatistics.newForMessages(
+            configuration.getExpectedNumberMessages());
+    OpenSoundControlMethod method = new OpenSoundControlMethod() {
+      @Override
+      public void invoke(OpenSoundControlServerPacket packet) {
+        statistics.recordMessage(System.nanoTime() - packet.getLongArgument(0));
+      }
+    };
+    for (int i = 0; i < configuration.getAddressCardinality(); i++) {
+      endpoint.registerMethod(OpenSoundControlLoadGenerator.getAddress(i), method);
+    }
+
+    OpenSoundControlLoadGenerator generator = new OpenSoundControlLoadGenerator(configuration);
+
+    endpoint.startup();
+    try {
+      System.out.println(configuration);
+
+      long startTime = System.nanoTime();
+      generator.sendLoad(endpoint.getServerPort());
+      long elapsedTime = System.nanoTime() - startTime;
+
+      SmartSpacesUtilities.delay(DRAIN_DELAY);
+
+      System.out.println(statistics.toReport(generator.getNumberMessagesSent(),
+          generator.getNumberPacketsSent(), elapsedTime));
+    } finally {
+      endpoint.shutdown();
+      spaceEnvironment.shutdown();
+    }
+  }
+}
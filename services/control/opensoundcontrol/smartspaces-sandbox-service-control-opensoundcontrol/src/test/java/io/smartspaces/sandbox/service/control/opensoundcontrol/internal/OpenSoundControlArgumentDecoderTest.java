@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlTypedArguments;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.internal.SmartSpacesOpenSoundControlPacketParser.SmartSpacesOpenSoundControlServerPacket;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.internal.benchmark.OpenSoundControlMessageEncoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests for the {@link OpenSoundControlArgumentDecoder}.
+ *
+ * @author Keith M. Hughes
+ */
+public class OpenSoundControlArgumentDecoderTest {
+
+  private final SmartSpacesOpenSoundControlPacketParser parser =
+      new SmartSpacesOpenSoundControlPacketParser();
+  private final OpenSoundControlMessageEncoder encoder = new OpenSoundControlMessageEncoder();
+
+  /**
+   * Test decoding each type with a signature which only has fixed size
+   * arguments.
+   */
+  @Test
+  public void testFixedTypes() {
+    OpenSoundControlArgumentDecoder decoder = OpenSoundControlArgumentDecoder.compile(",ihfd");
+    Assert.assertEquals(",ihfd", decoder.getSignature());
+
+    SmartSpacesOpenSoundControlServerPacket packet =
+        parse(encoder.encodeMessage("/a", "ihfd", -7, -(1L << 40), 0.25f, -1.5));
+    Assert.assertTrue(decoder.matches(packet));
+
+    OpenSoundControlTypedArguments arguments = decoder.decode(packet);
+    Assert.assertEquals(4, arguments.getNumberArguments());
+    Assert.assertEquals(-7, arguments.getInt(0));
+    Assert.assertEquals(-(1L << 40), arguments.getLong(1));
+    Assert.assertEquals(0.25f, arguments.getFloat(2), 0.0f);
+    Assert.assertEquals(-1.5, arguments.getDouble(3), 0.0);
+  }
+
+  /**
+   * Test decoding fixed size arguments which come after strings.
+   */
+  @Test
+  public void testStrings() {
+    OpenSoundControlArgumentDecoder decoder = OpenSoundControlArgumentDecoder.compile("sisd");
+
+    OpenSoundControlTypedArguments arguments =
+        decoder.decode(parse(encoder.encodeMessage("/a", "sisd", "abc", 3, "abcd", 2.5)));
+    Assert.assertEquals("abc", arguments.getString(0));
+    Assert.assertEquals(3, arguments.getInt(1));
+    Assert.assertEquals("abcd", arguments.getString(2));
+    Assert.assertEquals(2.5, arguments.getDouble(3), 0.0);
+  }
+
+  /**
+   * Test that packets with other type tags do not match.
+   */
+  @Test
+  public void testMatching() {
+    OpenSoundControlArgumentDecoder decoder = OpenSoundControlArgumentDecoder.compile("if");
+
+    Assert.assertFalse(decoder.matches(parse(encoder.encodeMessage("/a", "fi", 1.0f, 1))));
+    Assert.assertFalse(decoder.matches(parse(encoder.encodeMessage("/a", "i", 1))));
+    Assert.assertFalse(decoder.matches(parse(encoder.encodeMessage("/a", "ifi", 1, 1.0f, 1))));
+  }
+
+  /**
+   * Test that an argument asked for as the wrong type is rejected.
+   */
+  @Test
+  public void testWrongType() {
+    OpenSoundControlTypedArguments arguments = OpenSoundControlArgumentDecoder.compile("i")
+        .decode(parse(encoder.encodeMessage("/a", "i", 1)));
+
+    try {
+      arguments.getFloat(0);
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Test that arguments running past the end of the packet are rejected.
+   */
+  @Test
+  public void testOverrun() {
+    byte[] message = encoder.encodeMessage("/a", "ih", 1, 2L);
+    byte[] truncated = Arrays.copyOf(message, message.length - 4);
+
+    try {
+      OpenSoundControlArgumentDecoder.compile("ih").decode(parse(truncated));
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Test that signatures with unsupported types are rejected.
+   */
+  @Test
+  public void testUnsupportedType() {
+    try {
+      OpenSoundControlArgumentDecoder.compile("ib");
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Parse a message.
+   *
+   * @param message
+   *          the encoded message
+   *
+   * @return the packet
+   */
+  private SmartSpacesOpenSoundControlServerPacket parse(byte[] message) {
+    return (SmartSpacesOpenSoundControlServerPacket) parser.parsePacket(message);
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.control.opensoundcontrol.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.OpenSoundControlServerPacket;
+import io.smartspaces.sandbox.service.control.opensoundcontrol.internal.benchmark.OpenSoundControlMessageEncoder;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the {@link SmartSpacesOpenSoundControlPacketParser}.
+ *
+ * @author Keith M. Hughes
+ */
+public class SmartSpacesOpenSoundControlPacketParserTest {
+
+  /**
+   * The offset of the first element size in a bundle.
+   */
+  private static final int FIRST_ELEMENT_SIZE_OFFSET = 16;
+
+  private final SmartSpacesOpenSoundControlPacketParser parser =
+      new SmartSpacesOpenSoundControlPacketParser();
+  private final OpenSoundControlMessageEncoder encoder = new OpenSoundControlMessageEncoder();
+
+  /**
+   * Test decoding an argument of each type.
+   */
+  @Test
+  public void testArgumentTypes() {
+    OpenSoundControlServerPacket packet = parser.parsePacket(encoder.encodeMessage("/all",
+        "sihfd", "hello", -7, 1L << 40, 0.25f, -1.5));
+
+    Assert.assertEquals("/all", packet.getAddress());
+    Assert.assertEquals(5, packet.getNumberArguments());
+    Assert.assertEquals("hello", packet.getStringArgument(0));
+    Assert.assertEquals(-7, packet.getIntArgument(1));
+    Assert.assertEquals(1L << 40, packet.getLongArgument(2));
+    Assert.assertEquals(0.25f, packet.getFloatArgument(3), 0.0f);
+    Assert.assertEquals(-1.5, packet.getDoubleArgument(4), 0.0);
+    Assert.assertTrue(Arrays.equals(new Object[] { "hello", -7, 1L << 40, 0.25f, -1.5 },
+        packet.getArguments()));
+
+    Assert.assertTrue(packet.isStringArgument(0));
+    Assert.assertFalse(packet.isIntArgument(0));
+    try {
+      packet.getFloatArgument(1);
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Test a message without arguments.
+   */
+  @Test
+  public void testNoArguments() {
+    OpenSoundControlServerPacket packet = parser.parsePacket(encoder.encodeMessage("/none", ""));
+
+    Assert.assertEquals("/none", packet.getAddress());
+    Assert.assertEquals(0, packet.getNumberArguments());
+    Assert.assertEquals(0, packet.getArguments().length);
+  }
+
+  /**
+   * Test that the messages of nested bundles are all found in order.
+   */
+  @Test
+  public void testNestedBundle() {
+    byte[] inner = encoder.encodeBundle(Lists.newArrayList(encoder.encodeMessage("/b", "i", 2),
+        encoder.encodeMessage("/c", "s", "three")));
+    byte[] outer = encoder.encodeBundle(Lists.newArrayList(encoder.encodeMessage("/a", "f", 1.0f),
+        inner, encoder.encodeMessage("/d", "h", 4L)));
+
+    List<OpenSoundControlServerPacket> packets = Lists.newArrayList();
+    parser.parsePackets(outer, packets);
+
+    Assert.assertEquals(4, packets.size());
+    Assert.assertEquals("/a", packets.get(0).getAddress());
+    Assert.assertEquals(1.0f, packets.get(0).getFloatArgument(0), 0.0f);
+    Assert.assertEquals("/b", packets.get(1).getAddress());
+    Assert.assertEquals(2, packets.get(1).getIntArgument(0));
+    Assert.assertEquals("/c", packets.get(2).getAddress());
+    Assert.assertEquals("three", packets.get(2).getStringArgument(0));
+    Assert.assertEquals("/d", packets.get(3).getAddress());
+    Assert.assertEquals(4L, packets.get(3).getLongArgument(0));
+  }
+
+  /**
+   * Test that bundle elements which claim more bytes than the bundle has are
+   * rejected.
+   */
+  @Test
+  public void testElementSizeOverrun() {
+    byte[] bundle = encoder.encodeBundle(Lists.newArrayList(encoder.encodeMessage("/a", "i", 1)));
+
+    byte[] tooLong = bundle.clone();
+    ByteBuffer.wrap(tooLong).putInt(FIRST_ELEMENT_SIZE_OFFSET, bundle.length);
+    assertRejected(tooLong);
+
+    byte[] negative = bundle.clone();
+    ByteBuffer.wrap(negative).putInt(FIRST_ELEMENT_SIZE_OFFSET, -4);
+    assertRejected(negative);
+  }
+
+  /**
+   * Test that a bundle which ends part way through an element size is
+   * rejected.
+   */
+  @Test
+  public void testTruncatedElementSize() {
+    byte[] bundle = encoder.encodeBundle(Lists.newArrayList(encoder.encodeMessage("/a", "i", 1)));
+
+    assertRejected(Arrays.copyOf(bundle, FIRST_ELEMENT_SIZE_OFFSET + 2));
+  }
+
+  /**
+   * Test that an argument running past the end of its bundle element is
+   * rejected rather than decoded from the next element.
+   */
+  @Test
+  public void testArgumentOverrun() {
+    byte[] message = encoder.encodeMessage("/a", "d", 1.0);
+    byte[] truncated = Arrays.copyOf(message, message.length - 4);
+    byte[] bundle = encoder.encodeBundle(
+        Lists.newArrayList(truncated, encoder.encodeMessage("/b", "i", 1)));
+
+    List<OpenSoundControlServerPacket> packets = Lists.newArrayList();
+    parser.parsePackets(bundle, packets);
+    try {
+      packets.get(0).getDoubleArgument(0);
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Assert that a packet is rejected.
+   *
+   * @param requestData
+   *          the packet
+   */
+  private void assertRejected(byte[] requestData) {
+    try {
+      parser.parsePackets(requestData, Lists.newArrayList());
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+}
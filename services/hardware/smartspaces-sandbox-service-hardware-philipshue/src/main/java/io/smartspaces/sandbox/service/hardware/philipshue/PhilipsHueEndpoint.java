@@ -19,7 +19,10 @@ package io.smartspaces.sandbox.service.hardware.philipshue;
 import io.smartspaces.sandbox.service.action.ActionSource;
 import io.smartspaces.util.resource.ManagedResource;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An endpoint for controlling Philips Hue lights.
@@ -44,12 +47,59 @@ public interface PhilipsHueEndpoint extends ManagedResource {
 
   /**
    * Scan for all lights on the hub.
+   * 
+   * <p>
+   * Lights which are already known are updated in place. Listeners are told
+   * about new lights and about lights whose state differs from what the hub
+   * last reported.
    */
   void scanForLights();
 
+  /**
+   * Start scanning for lights in the background.
+   * 
+   * <p>
+   * Polling replaces any polling already running and stops when the endpoint
+   * shuts down. Each poll also scans for groups, so groups made or changed by
+   * other apps are used by {@link #updateLightStates(Collection)}.
+   * 
+   * @param interval
+   *          the time between the end of one scan and the start of the next
+   * @param unit
+   *          the units for the interval
+   */
+  void startPolling(long interval, TimeUnit unit);
+
+  /**
+   * Stop scanning for lights in the background.
+   */
+  void stopPolling();
+
+  /**
+   * Add a listener for endpoint events.
+   * 
+   * @param listener
+   *          the listener to add
+   */
+  void addListener(PhilipsHueEndpointListener listener);
+
+  /**
+   * Remove a listener for endpoint events.
+   * 
+   * <p>
+   * Does nothing if the listener was never added.
+   * 
+   * @param listener
+   *          the listener to remove
+   */
+  void removeListener(PhilipsHueEndpointListener listener);
+
   /**
    * Rename a light.
    * 
+   * <p>
+   * Once the hub has renamed the light, it can only be found by its new name.
+   * 
    * @param light
    *          the light to be renamed
    * @param newName
@@ -74,14 +124,192 @@ public interface PhilipsHueEndpoint extends ManagedResource {
    */
   PhilipsHueLight getLightByName(String name);
 
+  /**
+   * Get a light by the unique ID of its bulb.
+   * 
+   * @param uniqueId
+   *          the unique ID of the light
+   * 
+   * @return the light, or {@code null} if no light with that ID
+   */
+  PhilipsHueLight getLightByUniqueId(String uniqueId);
+
+  /**
+   * Get a light by the ID the hub controls it with.
+   * 
+   * @param controlId
+   *          the control ID of the light
+   * 
+   * @return the light, or {@code null} if no light with that ID
+   */
+  PhilipsHueLight getLightByControlId(String controlId);
+
   /**
    * Update the remote light to match the local light data.
    * 
+   * <p>
+   * Only the attributes which differ from what the bridge last acknowledged
+   * are sent, and nothing is sent if there are none. This waits for the
+   * bridge to answer.
+   * 
    * @param light
    *          the local light data
    */
   void updateLightState(PhilipsHueLight light);
 
+  /**
+   * Start updating the remote light to match the local light data.
+   * 
+   * <p>
+   * Updates to many lights can be started together and are sent to the bridge
+   * in parallel, paced to what the bridge can handle. An update to a light
+   * which is still waiting to be sent is replaced by a newer one, switching a
+   * light on or off goes ahead of other updates. As with
+   * {@link #updateLightState(PhilipsHueLight)}, only changed attributes are
+   * sent.
+   * 
+   * @param light
+   *          the local light data
+   * 
+   * @return a future which completes when the bridge has answered, and
+   *         completes exceptionally if the update failed
+   */
+  CompletableFuture<Void> updateLightStateAsync(PhilipsHueLight light);
+
+  /**
+   * Start updating a collection of remote lights to match their local light
+   * data.
+   * 
+   * <p>
+   * The lights are split by the state they should be in. If the lights going
+   * to a state are exactly the lights of a group on the bridge, a single
+   * command is sent to the group. Groups are scanned for when the endpoint
+   * starts up and on every poll. Otherwise each of those lights is updated as
+   * by {@link #updateLightStateAsync(PhilipsHueLight)}, and the updates run in
+   * parallel.
+   * 
+   * @param lights
+   *          the local light data
+   * 
+   * @return a future which completes when the bridge has answered for all
+   *         lights, and completes exceptionally if any update failed
+   */
+  CompletableFuture<Void> updateLightStates(Collection<PhilipsHueLight> lights);
+
+  /**
+   * Scan for all groups on the hub.
+   */
+  void scanForGroups();
+
+  /**
+   * Get all groups known by the endpoint.
+   * 
+   * @return the groups, in the order the hub lists them
+   */
+  List<PhilipsHueGroup> getGroups();
+
+  /**
+   * Get a group by its name.
+   * 
+   * @param name
+   *          the name of the group
+   * 
+   * @return the group, or {@code null} if no group with that name
+   */
+  PhilipsHueGroup getGroupByName(String name);
+
+  /**
+   * Create a new group on the hub.
+   * 
+   * @param name
+   *          the name for the group
+   * @param lights
+   *          the lights in the group
+   * 
+   * @return the new group
+   */
+  PhilipsHueGroup createGroup(String name, Collection<PhilipsHueLight> lights);
+
+  /**
+   * Delete a group from the hub.
+   * 
+   * @param group
+   *          the group to delete
+   */
+  void deleteGroup(PhilipsHueGroup group);
+
+  /**
+   * Start changing the state of all lights in a group with a single command.
+   * 
+   * <p>
+   * The local data of the lights is updated once the bridge has answered.
+   * 
+   * @param group
+   *          the group
+   * @param state
+   *          the state for the lights
+   * 
+   * @return a future which completes when the bridge has answered, and
+   *         completes exceptionally if the update failed
+   */
+  CompletableFuture<Void> updateGroupState(PhilipsHueGroup group, PhilipsHueLightState state);
+
+  /**
+   * Scan for all scenes on the hub.
+   */
+  void scanForScenes();
+
+  /**
+   * Get all scenes known by the endpoint.
+   * 
+   * @return the scenes, in the order the hub lists them
+   */
+  List<PhilipsHueScene> getScenes();
+
+  /**
+   * Get a scene by its name.
+   * 
+   * @param name
+   *          the name of the scene
+   * 
+   * @return the scene, or {@code null} if no scene with that name
+   */
+  PhilipsHueScene getSceneByName(String name);
+
+  /**
+   * Start recalling a scene stored on the hub.
+   * 
+   * <p>
+   * The local data of the lights is not changed, the hub has the states the
+   * scene puts them in.
+   * 
+   * @param scene
+   *          the scene
+   * 
+   * @return a future which completes when the bridge has answered, and
+   *         completes exceptionally if the recall failed
+   */
+  CompletableFuture<Void> recallScene(PhilipsHueScene scene);
+
+  /**
+   * Create a new stream of color frames to an entertainment area.
+   *
+   * <p>
+   * Streaming is switched on for the area when the stream is started up and
+   * off when it is shut down.
+   *
+   * @param area
+   *          the entertainment group for the area
+   * @param transport
+   *          the transport to the bridge
+   * @param framesPerSecond
+   *          the number of frames sent a second
+   *
+   * @return the new stream, not started up
+   */
+  PhilipsHueEntertainmentStream newEntertainmentStream(PhilipsHueGroup area,
+      PhilipsHueStreamTransport transport, int framesPerSecond);
+
   /**
    * Create a new action source that works with this endpoint.
    * 
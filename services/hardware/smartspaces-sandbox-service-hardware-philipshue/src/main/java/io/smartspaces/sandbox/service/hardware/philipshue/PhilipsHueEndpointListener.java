@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue;
+
+/**
+ * A listener for events from a {@link PhilipsHueEndpoint}.
+ *
+ * @author Keith M. Hughes
+ */
+public interface PhilipsHueEndpointListener {
+
+  /**
+   * A light the endpoint did not know about has been found on the bridge.
+   *
+   * @param source
+   *          the endpoint that found the light
+   * @param light
+   *          the new light
+   */
+  void onPhilipsHueLightFound(PhilipsHueEndpoint source, PhilipsHueLight light);
+
+  /**
+   * The bridge reported a light state which differs from the last one it
+   * reported, for example because the light was switched with a wall switch
+   * or an app.
+   *
+   * @param source
+   *          the endpoint that saw the change
+   * @param light
+   *          the light which changed
+   * @param changes
+   *          the attributes which changed, with their new values
+   */
+  void onPhilipsHueLightStateChange(PhilipsHueEndpoint source, PhilipsHueLight light,
+      PhilipsHueLightState changes);
+}
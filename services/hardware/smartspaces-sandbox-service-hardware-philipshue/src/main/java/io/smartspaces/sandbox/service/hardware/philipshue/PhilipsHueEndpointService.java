@@ -20,6 +20,8 @@ import io.smartspaces.service.SupportedService;
 
 import org.apache.commons.logging.Log;
 
+import java.util.List;
+
 /**
  * Service for control of Philips Hue lights.
  * 
@@ -45,4 +47,21 @@ public interface PhilipsHueEndpointService extends SupportedService {
    * @return the new endpoint
    */
   PhilipsHueEndpoint newEndpoint(String host, String hueUser, Log log);
+
+  /**
+   * Create a new endpoint for the lights of several bridges.
+   * 
+   * <p>
+   * Each light is controlled through the bridge it is on, and work for
+   * different bridges is done at the same time.
+   * 
+   * @param bridges
+   *          the endpoints for the bridges, the new endpoint starts and shuts
+   *          them down
+   * @param log
+   *          the logger to use
+   * 
+   * @return the new endpoint
+   */
+  PhilipsHueEndpoint newFederatedEndpoint(List<PhilipsHueEndpoint> bridges, Log log);
 }
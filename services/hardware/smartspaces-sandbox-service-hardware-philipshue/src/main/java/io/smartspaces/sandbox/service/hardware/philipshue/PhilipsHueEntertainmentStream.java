@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue;
+
+import io.smartspaces.util.resource.ManagedResource;
+
+/**
+ * A stream of color frames to the lights of a Philips Hue entertainment area.
+ *
+ * <p>
+ * Frames are sent at a fixed rate. Only the latest frame submitted is sent, a
+ * frame which is replaced before its turn comes is never sent. The latest
+ * frame is sent again until it is replaced, which keeps the bridge from ending
+ * the stream.
+ *
+ * @author Keith M. Hughes
+ */
+public interface PhilipsHueEntertainmentStream extends ManagedResource {
+
+  /**
+   * Submit a frame to be sent.
+   *
+   * <p>
+   * The frame is copied, so it can be changed and submitted again.
+   *
+   * @param frame
+   *          the frame
+   */
+  void submitFrame(PhilipsHueStreamFrame frame);
+
+  /**
+   * Get the number of frames sent to the bridge a second.
+   *
+   * @return the frame rate
+   */
+  int getFramesPerSecond();
+
+  /**
+   * Get the number of frames sent, including repeats of the latest frame.
+   *
+   * @return the number of frames sent
+   */
+  long getNumberFramesSent();
+
+  /**
+   * Get the number of submitted frames which were replaced before being sent.
+   *
+   * @return the number of replaced frames
+   */
+  long getNumberFramesReplaced();
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue;
+
+import java.util.Collection;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A group of lights on a Philips Hue bridge.
+ *
+ * <p>
+ * A single command to a group changes every light in it.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueGroup {
+
+  /**
+   * The ID of the group every bridge has which holds all of its lights.
+   */
+  public static final String ALL_LIGHTS_GROUP_ID = "0";
+
+  /**
+   * The host of the bridge the group is on.
+   */
+  private final String bridgeHost;
+
+  /**
+   * The ID of the group on the bridge.
+   */
+  private final String id;
+
+  /**
+   * The name of the group.
+   */
+  private final String name;
+
+  /**
+   * The type of the group, such as {@code Room} or {@code LightGroup}.
+   */
+  private final String type;
+
+  /**
+   * The control IDs of the lights in the group.
+   */
+  private final Set<String> lightControlIds;
+
+  /**
+   * Construct a new group.
+   *
+   * @param bridgeHost
+   *          the host of the bridge the group is on
+   * @param id
+   *          the ID of the group on the bridge
+   * @param name
+   *          the name of the group
+   * @param type
+   *          the type of the group, can be {@code null}
+   * @param lightControlIds
+   *          the control IDs of the lights in the group
+   */
+  public PhilipsHueGroup(String bridgeHost, String id, String name, String type,
+      Collection<String> lightControlIds) {
+    this.bridgeHost = bridgeHost;
+    this.id = id;
+    this.name = name;
+    this.type = type;
+    this.lightControlIds = ImmutableSet.copyOf(lightControlIds);
+  }
+
+  /**
+   * Get the host of the bridge the group is on.
+   *
+   * @return the host
+   */
+  public String getBridgeHost() {
+    return bridgeHost;
+  }
+
+  /**
+   * Get the ID of the group on the bridge.
+   *
+   * @return the ID
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Get the name of the group.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the type of the group.
+   *
+   * @return the type, can be {@code null}
+   */
+  public String getType() {
+    return type;
+  }
+
+  /**
+   * Get the control IDs of the lights in the group.
+   *
+   * @return the control IDs, which cannot be modified
+   */
+  public Set<String> getLightControlIds() {
+    return lightControlIds;
+  }
+
+  @Override
+  public String toString() {
+    return "PhilipsHueGroup [bridgeHost=" + bridgeHost + ", id=" + id + ", name=" + name
+        + ", type=" + type + ", lightControlIds=" + lightControlIds + "]";
+  }
+}
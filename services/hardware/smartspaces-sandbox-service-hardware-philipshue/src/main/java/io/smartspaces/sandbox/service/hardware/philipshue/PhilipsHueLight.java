@@ -19,6 +19,21 @@ package io.smartspaces.sandbox.service.hardware.philipshue;
 /**
  * A Philips Hue Light.
  * 
+ * <p>
+ * The state attributes of the light are the state it should be in. The light
+ * also keeps the state the bridge last acknowledged, so updates only need to
+ * send the attributes which differ.
+ * 
+ * <p>
+ * Action threads and the bridge poller both change lights, so the desired and
+ * acknowledged state are guarded by the lock of the light. Hold the lock to
+ * make several changes which must be seen together.
+ * 
+ * <p>
+ * The bridge gives CIE coordinates priority over color temperature, and color
+ * temperature priority over hue and saturation. Setting one way of giving the
+ * color clears the ones with higher priority, so the last color set wins.
+ * 
  * @author Keith M. Hughes
  */
 public class PhilipsHueLight {
@@ -65,6 +80,40 @@ public class PhilipsHueLight {
    */
   private int hue = 4500;
 
+  /**
+   * The x coordinate of the color in the CIE color space, {@code null} if not
+   * used.
+   */
+  private Double colorX;
+
+  /**
+   * The y coordinate of the color in the CIE color space, {@code null} if not
+   * used.
+   */
+  private Double colorY;
+
+  /**
+   * The color temperature in mireds, {@code null} if not used.
+   */
+  private Integer colorTemperature;
+
+  /**
+   * The transition time for the next change in multiples of 100 milliseconds,
+   * {@code null} for the default of the bridge.
+   */
+  private Integer transitionTime;
+
+  /**
+   * The state the bridge last reported or acknowledged for the light,
+   * {@code null} if not known.
+   */
+  private PhilipsHueLightState acknowledgedState;
+
+  /**
+   * The number of updates sent to the bridge which have not been answered.
+   */
+  private int numberUpdatesPending;
+
   /**
    * Construct a new light.
    * 
@@ -75,7 +124,16 @@ public class PhilipsHueLight {
     this.uniqueId = uniqueId;
   }
 
-  public String getName() {
+  /**
+   * Get the unique ID of the light.
+   * 
+   * @return the unique ID
+   */
+  public String getUniqueId() {
+    return uniqueId;
+  }
+
+  public synchronized String getName() {
     return name;
   }
 
@@ -87,7 +145,7 @@ public class PhilipsHueLight {
    * 
    * @return the light
    */
-  public PhilipsHueLight setName(String name) {
+  public synchronized PhilipsHueLight setName(String name) {
     this.name = name;
 
     return this;
@@ -101,60 +159,237 @@ public class PhilipsHueLight {
    * 
    * @return the light
    */
-  public PhilipsHueLight setControlId(String controlId) {
+  public synchronized PhilipsHueLight setControlId(String controlId) {
     this.controlId = controlId;
 
     return this;
   }
 
-  public String getControlId() {
+  public synchronized String getControlId() {
     return controlId;
   }
 
-  public boolean isOn() {
+  public synchronized boolean isOn() {
     return on;
   }
 
-  public PhilipsHueLight setOn(boolean on) {
+  public synchronized PhilipsHueLight setOn(boolean on) {
     this.on = on;
 
     return this;
   }
 
-  public int getSaturation() {
+  public synchronized int getSaturation() {
     return saturation;
   }
 
-  public PhilipsHueLight setSaturation(int saturation) {
+  public synchronized PhilipsHueLight setSaturation(int saturation) {
     this.saturation = saturation;
+    clearColorXy();
+    colorTemperature = null;
 
     return this;
   }
 
-  public int getBrightness() {
+  public synchronized int getBrightness() {
     return brightness;
   }
 
-  public PhilipsHueLight setBrightness(int brightness) {
+  public synchronized PhilipsHueLight setBrightness(int brightness) {
     this.brightness = brightness;
 
     return this;
   }
 
-  public int getHue() {
+  public synchronized int getHue() {
     return hue;
   }
 
-  public PhilipsHueLight setHue(int hue) {
+  public synchronized PhilipsHueLight setHue(int hue) {
     this.hue = hue;
+    clearColorXy();
+    colorTemperature = null;
+
+    return this;
+  }
+
+  /**
+   * Get the x coordinate of the color in the CIE color space.
+   * 
+   * @return the x coordinate, or {@code null} if not used
+   */
+  public synchronized Double getColorX() {
+    return colorX;
+  }
+
+  /**
+   * Get the y coordinate of the color in the CIE color space.
+   * 
+   * @return the y coordinate, or {@code null} if not used
+   */
+  public synchronized Double getColorY() {
+    return colorY;
+  }
+
+  /**
+   * Set the color in the CIE color space.
+   * 
+   * @param colorX
+   *          the x coordinate, from {@code 0} to {@code 1}
+   * @param colorY
+   *          the y coordinate, from {@code 0} to {@code 1}
+   * 
+   * @return the light
+   */
+  public synchronized PhilipsHueLight setColorXy(double colorX, double colorY) {
+    this.colorX = colorX;
+    this.colorY = colorY;
 
     return this;
   }
 
+  /**
+   * Get the color temperature.
+   * 
+   * @return the color temperature in mireds, or {@code null} if not used
+   */
+  public synchronized Integer getColorTemperature() {
+    return colorTemperature;
+  }
+
+  /**
+   * Set the color temperature.
+   * 
+   * @param colorTemperature
+   *          the color temperature in mireds
+   * 
+   * @return the light
+   */
+  public synchronized PhilipsHueLight setColorTemperature(int colorTemperature) {
+    this.colorTemperature = colorTemperature;
+    clearColorXy();
+
+    return this;
+  }
+
+  /**
+   * Get the transition time for the next change.
+   * 
+   * @return the transition time in multiples of 100 milliseconds, or
+   *         {@code null} for the default of the bridge
+   */
+  public synchronized Integer getTransitionTime() {
+    return transitionTime;
+  }
+
+  /**
+   * Set the transition time for the next change.
+   * 
+   * @param transitionTime
+   *          the transition time in multiples of 100 milliseconds,
+   *          {@code null} for the default of the bridge
+   * 
+   * @return the light
+   */
+  public synchronized PhilipsHueLight setTransitionTime(Integer transitionTime) {
+    this.transitionTime = transitionTime;
+
+    return this;
+  }
+
+  /**
+   * Get the state the light should be in.
+   * 
+   * @return the desired state, with all attributes set
+   */
+  public synchronized PhilipsHueLightState getDesiredState() {
+    return PhilipsHueLightState.fromLight(this);
+  }
+
+  /**
+   * Get the state the bridge last reported or acknowledged for the light.
+   * 
+   * @return the acknowledged state, or {@code null} if not known
+   */
+  public synchronized PhilipsHueLightState getAcknowledgedState() {
+    return acknowledgedState;
+  }
+
+  /**
+   * Set the state the bridge reported for the light.
+   * 
+   * @param acknowledgedState
+   *          the reported state, {@code null} if it is no longer known
+   * 
+   * @return the light
+   */
+  public synchronized PhilipsHueLight setAcknowledgedState(
+      PhilipsHueLightState acknowledgedState) {
+    this.acknowledgedState = acknowledgedState;
+
+    return this;
+  }
+
+  /**
+   * Record changes the bridge acknowledged for the light.
+   * 
+   * @param changes
+   *          the acknowledged changes
+   */
+  public synchronized void acknowledge(PhilipsHueLightState changes) {
+    if (acknowledgedState != null) {
+      acknowledgedState = acknowledgedState.merge(changes);
+    } else {
+      acknowledgedState = changes.merge(null);
+    }
+  }
+
+  /**
+   * Get the attributes of the desired state which the bridge has not
+   * acknowledged.
+   * 
+   * @return the changes, every attribute if the acknowledged state is not known
+   */
+  public synchronized PhilipsHueLightState getStateChanges() {
+    return getDesiredState().getChangesFrom(acknowledgedState);
+  }
+
+  /**
+   * Record that an update for the light has been sent to the bridge.
+   */
+  public synchronized void startUpdate() {
+    numberUpdatesPending++;
+  }
+
+  /**
+   * Record that the bridge has answered an update for the light.
+   */
+  public synchronized void finishUpdate() {
+    numberUpdatesPending--;
+  }
+
+  /**
+   * Is an update for the light waiting for an answer from the bridge?
+   * 
+   * @return {@code true} if an update is pending
+   */
+  public synchronized boolean isUpdatePending() {
+    return numberUpdatesPending > 0;
+  }
+
+  /**
+   * Stop using CIE coordinates for the color.
+   */
+  private void clearColorXy() {
+    colorX = null;
+    colorY = null;
+  }
+
   @Override
-  public String toString() {
+  public synchronized String toString() {
     return "PhilipsHueLight [uniqueId=" + uniqueId + ", name=" + name + ", controlId=" + controlId
         + ", on=" + on + ", saturation=" + saturation + ", brightness=" + brightness + ", hue="
-        + hue + "]";
+        + hue + ", colorX=" + colorX + ", colorY=" + colorY + ", colorTemperature="
+        + colorTemperature + ", transitionTime=" + transitionTime + "]";
   }
 }
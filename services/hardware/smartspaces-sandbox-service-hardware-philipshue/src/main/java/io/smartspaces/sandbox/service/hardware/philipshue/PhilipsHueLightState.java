@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue;
+
+import java.util.Objects;
+
+/**
+ * A state to put Philips Hue lights into.
+ *
+ * <p>
+ * Attributes which are {@code null} are left as they are on the lights. The
+ * transition time is not kept by the lights, it only says how long the other
+ * changes in the state take.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueLightState {
+
+  /**
+   * The scale for rounding color coordinates to the 4 decimal places the
+   * bridge keeps.
+   */
+  public static final double COLOR_XY_SCALE = 10000.0;
+
+  /**
+   * Get the full state of a light.
+   *
+   * @param light
+   *          the light
+   *
+   * @return the state of the light
+   */
+  public static PhilipsHueLightState fromLight(PhilipsHueLight light) {
+    return new PhilipsHueLightState().setOn(light.isOn()).setBrightness(light.getBrightness())
+        .setSaturation(light.getSaturation()).setHue(light.getHue())
+        .setColorXy(light.getColorX(), light.getColorY())
+        .setColorTemperature(light.getColorTemperature())
+        .setTransitionTime(light.getTransitionTime());
+  }
+
+  /**
+   * {@code true} if the lights should be on, {@code null} to leave as is.
+   */
+  private Boolean on;
+
+  /**
+   * The brightness, {@code null} to leave as is.
+   */
+  private Integer brightness;
+
+  /**
+   * The color saturation, {@code null} to leave as is.
+   */
+  private Integer saturation;
+
+  /**
+   * The hue, {@code null} to leave as is.
+   */
+  private Integer hue;
+
+  /**
+   * The x coordinate of the color in the CIE color space, {@code null} to
+   * leave as is.
+   */
+  private Double colorX;
+
+  /**
+   * The y coordinate of the color in the CIE color space, {@code null} to
+   * leave as is.
+   */
+  private Double colorY;
+
+  /**
+   * The color temperature in mireds, {@code null} to leave as is.
+   */
+  private Integer colorTemperature;
+
+  /**
+   * The transition time in multiples of 100 milliseconds, {@code null} for
+   * the default of the bridge.
+   */
+  private Integer transitionTime;
+
+  /**
+   * Get whether the lights should be on.
+   *
+   * @return {@code true} if the lights should be on, {@code null} to leave as
+   *         is
+   */
+  public Boolean getOn() {
+    return on;
+  }
+
+  /**
+   * Set whether the lights should be on.
+   *
+   * @param on
+   *          {@code true} if the lights should be on, {@code null} to leave as
+   *          is
+   *
+   * @return this state
+   */
+  public PhilipsHueLightState setOn(Boolean on) {
+    this.on = on;
+
+    return this;
+  }
+
+  /**
+   * Get the brightness.
+   *
+   * @return the brightness, {@code null} to leave as is
+   */
+  public Integer getBrightness() {
+    return brightness;
+  }
+
+  /**
+   * Set the brightness.
+   *
+   * @param brightness
+   *          the brightness, {@code null} to leave as is
+   *
+   * @return this state
+   */
+  public PhilipsHueLightState setBrightness(Integer brightness) {
+    this.brightness = brightness;
+
+    return this;
+  }
+
+  /**
+   * Get the color saturation.
+   *
+   * @return the saturation, {@code null} to leave as is
+   */
+  public Integer getSaturation() {
+    return saturation;
+  }
+
+  /**
+   * Set the color saturation.
+   *
+   * @param saturation
+   *          the saturation, {@code null} to leave as is
+   *
+   * @return this state
+   */
+  public PhilipsHueLightState setSaturation(Integer saturation) {
+    this.saturation = saturation;
+
+    return this;
+  }
+
+  /**
+   * Get the hue.
+   *
+   * @return the hue, {@code null} to leave as is
+   */
+  public Integer getHue() {
+    return hue;
+  }
+
+  /**
+   * Set the hue.
+   *
+   * @param hue
+   *          the hue, {@code null} to leave as is
+   *
+   * @return this state
+   */
+  public PhilipsHueLightState setHue(Integer hue) {
+    this.hue = hue;
+
+    return this;
+  }
+
+  /**
+   * Get the x coordinate of the color in the CIE color space.
+   *
+   * @return the x coordinate, {@code null} to leave as is
+   */
+  public Double getColorX() {
+    return colorX;
+  }
+
+  /**
+   * Get the y coordinate of the color in the CIE color space.
+   *
+   * @return the y coordinate, {@code null} to leave as is
+   */
+  public Double getColorY() {
+    return colorY;
+  }
+
+  /**
+   * Set the color in the CIE color space.
+   *
+   * <p>
+   * The coordinates are rounded to the 4 decimal places the bridge keeps.
+   *
+   * @param colorX
+   *          the x coordinate, {@code null} to leave the color as is
+   * @param colorY
+   *          the y coordinate, {@code null} to leave the color as is
+   *
+   * @return this state
+   */
+  public PhilipsHueLightState setColorXy(Double colorX, Double colorY) {
+    if (colorX != null && colorY != null) {
+      this.colorX = Math.round(colorX * COLOR_XY_SCALE) / COLOR_XY_SCALE;
+      this.colorY = Math.round(colorY * COLOR_XY_SCALE) / COLOR_XY_SCALE;
+    } else {
+      this.colorX = null;
+      this.colorY = null;
+    }
+
+    return this;
+  }
+
+  /**
+   * Get the color temperature.
+   *
+   * @return the color temperature in mireds, {@code null} to leave as is
+   */
+  public Integer getColorTemperature() {
+    return colorTemperature;
+  }
+
+  /**
+   * Set the color temperature.
+   *
+   * @param colorTemperature
+   *          the color temperature in mireds, {@code null} to leave as is
+   *
+   * @return this state
+   */
+  public PhilipsHueLightState setColorTemperature(Integer colorTemperature) {
+    this.colorTemperature = colorTemperature;
+
+    return this;
+  }
+
+  /**
+   * Get the transition time.
+   *
+   * @return the transition time in multiples of 100 milliseconds, {@code null}
+   *         for the default of the bridge
+   */
+  public Integer getTransitionTime() {
+    return transitionTime;
+  }
+
+  /**
+   * Set the transition time.
+   *
+   * @param transitionTime
+   *          the transition time in multiples of 100 milliseconds,
+   *          {@code null} for the default of the bridge
+   *
+   * @return this state
+   */
+  public PhilipsHueLightState setTransitionTime(Integer transitionTime) {
+    this.transitionTime = transitionTime;
+
+    return this;
+  }
+
+  /**
+   * Is no attribute set?
+   *
+   * <p>
+   * The transition time is not an attribute of the lights, so it does not
+   * count.
+   *
+   * @return {@code true} if the state leaves everything as it is
+   */
+  public boolean isEmpty() {
+    return on == null && brightness == null && saturation == null && hue == null
+        && colorX == null && colorTemperature == null;
+  }
+
+  /**
+   * Get the attributes of this state which differ from another state.
+   *
+   * @param previous
+   *          the other state, can be {@code null} if not known
+   *
+   * @return a new state with the attributes which are set here and are not the
+   *         same in the other state, and the transition time of this state if
+   *         anything changed
+   */
+  public PhilipsHueLightState getChangesFrom(PhilipsHueLightState previous) {
+    if (previous == null) {
+      return merge(null);
+    }
+
+    PhilipsHueLightState changes = new PhilipsHueLightState();
+    if (on != null && !on.equals(previous.on)) {
+      changes.on = on;
+    }
+    if (brightness != null && !brightness.equals(previous.brightness)) {
+      changes.brightness = brightness;
+    }
+    if (saturation != null && !saturation.equals(previous.saturation)) {
+      changes.saturation = saturation;
+    }
+    if (hue != null && !hue.equals(previous.hue)) {
+      changes.hue = hue;
+    }
+    if (colorX != null && !(colorX.equals(previous.colorX) && colorY.equals(previous.colorY))) {
+      changes.colorX = colorX;
+      changes.colorY = colorY;
+    }
+    if (colorTemperature != null && !colorTemperature.equals(previous.colorTemperature)) {
+      changes.colorTemperature = colorTemperature;
+    }
+    if (!changes.isEmpty()) {
+      changes.transitionTime = transitionTime;
+    }
+
+    return changes;
+  }
+
+  /**
+   * Merge changes into this state.
+   *
+   * @param changes
+   *          the changes, can be {@code null}
+   *
+   * @return a new state with the attributes set in the changes and the
+   *         attributes of this state for the rest
+   */
+  public PhilipsHueLightState merge(PhilipsHueLightState changes) {
+    PhilipsHueLightState merged = new PhilipsHueLightState();
+    merged.on = on;
+    merged.brightness = brightness;
+    merged.saturation = saturation;
+    merged.hue = hue;
+    merged.colorX = colorX;
+    merged.colorY = colorY;
+    merged.colorTemperature = colorTemperature;
+    merged.transitionTime = transitionTime;
+
+    if (changes != null) {
+      if (changes.on != null) {
+        merged.on = changes.on;
+      }
+      if (changes.brightness != null) {
+        merged.brightness = changes.brightness;
+      }
+      if (changes.saturation != null) {
+        merged.saturation = changes.saturation;
+      }
+      if (changes.hue != null) {
+        merged.hue = changes.hue;
+      }
+      if (changes.colorX != null) {
+        merged.colorX = changes.colorX;
+        merged.colorY = changes.colorY;
+      }
+      if (changes.colorTemperature != null) {
+        merged.colorTemperature = changes.colorTemperature;
+      }
+      if (changes.transitionTime != null) {
+        merged.transitionTime = changes.transitionTime;
+      }
+    }
+
+    return merged;
+  }
+
+  /**
+   * Copy the attributes which are set onto a light.
+   *
+   * <p>
+   * The transition time is always copied, it only applies to the next change
+   * of the light. The attributes are copied under the lock of the light, so
+   * nobody sees part of the state.
+   *
+   * @param light
+   *          the light
+   */
+  public void applyTo(PhilipsHueLight light) {
+    synchronized (light) {
+      if (on != null) {
+        light.setOn(on);
+      }
+      if (brightness != null) {
+        light.setBrightness(brightness);
+      }
+      if (saturation != null) {
+        light.setSaturation(saturation);
+      }
+      if (hue != null) {
+        light.setHue(hue);
+      }
+      if (colorX != null) {
+        light.setColorXy(colorX, colorY);
+      }
+      if (colorTemperature != null) {
+        light.setColorTemperature(colorTemperature);
+      }
+      light.setTransitionTime(transitionTime);
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof PhilipsHueLightState)) {
+      return false;
+    }
+
+    PhilipsHueLightState other = (PhilipsHueLightState) obj;
+    return Objects.equals(on, other.on) && Objects.equals(brightness, other.brightness)
+        && Objects.equals(saturation, other.saturation) && Objects.equals(hue, other.hue)
+        && Objects.equals(colorX, other.colorX) && Objects.equals(colorY, other.colorY)
+        && Objects.equals(colorTemperature, other.colorTemperature)
+        && Objects.equals(transitionTime, other.transitionTime);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(on, brightness, saturation, hue, colorX, colorY, colorTemperature,
+        transitionTime);
+  }
+
+  @Override
+  public String toString() {
+    return "PhilipsHueLightState [on=" + on + ", brightness=" + brightness + ", saturation="
+        + saturation + ", hue=" + hue + ", colorX=" + colorX + ", colorY=" + colorY
+        + ", colorTemperature=" + colorTemperature + ", transitionTime=" + transitionTime + "]";
+  }
+}
@@ -46,4 +46,49 @@ public class PhilipsHueRestMessages {
 
   public static final String PHILIPS_HUE_FIELD_LIGHT_STATE_ON = "on";
 
+  /**
+   * The CIE color space coordinates field in a Philips Hue light state.
+   */
+  public static final String PHILIPS_HUE_FIELD_LIGHT_STATE_XY = "xy";
+
+  /**
+   * The color temperature field in a Philips Hue light state, in mireds.
+   */
+  public static final String PHILIPS_HUE_FIELD_LIGHT_STATE_COLOR_TEMPERATURE = "ct";
+
+  /**
+   * The transition time field in a Philips Hue light state, in multiples of
+   * 100 milliseconds.
+   */
+  public static final String PHILIPS_HUE_FIELD_LIGHT_STATE_TRANSITION_TIME = "transitiontime";
+
+  /**
+   * The lights field in a Philips Hue group or scene message.
+   */
+  public static final String PHILIPS_HUE_FIELD_GROUP_LIGHTS = "lights";
+
+  /**
+   * The type field in a Philips Hue group message.
+   */
+  public static final String PHILIPS_HUE_FIELD_GROUP_TYPE = "type";
+
+  /**
+   * The type of group for a plain collection of lights.
+   */
+  public static final String PHILIPS_HUE_GROUP_TYPE_LIGHT_GROUP = "LightGroup";
+
+  /**
+   * The scene field in a Philips Hue group action message.
+   */
+  public static final String PHILIPS_HUE_FIELD_GROUP_ACTION_SCENE = "scene";
+
+  /**
+   * The stream field in a Philips Hue entertainment group message.
+   */
+  public static final String PHILIPS_HUE_FIELD_GROUP_STREAM = "stream";
+
+  /**
+   * The active field in a Philips Hue entertainment group stream.
+   */
+  public static final String PHILIPS_HUE_FIELD_GROUP_STREAM_ACTIVE = "active";
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue;
+
+import java.util.Collection;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A scene stored on a Philips Hue bridge.
+ *
+ * <p>
+ * Recalling a scene puts each of its lights into the state stored for it.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueScene {
+
+  /**
+   * The host of the bridge the scene is on.
+   */
+  private final String bridgeHost;
+
+  /**
+   * The ID of the scene on the bridge.
+   */
+  private final String id;
+
+  /**
+   * The name of the scene.
+   */
+  private final String name;
+
+  /**
+   * The control IDs of the lights in the scene.
+   */
+  private final Set<String> lightControlIds;
+
+  /**
+   * Construct a new scene.
+   *
+   * @param bridgeHost
+   *          the host of the bridge the scene is on
+   * @param id
+   *          the ID of the scene on the bridge
+   * @param name
+   *          the name of the scene
+   * @param lightControlIds
+   *          the control IDs of the lights in the scene
+   */
+  public PhilipsHueScene(String bridgeHost, String id, String name,
+      Collection<String> lightControlIds) {
+    this.bridgeHost = bridgeHost;
+    this.id = id;
+    this.name = name;
+    this.lightControlIds = ImmutableSet.copyOf(lightControlIds);
+  }
+
+  /**
+   * Get the host of the bridge the scene is on.
+   *
+   * @return the host
+   */
+  public String getBridgeHost() {
+    return bridgeHost;
+  }
+
+  /**
+   * Get the ID of the scene on the bridge.
+   *
+   * @return the ID
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Get the name of the scene.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the control IDs of the lights in the scene.
+   *
+   * @return the control IDs, which cannot be modified
+   */
+  public Set<String> getLightControlIds() {
+    return lightControlIds;
+  }
+
+  @Override
+  public String toString() {
+    return "PhilipsHueScene [bridgeHost=" + bridgeHost + ", id=" + id + ", name=" + name
+        + ", lightControlIds=" + lightControlIds + "]";
+  }
+}
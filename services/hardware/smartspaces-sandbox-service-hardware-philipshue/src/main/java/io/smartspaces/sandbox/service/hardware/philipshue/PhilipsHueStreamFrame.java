@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+import java.util.Arrays;
+
+/**
+ * The colors of the lights of an entertainment area at one instant.
+ *
+ * <p>
+ * Colors are RGB with 16 bits per channel. Lights are identified by their
+ * control IDs.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueStreamFrame {
+
+  /**
+   * The largest value of a color channel.
+   */
+  public static final int CHANNEL_MAXIMUM = 0xffff;
+
+  /**
+   * The IDs of the lights in the frame.
+   */
+  private int[] lightIds;
+
+  /**
+   * The colors of the lights, three channels for each light.
+   */
+  private int[] colors;
+
+  /**
+   * The number of lights in the frame.
+   */
+  private int numberLights;
+
+  /**
+   * Construct a new frame.
+   *
+   * @param capacity
+   *          the number of lights expected in the frame, more can be added
+   */
+  public PhilipsHueStreamFrame(int capacity) {
+    lightIds = new int[capacity];
+    colors = new int[capacity * 3];
+  }
+
+  /**
+   * Set the color of a light.
+   *
+   * @param lightId
+   *          the control ID of the light
+   * @param red
+   *          the red channel
+   * @param green
+   *          the green channel
+   * @param blue
+   *          the blue channel
+   *
+   * @return this frame
+   *
+   * @throws SimpleSmartSpacesException
+   *           a channel is out of range
+   */
+  public PhilipsHueStreamFrame setColor(int lightId, int red, int green, int blue)
+      throws SimpleSmartSpacesException {
+    checkChannel(red);
+    checkChannel(green);
+    checkChannel(blue);
+
+    int index = indexOf(lightId);
+    if (index < 0) {
+      if (numberLights == lightIds.length) {
+        int capacity = Math.max(1, numberLights * 2);
+        lightIds = Arrays.copyOf(lightIds, capacity);
+        colors = Arrays.copyOf(colors, capacity * 3);
+      }
+
+      index = numberLights++;
+      lightIds[index] = lightId;
+    }
+
+    colors[index * 3] = red;
+    colors[index * 3 + 1] = green;
+    colors[index * 3 + 2] = blue;
+
+    return this;
+  }
+
+  /**
+   * Get the number of lights in the frame.
+   *
+   * @return the number of lights
+   */
+  public int getNumberLights() {
+    return numberLights;
+  }
+
+  /**
+   * Get the ID of a light.
+   *
+   * @param index
+   *          the index of the light in the frame
+   *
+   * @return the control ID of the light
+   */
+  public int getLightId(int index) {
+    return lightIds[index];
+  }
+
+  /**
+   * Get a color channel of a light.
+   *
+   * @param index
+   *          the index of the light in the frame
+   * @param channel
+   *          the channel, {@code 0} for red, {@code 1} for green and {@code 2}
+   *          for blue
+   *
+   * @return the channel value
+   */
+  public int getChannel(int index, int channel) {
+    return colors[index * 3 + channel];
+  }
+
+  /**
+   * Get a copy of the frame.
+   *
+   * @return the copy
+   */
+  public PhilipsHueStreamFrame copy() {
+    PhilipsHueStreamFrame copy = new PhilipsHueStreamFrame(0);
+    copy.lightIds = Arrays.copyOf(lightIds, numberLights);
+    copy.colors = Arrays.copyOf(colors, numberLights * 3);
+    copy.numberLights = numberLights;
+
+    return copy;
+  }
+
+  /**
+   * Find a light in the frame.
+   *
+   * @param lightId
+   *          the control ID of the light
+   *
+   * @return the index of the light, or {@code -1} if not in the frame
+   */
+  private int indexOf(int lightId) {
+    for (int i = 0; i < numberLights; i++) {
+      if (lightIds[i] == lightId) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Make sure a channel value is in range.
+   *
+   * @param value
+   *          the channel value
+   *
+   * @throws SimpleSmartSpacesException
+   *           the value is out of range
+   */
+  private void checkChannel(int value) throws SimpleSmartSpacesException {
+    if (value < 0 || value > CHANNEL_MAXIMUM) {
+      throw new SimpleSmartSpacesException(
+          String.format("Color channel %d is not between 0 and %d", value, CHANNEL_MAXIMUM));
+    }
+  }
+}
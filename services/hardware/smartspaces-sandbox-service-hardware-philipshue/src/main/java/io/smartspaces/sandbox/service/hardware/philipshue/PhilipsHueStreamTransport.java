@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue;
+
+import io.smartspaces.SmartSpacesException;
+
+/**
+ * The datagram transport for a Philips Hue entertainment stream.
+ *
+ * <p>
+ * Bridges only accept entertainment streams over DTLS with a pre-shared key,
+ * so a transport for a real bridge wraps a DTLS client. Plain UDP transports
+ * are for testing against simulators.
+ *
+ * @author Keith M. Hughes
+ */
+public interface PhilipsHueStreamTransport {
+
+  /**
+   * Open the transport, including any handshake.
+   *
+   * @throws SmartSpacesException
+   *           the transport could not be opened
+   */
+  void open() throws SmartSpacesException;
+
+  /**
+   * Send a datagram.
+   *
+   * @param data
+   *          the buffer holding the datagram
+   * @param length
+   *          the number of bytes of the datagram, starting at the beginning of
+   *          the buffer
+   *
+   * @throws SmartSpacesException
+   *           the datagram could not be sent
+   */
+  void send(byte[] data, int length) throws SmartSpacesException;
+
+  /**
+   * Close the transport.
+   *
+   * <p>
+   * Does nothing if the transport is not open.
+   */
+  void close();
+}
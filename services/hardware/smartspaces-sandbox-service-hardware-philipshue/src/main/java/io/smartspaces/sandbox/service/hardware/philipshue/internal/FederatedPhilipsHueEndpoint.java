@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.sandbox.service.action.ActionSource;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpoint;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpointListener;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEntertainmentStream;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueGroup;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLightState;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueScene;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueStreamTransport;
+import io.smartspaces.system.SmartSpacesEnvironment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * An endpoint for the lights of several Philips Hue bridges.
+ *
+ * <p>
+ * Each light, group and scene belongs to one bridge and everything done with
+ * it goes to that bridge. Work which involves several bridges is done on all
+ * of them at the same time, so it takes as long as the slowest bridge rather
+ * than the sum of them.
+ *
+ * <p>
+ * Groups and scenes are routed by the host of the bridge they are on, so each
+ * bridge needs its own host. Names and control IDs are looked up on every
+ * bridge, and one which is on more than one bridge is rejected rather than
+ * picking a light, group or scene from an arbitrary bridge. Control IDs are
+ * only unique on a single bridge, so lights are better found by unique ID.
+ *
+ * <p>
+ * The host and user of the endpoint are those of all bridges, separated by
+ * commas. All lights of a new group must be on the same bridge.
+ *
+ * @author Keith M. Hughes
+ */
+public class FederatedPhilipsHueEndpoint implements PhilipsHueEndpoint {
+
+  /**
+   * How long threads for bridge work are kept when idle, in seconds.
+   */
+  public static final long BRIDGE_THREAD_KEEP_ALIVE_TIME = 60;
+
+  /**
+   * The endpoints for the bridges.
+   */
+  private final List<PhilipsHueEndpoint> bridges;
+
+  /**
+   * The endpoints for the bridges, keyed by their host.
+   */
+  private final Map<String, PhilipsHueEndpoint> bridgesByHost;
+
+  /**
+   * The executor for blocking work done on all bridges at the same time.
+   */
+  private final ThreadPoolExecutor bridgeExecutor;
+
+  /**
+   * The listeners added to the bridges for each listener added here.
+   */
+  private final Map<PhilipsHueEndpointListener, PhilipsHueEndpointListener> bridgeListeners =
+      Maps.newConcurrentMap();
+
+  /**
+   * The logger to use.
+   */
+  private final Log log;
+
+  /**
+   * The space environment to use.
+   */
+  private final SmartSpacesEnvironment spaceEnvironment;
+
+  /**
+   * Construct a new federated endpoint.
+   *
+   * @param bridges
+   *          the endpoints for the bridges, the federated endpoint takes over
+   *          their lifecycle
+   * @param log
+   *          the logger to use
+   * @param spaceEnvironment
+   *          the space environment to use
+   */
+  public FederatedPhilipsHueEndpoint(List<PhilipsHueEndpoint> bridges, Log log,
+      SmartSpacesEnvironment spaceEnvironment) {
+    if (bridges.isEmpty()) {
+      throw new SimpleSmartSpacesException("A federated Philips Hue endpoint needs a bridge");
+    }
+
+    this.bridges = ImmutableList.copyOf(bridges);
+
+    bridgesByHost = Maps.newHashMap();
+    for (PhilipsHueEndpoint bridge : bridges) {
+      if (bridgesByHost.put(bridge.getHost(), bridge) != null) {
+        throw new SimpleSmartSpacesException(
+            String.format("More than one Philips Hue bridge has host %s", bridge.getHost()));
+      }
+    }
+
+    this.log = log;
+    this.spaceEnvironment = spaceEnvironment;
+
+    bridgeExecutor = new ThreadPoolExecutor(bridges.size(), bridges.size(),
+        BRIDGE_THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setNameFormat("philips-hue-federated-%d").setDaemon(true)
+            .build());
+    bridgeExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public void startup() {
+    forAllBridges("start", PhilipsHueEndpoint::startup);
+  }
+
+  @Override
+  public void shutdown() {
+    try {
+      forAllBridges("shut down", PhilipsHueEndpoint::shutdown);
+    } finally {
+      bridgeExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Get the endpoints for the bridges.
+   *
+   * @return the endpoints, which cannot be modified
+   */
+  public List<PhilipsHueEndpoint> getBridges() {
+    return bridges;
+  }
+
+  @Override
+  public String getHost() {
+    List<String> hosts = Lists.newArrayList();
+    for (PhilipsHueEndpoint bridge : bridges) {
+      hosts.add(bridge.getHost());
+    }
+
+    return String.join(",", hosts);
+  }
+
+  @Override
+  public String getHueUser() {
+    List<String> users = Lists.newArrayList();
+    for (PhilipsHueEndpoint bridge : bridges) {
+      users.add(bridge.getHueUser());
+    }
+
+    return String.join(",", users);
+  }
+
+  @Override
+  public void scanForLights() {
+    forAllBridges("scan for lights", PhilipsHueEndpoint::scanForLights);
+  }
+
+  @Override
+  public void startPolling(long interval, TimeUnit unit) {
+    for (PhilipsHueEndpoint bridge : bridges) {
+      bridge.startPolling(interval, unit);
+    }
+  }
+
+  @Override
+  public void stopPolling() {
+    for (PhilipsHueEndpoint bridge : bridges) {
+      bridge.stopPolling();
+    }
+  }
+
+  @Override
+  public void addListener(PhilipsHueEndpointListener listener) {
+    PhilipsHueEndpointListener bridgeListener = new PhilipsHueEndpointListener() {
+      @Override
+      public void onPhilipsHueLightFound(PhilipsHueEndpoint source, PhilipsHueLight light) {
+        listener.onPhilipsHueLightFound(FederatedPhilipsHueEndpoint.this, light);
+      }
+
+      @Override
+      public void onPhilipsHueLightStateChange(PhilipsHueEndpoint source, PhilipsHueLight light,
+          PhilipsHueLightState changes) {
+        listener.onPhilipsHueLightStateChange(FederatedPhilipsHueEndpoint.this, light, changes);
+      }
+    };
+
+    if (bridgeListeners.putIfAbsent(listener, bridgeListener) == null) {
+      for (PhilipsHueEndpoint bridge : bridges) {
+        bridge.addListener(bridgeListener);
+      }
+    }
+  }
+
+  @Override
+  public void removeListener(PhilipsHueEndpointListener listener) {
+    PhilipsHueEndpointListener bridgeListener = bridgeListeners.remove(listener);
+    if (bridgeListener != null) {
+      for (PhilipsHueEndpoint bridge : bridges) {
+        bridge.removeListener(bridgeListener);
+      }
+    }
+  }
+
+  @Override
+  public void renameLight(PhilipsHueLight light, String newName) {
+    getBridgeForLight(light).renameLight(light, newName);
+  }
+
+  @Override
+  public List<String> getLightNames() {
+    Set<String> names = Sets.newTreeSet();
+    for (PhilipsHueEndpoint bridge : bridges) {
+      names.addAll(bridge.getLightNames());
+    }
+
+    return Lists.newArrayList(names);
+  }
+
+  @Override
+  public PhilipsHueLight getLightByName(String name) {
+    return findOnOneBridge("Light name", name, (bridge) -> bridge.getLightByName(name));
+  }
+
+  @Override
+  public PhilipsHueLight getLightByUniqueId(String uniqueId) {
+    for (PhilipsHueEndpoint bridge : bridges) {
+      PhilipsHueLight light = bridge.getLightByUniqueId(uniqueId);
+      if (light != null) {
+        return light;
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public PhilipsHueLight getLightByControlId(String controlId) {
+    return findOnOneBridge("Light control ID", controlId,
+        (bridge) -> bridge.getLightByControlId(controlId));
+  }
+
+  @Override
+  public void updateLightState(PhilipsHueLight light) {
+    getBridgeForLight(light).updateLightState(light);
+  }
+
+  @Override
+  public CompletableFuture<Void> updateLightStateAsync(PhilipsHueLight light) {
+    return getBridgeForLight(light).updateLightStateAsync(light);
+  }
+
+  @Override
+  public CompletableFuture<Void> updateLightStates(Collection<PhilipsHueLight> lights) {
+    Map<PhilipsHueEndpoint, List<PhilipsHueLight>> bridgeLights = Maps.newLinkedHashMap();
+    for (PhilipsHueLight light : lights) {
+      PhilipsHueEndpoint bridge = getBridgeForLight(light);
+      List<PhilipsHueLight> lightsForBridge = bridgeLights.get(bridge);
+      if (lightsForBridge == null) {
+        lightsForBridge = Lists.newArrayList();
+        bridgeLights.put(bridge, lightsForBridge);
+      }
+      lightsForBridge.add(light);
+    }
+
+    // Each bridge groups and paces its own lights, all bridges work at once.
+    List<CompletableFuture<Void>> updates = Lists.newArrayList();
+    for (Map.Entry<PhilipsHueEndpoint, List<PhilipsHueLight>> entry : bridgeLights.entrySet()) {
+      updates.add(entry.getKey().updateLightStates(entry.getValue()));
+    }
+
+    return CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[updates.size()]));
+  }
+
+  @Override
+  public void scanForGroups() {
+    forAllBridges("scan for groups", PhilipsHueEndpoint::scanForGroups);
+  }
+
+  @Override
+  public List<PhilipsHueGroup> getGroups() {
+    List<PhilipsHueGroup> groups = Lists.newArrayList();
+    for (PhilipsHueEndpoint bridge : bridges) {
+      groups.addAll(bridge.getGroups());
+    }
+
+    return groups;
+  }
+
+  @Override
+  public PhilipsHueGroup getGroupByName(String name) {
+    return findOnOneBridge("Group name", name, (bridge) -> bridge.getGroupByName(name));
+  }
+
+  @Override
+  public PhilipsHueGroup createGroup(String name, Collection<PhilipsHueLight> lights) {
+    PhilipsHueEndpoint groupBridge = null;
+    for (PhilipsHueLight light : lights) {
+      PhilipsHueEndpoint bridge = getBridgeForLight(light);
+      if (groupBridge == null) {
+        groupBridge = bridge;
+      } else if (groupBridge != bridge) {
+        throw new SimpleSmartSpacesException(
+            String.format("Group %s has lights on more than one Philips Hue bridge", name));
+      }
+    }
+    if (groupBridge == null) {
+      throw new SimpleSmartSpacesException(String.format("Group %s has no lights", name));
+    }
+
+    return groupBridge.createGroup(name, lights);
+  }
+
+  @Override
+  public void deleteGroup(PhilipsHueGroup group) {
+    getBridgeForGroup(group).deleteGroup(group);
+  }
+
+  @Override
+  public CompletableFuture<Void> updateGroupState(PhilipsHueGroup group,
+      PhilipsHueLightState state) {
+    return getBridgeForGroup(group).updateGroupState(group, state);
+  }
+
+  @Override
+  public void scanForScenes() {
+    forAllBridges("scan for scenes", PhilipsHueEndpoint::scanForScenes);
+  }
+
+  @Override
+  public List<PhilipsHueScene> getScenes() {
+    List<PhilipsHueScene> scenes = Lists.newArrayList();
+    for (PhilipsHueEndpoint bridge : bridges) {
+      scenes.addAll(bridge.getScenes());
+    }
+
+    return scenes;
+  }
+
+  @Override
+  public PhilipsHueScene getSceneByName(String name) {
+    return findOnOneBridge("Scene name", name, (bridge) -> bridge.getSceneByName(name));
+  }
+
+  @Override
+  public CompletableFuture<Void> recallScene(PhilipsHueScene scene) {
+    PhilipsHueEndpoint bridge = bridgesByHost.get(scene.getBridgeHost());
+    if (bridge == null) {
+      throw new SimpleSmartSpacesException(
+          String.format("Scene %s is not on any Philips Hue bridge", scene.getName()));
+    }
+
+    return bridge.recallScene(scene);
+  }
+
+  @Override
+  public PhilipsHueEntertainmentStream newEntertainmentStream(PhilipsHueGroup area,
+      PhilipsHueStreamTransport transport, int framesPerSecond) {
+    return getBridgeForGroup(area).newEntertainmentStream(area, transport, framesPerSecond);
+  }
+
+  @Override
+  public ActionSource newActionSource() {
+    return new StandardPhilipsHueActionSource(this, spaceEnvironment);
+  }
+
+  /**
+   * Get the bridge a light belongs to.
+   *
+   * @param light
+   *          the light
+   *
+   * @return the endpoint for the bridge
+   *
+   * @throws SimpleSmartSpacesException
+   *           the light is not on any bridge
+   */
+  private PhilipsHueEndpoint getBridgeForLight(PhilipsHueLight light)
+      throws SimpleSmartSpacesException {
+    for (PhilipsHueEndpoint bridge : bridges) {
+      if (bridge.getLightByUniqueId(light.getUniqueId()) == light) {
+        return bridge;
+      }
+    }
+
+    throw new SimpleSmartSpacesException(
+        String.format("Light %s is not on any Philips Hue bridge", light.getName()));
+  }
+
+  /**
+   * Get the bridge a group belongs to.
+   *
+   * @param group
+   *          the group
+   *
+   * @return the endpoint for the bridge
+   *
+   * @throws SimpleSmartSpacesException
+   *           the group is not on any bridge
+   */
+  private PhilipsHueEndpoint getBridgeForGroup(PhilipsHueGroup group)
+      throws SimpleSmartSpacesException {
+    PhilipsHueEndpoint bridge = bridgesByHost.get(group.getBridgeHost());
+    if (bridge == null) {
+      throw new SimpleSmartSpacesException(
+          String.format("Group %s is not on any Philips Hue bridge", group.getName()));
+    }
+
+    return bridge;
+  }
+
+  /**
+   * Look something up on every bridge and make sure at most one has it.
+   *
+   * @param description
+   *          a description of the key for the error message
+   * @param key
+   *          the key being looked up
+   * @param lookup
+   *          looks the key up on a bridge, giving {@code null} if not found
+   * @param <T>
+   *          the type of thing looked up
+   *
+   * @return the thing found, or {@code null} if no bridge has it
+   *
+   * @throws SimpleSmartSpacesException
+   *           more than one bridge has the key
+   */
+  private <T> T findOnOneBridge(String description, String key,
+      Function<PhilipsHueEndpoint, T> lookup) throws SimpleSmartSpacesException {
+    T found = null;
+    for (PhilipsHueEndpoint bridge : bridges) {
+      T bridgeFound = lookup.apply(bridge);
+      if (bridgeFound != null) {
+        if (found != null) {
+          throw new SimpleSmartSpacesException(
+              String.format("%s %s is on more than one Philips Hue bridge", description, key));
+        }
+        found = bridgeFound;
+      }
+    }
+
+    return found;
+  }
+
+  /**
+   * Do blocking work on all bridges at the same time and wait for all of them.
+   *
+   * @param operation
+   *          a description of the work for the error message
+   * @param work
+   *          the work to do on each bridge
+   *
+   * @throws SmartSpacesException
+   *           the work failed on at least one bridge
+   */
+  private void forAllBridges(String operation, Consumer<PhilipsHueEndpoint> work)
+      throws SmartSpacesException {
+    List<CompletableFuture<Void>> futures = Lists.newArrayList();
+    for (PhilipsHueEndpoint bridge : bridges) {
+      futures.add(CompletableFuture.runAsync(() -> work.accept(bridge), bridgeExecutor));
+    }
+
+    SmartSpacesException failure = null;
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        futures.get(i).join();
+      } catch (CompletionException e) {
+        String host = bridges.get(i).getHost();
+        log.error(String.format("Could not %s on Philips Hue bridge %s", operation, host),
+            e.getCause());
+        if (failure == null) {
+          failure = new SmartSpacesException(
+              String.format("Could not %s on Philips Hue bridge %s", operation, host),
+              e.getCause());
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.SmartSpacesException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+
+/**
+ * An HTTP client for the REST API of a single Philips Hue bridge.
+ *
+ * <p>
+ * Every request returns a future and is run on a small pool owned by the
+ * client, so callers can start many requests and wait for them together. The
+ * size of the pool is the most requests in flight to the bridge at once, a
+ * bridge only handles a few connections and drops requests beyond that.
+ *
+ * <p>
+ * Connections are kept alive between requests. Responses are always read to
+ * the end so the connection can be reused. The JDK keeps at most
+ * {@code http.maxConnections} idle connections per host, 5 unless the system
+ * property is set, so larger pools will open new connections.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueBridgeClient {
+
+  /**
+   * The default for the most requests in flight to the bridge at once.
+   */
+  public static final int MAXIMUM_IN_FLIGHT_DEFAULT = 4;
+
+  /**
+   * How long to wait for a connection to the bridge, in milliseconds.
+   */
+  public static final int CONNECT_TIMEOUT = 2000;
+
+  /**
+   * How long to wait for a response from the bridge, in milliseconds.
+   */
+  public static final int READ_TIMEOUT = 5000;
+
+  /**
+   * The number of seconds an idle request thread is kept.
+   */
+  public static final long REQUEST_THREAD_KEEP_ALIVE_TIME = 30;
+
+  /**
+   * The HTTP status for a request refused because too many requests were
+   * made, which {@link HttpURLConnection} has no constant for.
+   */
+  public static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  /**
+   * The content type for request bodies.
+   */
+  private static final String CONTENT_TYPE_JSON = "application/json";
+
+  /**
+   * The size of the buffer for reading responses.
+   */
+  private static final int READ_BUFFER_SIZE = 4096;
+
+  /**
+   * The URL all request paths are relative to.
+   */
+  private final String baseUrl;
+
+  /**
+   * The most requests in flight to the bridge at once.
+   */
+  private final int maximumInFlight;
+
+  /**
+   * The logger to use.
+   */
+  private final Log log;
+
+  /**
+   * The pool requests are run on, {@code null} if the client is not running.
+   */
+  private volatile ThreadPoolExecutor requestExecutor;
+
+  /**
+   * Construct a new client with the default number of requests in flight.
+   *
+   * @param baseUrl
+   *          the URL all request paths are relative to
+   * @param log
+   *          the logger to use
+   */
+  public PhilipsHueBridgeClient(String baseUrl, Log log) {
+    this(baseUrl, MAXIMUM_IN_FLIGHT_DEFAULT, log);
+  }
+
+  /**
+   * Construct a new client.
+   *
+   * @param baseUrl
+   *          the URL all request paths are relative to
+   * @param maximumInFlight
+   *          the most requests in flight to the bridge at once
+   * @param log
+   *          the logger to use
+   */
+  public PhilipsHueBridgeClient(String baseUrl, int maximumInFlight, Log log) {
+    this.baseUrl = baseUrl;
+    this.maximumInFlight = maximumInFlight;
+    this.log = log;
+  }
+
+  /**
+   * Start the client.
+   */
+  public synchronized void startup() {
+    if (requestExecutor != null) {
+      return;
+    }
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(maximumInFlight, maximumInFlight,
+        REQUEST_THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setNameFormat("philips-hue-bridge-%d").setDaemon(true)
+            .build());
+    executor.allowCoreThreadTimeOut(true);
+    requestExecutor = executor;
+  }
+
+  /**
+   * Shut the client down.
+   *
+   * <p>
+   * Requests already started are allowed to finish.
+   */
+  public synchronized void shutdown() {
+    ThreadPoolExecutor executor = requestExecutor;
+    requestExecutor = null;
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Get the URL all request paths are relative to.
+   *
+   * @return the base URL
+   */
+  public String getBaseUrl() {
+    return baseUrl;
+  }
+
+  /**
+   * Get the most requests in flight to the bridge at once.
+   *
+   * @return the most requests in flight
+   */
+  public int getMaximumInFlight() {
+    return maximumInFlight;
+  }
+
+  /**
+   * Perform a GET.
+   *
+   * @param path
+   *          the path of the resource, relative to the base URL
+   *
+   * @return a future for the body of the response
+   */
+  public CompletableFuture<String> get(String path) {
+    return submit("GET", path, null);
+  }
+
+  /**
+   * Perform a PUT.
+   *
+   * @param path
+   *          the path of the resource, relative to the base URL
+   * @param body
+   *          the JSON body of the request
+   *
+   * @return a future for the body of the response
+   */
+  public CompletableFuture<String> put(String path, String body) {
+    return submit("PUT", path, body);
+  }
+
+  /**
+   * Perform a POST.
+   *
+   * @param path
+   *          the path of the resource, relative to the base URL
+   * @param body
+   *          the JSON body of the request
+   *
+   * @return a future for the body of the response
+   */
+  public CompletableFuture<String> post(String path, String body) {
+    return submit("POST", path, body);
+  }
+
+  /**
+   * Perform a DELETE.
+   *
+   * @param path
+   *          the path of the resource, relative to the base URL
+   *
+   * @return a future for the body of the response
+   */
+  public CompletableFuture<String> delete(String path) {
+    return submit("DELETE", path, null);
+  }
+
+  /**
+   * Start a request on the request pool.
+   *
+   * @param method
+   *          the HTTP method
+   * @param path
+   *          the path of the resource, relative to the base URL
+   * @param body
+   *          the JSON body of the request, can be {@code null}
+   *
+   * @return a future for the body of the response
+   */
+  private CompletableFuture<String> submit(String method, String path, String body) {
+    ThreadPoolExecutor executor = requestExecutor;
+    if (executor == null) {
+      CompletableFuture<String> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new SimpleSmartSpacesException(
+          String.format("Philips Hue bridge client for %s is not running", baseUrl)));
+
+      return failed;
+    }
+
+    return CompletableFuture.supplyAsync(() -> perform(method, path, body), executor);
+  }
+
+  /**
+   * Perform a request.
+   *
+   * @param method
+   *          the HTTP method
+   * @param path
+   *          the path of the resource, relative to the base URL
+   * @param body
+   *          the JSON body of the request, can be {@code null}
+   *
+   * @return the body of the response
+   */
+  private String perform(String method, String path, String body) {
+    String url = baseUrl + path;
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      connection.setRequestMethod(method);
+      connection.setConnectTimeout(CONNECT_TIMEOUT);
+      connection.setReadTimeout(READ_TIMEOUT);
+      connection.setUseCaches(false);
+
+      if (body != null) {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", CONTENT_TYPE_JSON);
+        connection.setFixedLengthStreamingMode(content.length);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(content);
+        }
+      }
+
+      // The connection is not disconnected so it can go back to the keep
+      // alive cache once the response has been read.
+      int status = connection.getResponseCode();
+      String response = readResponse(
+          (status >= HttpURLConnection.HTTP_BAD_REQUEST) ? connection.getErrorStream()
+              : connection.getInputStream());
+
+      if (status != HttpURLConnection.HTTP_OK) {
+        throw new PhilipsHueHttpStatusException(status, String.format(
+            "Philips Hue bridge returned HTTP status %d for %s %s: %s", status, method, url,
+            response));
+      }
+
+      if (log.isDebugEnabled()) {
+        log.debug(String.format("Philips Hue %s %s: %s", method, url, response));
+      }
+
+      return response;
+    } catch (IOException e) {
+      throw new SmartSpacesException(
+          String.format("Could not perform Philips Hue %s %s", method, url), e);
+    }
+  }
+
+  /**
+   * Read a response body to its end and close it.
+   *
+   * @param in
+   *          the response stream, can be {@code null}
+   *
+   * @return the body
+   *
+   * @throws IOException
+   *           the body could not be read
+   */
+  private String readResponse(InputStream in) throws IOException {
+    if (in == null) {
+      return "";
+    }
+
+    try (InputStream responseIn = in) {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[READ_BUFFER_SIZE];
+      int read;
+      while ((read = responseIn.read(buffer)) != -1) {
+        content.write(buffer, 0, read);
+      }
+
+      return new String(content.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * A request answered with an HTTP status other than OK.
+   *
+   * @author Keith M. Hughes
+   */
+  public static class PhilipsHueHttpStatusException extends SimpleSmartSpacesException {
+
+    /**
+     * The HTTP status of the response.
+     */
+    private final int status;
+
+    /**
+     * Construct a new exception.
+     *
+     * @param status
+     *          the HTTP status of the response
+     * @param message
+     *          the message for the exception
+     */
+    public PhilipsHueHttpStatusException(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+
+    /**
+     * Get the HTTP status of the response.
+     *
+     * @return the status
+     */
+    public int getStatus() {
+      return status;
+    }
+
+    /**
+     * Is the status one a bridge gives when it is being sent requests faster
+     * than it can handle them?
+     *
+     * @return {@code true} if the request was refused because of the request
+     *         rate
+     */
+    public boolean isThrottled() {
+      return status == HTTP_TOO_MANY_REQUESTS || status == HttpURLConnection.HTTP_UNAVAILABLE;
+    }
+  }
+}
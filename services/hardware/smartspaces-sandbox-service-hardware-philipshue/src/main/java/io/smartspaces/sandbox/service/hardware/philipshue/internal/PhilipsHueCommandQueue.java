@@ -0,0 +1,620 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+
+/**
+ * A paced queue of commands for a Philips Hue bridge.
+ *
+ * <p>
+ * A bridge only handles about 10 light commands a second and drops the rest,
+ * so commands are sent no faster than a token bucket allows. Each command has
+ * a key, usually the light it is for. A command submitted while another with
+ * the same key is still waiting replaces it, so the bridge only sees the
+ * latest state and callers of both get the same answer.
+ *
+ * <p>
+ * Priority commands, such as turning lights on or off, are sent before any
+ * waiting normal commands. A normal command which is replaced by a priority
+ * command becomes a priority command.
+ *
+ * <p>
+ * A command can supersede waiting commands with other keys, such as a group
+ * command superseding commands for the lights in the group. The superseded
+ * commands are never sent and their callers get the answer for the command
+ * which superseded them.
+ *
+ * <p>
+ * Commands are sent as PUTs through the bridge client, which limits how many
+ * are in flight. A command is held back while another with the same key is in
+ * flight, so the bridge sees the commands for a key in the order they were
+ * submitted.
+ *
+ * <p>
+ * A bridge which is sent commands faster than it can handle answers with HTTP
+ * status 429 or 503. The queue then stops sending for a backoff delay, which
+ * doubles each time the bridge refuses a command and is cleared by the next
+ * command the bridge accepts, and the refused command is sent again unless a
+ * newer command with its key is already waiting.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueCommandQueue {
+
+  /**
+   * The default number of commands sent to the bridge a second.
+   */
+  public static final double COMMANDS_PER_SECOND_DEFAULT = 10;
+
+  /**
+   * The first backoff delay after the bridge refuses a command, in
+   * milliseconds.
+   */
+  public static final long BACKOFF_DELAY_INITIAL = 250;
+
+  /**
+   * The longest backoff delay, in milliseconds.
+   */
+  public static final long BACKOFF_DELAY_MAXIMUM = 8000;
+
+  /**
+   * The client for the bridge.
+   */
+  private final PhilipsHueBridgeClient client;
+
+  /**
+   * The token bucket the commands are paced with.
+   */
+  private final RateLimiter rateLimiter;
+
+  /**
+   * The logger to use.
+   */
+  private final Log log;
+
+  /**
+   * The commands waiting to be sent, keyed by command key.
+   */
+  private final Map<String, QueuedCommand> pendingCommands = Maps.newHashMap();
+
+  /**
+   * The keys of the waiting priority commands, in the order they were
+   * submitted.
+   */
+  private final Deque<String> priorityKeys = new ArrayDeque<>();
+
+  /**
+   * The keys of the waiting normal commands, in the order they were
+   * submitted.
+   */
+  private final Deque<String> normalKeys = new ArrayDeque<>();
+
+  /**
+   * The keys of the commands sent to the bridge which have not been answered.
+   */
+  private final Set<String> inFlightKeys = Sets.newHashSet();
+
+  /**
+   * The number of commands which replaced a waiting command.
+   */
+  private final LongAdder numberCoalesced = new LongAdder();
+
+  /**
+   * The number of commands the bridge refused because of the command rate.
+   */
+  private final LongAdder numberThrottled = new LongAdder();
+
+  /**
+   * The current backoff delay in milliseconds, {@code 0} if the bridge is
+   * accepting commands.
+   *
+   * <p>
+   * Guarded by the lock on the pending commands.
+   */
+  private long backoffDelay;
+
+  /**
+   * The time no commands are sent before, in milliseconds since the epoch.
+   *
+   * <p>
+   * Guarded by the lock on the pending commands.
+   */
+  private long backoffUntil;
+
+  /**
+   * The thread sending commands, {@code null} if the queue is not running.
+   */
+  private volatile Thread dispatchThread;
+
+  /**
+   * Construct a new queue with the default rate.
+   *
+   * @param client
+   *          the client for the bridge
+   * @param log
+   *          the logger to use
+   */
+  public PhilipsHueCommandQueue(PhilipsHueBridgeClient client, Log log) {
+    this(client, COMMANDS_PER_SECOND_DEFAULT, log);
+  }
+
+  /**
+   * Construct a new queue.
+   *
+   * @param client
+   *          the client for the bridge
+   * @param commandsPerSecond
+   *          the number of commands sent to the bridge a second
+   * @param log
+   *          the logger to use
+   */
+  public PhilipsHueCommandQueue(PhilipsHueBridgeClient client, double commandsPerSecond,
+      Log log) {
+    this.client = client;
+    this.rateLimiter = RateLimiter.create(commandsPerSecond);
+    this.log = log;
+  }
+
+  /**
+   * Start sending commands.
+   */
+  public synchronized void startup() {
+    if (dispatchThread != null) {
+      return;
+    }
+
+    dispatchThread = new ThreadFactoryBuilder().setNameFormat("philips-hue-queue-%d")
+        .setDaemon(true).build().newThread(this::dispatchCommands);
+    dispatchThread.start();
+  }
+
+  /**
+   * Stop sending commands.
+   *
+   * <p>
+   * Commands still waiting fail.
+   */
+  public synchronized void shutdown() {
+    Thread thread = dispatchThread;
+    dispatchThread = null;
+    if (thread != null) {
+      thread.interrupt();
+    }
+
+    synchronized (pendingCommands) {
+      for (QueuedCommand command : pendingCommands.values()) {
+        command.future.completeExceptionally(
+            new SimpleSmartSpacesException("Philips Hue command queue shut down"));
+      }
+      pendingCommands.clear();
+      priorityKeys.clear();
+      normalKeys.clear();
+    }
+  }
+
+  /**
+   * Submit a command.
+   *
+   * @param key
+   *          the key of the command, a waiting command with the same key is
+   *          replaced
+   * @param path
+   *          the path for the PUT, relative to the client base URL
+   * @param body
+   *          the JSON body of the PUT
+   * @param priority
+   *          {@code true} if the command should go before normal commands
+   *
+   * @return a future for the response from the bridge, completed
+   *         exceptionally if the queue is not running
+   */
+  public CompletableFuture<String> submit(String key, String path, String body,
+      boolean priority) {
+    return submit(key, path, body, priority, Collections.emptyList());
+  }
+
+  /**
+   * Submit a command which supersedes waiting commands with other keys.
+   *
+   * @param key
+   *          the key of the command, a waiting command with the same key is
+   *          replaced
+   * @param path
+   *          the path for the PUT, relative to the client base URL
+   * @param body
+   *          the JSON body of the PUT
+   * @param priority
+   *          {@code true} if the command should go before normal commands
+   * @param supersededKeys
+   *          the keys of waiting commands which will not be sent, their
+   *          futures complete with the response to this command
+   *
+   * @return a future for the response from the bridge, completed
+   *         exceptionally if the queue is not running
+   */
+  public CompletableFuture<String> submit(String key, String path, String body,
+      boolean priority, Collection<String> supersededKeys) {
+    List<QueuedCommand> supersededCommands = Lists.newArrayList();
+    CompletableFuture<String> future;
+    synchronized (pendingCommands) {
+      // Checked under the lock so a shutdown either sees the command and fails
+      // it, or the command is never queued.
+      if (dispatchThread == null) {
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(
+            new SimpleSmartSpacesException("Philips Hue command queue is not running"));
+
+        return failed;
+      }
+
+      for (String supersededKey : supersededKeys) {
+        if (supersededKey.equals(key)) {
+          continue;
+        }
+
+        QueuedCommand supersededCommand = pendingCommands.remove(supersededKey);
+        if (supersededCommand != null) {
+          (supersededCommand.priority ? priorityKeys : normalKeys).remove(supersededKey);
+          supersededCommands.add(supersededCommand);
+          numberCoalesced.increment();
+        }
+      }
+
+      future = submitCommand(key, path, body, priority);
+    }
+
+    for (QueuedCommand supersededCommand : supersededCommands) {
+      future.whenComplete((response, e) -> {
+        if (e != null) {
+          supersededCommand.future.completeExceptionally(e);
+        } else {
+          supersededCommand.future.complete(response);
+        }
+      });
+    }
+
+    return future;
+  }
+
+  /**
+   * Queue a command, replacing a waiting command with the same key.
+   *
+   * <p>
+   * The caller must hold the lock on the pending commands.
+   *
+   * @param key
+   *          the key of the command
+   * @param path
+   *          the path for the PUT
+   * @param body
+   *          the JSON body of the PUT
+   * @param priority
+   *          {@code true} if the command should go before normal commands
+   *
+   * @return a future for the response from the bridge
+   */
+  private CompletableFuture<String> submitCommand(String key, String path, String body,
+      boolean priority) {
+    QueuedCommand command = pendingCommands.get(key);
+    if (command != null) {
+      command.path = path;
+      command.body = body;
+      if (priority && !command.priority) {
+        command.priority = true;
+        normalKeys.remove(key);
+        priorityKeys.addLast(key);
+      }
+      numberCoalesced.increment();
+
+      return command.future;
+    }
+
+    command = new QueuedCommand(path, body, priority);
+    pendingCommands.put(key, command);
+    (priority ? priorityKeys : normalKeys).addLast(key);
+    pendingCommands.notifyAll();
+
+    return command.future;
+  }
+
+  /**
+   * Set the number of commands sent to the bridge a second.
+   *
+   * @param commandsPerSecond
+   *          the rate
+   */
+  public void setCommandsPerSecond(double commandsPerSecond) {
+    rateLimiter.setRate(commandsPerSecond);
+  }
+
+  /**
+   * Get the number of commands waiting to be sent.
+   *
+   * @return the number of waiting commands
+   */
+  public int getNumberPending() {
+    synchronized (pendingCommands) {
+      return pendingCommands.size();
+    }
+  }
+
+  /**
+   * Get the number of commands which replaced a waiting command.
+   *
+   * @return the number of coalesced commands
+   */
+  public long getNumberCoalesced() {
+    return numberCoalesced.sum();
+  }
+
+  /**
+   * Get the number of commands the bridge refused because of the command
+   * rate.
+   *
+   * @return the number of refused commands
+   */
+  public long getNumberThrottled() {
+    return numberThrottled.sum();
+  }
+
+  /**
+   * Send commands until interrupted.
+   *
+   * <p>
+   * A token is taken before a command is removed, so commands keep coalescing
+   * while they wait for the bucket.
+   */
+  private void dispatchCommands() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        waitForCommand();
+
+        rateLimiter.acquire();
+
+        String key;
+        QueuedCommand command;
+        synchronized (pendingCommands) {
+          key = findNextKey();
+          if (key == null) {
+            continue;
+          }
+          command = pendingCommands.remove(key);
+          (command.priority ? priorityKeys : normalKeys).remove(key);
+          inFlightKeys.add(key);
+        }
+
+        sendCommand(key, command);
+      }
+    } catch (InterruptedException e) {
+      // Shutting down.
+    }
+  }
+
+  /**
+   * Wait until there is a command which can be sent and the queue is not
+   * backing off.
+   *
+   * @throws InterruptedException
+   *           the queue is shutting down
+   */
+  private void waitForCommand() throws InterruptedException {
+    synchronized (pendingCommands) {
+      while (true) {
+        long backoffRemaining = backoffUntil - System.currentTimeMillis();
+        if (backoffRemaining > 0) {
+          pendingCommands.wait(backoffRemaining);
+        } else if (findNextKey() == null) {
+          pendingCommands.wait();
+        } else {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Find the key of the next command to send.
+   *
+   * <p>
+   * The caller must hold the lock on the pending commands.
+   *
+   * @return the key of the first waiting command whose key is not in flight,
+   *         priority commands first, or {@code null} if there is none
+   */
+  private String findNextKey() {
+    for (String key : priorityKeys) {
+      if (!inFlightKeys.contains(key)) {
+        return key;
+      }
+    }
+    for (String key : normalKeys) {
+      if (!inFlightKeys.contains(key)) {
+        return key;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Send a command to the bridge.
+   *
+   * @param key
+   *          the key of the command
+   * @param command
+   *          the command
+   */
+  private void sendCommand(String key, QueuedCommand command) {
+    try {
+      client.put(command.path, command.body)
+          .whenComplete((response, e) -> commandAnswered(key, command, response, e));
+    } catch (Throwable e) {
+      log.error(String.format("Could not send Philips Hue command %s", command.path), e);
+      commandAnswered(key, command, null, e);
+    }
+  }
+
+  /**
+   * A command is no longer in flight, so the next command with its key can be
+   * sent.
+   *
+   * <p>
+   * A command refused because of the command rate starts or lengthens the
+   * backoff and is queued again.
+   *
+   * @param key
+   *          the key of the command
+   * @param command
+   *          the command
+   * @param response
+   *          the response from the bridge, {@code null} if the command failed
+   * @param e
+   *          why the command failed, {@code null} if it succeeded
+   */
+  private void commandAnswered(String key, QueuedCommand command, String response,
+      Throwable e) {
+    boolean throttled = isThrottled(e);
+    boolean retried = false;
+    QueuedCommand newerCommand = null;
+    synchronized (pendingCommands) {
+      inFlightKeys.remove(key);
+
+      if (throttled) {
+        numberThrottled.increment();
+        backoffDelay = (backoffDelay == 0) ? BACKOFF_DELAY_INITIAL
+            : Math.min(backoffDelay * 2, BACKOFF_DELAY_MAXIMUM);
+        backoffUntil = System.currentTimeMillis() + backoffDelay;
+
+        // Only retried while running, a shutdown has already failed the
+        // waiting commands.
+        if (dispatchThread != null) {
+          retried = true;
+          newerCommand = pendingCommands.get(key);
+          if (newerCommand == null) {
+            pendingCommands.put(key, command);
+            (command.priority ? priorityKeys : normalKeys).addFirst(key);
+          } else {
+            numberCoalesced.increment();
+          }
+        }
+      } else {
+        backoffDelay = 0;
+      }
+
+      pendingCommands.notifyAll();
+    }
+
+    if (throttled && log.isDebugEnabled()) {
+      log.debug(String.format("Philips Hue bridge refused command %s, backing off",
+          command.path));
+    }
+
+    if (newerCommand != null) {
+      newerCommand.future.whenComplete((newerResponse, newerE) -> {
+        if (newerE != null) {
+          command.future.completeExceptionally(newerE);
+        } else {
+          command.future.complete(newerResponse);
+        }
+      });
+    } else if (!retried) {
+      if (e != null) {
+        command.future.completeExceptionally(e);
+      } else {
+        command.future.complete(response);
+      }
+    }
+  }
+
+  /**
+   * Was a command refused because of the command rate?
+   *
+   * @param e
+   *          why the command failed, can be {@code null}
+   *
+   * @return {@code true} if the bridge refused the command because of the rate
+   */
+  private boolean isThrottled(Throwable e) {
+    Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+
+    return cause instanceof PhilipsHueBridgeClient.PhilipsHueHttpStatusException
+        && ((PhilipsHueBridgeClient.PhilipsHueHttpStatusException) cause).isThrottled();
+  }
+
+  /**
+   * A command waiting to be sent.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class QueuedCommand {
+
+    /**
+     * The path for the PUT.
+     */
+    private String path;
+
+    /**
+     * The JSON body of the PUT.
+     */
+    private String body;
+
+    /**
+     * {@code true} if the command goes before normal commands.
+     */
+    private boolean priority;
+
+    /**
+     * The future for the response.
+     */
+    private final CompletableFuture<String> future = new CompletableFuture<>();
+
+    /**
+     * Construct a new command.
+     *
+     * @param path
+     *          the path for the PUT
+     * @param body
+     *          the JSON body of the PUT
+     * @param priority
+     *          {@code true} if the command goes before normal commands
+     */
+    QueuedCommand(String path, String body, boolean priority) {
+      this.path = path;
+      this.body = body;
+      this.priority = priority;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal;
+
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lights known by a Philips Hue endpoint.
+ *
+ * <p>
+ * The lookup maps are held in an immutable snapshot which is replaced as a
+ * whole whenever the lights change, so lookups never lock and always see a
+ * consistent set of lights. Changes are serialized.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueLightRegistry {
+
+  /**
+   * The current snapshot of the lights.
+   */
+  private volatile Snapshot snapshot = new Snapshot(ImmutableList.<PhilipsHueLight>of());
+
+  /**
+   * Get a light by its unique ID.
+   *
+   * @param uniqueId
+   *          the unique ID
+   *
+   * @return the light, or {@code null} if no light with that ID
+   */
+  public PhilipsHueLight getLightByUniqueId(String uniqueId) {
+    return snapshot.uniqueIdToLights.get(uniqueId);
+  }
+
+  /**
+   * Get a light by its name.
+   *
+   * @param name
+   *          the name
+   *
+   * @return the light, or {@code null} if no light with that name
+   */
+  public PhilipsHueLight getLightByName(String name) {
+    return snapshot.nameToLights.get(name);
+  }
+
+  /**
+   * Get a light by its control ID.
+   *
+   * @param controlId
+   *          the control ID
+   *
+   * @return the light, or {@code null} if no light with that ID
+   */
+  public PhilipsHueLight getLightByControlId(String controlId) {
+    return snapshot.controlIdToLights.get(controlId);
+  }
+
+  /**
+   * Get the names of all lights.
+   *
+   * @return the names, sorted
+   */
+  public List<String> getLightNames() {
+    return snapshot.nameToLights.keySet().asList();
+  }
+
+  /**
+   * Get all lights.
+   *
+   * @return the lights, which cannot be modified
+   */
+  public List<PhilipsHueLight> getLights() {
+    return snapshot.lights;
+  }
+
+  /**
+   * Replace all lights.
+   *
+   * <p>
+   * This is also used after light names or control IDs have changed, to bring
+   * the lookups up to date.
+   *
+   * @param lights
+   *          the lights
+   */
+  public synchronized void setLights(Collection<PhilipsHueLight> lights) {
+    snapshot = new Snapshot(ImmutableList.copyOf(lights));
+  }
+
+  /**
+   * Rename a light.
+   *
+   * @param light
+   *          the light
+   * @param newName
+   *          the new name for the light
+   */
+  public synchronized void renameLight(PhilipsHueLight light, String newName) {
+    light.setName(newName);
+
+    snapshot = new Snapshot(snapshot.lights);
+  }
+
+  /**
+   * An immutable snapshot of the lights.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class Snapshot {
+
+    /**
+     * All lights, in the order they were given.
+     */
+    private final ImmutableList<PhilipsHueLight> lights;
+
+    /**
+     * A map from unique IDs to the light with that ID.
+     */
+    private final ImmutableMap<String, PhilipsHueLight> uniqueIdToLights;
+
+    /**
+     * A map from the names of lights to the light, sorted by name.
+     */
+    private final ImmutableSortedMap<String, PhilipsHueLight> nameToLights;
+
+    /**
+     * A map from control IDs to the light with that ID.
+     */
+    private final ImmutableMap<String, PhilipsHueLight> controlIdToLights;
+
+    /**
+     * Construct a new snapshot.
+     *
+     * @param lights
+     *          the lights, the last light with a given key wins
+     */
+    Snapshot(ImmutableList<PhilipsHueLight> lights) {
+      this.lights = lights;
+
+      Map<String, PhilipsHueLight> uniqueIdToLights = Maps.newLinkedHashMap();
+      Map<String, PhilipsHueLight> nameToLights = Maps.newHashMap();
+      Map<String, PhilipsHueLight> controlIdToLights = Maps.newHashMap();
+      for (PhilipsHueLight light : lights) {
+        uniqueIdToLights.put(light.getUniqueId(), light);
+        if (light.getName() != null) {
+          nameToLights.put(light.getName(), light);
+        }
+        if (light.getControlId() != null) {
+          controlIdToLights.put(light.getControlId(), light);
+        }
+      }
+
+      this.uniqueIdToLights = ImmutableMap.copyOf(uniqueIdToLights);
+      this.nameToLights = ImmutableSortedMap.copyOf(nameToLights);
+      this.controlIdToLights = ImmutableMap.copyOf(controlIdToLights);
+    }
+  }
+}
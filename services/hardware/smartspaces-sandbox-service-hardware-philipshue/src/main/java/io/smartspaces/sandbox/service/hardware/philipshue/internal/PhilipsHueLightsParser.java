@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal;
+
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLightState;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueRestMessages;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A streaming parser for the lights list from a Philips Hue bridge.
+ *
+ * <p>
+ * Only the fields a light keeps are read, everything else, such as the
+ * capabilities and software update data, is skipped without building objects
+ * for it.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueLightsParser {
+
+  /**
+   * The factory for parsers. It is thread safe.
+   */
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  /**
+   * Parse the lights list.
+   *
+   * @param json
+   *          the JSON for the lights list
+   *
+   * @return a light for each light in the list, with the reported state as
+   *         both its desired and its acknowledged state
+   *
+   * @throws SmartSpacesException
+   *           the JSON could not be parsed
+   */
+  public List<PhilipsHueLight> parseLights(String json) throws SmartSpacesException {
+    List<PhilipsHueLight> lights = Lists.newArrayList();
+    try (JsonParser parser = jsonFactory.createParser(json)) {
+      expect(parser.nextToken(), JsonToken.START_OBJECT);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String controlId = parser.getCurrentName();
+        expect(parser.nextToken(), JsonToken.START_OBJECT);
+
+        lights.add(parseLight(parser, controlId));
+      }
+    } catch (IOException e) {
+      throw new SmartSpacesException("Could not parse Philips Hue lights", e);
+    }
+
+    return lights;
+  }
+
+  /**
+   * Parse a single light.
+   *
+   * @param parser
+   *          the parser, positioned at the start of the light object
+   * @param controlId
+   *          the control ID of the light
+   *
+   * @return the light
+   *
+   * @throws IOException
+   *           the JSON could not be parsed
+   */
+  private PhilipsHueLight parseLight(JsonParser parser, String controlId) throws IOException {
+    String uniqueId = null;
+    String name = null;
+    PhilipsHueLightState state = new PhilipsHueLightState();
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (field) {
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_UNIQUEID:
+          uniqueId = parser.getValueAsString();
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME:
+          name = parser.getValueAsString();
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE:
+          expect(value, JsonToken.START_OBJECT);
+          parseState(parser, state);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    // Lights from old bridges may not have a unique ID.
+    if (uniqueId == null) {
+      uniqueId = controlId;
+    }
+
+    PhilipsHueLight light = new PhilipsHueLight(uniqueId).setControlId(controlId).setName(name);
+    state.applyTo(light);
+    light.setAcknowledgedState(state);
+
+    return light;
+  }
+
+  /**
+   * Parse the state of a light.
+   *
+   * @param parser
+   *          the parser, positioned at the start of the state object
+   * @param state
+   *          the state to fill in
+   *
+   * @throws IOException
+   *           the JSON could not be parsed
+   */
+  private void parseState(JsonParser parser, PhilipsHueLightState state) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_ON:
+          state.setOn(parser.getBooleanValue());
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_BRIGHTNESS:
+          state.setBrightness(parser.getIntValue());
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_SATURATION:
+          state.setSaturation(parser.getIntValue());
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_HUE:
+          state.setHue(parser.getIntValue());
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_XY:
+          parseColorXy(parser, state);
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_COLOR_TEMPERATURE:
+          state.setColorTemperature(parser.getIntValue());
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+  }
+
+  /**
+   * Parse the CIE color space coordinates of a light.
+   *
+   * @param parser
+   *          the parser, positioned at the start of the coordinates array
+   * @param state
+   *          the state to fill in
+   *
+   * @throws IOException
+   *           the JSON could not be parsed
+   */
+  private void parseColorXy(JsonParser parser, PhilipsHueLightState state) throws IOException {
+    expect(parser.getCurrentToken(), JsonToken.START_ARRAY);
+
+    List<Double> coordinates = Lists.newArrayList();
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      coordinates.add(parser.getDoubleValue());
+    }
+
+    if (coordinates.size() == 2) {
+      state.setColorXy(coordinates.get(0), coordinates.get(1));
+    }
+  }
+
+  /**
+   * Make sure a token is the expected one.
+   *
+   * @param actual
+   *          the token which was read
+   * @param expected
+   *          the token which should have been read
+   *
+   * @throws IOException
+   *           the token was not the expected one
+   */
+  private void expect(JsonToken actual, JsonToken expected) throws IOException {
+    if (actual != expected) {
+      throw new IOException(String.format("Expected %s but found %s", expected, actual));
+    }
+  }
+}
@@ -17,14 +17,24 @@
 package io.smartspaces.sandbox.service.hardware.philipshue.internal;
 
 import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.evaluation.ExecutionContext;
 import io.smartspaces.sandbox.service.action.Action;
 import io.smartspaces.sandbox.service.action.ActionSource;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpoint;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLightState;
 import io.smartspaces.system.SmartSpacesEnvironment;
 import io.smartspaces.util.data.dynamic.StandardDynamicObjectNavigator;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
 
 /**
  * An action source for Philips Hue lights.
@@ -35,11 +45,30 @@ public class StandardPhilipsHueActionSource implements ActionSource {
 
   public static final String ACTION_NAME_LIGHT_STATE_SET = "light.state.set";
 
+  /**
+   * The name of the action which sets a whole scene, where each light can be
+   * given its own state.
+   */
+  public static final String ACTION_NAME_LIGHT_SCENE_SET = "light.scene.set";
+
+  /**
+   * The scene action argument for the light changes. Each change is a map
+   * with either {@link #LIGHT_ARGUMENT_LIGHT_ID} or
+   * {@link #LIGHT_ARGUMENT_LIGHT_IDS}, and {@link #LIGHT_ARGUMENT_NEW_STATE}.
+   */
+  public static final String LIGHT_ARGUMENT_LIGHTS = "lights";
+
   /**
    * The light action argument for the light ID.
    */
   public static final String LIGHT_ARGUMENT_LIGHT_ID = "lightId";
 
+  /**
+   * The light action argument for the IDs of several lights to change
+   * together.
+   */
+  public static final String LIGHT_ARGUMENT_LIGHT_IDS = "lightIds";
+
   /**
    * The light action argument for changing the light state.
    */
@@ -50,6 +79,43 @@ public class StandardPhilipsHueActionSource implements ActionSource {
    */
   public static final String LIGHT_ARGUMENT_STATE_ON = "on";
 
+  /**
+   * The light action argument for changing the brightness.
+   */
+  public static final String LIGHT_ARGUMENT_STATE_BRIGHTNESS = "brightness";
+
+  /**
+   * The light action argument for changing the hue.
+   */
+  public static final String LIGHT_ARGUMENT_STATE_HUE = "hue";
+
+  /**
+   * The light action argument for changing the saturation.
+   */
+  public static final String LIGHT_ARGUMENT_STATE_SATURATION = "saturation";
+
+  /**
+   * The light action argument for changing the CIE color space coordinates,
+   * a list of the x and y coordinates.
+   */
+  public static final String LIGHT_ARGUMENT_STATE_XY = "xy";
+
+  /**
+   * The light action argument for changing the color temperature, in mireds.
+   */
+  public static final String LIGHT_ARGUMENT_STATE_COLOR_TEMPERATURE = "colorTemperature";
+
+  /**
+   * The light action argument for the time the change takes, in
+   * milliseconds.
+   */
+  public static final String LIGHT_ARGUMENT_STATE_TRANSITION_TIME = "transitionTime";
+
+  /**
+   * The number of milliseconds in a unit of Philips Hue transition time.
+   */
+  public static final double TRANSITION_TIME_UNIT = 100.0;
+
   /**
    * The endpoint for Philips Hue lights.
    */
@@ -60,6 +126,18 @@ public class StandardPhilipsHueActionSource implements ActionSource {
    */
   private SmartSpacesEnvironment spaceEnvironment;
 
+  /**
+   * The action for changing light states. It holds no per-call state so a
+   * single instance is handed out.
+   */
+  private final PhilipsHueLightChangeAction lightChangeAction = new PhilipsHueLightChangeAction();
+
+  /**
+   * The action for setting scenes. It holds no per-call state so a single
+   * instance is handed out.
+   */
+  private final PhilipsHueSceneChangeAction sceneChangeAction = new PhilipsHueSceneChangeAction();
+
   public StandardPhilipsHueActionSource(PhilipsHueEndpoint philipsHueEndpoint,
       SmartSpacesEnvironment spaceEnvironment) {
     this.philipsHueEndpoint = philipsHueEndpoint;
@@ -69,7 +147,9 @@ public class StandardPhilipsHueActionSource implements ActionSource {
   @Override
   public Action getAction(String actionName) {
     if (ACTION_NAME_LIGHT_STATE_SET.equals(actionName)) {
-      return new PhilipsHueLightChangeAction();
+      return lightChangeAction;
+    } else if (ACTION_NAME_LIGHT_SCENE_SET.equals(actionName)) {
+      return sceneChangeAction;
     }
 
     throw new SimpleSmartSpacesException(String.format(
@@ -85,24 +165,211 @@ public class StandardPhilipsHueActionSource implements ActionSource {
   public class PhilipsHueLightChangeAction implements Action {
 
     @Override
-    public void perform(Map<String, ? extends Object> data) {
-      StandardDynamicObjectNavigator actionArguments = new StandardDynamicObjectNavigator(data);
+    public void perform(ExecutionContext context) {
+      List<String> lightIds = context.getValue(LIGHT_ARGUMENT_LIGHT_IDS);
+      if (lightIds != null) {
+        changeLights(lightIds, context);
+
+        return;
+      }
+
+      String lightId = context.getValue(LIGHT_ARGUMENT_LIGHT_ID);
+      if (lightId == null) {
+        throw new SimpleSmartSpacesException(
+            String.format("Light state change requires the argument %s or %s",
+                LIGHT_ARGUMENT_LIGHT_ID, LIGHT_ARGUMENT_LIGHT_IDS));
+      }
 
-      String lightId = actionArguments.getRequiredString(LIGHT_ARGUMENT_LIGHT_ID);
       PhilipsHueLight light = philipsHueEndpoint.getLightByName(lightId);
       if (light != null) {
-        actionArguments.down(LIGHT_ARGUMENT_NEW_STATE);
-        Boolean on = actionArguments.getBoolean(LIGHT_ARGUMENT_STATE_ON);
-        if (on != null) {
-          light.setOn(on);
-        }
+        getNewState(context.getValue(LIGHT_ARGUMENT_NEW_STATE)).applyTo(light);
 
         philipsHueEndpoint.updateLightState(light);
       } else {
-        spaceEnvironment.getLog().warn(
-            String.format("Light state change, could not find light with name %s from endpoint %s",
-                lightId, philipsHueEndpoint));
+        warnLightNotFound(lightId);
       }
     }
+
+    /**
+     * Change several lights to the same state.
+     *
+     * <p>
+     * The endpoint sends a single group command if the lights are a group on
+     * the bridge. The action waits for the bridge, as it does for a single
+     * light.
+     *
+     * @param lightIds
+     *          the IDs of the lights
+     * @param context
+     *          the execution context for the action
+     */
+    private void changeLights(List<String> lightIds, ExecutionContext context) {
+      Set<PhilipsHueLight> lights = Sets.newLinkedHashSet();
+      applyNewState(lightIds, getNewState(context.getValue(LIGHT_ARGUMENT_NEW_STATE)), lights);
+
+      updateLights(lights, lightIds);
+    }
+  }
+
+  /**
+   * The action for setting a scene, where each light can be given its own
+   * state.
+   *
+   * <p>
+   * All lights in the scene go to the endpoint in a single update, so lights
+   * which share a state can be sent as one group command and the rest are
+   * sent in parallel. The action waits for the bridge to answer for all of
+   * them.
+   *
+   * @author Keith M. Hughes
+   */
+  public class PhilipsHueSceneChangeAction implements Action {
+
+    @Override
+    public void perform(ExecutionContext context) {
+      List<Map<String, Object>> lightChanges = context.getValue(LIGHT_ARGUMENT_LIGHTS);
+      if (lightChanges == null) {
+        throw new SimpleSmartSpacesException(
+            String.format("Scene change requires the argument %s", LIGHT_ARGUMENT_LIGHTS));
+      }
+
+      // A light named more than once ends up with the last state given, and is
+      // only sent once.
+      Set<PhilipsHueLight> lights = Sets.newLinkedHashSet();
+      List<String> lightIds = Lists.newArrayList();
+      for (Map<String, Object> lightChange : lightChanges) {
+        StandardDynamicObjectNavigator changeArguments =
+            new StandardDynamicObjectNavigator(lightChange);
+
+        List<String> changeLightIds = Lists.newArrayList();
+        String lightId = changeArguments.getString(LIGHT_ARGUMENT_LIGHT_ID);
+        if (lightId != null) {
+          changeLightIds.add(lightId);
+        }
+        @SuppressWarnings("unchecked")
+        List<String> changeLightIdList = (List<String>) lightChange.get(LIGHT_ARGUMENT_LIGHT_IDS);
+        if (changeLightIdList != null) {
+          changeLightIds.addAll(changeLightIdList);
+        }
+        if (changeLightIds.isEmpty()) {
+          throw new SimpleSmartSpacesException(
+              String.format("Scene change light requires the argument %s or %s",
+                  LIGHT_ARGUMENT_LIGHT_ID, LIGHT_ARGUMENT_LIGHT_IDS));
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> newState =
+            (Map<String, Object>) lightChange.get(LIGHT_ARGUMENT_NEW_STATE);
+        applyNewState(changeLightIds, getNewState(newState), lights);
+        lightIds.addAll(changeLightIds);
+      }
+
+      updateLights(lights, lightIds);
+    }
+  }
+
+  /**
+   * Get the light state described by new state arguments.
+   *
+   * @param newState
+   *          the new state arguments, can be {@code null}
+   *
+   * @return the light state
+   */
+  private PhilipsHueLightState getNewState(Map<String, Object> newState) {
+    PhilipsHueLightState state = new PhilipsHueLightState();
+    if (newState == null) {
+      return state;
+    }
+
+    StandardDynamicObjectNavigator stateArguments = new StandardDynamicObjectNavigator(newState);
+    state.setOn(stateArguments.getBoolean(LIGHT_ARGUMENT_STATE_ON))
+        .setBrightness(stateArguments.getInteger(LIGHT_ARGUMENT_STATE_BRIGHTNESS))
+        .setHue(stateArguments.getInteger(LIGHT_ARGUMENT_STATE_HUE))
+        .setSaturation(stateArguments.getInteger(LIGHT_ARGUMENT_STATE_SATURATION))
+        .setColorTemperature(stateArguments.getInteger(LIGHT_ARGUMENT_STATE_COLOR_TEMPERATURE));
+
+    @SuppressWarnings("unchecked")
+    List<Number> xy = (List<Number>) newState.get(LIGHT_ARGUMENT_STATE_XY);
+    if (xy != null) {
+      if (xy.size() != 2) {
+        throw new SimpleSmartSpacesException(
+            String.format("Light state argument %s must have 2 coordinates, found %s",
+                LIGHT_ARGUMENT_STATE_XY, xy));
+      }
+      state.setColorXy(xy.get(0).doubleValue(), xy.get(1).doubleValue());
+    }
+
+    Double transitionTime = stateArguments.getDouble(LIGHT_ARGUMENT_STATE_TRANSITION_TIME);
+    if (transitionTime != null) {
+      state.setTransitionTime((int) Math.round(transitionTime / TRANSITION_TIME_UNIT));
+    }
+
+    return state;
+  }
+
+  /**
+   * Apply a new state to a collection of lights.
+   *
+   * @param lightIds
+   *          the IDs of the lights
+   * @param state
+   *          the new state
+   * @param lights
+   *          the lights which were found are added here
+   */
+  private void applyNewState(List<String> lightIds, PhilipsHueLightState state,
+      Set<PhilipsHueLight> lights) {
+    for (String lightId : lightIds) {
+      PhilipsHueLight light = philipsHueEndpoint.getLightByName(lightId);
+      if (light != null) {
+        state.applyTo(light);
+        lights.add(light);
+      } else {
+        warnLightNotFound(lightId);
+      }
+    }
+  }
+
+  /**
+   * Send the new states of a collection of lights to the endpoint.
+   *
+   * <p>
+   * The endpoint sends a single group command for lights which share a state
+   * and are a group on the bridge. The bridge is waited for, so a failed
+   * update fails the action.
+   *
+   * @param lights
+   *          the lights
+   * @param lightIds
+   *          the IDs of the lights, for the failure message
+   *
+   * @throws SmartSpacesException
+   *           the update for at least one of the lights failed
+   */
+  private void updateLights(Collection<PhilipsHueLight> lights, List<String> lightIds)
+      throws SmartSpacesException {
+    if (lights.isEmpty()) {
+      return;
+    }
+
+    try {
+      philipsHueEndpoint.updateLightStates(Lists.newArrayList(lights)).join();
+    } catch (CompletionException e) {
+      throw new SmartSpacesException(
+          String.format("Light state change for lights %s failed", lightIds), e.getCause());
+    }
+  }
+
+  /**
+   * Warn that a light for an action could not be found.
+   *
+   * @param lightId
+   *          the ID of the light
+   */
+  private void warnLightNotFound(String lightId) {
+    spaceEnvironment.getLog().warn(
+        String.format("Light state change, could not find light with name %s from endpoint %s",
+            lightId, philipsHueEndpoint));
   }
 }
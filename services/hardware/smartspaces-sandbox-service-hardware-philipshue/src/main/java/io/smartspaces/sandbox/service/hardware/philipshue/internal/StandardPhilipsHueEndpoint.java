@@ -16,31 +16,49 @@
 
 package io.smartspaces.sandbox.service.hardware.philipshue.internal;
 
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.evaluation.StandardExecutionContext;
 import io.smartspaces.sandbox.service.action.ActionService;
 import io.smartspaces.sandbox.service.action.ActionSource;
 import io.smartspaces.sandbox.service.action.internal.StandardActionService;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpoint;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpointListener;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpointService;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEntertainmentStream;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueGroup;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLightState;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueRestMessages;
-import io.smartspaces.service.web.HttpClientRestWebClient;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueScene;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueStreamTransport;
 import io.smartspaces.system.SmartSpacesEnvironment;
 import io.smartspaces.system.StandaloneSmartSpacesEnvironment;
 import io.smartspaces.util.SmartSpacesUtilities;
-import io.smartspaces.util.data.dynamic.DynamicObject;
-import io.smartspaces.util.data.dynamic.DynamicObject.ObjectDynamicObjectEntry;
 import io.smartspaces.util.data.dynamic.DynamicObjectBuilder;
 import io.smartspaces.util.data.dynamic.StandardDynamicObjectBuilder;
-import io.smartspaces.util.data.dynamic.StandardDynamicObjectNavigator;
 import io.smartspaces.util.data.json.JsonMapper;
 import io.smartspaces.util.data.json.StandardJsonMapper;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.logging.Log;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Standard endpoint for controlling Philips Hue Lights.
@@ -49,6 +67,20 @@ import java.util.Map;
  */
 public class StandardPhilipsHueEndpoint implements PhilipsHueEndpoint {
 
+  /**
+   * The pattern for the ID of something the bridge created.
+   */
+  private static final Pattern CREATED_ID_PATTERN =
+      Pattern.compile("\"id\"\\s*:\\s*\"([^\"]+)\"");
+
+  /**
+   * The pattern for a state attribute the bridge acknowledged for a light or
+   * group.
+   */
+  private static final Pattern ACKNOWLEDGED_ATTRIBUTE_PATTERN = Pattern.compile(
+      "\"/(?:lights|groups)/[^/\"]+/(?:state|action)/(\\w+)\"\\s*:\\s*"
+          + "(true|false|-?\\d+(?:\\.\\d+)?|\\[[^\\]]*\\])");
+
   static public void main(String[] args) {
     StandaloneSmartSpacesEnvironment spaceEnvironment =
         StandaloneSmartSpacesEnvironment.newStandaloneSmartSpacesEnvironment();
@@ -70,16 +102,20 @@ public class StandardPhilipsHueEndpoint implements PhilipsHueEndpoint {
 
     String lightId = "Hue Lamp 2";
 
-    Map<String, Object> callArgsOn = newCallArgsLightState(lightId, true);
-    Map<String, Object> callArgsOff = newCallArgsLightState(lightId, false);
+    StandardExecutionContext contextOn =
+        new StandardExecutionContext(spaceEnvironment, spaceEnvironment.getLog());
+    contextOn.setValues(newCallArgsLightState(lightId, true));
+    StandardExecutionContext contextOff =
+        new StandardExecutionContext(spaceEnvironment, spaceEnvironment.getLog());
+    contextOff.setValues(newCallArgsLightState(lightId, false));
 
     actionService.performAction(sourceName,
-        StandardPhilipsHueActionSource.ACTION_NAME_LIGHT_STATE_SET, callArgsOn);
+        StandardPhilipsHueActionSource.ACTION_NAME_LIGHT_STATE_SET, contextOn);
 
     SmartSpacesUtilities.delay(5000);
 
     actionService.performAction(sourceName,
-        StandardPhilipsHueActionSource.ACTION_NAME_LIGHT_STATE_SET, callArgsOff);
+        StandardPhilipsHueActionSource.ACTION_NAME_LIGHT_STATE_SET, contextOff);
 
     // endpoint.updateLightState(endpoint.getLightByName("Hue Lamp 2").setOn(true));
     // System.out.println(client.performGet("http://192.168.188.123/api/newdeveloper/lights/2"));
@@ -110,22 +146,56 @@ public class StandardPhilipsHueEndpoint implements PhilipsHueEndpoint {
   /**
    * The REST client for communicating with the Hue hub.
    */
-  private HttpClientRestWebClient client;
+  private PhilipsHueBridgeClient client;
+
+  /**
+   * The paced queue for light commands.
+   */
+  private PhilipsHueCommandQueue commandQueue;
 
   /**
-   * The base URL for the REST commands.
+   * The lights known by the endpoint.
    */
-  private String baseRestUrl;
+  private final PhilipsHueLightRegistry lightRegistry = new PhilipsHueLightRegistry();
 
   /**
-   * A map from unique IDs to the light with that ID.
+   * The parser for the lights list.
    */
-  private Map<String, PhilipsHueLight> uniqueIdToLights = Maps.newHashMap();
+  private final PhilipsHueLightsParser lightsParser = new PhilipsHueLightsParser();
 
   /**
-   * A map from the names of lights to the light.
+   * The lock held while scanning for lights, so scans do not interleave and
+   * updates for several lights start between merges of reported lights.
    */
-  private Map<String, PhilipsHueLight> nameToLights = Maps.newTreeMap();
+  private final Object lightsScanLock = new Object();
+
+  /**
+   * The listeners for endpoint events.
+   */
+  private final List<PhilipsHueEndpointListener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * The executor for polling the bridge, {@code null} if polling has never
+   * been started.
+   */
+  private ScheduledThreadPoolExecutor pollingExecutor;
+
+  /**
+   * The future for the polling task, {@code null} if not polling.
+   */
+  private ScheduledFuture<?> pollingFuture;
+
+  /**
+   * The groups on the bridge, keyed by ID, in the order the bridge lists
+   * them. The map is replaced, never modified.
+   */
+  private volatile Map<String, PhilipsHueGroup> groups = Collections.emptyMap();
+
+  /**
+   * The scenes on the bridge, keyed by ID, in the order the bridge lists
+   * them. The map is replaced, never modified.
+   */
+  private volatile Map<String, PhilipsHueScene> scenes = Collections.emptyMap();
 
   /**
    * The JSON mapper for the rest calls.
@@ -150,13 +220,13 @@ public class StandardPhilipsHueEndpoint implements PhilipsHueEndpoint {
    * @param hueUser
    *          the user for the Hue Hub
    * @param client
-   *          the REST client
+   *          the REST client, its base URL is the API URL for the user
    * @param log
    *          the logger
    * @param spaceEnvironment
    *          the space environment
    */
-  public StandardPhilipsHueEndpoint(String host, String hueUser, HttpClientRestWebClient client,
+  public StandardPhilipsHueEndpoint(String host, String hueUser, PhilipsHueBridgeClient client,
       Log log, SmartSpacesEnvironment spaceEnvironment) {
     this.host = host;
     this.hueUser = hueUser;
@@ -164,16 +234,34 @@ public class StandardPhilipsHueEndpoint implements PhilipsHueEndpoint {
     this.log = log;
     this.spaceEnvironment = spaceEnvironment;
 
-    baseRestUrl = "http://" + host + "/api/" + hueUser;
+    commandQueue = new PhilipsHueCommandQueue(client, log);
   }
 
   @Override
   public void startup() {
     client.startup();
+    commandQueue.startup();
+
+    // Lights can only be updated through a group once the groups are known.
+    // Polling scans again, so a bridge which cannot be reached yet is not fatal.
+    try {
+      scanForGroups();
+    } catch (Throwable e) {
+      log.warn(String.format("Could not scan Philips Hue bridge %s for groups", host), e);
+    }
   }
 
   @Override
   public void shutdown() {
+    synchronized (this) {
+      stopPolling();
+      if (pollingExecutor != null) {
+        pollingExecutor.shutdownNow();
+        pollingExecutor = null;
+      }
+    }
+
+    commandQueue.shutdown();
     client.shutdown();
   }
 
@@ -189,75 +277,418 @@ public class StandardPhilipsHueEndpoint implements PhilipsHueEndpoint {
 
   @Override
   public void scanForLights() {
-    String response = client.performGet(baseRestUrl + "/lights");
-    Map<String, Object> responseObject = jsonMapper.parseObject(response);
-    DynamicObject nav = new StandardDynamicObjectNavigator(responseObject);
-
-    for (ObjectDynamicObjectEntry lightData : nav.getObjectEntries()) {
-      String controlId = lightData.getProperty();
-
-      DynamicObject specificLightData = lightData.down();
-
-      String uniqueId =
-          specificLightData
-              .getString(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_UNIQUEID);
-      String lightName =
-          specificLightData.getString(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME);
-
-      PhilipsHueLight light = uniqueIdToLights.get(uniqueId);
-      if (light == null) {
-        light = new PhilipsHueLight(uniqueId);
-        uniqueIdToLights.put(uniqueId, light);
-        log.info(String.format("New Philips hue light found with unique ID %s and name %s",
-            uniqueId, lightName));
+    String response = waitFor(client.get("/lights"));
+    checkResponse(response, "get lights");
+
+    List<PhilipsHueLight> newLights = Lists.newArrayList();
+    Map<PhilipsHueLight, PhilipsHueLightState> changedLights = Maps.newLinkedHashMap();
+    synchronized (lightsScanLock) {
+      List<PhilipsHueLight> lights = Lists.newArrayList();
+      for (PhilipsHueLight reportedLight : lightsParser.parseLights(response)) {
+        PhilipsHueLight light = lightRegistry.getLightByUniqueId(reportedLight.getUniqueId());
+        if (light == null) {
+          log.info(String.format("New Philips hue light found with unique ID %s and name %s",
+              reportedLight.getUniqueId(), reportedLight.getName()));
+
+          light = reportedLight;
+          newLights.add(light);
+        } else {
+          PhilipsHueLightState changes = mergeReportedLight(light, reportedLight);
+          if (!changes.isEmpty()) {
+            changedLights.put(light, changes);
+          }
+        }
+
+        lights.add(light);
       }
 
-      light.setControlId(controlId);
-      light.setName(lightName);
+      // Readers see either all of the scan or none of it.
+      lightRegistry.setLights(lights);
+    }
 
-      extractLightStateData(
-          specificLightData.down(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE), light);
+    for (PhilipsHueLight light : newLights) {
+      for (PhilipsHueEndpointListener listener : listeners) {
+        try {
+          listener.onPhilipsHueLightFound(this, light);
+        } catch (Throwable e) {
+          log.error("Philips Hue listener failed for new light", e);
+        }
+      }
+    }
+    for (Map.Entry<PhilipsHueLight, PhilipsHueLightState> changedLight : changedLights
+        .entrySet()) {
+      for (PhilipsHueEndpointListener listener : listeners) {
+        try {
+          listener.onPhilipsHueLightStateChange(this, changedLight.getKey(),
+              changedLight.getValue());
+        } catch (Throwable e) {
+          log.error("Philips Hue listener failed for light state change", e);
+        }
+      }
+    }
+  }
+
+  @Override
+  public synchronized void startPolling(long interval, TimeUnit unit) {
+    stopPolling();
+
+    if (pollingExecutor == null) {
+      pollingExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+          .setNameFormat("philips-hue-poller-%d").setDaemon(true).build());
+    }
+
+    // A fixed delay keeps polls from piling up behind a slow bridge.
+    pollingFuture =
+        pollingExecutor.scheduleWithFixedDelay(this::pollBridge, interval, interval, unit);
+  }
 
-      nameToLights.put(light.getName(), light);
+  @Override
+  public synchronized void stopPolling() {
+    if (pollingFuture != null) {
+      pollingFuture.cancel(false);
+      pollingFuture = null;
     }
   }
 
+  @Override
+  public void addListener(PhilipsHueEndpointListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void removeListener(PhilipsHueEndpointListener listener) {
+    listeners.remove(listener);
+  }
+
   @Override
   public void renameLight(PhilipsHueLight light, String newName) {
     DynamicObjectBuilder builder = new StandardDynamicObjectBuilder();
     builder.setProperty(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME, newName);
 
-    System.out.println(client.performPut(baseRestUrl + "/lights/" + light.getControlId(),
-        builder.toJson()));
+    String response =
+        waitFor(client.put("/lights/" + light.getControlId(), builder.toJson()));
+    checkResponse(response, "rename light " + light.getName());
 
-    // TODO(keith): Only change if all was successful.
-
-    nameToLights.remove(light.getName());
-    light.setName(newName);
+    synchronized (lightsScanLock) {
+      lightRegistry.renameLight(light, newName);
+    }
   }
 
   @Override
   public List<String> getLightNames() {
-    return Lists.newArrayList(nameToLights.keySet());
+    return lightRegistry.getLightNames();
   }
 
   @Override
   public PhilipsHueLight getLightByName(String name) {
-    return nameToLights.get(name);
+    return lightRegistry.getLightByName(name);
+  }
+
+  @Override
+  public PhilipsHueLight getLightByUniqueId(String uniqueId) {
+    return lightRegistry.getLightByUniqueId(uniqueId);
+  }
+
+  @Override
+  public PhilipsHueLight getLightByControlId(String controlId) {
+    return lightRegistry.getLightByControlId(controlId);
   }
 
   @Override
   public void updateLightState(PhilipsHueLight light) {
+    waitFor(updateLightStateAsync(light));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateLightStateAsync(PhilipsHueLight light) {
+    PhilipsHueLightState changes;
+    String lightName;
+    String controlId;
+
+    // The poller must not merge a report between working out the changes and
+    // marking the update as pending.
+    synchronized (light) {
+      changes = getChangesToSend(Collections.singletonList(light));
+      if (changes == null) {
+        return CompletableFuture.completedFuture(null);
+      }
+
+      lightName = light.getName();
+      controlId = light.getControlId();
+      light.startUpdate();
+    }
+
+    // Switching a light on or off is what people notice, so it goes first.
+    return commandQueue
+        .submit(getLightCommandKey(controlId), "/lights/" + controlId + "/state",
+            newStateJson(changes), changes.getOn() != null)
+        .thenAccept((response) -> {
+          checkResponse(response, "update light " + lightName);
+
+          light.acknowledge(getAcknowledgedChanges(response));
+        }).whenComplete((result, e) -> light.finishUpdate());
+  }
+
+  @Override
+  public CompletableFuture<Void> updateLightStates(Collection<PhilipsHueLight> lights) {
+    // Lights going to the same state may be a group on the bridge.
+    Map<PhilipsHueLightState, List<PhilipsHueLight>> lightsByState = Maps.newLinkedHashMap();
+    for (PhilipsHueLight light : lights) {
+      lightsByState.computeIfAbsent(light.getDesiredState(), (state) -> Lists.newArrayList())
+          .add(light);
+    }
+
+    List<CompletableFuture<Void>> updates = Lists.newArrayList();
+    for (List<PhilipsHueLight> stateLights : lightsByState.values()) {
+      PhilipsHueGroup group = findGroupForLights(stateLights);
+      if (group != null) {
+        List<PhilipsHueLight> groupLights = getLightsByControlIds(group.getLightControlIds());
+        PhilipsHueLightState changes;
+
+        // The poller must not merge a report between working out the changes and
+        // marking the updates as pending.
+        synchronized (lightsScanLock) {
+          changes = getChangesToSend(stateLights);
+          if (changes != null) {
+            startUpdates(groupLights);
+          }
+        }
+
+        if (changes != null) {
+          updates.add(sendGroupState(group, changes, groupLights));
+        }
+      } else {
+        for (PhilipsHueLight light : stateLights) {
+          updates.add(updateLightStateAsync(light));
+        }
+      }
+    }
+
+    return CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[updates.size()]));
+  }
+
+  @Override
+  public void scanForGroups() {
+    String response = waitFor(client.get("/groups"));
+    checkResponse(response, "get groups");
+
+    Map<String, PhilipsHueGroup> newGroups = Maps.newLinkedHashMap();
+    for (Map.Entry<String, Object> groupEntry : jsonMapper.parseObject(response).entrySet()) {
+      String id = groupEntry.getKey();
+      Map<String, Object> groupData = getObject(groupEntry.getValue());
+
+      newGroups.put(id, new PhilipsHueGroup(host, id,
+          (String) groupData.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME),
+          (String) groupData.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_TYPE),
+          getLightControlIds(groupData)));
+    }
+
+    synchronized (this) {
+      groups = Collections.unmodifiableMap(newGroups);
+    }
+  }
+
+  @Override
+  public List<PhilipsHueGroup> getGroups() {
+    return Lists.newArrayList(groups.values());
+  }
+
+  @Override
+  public PhilipsHueGroup getGroupByName(String name) {
+    for (PhilipsHueGroup group : groups.values()) {
+      if (group.getName().equals(name)) {
+        return group;
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public PhilipsHueGroup createGroup(String name, Collection<PhilipsHueLight> lights) {
+    List<String> lightControlIds = Lists.newArrayList();
+    for (PhilipsHueLight light : lights) {
+      lightControlIds.add(light.getControlId());
+    }
+
+    Map<String, Object> request = Maps.newLinkedHashMap();
+    request.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME, name);
+    request.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_TYPE,
+        PhilipsHueRestMessages.PHILIPS_HUE_GROUP_TYPE_LIGHT_GROUP);
+    request.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_LIGHTS, lightControlIds);
+
+    String response = waitFor(client.post("/groups", jsonMapper.toString(request)));
+    checkResponse(response, "create group " + name);
+
+    Matcher matcher = CREATED_ID_PATTERN.matcher(response);
+    if (!matcher.find()) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Philips Hue bridge %s did not give an ID for new group %s: %s", host, name, response));
+    }
+
+    PhilipsHueGroup group = new PhilipsHueGroup(host, matcher.group(1), name,
+        PhilipsHueRestMessages.PHILIPS_HUE_GROUP_TYPE_LIGHT_GROUP, lightControlIds);
+    synchronized (this) {
+      Map<String, PhilipsHueGroup> newGroups = Maps.newLinkedHashMap(groups);
+      newGroups.put(group.getId(), group);
+      groups = Collections.unmodifiableMap(newGroups);
+    }
+
+    return group;
+  }
+
+  @Override
+  public void deleteGroup(PhilipsHueGroup group) {
+    String response = waitFor(client.delete("/groups/" + group.getId()));
+    checkResponse(response, "delete group " + group.getName());
+
+    synchronized (this) {
+      Map<String, PhilipsHueGroup> newGroups = Maps.newLinkedHashMap(groups);
+      newGroups.remove(group.getId());
+      groups = Collections.unmodifiableMap(newGroups);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> updateGroupState(PhilipsHueGroup group,
+      PhilipsHueLightState state) {
+    List<PhilipsHueLight> lights = getLightsByControlIds(group.getLightControlIds());
+    synchronized (lightsScanLock) {
+      startUpdates(lights);
+    }
+
+    return sendGroupState(group, state, lights);
+  }
+
+  /**
+   * Mark updates as pending for lights.
+   *
+   * <p>
+   * The caller must hold the scan lock, so the poller sees the updates for
+   * all of the lights or for none of them.
+   *
+   * @param lights
+   *          the lights
+   */
+  private void startUpdates(Collection<PhilipsHueLight> lights) {
+    for (PhilipsHueLight light : lights) {
+      light.startUpdate();
+    }
+  }
+
+  /**
+   * Send a state to a group whose lights have been marked as having updates
+   * pending.
+   *
+   * @param group
+   *          the group
+   * @param state
+   *          the state for the lights of the group
+   * @param lights
+   *          the lights known by the endpoint which are in the group
+   *
+   * @return a future which completes when the bridge has answered, and
+   *         completes exceptionally if the update failed
+   */
+  private CompletableFuture<Void> sendGroupState(PhilipsHueGroup group,
+      PhilipsHueLightState state, List<PhilipsHueLight> lights) {
+    List<String> supersededKeys = Lists.newArrayList();
+    for (String controlId : group.getLightControlIds()) {
+      supersededKeys.add(getLightCommandKey(controlId));
+    }
+
+    return commandQueue
+        .submit(getGroupCommandKey(group.getId()), "/groups/" + group.getId() + "/action",
+            newStateJson(state), state.getOn() != null, supersededKeys)
+        .thenAccept((response) -> {
+          checkResponse(response, "update group " + group.getName());
+
+          PhilipsHueLightState acknowledgedChanges = getAcknowledgedChanges(response);
+          for (PhilipsHueLight light : lights) {
+            synchronized (light) {
+              state.applyTo(light);
+              light.acknowledge(acknowledgedChanges);
+            }
+          }
+        }).whenComplete((result, e) -> {
+          for (PhilipsHueLight light : lights) {
+            light.finishUpdate();
+          }
+        });
+  }
+
+  @Override
+  public void scanForScenes() {
+    String response = waitFor(client.get("/scenes"));
+    checkResponse(response, "get scenes");
+
+    Map<String, PhilipsHueScene> newScenes = Maps.newLinkedHashMap();
+    for (Map.Entry<String, Object> sceneEntry : jsonMapper.parseObject(response).entrySet()) {
+      String id = sceneEntry.getKey();
+      Map<String, Object> sceneData = getObject(sceneEntry.getValue());
+
+      newScenes.put(id, new PhilipsHueScene(host, id,
+          (String) sceneData.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME),
+          getLightControlIds(sceneData)));
+    }
+
+    scenes = Collections.unmodifiableMap(newScenes);
+  }
+
+  @Override
+  public List<PhilipsHueScene> getScenes() {
+    return Lists.newArrayList(scenes.values());
+  }
+
+  @Override
+  public PhilipsHueScene getSceneByName(String name) {
+    for (PhilipsHueScene scene : scenes.values()) {
+      if (scene.getName().equals(name)) {
+        return scene;
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public CompletableFuture<Void> recallScene(PhilipsHueScene scene) {
+    List<String> supersededKeys = Lists.newArrayList();
+    for (String controlId : scene.getLightControlIds()) {
+      supersededKeys.add(getLightCommandKey(controlId));
+    }
+
+    // The states the scene puts the lights in are only known to the bridge.
+    for (PhilipsHueLight light : getLightsByControlIds(scene.getLightControlIds())) {
+      light.setAcknowledgedState(null);
+    }
+
     DynamicObjectBuilder builder = new StandardDynamicObjectBuilder();
-    builder.setProperty(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_ON, light.isOn());
-    builder.setProperty(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_SATURATION,
-        light.getSaturation());
-    builder.setProperty(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_BRIGHTNESS,
-        light.getBrightness());
-    builder.setProperty(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_HUE, light.getHue());
+    builder.setProperty(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_ACTION_SCENE,
+        scene.getId());
+
+    // Scenes are recalled through the group of all lights.
+    return commandQueue
+        .submit(getGroupCommandKey(PhilipsHueGroup.ALL_LIGHTS_GROUP_ID),
+            "/groups/" + PhilipsHueGroup.ALL_LIGHTS_GROUP_ID + "/action", builder.toJson(), true,
+            supersededKeys)
+        .thenAccept((response) -> checkResponse(response, "recall scene " + scene.getName()));
+  }
+
+  @Override
+  public PhilipsHueEntertainmentStream newEntertainmentStream(PhilipsHueGroup area,
+      PhilipsHueStreamTransport transport, int framesPerSecond) {
+    return new StandardPhilipsHueEntertainmentStream(transport, framesPerSecond,
+        (active) -> setStreamingActive(area, active), log);
+  }
 
-    System.out.println(client.performPut(
-        baseRestUrl + "/lights/" + light.getControlId() + "/state", builder.toJson()));
+  /**
+   * Get the paced queue for light commands.
+   *
+   * @return the command queue
+   */
+  public PhilipsHueCommandQueue getCommandQueue() {
+    return commandQueue;
   }
 
   @Override
@@ -266,19 +697,380 @@ public class StandardPhilipsHueEndpoint implements PhilipsHueEndpoint {
   }
 
   /**
-   * Extract the state data from the dynamic object for a light.
-   * 
-   * @param stateData
-   *          a dynamic object positioned at the state data for the light
+   * Check a response from the bridge for errors.
+   *
+   * <p>
+   * The bridge answers with HTTP success even when a command fails, the
+   * failures are entries in the response.
+   *
+   * @param response
+   *          the response
+   * @param operation
+   *          a description of the operation for the error message
+   *
+   * @throws SimpleSmartSpacesException
+   *           the bridge reported an error
+   */
+  private void checkResponse(String response, String operation)
+      throws SimpleSmartSpacesException {
+    if (response.contains("\"error\"")) {
+      throw new SimpleSmartSpacesException(
+          String.format("Philips Hue bridge %s could not %s: %s", host, operation, response));
+    }
+  }
+
+  /**
+   * Poll the bridge for its groups and the state of the lights.
+   *
+   * <p>
+   * The groups are scanned first, so listeners told of light changes see the
+   * groups from the same poll.
+   */
+  private void pollBridge() {
+    try {
+      scanForGroups();
+    } catch (Throwable e) {
+      log.warn(String.format("Could not poll Philips Hue bridge %s for groups", host), e);
+    }
+
+    try {
+      scanForLights();
+    } catch (Throwable e) {
+      log.warn(String.format("Could not poll Philips Hue bridge %s for lights", host), e);
+    }
+  }
+
+  /**
+   * Merge a light reported by the bridge into a known light.
+   *
+   * <p>
+   * The caller must hold the scan lock.
+   *
    * @param light
-   *          the light
-   */
-  private void extractLightStateData(DynamicObject stateData, PhilipsHueLight light) {
-    light.setOn(stateData.getBoolean(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_ON));
-    light.setBrightness(stateData
-        .getInteger(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_BRIGHTNESS));
-    light.setSaturation(stateData
-        .getInteger(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_SATURATION));
-    light.setHue(stateData.getInteger(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_HUE));
+   *          the known light
+   * @param reportedLight
+   *          the light as the bridge reported it
+   *
+   * @return the state attributes which differ from what the bridge last
+   *         reported
+   */
+  private PhilipsHueLightState mergeReportedLight(PhilipsHueLight light,
+      PhilipsHueLight reportedLight) {
+    light.setControlId(reportedLight.getControlId());
+    light.setName(reportedLight.getName());
+
+    PhilipsHueLightState reportedState = reportedLight.getAcknowledgedState();
+
+    // Action threads must not start an update between the check and the merge.
+    synchronized (light) {
+      PhilipsHueLightState changes = reportedState.getChangesFrom(light.getAcknowledgedState());
+      light.setAcknowledgedState(reportedState);
+
+      // An update on its way to the bridge has the state the light should be in.
+      if (!changes.isEmpty() && !light.isUpdatePending()) {
+        changes.applyTo(light);
+      }
+
+      return changes;
+    }
+  }
+
+  /**
+   * Get the changes which need to be sent to bring lights to their desired
+   * state.
+   *
+   * <p>
+   * The lights are expected to have the same desired state. If the bridge has
+   * acknowledged everything but an update is still pending, the pending update
+   * may not be what is desired now so the full desired state is sent.
+   *
+   * @param lights
+   *          the lights
+   *
+   * @return the changes, or {@code null} if nothing needs to be sent
+   */
+  private PhilipsHueLightState getChangesToSend(Collection<PhilipsHueLight> lights) {
+    PhilipsHueLightState changes = new PhilipsHueLightState();
+    boolean updatePending = false;
+    for (PhilipsHueLight light : lights) {
+      changes = changes.merge(light.getStateChanges());
+      updatePending |= light.isUpdatePending();
+    }
+
+    if (!changes.isEmpty()) {
+      return changes;
+    } else if (updatePending) {
+      return lights.iterator().next().getDesiredState();
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Switch streaming for an entertainment area on or off.
+   *
+   * <p>
+   * This goes straight to the bridge, the light command pacing does not apply.
+   *
+   * @param area
+   *          the entertainment group for the area
+   * @param active
+   *          {@code true} if streaming should be on
+   *
+   * @throws SmartSpacesException
+   *           the bridge would not change streaming
+   */
+  private void setStreamingActive(PhilipsHueGroup area, boolean active)
+      throws SmartSpacesException {
+    Map<String, Object> stream = Maps.newLinkedHashMap();
+    stream.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_STREAM_ACTIVE, active);
+    Map<String, Object> request = Maps.newLinkedHashMap();
+    request.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_STREAM, stream);
+
+    String response =
+        waitFor(client.put("/groups/" + area.getId(), jsonMapper.toString(request)));
+    checkResponse(response,
+        String.format("%s streaming for group %s", active ? "start" : "stop", area.getName()));
+  }
+
+  /**
+   * Get the state attributes the bridge acknowledged in a response.
+   *
+   * @param response
+   *          the response from the bridge
+   *
+   * @return the acknowledged attributes
+   */
+  private PhilipsHueLightState getAcknowledgedChanges(String response) {
+    PhilipsHueLightState changes = new PhilipsHueLightState();
+    Matcher matcher = ACKNOWLEDGED_ATTRIBUTE_PATTERN.matcher(response);
+    while (matcher.find()) {
+      String attribute = matcher.group(1);
+      String value = matcher.group(2);
+      switch (attribute) {
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_ON:
+          changes.setOn(Boolean.valueOf(value));
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_BRIGHTNESS:
+          changes.setBrightness(Integer.valueOf(value));
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_SATURATION:
+          changes.setSaturation(Integer.valueOf(value));
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_HUE:
+          changes.setHue(Integer.valueOf(value));
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_XY:
+          String[] coordinates = value.substring(1, value.length() - 1).split(",");
+          if (coordinates.length == 2) {
+            changes.setColorXy(Double.valueOf(coordinates[0].trim()),
+                Double.valueOf(coordinates[1].trim()));
+          }
+          break;
+        case PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_COLOR_TEMPERATURE:
+          changes.setColorTemperature(Integer.valueOf(value));
+          break;
+        default:
+          // Not an attribute the light keeps.
+      }
+    }
+
+    return changes;
+  }
+
+  /**
+   * Find the group whose lights are exactly a collection of lights which all
+   * have the same state.
+   *
+   * @param lights
+   *          the lights
+   *
+   * @return the group, or {@code null} if there is no such group
+   */
+  private PhilipsHueGroup findGroupForLights(Collection<PhilipsHueLight> lights) {
+    // A single light is as cheap to change as a group.
+    if (lights.size() < 2) {
+      return null;
+    }
+
+    PhilipsHueLightState state = null;
+    Set<String> lightControlIds = Sets.newHashSet();
+    for (PhilipsHueLight light : lights) {
+      PhilipsHueLightState lightState = PhilipsHueLightState.fromLight(light);
+      if (state == null) {
+        state = lightState;
+      } else if (!state.equals(lightState)) {
+        return null;
+      }
+
+      lightControlIds.add(light.getControlId());
+    }
+
+    for (PhilipsHueGroup group : groups.values()) {
+      if (group.getLightControlIds().equals(lightControlIds)) {
+        return group;
+      }
+    }
+
+    Set<String> allLightControlIds = Sets.newHashSet();
+    for (PhilipsHueLight light : lightRegistry.getLights()) {
+      allLightControlIds.add(light.getControlId());
+    }
+    if (allLightControlIds.equals(lightControlIds)) {
+      return new PhilipsHueGroup(host, PhilipsHueGroup.ALL_LIGHTS_GROUP_ID, "All lights",
+          null, allLightControlIds);
+    }
+
+    return null;
+  }
+
+  /**
+   * Get the lights known by the endpoint with the given control IDs.
+   *
+   * @param lightControlIds
+   *          the control IDs
+   *
+   * @return the lights, lights which are not known are left out
+   */
+  private List<PhilipsHueLight> getLightsByControlIds(Collection<String> lightControlIds) {
+    List<PhilipsHueLight> lights = Lists.newArrayList();
+    for (String controlId : lightControlIds) {
+      PhilipsHueLight light = lightRegistry.getLightByControlId(controlId);
+      if (light != null) {
+        lights.add(light);
+      }
+    }
+
+    return lights;
+  }
+
+  /**
+   * Get the command queue key for commands to a light.
+   *
+   * @param controlId
+   *          the control ID of the light
+   *
+   * @return the key
+   */
+  private String getLightCommandKey(String controlId) {
+    return "light:" + controlId;
+  }
+
+  /**
+   * Get the command queue key for commands to a group.
+   *
+   * @param groupId
+   *          the ID of the group
+   *
+   * @return the key
+   */
+  private String getGroupCommandKey(String groupId) {
+    return "group:" + groupId;
+  }
+
+  /**
+   * Get the JSON for a state change command.
+   *
+   * @param state
+   *          the state, only attributes which are set are included
+   *
+   * @return the JSON
+   */
+  private String newStateJson(PhilipsHueLightState state) {
+    Map<String, Object> data = Maps.newLinkedHashMap();
+    if (state.getOn() != null) {
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_ON, state.getOn());
+    }
+    if (state.getSaturation() != null) {
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_SATURATION,
+          state.getSaturation());
+    }
+    if (state.getBrightness() != null) {
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_BRIGHTNESS,
+          state.getBrightness());
+    }
+    if (state.getHue() != null) {
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_HUE, state.getHue());
+    }
+    if (state.getColorX() != null) {
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_XY,
+          Lists.newArrayList(state.getColorX(), state.getColorY()));
+    }
+    if (state.getColorTemperature() != null) {
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_COLOR_TEMPERATURE,
+          state.getColorTemperature());
+    }
+    if (state.getTransitionTime() != null) {
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_TRANSITION_TIME,
+          state.getTransitionTime());
+    }
+
+    return jsonMapper.toString(data);
+  }
+
+  /**
+   * Get a JSON object from a parsed response.
+   *
+   * @param value
+   *          the parsed value
+   *
+   * @return the object
+   *
+   * @throws SimpleSmartSpacesException
+   *           the value is not an object
+   */
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> getObject(Object value) throws SimpleSmartSpacesException {
+    if (!(value instanceof Map)) {
+      throw new SimpleSmartSpacesException(
+          String.format("Philips Hue bridge %s sent an unexpected value: %s", host, value));
+    }
+
+    return (Map<String, Object>) value;
+  }
+
+  /**
+   * Get the control IDs of the lights of a group or scene.
+   *
+   * @param data
+   *          the parsed data for the group or scene
+   *
+   * @return the control IDs
+   */
+  private List<String> getLightControlIds(Map<String, Object> data) {
+    List<String> lightControlIds = Lists.newArrayList();
+    Object lights = data.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_LIGHTS);
+    if (lights instanceof Collection) {
+      for (Object controlId : (Collection<?>) lights) {
+        lightControlIds.add(controlId.toString());
+      }
+    }
+
+    return lightControlIds;
+  }
+
+  /**
+   * Wait for a request to the bridge to complete.
+   *
+   * @param future
+   *          the future for the request
+   *
+   * @return the result of the request
+   *
+   * @throws SmartSpacesException
+   *           the request failed
+   */
+  private <T> T waitFor(CompletableFuture<T> future) throws SmartSpacesException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SmartSpacesException) {
+        throw (SmartSpacesException) cause;
+      }
+
+      throw new SmartSpacesException(
+          String.format("Request to Philips Hue bridge %s failed", host), cause);
+    }
   }
 }
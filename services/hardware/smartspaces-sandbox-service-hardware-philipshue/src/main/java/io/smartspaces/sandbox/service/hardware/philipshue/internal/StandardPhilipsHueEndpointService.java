@@ -19,10 +19,11 @@ package io.smartspaces.sandbox.service.hardware.philipshue.internal;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpoint;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpointService;
 import io.smartspaces.service.BaseSupportedService;
-import io.smartspaces.service.web.HttpClientRestWebClient;
 
 import org.apache.commons.logging.Log;
 
+import java.util.List;
+
 /**
  * The standard service for working with Philips Hue lights.
  * 
@@ -38,8 +39,14 @@ public class StandardPhilipsHueEndpointService extends BaseSupportedService impl
 
   @Override
   public PhilipsHueEndpoint newEndpoint(String host, String hueUser, Log log) {
-    HttpClientRestWebClient client = new HttpClientRestWebClient();
+    PhilipsHueBridgeClient client =
+        new PhilipsHueBridgeClient("http://" + host + "/api/" + hueUser, log);
 
     return new StandardPhilipsHueEndpoint(host, hueUser, client, log, getSpaceEnvironment());
   }
+
+  @Override
+  public PhilipsHueEndpoint newFederatedEndpoint(List<PhilipsHueEndpoint> bridges, Log log) {
+    return new FederatedPhilipsHueEndpoint(bridges, log, getSpaceEnvironment());
+  }
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEntertainmentStream;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueStreamFrame;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueStreamTransport;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The standard stream of color frames to a Philips Hue entertainment area.
+ *
+ * <p>
+ * Frames are sent as version 1 {@code HueStream} messages with RGB colors. A
+ * message holds at most 10 lights, so larger frames are sent as several
+ * messages.
+ *
+ * @author Keith M. Hughes
+ */
+public class StandardPhilipsHueEntertainmentStream implements PhilipsHueEntertainmentStream {
+
+  /**
+   * The default number of frames sent a second.
+   */
+  public static final int FRAMES_PER_SECOND_DEFAULT = 25;
+
+  /**
+   * The largest number of frames which can be sent a second.
+   */
+  public static final int FRAMES_PER_SECOND_MAXIMUM = 50;
+
+  /**
+   * The most lights a single message can hold.
+   */
+  public static final int LIGHTS_PER_MESSAGE_MAXIMUM = 10;
+
+  /**
+   * The protocol name which starts every message.
+   */
+  private static final byte[] PROTOCOL_NAME = "HueStream".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * The number of bytes in a message header.
+   */
+  public static final int HEADER_LENGTH = PROTOCOL_NAME.length + 7;
+
+  /**
+   * The number of bytes for each light in a message.
+   */
+  public static final int LIGHT_LENGTH = 9;
+
+  /**
+   * The transport for the messages.
+   */
+  private final PhilipsHueStreamTransport transport;
+
+  /**
+   * The number of frames sent a second.
+   */
+  private final int framesPerSecond;
+
+  /**
+   * Switches streaming for the entertainment area on the bridge on and off.
+   */
+  private final Consumer<Boolean> areaActivator;
+
+  /**
+   * The logger to use.
+   */
+  private final Log log;
+
+  /**
+   * The latest frame submitted which has not been picked up for sending.
+   */
+  private final AtomicReference<PhilipsHueStreamFrame> submittedFrame = new AtomicReference<>();
+
+  /**
+   * The frame being sent, only used by the sending thread.
+   */
+  private PhilipsHueStreamFrame currentFrame;
+
+  /**
+   * The buffer messages are built in, only used by the sending thread.
+   */
+  private final byte[] message =
+      new byte[HEADER_LENGTH + LIGHTS_PER_MESSAGE_MAXIMUM * LIGHT_LENGTH];
+
+  /**
+   * The sequence number for the next message, only used by the sending thread.
+   */
+  private int sequenceNumber;
+
+  /**
+   * The number of frames sent.
+   */
+  private final LongAdder numberFramesSent = new LongAdder();
+
+  /**
+   * The number of frames replaced before they were sent.
+   */
+  private final LongAdder numberFramesReplaced = new LongAdder();
+
+  /**
+   * The executor which sends the frames, {@code null} if not running.
+   */
+  private ScheduledThreadPoolExecutor frameExecutor;
+
+  /**
+   * Construct a new stream.
+   *
+   * @param transport
+   *          the transport for the messages
+   * @param framesPerSecond
+   *          the number of frames sent a second
+   * @param areaActivator
+   *          switches streaming for the entertainment area on the bridge on
+   *          and off
+   * @param log
+   *          the logger to use
+   */
+  public StandardPhilipsHueEntertainmentStream(PhilipsHueStreamTransport transport,
+      int framesPerSecond, Consumer<Boolean> areaActivator, Log log) {
+    if (framesPerSecond <= 0 || framesPerSecond > FRAMES_PER_SECOND_MAXIMUM) {
+      throw new SimpleSmartSpacesException(String.format(
+          "Philips Hue stream frame rate %d is not between 1 and %d", framesPerSecond,
+          FRAMES_PER_SECOND_MAXIMUM));
+    }
+
+    this.transport = transport;
+    this.framesPerSecond = framesPerSecond;
+    this.areaActivator = areaActivator;
+    this.log = log;
+
+    System.arraycopy(PROTOCOL_NAME, 0, message, 0, PROTOCOL_NAME.length);
+  }
+
+  @Override
+  public synchronized void startup() {
+    if (frameExecutor != null) {
+      return;
+    }
+
+    // The bridge only takes the handshake once streaming is on for the area,
+    // so the area must be switched off again if the transport cannot open.
+    areaActivator.accept(true);
+    try {
+      transport.open();
+    } catch (Throwable e) {
+      try {
+        areaActivator.accept(false);
+      } catch (Throwable deactivateException) {
+        log.warn("Could not end Philips Hue entertainment streaming on the bridge",
+            deactivateException);
+      }
+
+      throw e;
+    }
+
+    frameExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+        .setNameFormat("philips-hue-stream-%d").setDaemon(true).build());
+    frameExecutor.scheduleAtFixedRate(this::sendFrame, 0,
+        TimeUnit.SECONDS.toMicros(1) / framesPerSecond, TimeUnit.MICROSECONDS);
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    if (frameExecutor == null) {
+      return;
+    }
+
+    frameExecutor.shutdownNow();
+    try {
+      frameExecutor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    frameExecutor = null;
+
+    transport.close();
+    try {
+      areaActivator.accept(false);
+    } catch (Throwable e) {
+      log.warn("Could not end Philips Hue entertainment streaming on the bridge", e);
+    }
+  }
+
+  @Override
+  public void submitFrame(PhilipsHueStreamFrame frame) {
+    if (submittedFrame.getAndSet(frame.copy()) != null) {
+      numberFramesReplaced.increment();
+    }
+  }
+
+  @Override
+  public int getFramesPerSecond() {
+    return framesPerSecond;
+  }
+
+  @Override
+  public long getNumberFramesSent() {
+    return numberFramesSent.sum();
+  }
+
+  @Override
+  public long getNumberFramesReplaced() {
+    return numberFramesReplaced.sum();
+  }
+
+  /**
+   * Send the latest frame.
+   */
+  private void sendFrame() {
+    try {
+      PhilipsHueStreamFrame frame = submittedFrame.getAndSet(null);
+      if (frame != null) {
+        currentFrame = frame;
+      }
+      if (currentFrame == null) {
+        return;
+      }
+
+      int numberLights = currentFrame.getNumberLights();
+      for (int start = 0; start < numberLights; start += LIGHTS_PER_MESSAGE_MAXIMUM) {
+        int end = Math.min(numberLights, start + LIGHTS_PER_MESSAGE_MAXIMUM);
+        transport.send(message, encodeMessage(currentFrame, start, end));
+      }
+      numberFramesSent.increment();
+    } catch (Throwable e) {
+      // The next frame may well get through, so the stream keeps going.
+      log.error("Could not send Philips Hue entertainment frame", e);
+    }
+  }
+
+  /**
+   * Encode part of a frame into the message buffer.
+   *
+   * @param frame
+   *          the frame
+   * @param start
+   *          the index of the first light in the message
+   * @param end
+   *          the index after the last light in the message
+   *
+   * @return the number of bytes in the message
+   */
+  private int encodeMessage(PhilipsHueStreamFrame frame, int start, int end) {
+    int position = PROTOCOL_NAME.length;
+
+    // Version 1.0.
+    message[position++] = 0x01;
+    message[position++] = 0x00;
+    message[position++] = (byte) sequenceNumber++;
+
+    // Reserved.
+    message[position++] = 0x00;
+    message[position++] = 0x00;
+
+    // RGB color space.
+    message[position++] = 0x00;
+
+    // Reserved.
+    message[position++] = 0x00;
+
+    for (int i = start; i < end; i++) {
+      // Light device type.
+      message[position++] = 0x00;
+      position = putShort(frame.getLightId(i), position);
+      for (int channel = 0; channel < 3; channel++) {
+        position = putShort(frame.getChannel(i, channel), position);
+      }
+    }
+
+    return position;
+  }
+
+  /**
+   * Put a big endian 16 bit value into the message buffer.
+   *
+   * @param value
+   *          the value
+   * @param position
+   *          the position to put the value at
+   *
+   * @return the position after the value
+   */
+  private int putShort(int value, int position) {
+    message[position] = (byte) (value >> 8);
+    message[position + 1] = (byte) value;
+
+    return position + 2;
+  }
+}
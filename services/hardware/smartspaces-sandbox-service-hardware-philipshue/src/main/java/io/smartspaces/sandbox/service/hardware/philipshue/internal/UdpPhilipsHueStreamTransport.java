@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal;
+
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueStreamTransport;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+
+/**
+ * A plain UDP transport for Philips Hue entertainment streams.
+ *
+ * <p>
+ * Real bridges need DTLS, so this is for bridge simulators and testing.
+ *
+ * @author Keith M. Hughes
+ */
+public class UdpPhilipsHueStreamTransport implements PhilipsHueStreamTransport {
+
+  /**
+   * The port bridges take entertainment streams on.
+   */
+  public static final int ENTERTAINMENT_PORT_DEFAULT = 2100;
+
+  /**
+   * The address datagrams are sent to.
+   */
+  private final InetSocketAddress address;
+
+  /**
+   * The socket for sending, {@code null} if not open.
+   */
+  private volatile DatagramSocket socket;
+
+  /**
+   * Construct a new transport.
+   *
+   * @param host
+   *          the host to send to
+   * @param port
+   *          the port to send to
+   */
+  public UdpPhilipsHueStreamTransport(String host, int port) {
+    this.address = new InetSocketAddress(host, port);
+  }
+
+  @Override
+  public synchronized void open() throws SmartSpacesException {
+    if (socket != null) {
+      return;
+    }
+
+    try {
+      DatagramSocket newSocket = new DatagramSocket();
+      newSocket.connect(address);
+      socket = newSocket;
+    } catch (IOException e) {
+      throw new SmartSpacesException(
+          String.format("Could not open Philips Hue stream to %s", address), e);
+    }
+  }
+
+  @Override
+  public void send(byte[] data, int length) throws SmartSpacesException {
+    DatagramSocket currentSocket = socket;
+    if (currentSocket == null) {
+      throw new SmartSpacesException(
+          String.format("Philips Hue stream to %s is not open", address));
+    }
+
+    try {
+      currentSocket.send(new DatagramPacket(data, length));
+    } catch (IOException e) {
+      throw new SmartSpacesException(
+          String.format("Could not send to Philips Hue stream %s", address), e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (socket != null) {
+      socket.close();
+      socket = null;
+    }
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal.benchmark;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueCommandQueue;
+
+/**
+ * The configuration for a Philips Hue benchmark run.
+ *
+ * <p>
+ * Configurations are read from command line arguments of the form
+ * {@code name=value}, for example
+ * {@code lights=40 scenes=200 interval=20 latency=30 bridgeRate=25 errors=0.01}.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueBenchmarkConfiguration {
+
+  /**
+   * The argument name for the number of lights on the bridge.
+   */
+  public static final String ARGUMENT_LIGHTS = "lights";
+
+  /**
+   * The argument name for the number of scenes sent.
+   */
+  public static final String ARGUMENT_SCENES = "scenes";
+
+  /**
+   * The argument name for the time between scenes, in milliseconds.
+   */
+  public static final String ARGUMENT_INTERVAL = "interval";
+
+  /**
+   * The argument name for the bridge latency, in milliseconds.
+   */
+  public static final String ARGUMENT_LATENCY = "latency";
+
+  /**
+   * The argument name for the most requests the bridge answers a second.
+   */
+  public static final String ARGUMENT_BRIDGE_RATE = "bridgeRate";
+
+  /**
+   * The argument name for the fraction of requests the bridge fails.
+   */
+  public static final String ARGUMENT_ERRORS = "errors";
+
+  /**
+   * The argument name for the most commands the endpoint sends a second.
+   */
+  public static final String ARGUMENT_COMMAND_RATE = "commandRate";
+
+  /**
+   * The argument name for how long to wait for the bridge to reach the last
+   * scene, in seconds.
+   */
+  public static final String ARGUMENT_TIMEOUT = "timeout";
+
+  /**
+   * The number of lights on the bridge.
+   */
+  private int numberLights = 20;
+
+  /**
+   * The number of scenes sent.
+   */
+  private int numberScenes = 100;
+
+  /**
+   * The time between scenes, in milliseconds. {@code 0} means as fast as
+   * possible.
+   */
+  private long interval = 50;
+
+  /**
+   * The bridge latency, in milliseconds.
+   */
+  private long latency = 20;
+
+  /**
+   * The most requests the bridge answers a second. {@code 0} means no limit.
+   */
+  private double bridgeRate;
+
+  /**
+   * The fraction of requests the bridge fails.
+   */
+  private double errorRate;
+
+  /**
+   * The most commands the endpoint sends a second.
+   */
+  private double commandRate = PhilipsHueCommandQueue.COMMANDS_PER_SECOND_DEFAULT;
+
+  /**
+   * How long to wait for the bridge to reach the last scene, in seconds.
+   */
+  private int timeout = 60;
+
+  /**
+   * Parse a configuration from command line arguments.
+   *
+   * @param args
+   *          the command line arguments
+   *
+   * @return the configuration
+   */
+  public static PhilipsHueBenchmarkConfiguration parse(String[] args) {
+    PhilipsHueBenchmarkConfiguration configuration = new PhilipsHueBenchmarkConfiguration();
+
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator <= 0) {
+        throw new SimpleSmartSpacesException(
+            String.format("Benchmark argument %s is not of the form name=value", arg));
+      }
+
+      String name = arg.substring(0, separator);
+      String value = arg.substring(separator + 1);
+      if (ARGUMENT_LIGHTS.equals(name)) {
+        configuration.numberLights = Integer.parseInt(value);
+      } else if (ARGUMENT_SCENES.equals(name)) {
+        configuration.numberScenes = Integer.parseInt(value);
+      } else if (ARGUMENT_INTERVAL.equals(name)) {
+        configuration.interval = Long.parseLong(value);
+      } else if (ARGUMENT_LATENCY.equals(name)) {
+        configuration.latency = Long.parseLong(value);
+      } else if (ARGUMENT_BRIDGE_RATE.equals(name)) {
+        configuration.bridgeRate = Double.parseDouble(value);
+      } else if (ARGUMENT_ERRORS.equals(name)) {
+        configuration.errorRate = Double.parseDouble(value);
+      } else if (ARGUMENT_COMMAND_RATE.equals(name)) {
+        configuration.commandRate = Double.parseDouble(value);
+      } else if (ARGUMENT_TIMEOUT.equals(name)) {
+        configuration.timeout = Integer.parseInt(value);
+      } else {
+        throw new SimpleSmartSpacesException(
+            String.format("Unknown benchmark argument %s", name));
+      }
+    }
+
+    return configuration;
+  }
+
+  public int getNumberLights() {
+    return numberLights;
+  }
+
+  public int getNumberScenes() {
+    return numberScenes;
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+
+  public long getLatency() {
+    return latency;
+  }
+
+  public double getBridgeRate() {
+    return bridgeRate;
+  }
+
+  public double getErrorRate() {
+    return errorRate;
+  }
+
+  public double getCommandRate() {
+    return commandRate;
+  }
+
+  public int getTimeout() {
+    return timeout;
+  }
+
+  @Override
+  public String toString() {
+    return "PhilipsHueBenchmarkConfiguration [numberLights=" + numberLights + ", numberScenes="
+        + numberScenes + ", interval=" + interval + ", latency=" + latency + ", bridgeRate="
+        + bridgeRate + ", errorRate=" + errorRate + ", commandRate=" + commandRate
+        + ", timeout=" + timeout + "]";
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal.benchmark;
+
+import io.smartspaces.evaluation.StandardExecutionContext;
+import io.smartspaces.sandbox.service.action.ActionService;
+import io.smartspaces.sandbox.service.action.internal.StandardActionService;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueBridgeClient;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.StandardPhilipsHueActionSource;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.StandardPhilipsHueEndpoint;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.simulator.PhilipsHueBridgeSimulator;
+import io.smartspaces.system.StandaloneSmartSpacesEnvironment;
+import io.smartspaces.util.SmartSpacesUtilities;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A benchmark that sends scenes through the action service to a simulated
+ * Philips Hue bridge.
+ *
+ * <p>
+ * The lights are split into two groups on the bridge. Each scene is two light
+ * state actions, one for each group, and consecutive scenes switch the groups
+ * in different patterns. The report gives how fast scenes were sent, how long
+ * the bridge took to reach the last scene, and how many requests the bridge
+ * saw. See {@link PhilipsHueBenchmarkConfiguration} for the arguments.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueSceneBenchmark {
+
+  /**
+   * The name the action source is registered under.
+   */
+  public static final String ACTION_SOURCE_NAME = "light.philipshue";
+
+  /**
+   * How often to check whether the bridge has reached the last scene, in
+   * milliseconds.
+   */
+  public static final long SETTLE_CHECK_INTERVAL = 10;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args
+   *          the benchmark arguments
+   */
+  public static void main(String[] args) {
+    PhilipsHueBenchmarkConfiguration configuration = PhilipsHueBenchmarkConfiguration.parse(args);
+
+    StandaloneSmartSpacesEnvironment spaceEnvironment =
+        StandaloneSmartSpacesEnvironment.newStandaloneSmartSpacesEnvironment();
+
+    PhilipsHueBridgeSimulator simulator =
+        new PhilipsHueBridgeSimulator(configuration.getNumberLights())
+            .setLatency(configuration.getLatency())
+            .setRequestsPerSecond(configuration.getBridgeRate())
+            .setErrorRate(configuration.getErrorRate());
+
+    List<String> leftIds = Lists.newArrayList();
+    List<String> rightIds = Lists.newArrayList();
+    List<String> leftNames = Lists.newArrayList();
+    List<String> rightNames = Lists.newArrayList();
+    for (int i = 1; i <= configuration.getNumberLights(); i++) {
+      boolean left = i <= configuration.getNumberLights() / 2;
+      (left ? leftIds : rightIds).add(Integer.toString(i));
+      (left ? leftNames : rightNames).add("Light " + i);
+    }
+    simulator.addGroup("Left", leftIds);
+    simulator.addGroup("Right", rightIds);
+
+    simulator.startup();
+    try {
+      PhilipsHueBridgeClient client = new PhilipsHueBridgeClient(
+          "http://" + simulator.getHost() + "/api/" + simulator.getHueUser(),
+          spaceEnvironment.getLog());
+      StandardPhilipsHueEndpoint endpoint = new StandardPhilipsHueEndpoint(simulator.getHost(),
+          simulator.getHueUser(), client, spaceEnvironment.getLog(), spaceEnvironment);
+      endpoint.startup();
+      try {
+        endpoint.getCommandQueue().setCommandsPerSecond(configuration.getCommandRate());
+        endpoint.scanForLights();
+        endpoint.scanForGroups();
+
+        ActionService actionService = new StandardActionService();
+        actionService.registerActionSource(ACTION_SOURCE_NAME, endpoint.newActionSource());
+
+        System.out.println(configuration);
+
+        long startTime = System.nanoTime();
+        for (int scene = 0; scene < configuration.getNumberScenes(); scene++) {
+          performLightStateAction(actionService, spaceEnvironment, leftNames, isLeftOn(scene));
+          performLightStateAction(actionService, spaceEnvironment, rightNames,
+              isRightOn(scene));
+
+          if (configuration.getInterval() > 0) {
+            SmartSpacesUtilities.delay(configuration.getInterval());
+          }
+        }
+        long sentTime = System.nanoTime();
+
+        int lastScene = configuration.getNumberScenes() - 1;
+        boolean settled = waitForScene(simulator, leftIds, isLeftOn(lastScene), rightIds,
+            isRightOn(lastScene), sentTime + TimeUnit.SECONDS.toNanos(configuration.getTimeout()));
+        long settledTime = System.nanoTime();
+
+        double sendSeconds = toSeconds(sentTime - startTime);
+        double totalSeconds = toSeconds(settledTime - startTime);
+        System.out.println(String.format(
+            "scenes sent %d in %.3fs (%.1f/s), %s in %.3fs (%.1f scenes/s), "
+                + "bridge requests %d, state changes %d, rate limited %d, errors %d, "
+                + "commands coalesced %d",
+            configuration.getNumberScenes(), sendSeconds,
+            configuration.getNumberScenes() / sendSeconds,
+            settled ? "bridge settled" : "bridge did not settle", totalSeconds,
+            configuration.getNumberScenes() / totalSeconds, simulator.getNumberRequests(),
+            simulator.getNumberStateChanges(), simulator.getNumberRateLimited(),
+            simulator.getNumberErrorsInjected(), endpoint.getCommandQueue().getNumberCoalesced()));
+      } finally {
+        endpoint.shutdown();
+      }
+    } finally {
+      simulator.shutdown();
+      spaceEnvironment.shutdown();
+    }
+  }
+
+  /**
+   * Perform a light state action for a collection of lights.
+   *
+   * @param actionService
+   *          the action service
+   * @param spaceEnvironment
+   *          the space environment
+   * @param lightNames
+   *          the names of the lights
+   * @param on
+   *          {@code true} if the lights should be on
+   */
+  private static void performLightStateAction(ActionService actionService,
+      StandaloneSmartSpacesEnvironment spaceEnvironment, List<String> lightNames, boolean on) {
+    Map<String, Object> stateArgs = Maps.newHashMap();
+    stateArgs.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_STATE_ON, on);
+
+    Map<String, Object> callArgs = Maps.newHashMap();
+    callArgs.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_LIGHT_IDS, lightNames);
+    callArgs.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_NEW_STATE, stateArgs);
+
+    StandardExecutionContext context =
+        new StandardExecutionContext(spaceEnvironment, spaceEnvironment.getLog());
+    context.setValues(callArgs);
+
+    actionService.performAction(ACTION_SOURCE_NAME,
+        StandardPhilipsHueActionSource.ACTION_NAME_LIGHT_STATE_SET, context);
+  }
+
+  /**
+   * Wait for the bridge to reach a scene.
+   *
+   * @param simulator
+   *          the simulated bridge
+   * @param leftIds
+   *          the IDs of the left lights
+   * @param leftOn
+   *          {@code true} if the left lights should be on
+   * @param rightIds
+   *          the IDs of the right lights
+   * @param rightOn
+   *          {@code true} if the right lights should be on
+   * @param deadline
+   *          the time to give up, in nanoseconds
+   *
+   * @return {@code true} if the bridge reached the scene
+   */
+  private static boolean waitForScene(PhilipsHueBridgeSimulator simulator, List<String> leftIds,
+      boolean leftOn, List<String> rightIds, boolean rightOn, long deadline) {
+    while (System.nanoTime() - deadline < 0) {
+      if (areLightsOn(simulator, leftIds, leftOn) && areLightsOn(simulator, rightIds, rightOn)) {
+        return true;
+      }
+
+      SmartSpacesUtilities.delay(SETTLE_CHECK_INTERVAL);
+    }
+
+    return false;
+  }
+
+  /**
+   * Are all lights in a collection in an on state?
+   *
+   * @param simulator
+   *          the simulated bridge
+   * @param lightIds
+   *          the IDs of the lights
+   * @param on
+   *          the on state
+   *
+   * @return {@code true} if all of the lights are in the on state
+   */
+  private static boolean areLightsOn(PhilipsHueBridgeSimulator simulator, List<String> lightIds,
+      boolean on) {
+    for (String lightId : lightIds) {
+      if (simulator.isLightOn(lightId) != on) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Is the left group on in a scene?
+   *
+   * @param scene
+   *          the number of the scene
+   *
+   * @return {@code true} if the left group is on
+   */
+  private static boolean isLeftOn(int scene) {
+    return scene % 2 == 0;
+  }
+
+  /**
+   * Is the right group on in a scene?
+   *
+   * @param scene
+   *          the number of the scene
+   *
+   * @return {@code true} if the right group is on
+   */
+  private static boolean isRightOn(int scene) {
+    return scene % 3 != 1;
+  }
+
+  /**
+   * Convert nanoseconds to seconds.
+   *
+   * @param nanoseconds
+   *          the time in nanoseconds
+   *
+   * @return the time in seconds
+   */
+  private static double toSeconds(long nanoseconds) {
+    return nanoseconds / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+}
@@ -0,0 +1,949 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.smartspaces.sandbox.service.hardware.philipshue.internal.simulator;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueGroup;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueRestMessages;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueBridgeClient;
+import io.smartspaces.util.data.json.JsonMapper;
+import io.smartspaces.util.data.json.StandardJsonMapper;
+import io.smartspaces.util.resource.ManagedResource;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simulated Philips Hue bridge which can be embedded in tests and
+ * benchmarks.
+ *
+ * <p>
+ * The simulator serves the lights, groups and scenes parts of the bridge REST
+ * API on the loopback interface and answers state changes with the same
+ * success entries a bridge gives. Every request can be delayed, requests over
+ * a rate limit are refused with HTTP status 429, and a fraction of requests can
+ * be answered with bridge errors.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueBridgeSimulator implements ManagedResource {
+
+  /**
+   * The default user the simulator accepts.
+   */
+  public static final String HUE_USER_DEFAULT = "simulator";
+
+  /**
+   * The number of threads handling requests.
+   */
+  public static final int NUMBER_REQUEST_THREADS = 8;
+
+  /**
+   * The error type of an unauthorized user.
+   */
+  public static final int ERROR_TYPE_UNAUTHORIZED_USER = 1;
+
+  /**
+   * The error type of a resource which is not available.
+   */
+  public static final int ERROR_TYPE_RESOURCE_NOT_AVAILABLE = 3;
+
+  /**
+   * The error type of an internal bridge error.
+   */
+  public static final int ERROR_TYPE_INTERNAL = 901;
+
+  /**
+   * The state field for whether a light can be reached.
+   */
+  private static final String FIELD_STATE_REACHABLE = "reachable";
+
+  /**
+   * The user the simulator accepts.
+   */
+  private final String hueUser;
+
+  /**
+   * The lights, indexed by ID.
+   */
+  private final Map<String, SimulatedLight> lights = Maps.newLinkedHashMap();
+
+  /**
+   * The groups, indexed by ID.
+   */
+  private final Map<String, SimulatedGroup> groups = Maps.newLinkedHashMap();
+
+  /**
+   * The scenes, indexed by ID.
+   */
+  private final Map<String, SimulatedScene> scenes = Maps.newLinkedHashMap();
+
+  /**
+   * The ID for the next group created.
+   */
+  private int nextGroupId = 1;
+
+  /**
+   * The ID for the next scene added.
+   */
+  private int nextSceneId = 1;
+
+  /**
+   * How long every request is delayed, in milliseconds.
+   */
+  private volatile long latency;
+
+  /**
+   * The most requests answered a second, {@code 0} for no limit.
+   */
+  private volatile double requestsPerSecond;
+
+  /**
+   * The fraction of requests answered with a bridge error.
+   */
+  private volatile double errorRate;
+
+  /**
+   * The time the rate limit lets the next request in, in nanoseconds.
+   */
+  private long nextRequestTime;
+
+  /**
+   * The number of requests received.
+   */
+  private final AtomicLong numberRequests = new AtomicLong();
+
+  /**
+   * The number of state changes made to lights or groups.
+   */
+  private final AtomicLong numberStateChanges = new AtomicLong();
+
+  /**
+   * The number of requests refused by the rate limit.
+   */
+  private final AtomicLong numberRateLimited = new AtomicLong();
+
+  /**
+   * The number of requests answered with an injected error.
+   */
+  private final AtomicLong numberErrorsInjected = new AtomicLong();
+
+  /**
+   * The mapper for JSON messages.
+   */
+  private final JsonMapper jsonMapper = StandardJsonMapper.INSTANCE;
+
+  /**
+   * The HTTP server, {@code null} if not running.
+   */
+  private HttpServer server;
+
+  /**
+   * The executor for the HTTP server, {@code null} if not running.
+   */
+  private ThreadPoolExecutor requestExecutor;
+
+  /**
+   * Construct a simulator for the default user.
+   *
+   * @param numberLights
+   *          the number of lights on the bridge
+   */
+  public PhilipsHueBridgeSimulator(int numberLights) {
+    this(numberLights, HUE_USER_DEFAULT);
+  }
+
+  /**
+   * Construct a simulator.
+   *
+   * @param numberLights
+   *          the number of lights on the bridge, with IDs starting at
+   *          {@code 1} and named {@code Light 1} and so on
+   * @param hueUser
+   *          the user the simulator accepts
+   */
+  public PhilipsHueBridgeSimulator(int numberLights, String hueUser) {
+    this.hueUser = hueUser;
+
+    for (int i = 1; i <= numberLights; i++) {
+      String id = Integer.toString(i);
+      lights.put(id, new SimulatedLight(id, "Light " + i));
+    }
+  }
+
+  @Override
+  public synchronized void startup() {
+    if (server != null) {
+      return;
+    }
+
+    try {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    } catch (IOException e) {
+      throw new SmartSpacesException("Could not start the Philips Hue bridge simulator", e);
+    }
+
+    requestExecutor = new ThreadPoolExecutor(NUMBER_REQUEST_THREADS, NUMBER_REQUEST_THREADS, 30,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+            .setNameFormat("philips-hue-simulator-%d").setDaemon(true).build());
+    requestExecutor.allowCoreThreadTimeOut(true);
+
+    server.setExecutor(requestExecutor);
+    server.createContext("/api/", this::handleRequest);
+    server.start();
+  }
+
+  @Override
+  public synchronized void shutdown() {
+    if (server == null) {
+      return;
+    }
+
+    server.stop(0);
+    server = null;
+
+    requestExecutor.shutdownNow();
+    requestExecutor = null;
+  }
+
+  /**
+   * Get the host and port of the simulator, as given to an endpoint.
+   *
+   * @return the host and port
+   */
+  public synchronized String getHost() {
+    if (server == null) {
+      throw new SimpleSmartSpacesException("The Philips Hue bridge simulator is not running");
+    }
+
+    return "127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  /**
+   * Get the user the simulator accepts.
+   *
+   * @return the user
+   */
+  public String getHueUser() {
+    return hueUser;
+  }
+
+  /**
+   * Set how long every request is delayed.
+   *
+   * @param latency
+   *          the delay, in milliseconds
+   *
+   * @return this simulator
+   */
+  public PhilipsHueBridgeSimulator setLatency(long latency) {
+    this.latency = latency;
+
+    return this;
+  }
+
+  /**
+   * Set the most requests the simulator answers a second.
+   *
+   * @param requestsPerSecond
+   *          the request rate, {@code 0} for no limit
+   *
+   * @return this simulator
+   */
+  public PhilipsHueBridgeSimulator setRequestsPerSecond(double requestsPerSecond) {
+    this.requestsPerSecond = requestsPerSecond;
+
+    return this;
+  }
+
+  /**
+   * Set the fraction of requests answered with a bridge error.
+   *
+   * @param errorRate
+   *          the fraction, from {@code 0} to {@code 1}
+   *
+   * @return this simulator
+   */
+  public PhilipsHueBridgeSimulator setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+
+    return this;
+  }
+
+  /**
+   * Add a group to the bridge.
+   *
+   * @param name
+   *          the name of the group
+   * @param lightIds
+   *          the IDs of the lights in the group
+   *
+   * @return the ID of the group
+   */
+  public synchronized String addGroup(String name, Collection<String> lightIds) {
+    String id = Integer.toString(nextGroupId++);
+    groups.put(id, new SimulatedGroup(name, lightIds));
+
+    return id;
+  }
+
+  /**
+   * Add a scene to the bridge.
+   *
+   * @param name
+   *          the name of the scene
+   * @param lightIds
+   *          the IDs of the lights in the scene
+   * @param state
+   *          the state the scene puts all of its lights in
+   *
+   * @return the ID of the scene
+   */
+  public synchronized String addScene(String name, Collection<String> lightIds,
+      Map<String, Object> state) {
+    String id = "scene" + nextSceneId++;
+    scenes.put(id, new SimulatedScene(name, lightIds, state));
+
+    return id;
+  }
+
+  /**
+   * Is a light on?
+   *
+   * @param lightId
+   *          the ID of the light
+   *
+   * @return {@code true} if the light is on
+   */
+  public synchronized boolean isLightOn(String lightId) {
+    return getLight(lightId).on;
+  }
+
+  /**
+   * Get the brightness of a light.
+   *
+   * @param lightId
+   *          the ID of the light
+   *
+   * @return the brightness
+   */
+  public synchronized int getLightBrightness(String lightId) {
+    return getLight(lightId).brightness;
+  }
+
+  /**
+   * Get the number of requests received.
+   *
+   * @return the number of requests
+   */
+  public long getNumberRequests() {
+    return numberRequests.get();
+  }
+
+  /**
+   * Get the number of state changes made to lights or groups.
+   *
+   * @return the number of state changes
+   */
+  public long getNumberStateChanges() {
+    return numberStateChanges.get();
+  }
+
+  /**
+   * Get the number of requests refused by the rate limit.
+   *
+   * @return the number of refused requests
+   */
+  public long getNumberRateLimited() {
+    return numberRateLimited.get();
+  }
+
+  /**
+   * Get the number of requests answered with an injected error.
+   *
+   * @return the number of errors
+   */
+  public long getNumberErrorsInjected() {
+    return numberErrorsInjected.get();
+  }
+
+  /**
+   * Handle a request to the simulator.
+   *
+   * @param exchange
+   *          the HTTP exchange
+   *
+   * @throws IOException
+   *           the exchange failed
+   */
+  private void handleRequest(HttpExchange exchange) throws IOException {
+    numberRequests.incrementAndGet();
+
+    try {
+      String body = readBody(exchange.getRequestBody());
+
+      long delay = latency;
+      if (delay > 0) {
+        Thread.sleep(delay);
+      }
+
+      if (!acquireRequestPermit()) {
+        numberRateLimited.incrementAndGet();
+        sendResponse(exchange, PhilipsHueBridgeClient.HTTP_TOO_MANY_REQUESTS, "");
+
+        return;
+      }
+
+      String path = exchange.getRequestURI().getPath();
+      String userPrefix = "/api/" + hueUser;
+      String response;
+      if (!path.equals(userPrefix) && !path.startsWith(userPrefix + "/")) {
+        response = newErrorResponse(ERROR_TYPE_UNAUTHORIZED_USER, "/", "unauthorized user");
+      } else if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        numberErrorsInjected.incrementAndGet();
+        response = newErrorResponse(ERROR_TYPE_INTERNAL, path.substring(userPrefix.length()),
+            "Internal error, 503");
+      } else {
+        response = handleApiRequest(exchange.getRequestMethod(),
+            path.substring(userPrefix.length()), body);
+      }
+
+      sendResponse(exchange, HttpURLConnection.HTTP_OK, response);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      exchange.close();
+    } catch (Throwable e) {
+      sendResponse(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, String.valueOf(e));
+    }
+  }
+
+  /**
+   * Handle a request for the API of the user.
+   *
+   * @param method
+   *          the HTTP method
+   * @param path
+   *          the path of the request after the user
+   * @param body
+   *          the body of the request
+   *
+   * @return the response
+   */
+  private synchronized String handleApiRequest(String method, String path, String body) {
+    String[] parts = path.split("/");
+    String collection = (parts.length > 1) ? parts[1] : "";
+    String id = (parts.length > 2) ? parts[2] : null;
+    String attribute = (parts.length > 3) ? parts[3] : null;
+
+    if ("lights".equals(collection)) {
+      if ("GET".equals(method) && id == null) {
+        Map<String, Object> lightsData = Maps.newLinkedHashMap();
+        for (SimulatedLight light : lights.values()) {
+          lightsData.put(light.id, light.toData());
+        }
+
+        return jsonMapper.toString(lightsData);
+      }
+
+      SimulatedLight light = lights.get(id);
+      if (light == null) {
+        return newNotAvailableResponse(path);
+      } else if ("GET".equals(method) && attribute == null) {
+        return jsonMapper.toString(light.toData());
+      } else if ("PUT".equals(method) && "state".equals(attribute)) {
+        Map<String, Object> changes = jsonMapper.parseObject(body);
+        light.applyState(changes);
+        numberStateChanges.incrementAndGet();
+
+        return newSuccessResponse(path, changes);
+      }
+    } else if ("groups".equals(collection)) {
+      if ("GET".equals(method) && id == null) {
+        Map<String, Object> groupsData = Maps.newLinkedHashMap();
+        for (Map.Entry<String, SimulatedGroup> group : groups.entrySet()) {
+          groupsData.put(group.getKey(), group.getValue().toData());
+        }
+
+        return jsonMapper.toString(groupsData);
+      } else if ("POST".equals(method) && id == null) {
+        Map<String, Object> request = jsonMapper.parseObject(body);
+        @SuppressWarnings("unchecked")
+        List<String> lightIds =
+            (List<String>) request.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_LIGHTS);
+        String groupId = addGroup(
+            (String) request.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME), lightIds);
+
+        Map<String, Object> success = Maps.newLinkedHashMap();
+        success.put("id", groupId);
+
+        return newSuccessEntry(success);
+      }
+
+      Collection<String> lightIds;
+      if (PhilipsHueGroup.ALL_LIGHTS_GROUP_ID.equals(id)) {
+        lightIds = lights.keySet();
+      } else if (groups.containsKey(id)) {
+        lightIds = groups.get(id).lightIds;
+      } else {
+        return newNotAvailableResponse(path);
+      }
+
+      if ("DELETE".equals(method) && attribute == null) {
+        groups.remove(id);
+
+        return newSuccessEntry(path + " deleted");
+      } else if ("PUT".equals(method) && attribute == null) {
+        return newSuccessResponse(path, jsonMapper.parseObject(body));
+      } else if ("PUT".equals(method) && "action".equals(attribute)) {
+        Map<String, Object> changes = jsonMapper.parseObject(body);
+        Object sceneId = changes.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_ACTION_SCENE);
+        if (sceneId != null) {
+          SimulatedScene scene = scenes.get(sceneId);
+          if (scene == null) {
+            return newNotAvailableResponse(path + "/action/scene");
+          }
+          applyState(scene.lightIds, scene.state);
+        } else {
+          applyState(lightIds, changes);
+        }
+        numberStateChanges.incrementAndGet();
+
+        return newSuccessResponse(path, changes);
+      }
+    } else if ("scenes".equals(collection) && "GET".equals(method) && id == null) {
+      Map<String, Object> scenesData = Maps.newLinkedHashMap();
+      for (Map.Entry<String, SimulatedScene> scene : scenes.entrySet()) {
+        scenesData.put(scene.getKey(), scene.getValue().toData());
+      }
+
+      return jsonMapper.toString(scenesData);
+    }
+
+    return newNotAvailableResponse(path);
+  }
+
+  /**
+   * Apply a state to a collection of lights.
+   *
+   * <p>
+   * The caller must hold the simulator lock.
+   *
+   * @param lightIds
+   *          the IDs of the lights
+   * @param state
+   *          the state
+   */
+  private void applyState(Collection<String> lightIds, Map<String, Object> state) {
+    for (String lightId : lightIds) {
+      SimulatedLight light = lights.get(lightId);
+      if (light != null) {
+        light.applyState(state);
+      }
+    }
+  }
+
+  /**
+   * Let a request through the rate limit.
+   *
+   * @return {@code true} if the request is under the limit
+   */
+  private synchronized boolean acquireRequestPermit() {
+    double rate = requestsPerSecond;
+    if (rate <= 0) {
+      return true;
+    }
+
+    long now = System.nanoTime();
+    if (now - nextRequestTime < 0) {
+      return false;
+    }
+
+    nextRequestTime = now + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+
+    return true;
+  }
+
+  /**
+   * Get a light which must exist.
+   *
+   * @param lightId
+   *          the ID of the light
+   *
+   * @return the light
+   */
+  private SimulatedLight getLight(String lightId) {
+    SimulatedLight light = lights.get(lightId);
+    if (light == null) {
+      throw new SimpleSmartSpacesException(
+          String.format("The Philips Hue bridge simulator has no light %s", lightId));
+    }
+
+    return light;
+  }
+
+  /**
+   * Create the response for a successful change.
+   *
+   * @param path
+   *          the path of the request after the user
+   * @param changes
+   *          the attributes changed
+   *
+   * @return the response
+   */
+  private String newSuccessResponse(String path, Map<String, Object> changes) {
+    List<Map<String, Object>> entries = Lists.newArrayList();
+    for (Map.Entry<String, Object> change : changes.entrySet()) {
+      Map<String, Object> success = Maps.newLinkedHashMap();
+      success.put(path + "/" + change.getKey(), change.getValue());
+      entries.add(newEntry("success", success));
+    }
+
+    return jsonMapper.toString(entries);
+  }
+
+  /**
+   * Create a response with a single success entry.
+   *
+   * @param success
+   *          the content of the success entry
+   *
+   * @return the response
+   */
+  private String newSuccessEntry(Object success) {
+    List<Map<String, Object>> entries = Lists.newArrayList();
+    entries.add(newEntry("success", success));
+
+    return jsonMapper.toString(entries);
+  }
+
+  /**
+   * Create the response for a resource which is not available.
+   *
+   * @param path
+   *          the path of the request after the user
+   *
+   * @return the response
+   */
+  private String newNotAvailableResponse(String path) {
+    return newErrorResponse(ERROR_TYPE_RESOURCE_NOT_AVAILABLE, path,
+        String.format("resource, %s, not available", path));
+  }
+
+  /**
+   * Create an error response.
+   *
+   * @param type
+   *          the type of the error
+   * @param address
+   *          the address the error is for
+   * @param description
+   *          the description of the error
+   *
+   * @return the response
+   */
+  private String newErrorResponse(int type, String address, String description) {
+    Map<String, Object> error = Maps.newLinkedHashMap();
+    error.put("type", type);
+    error.put("address", address);
+    error.put("description", description);
+
+    List<Map<String, Object>> entries = Lists.newArrayList();
+    entries.add(newEntry("error", error));
+
+    return jsonMapper.toString(entries);
+  }
+
+  /**
+   * Create an entry for a response.
+   *
+   * @param kind
+   *          the kind of the entry, {@code success} or {@code error}
+   * @param content
+   *          the content of the entry
+   *
+   * @return the entry
+   */
+  private Map<String, Object> newEntry(String kind, Object content) {
+    Map<String, Object> entry = Maps.newLinkedHashMap();
+    entry.put(kind, content);
+
+    return entry;
+  }
+
+  /**
+   * Send a response.
+   *
+   * @param exchange
+   *          the HTTP exchange
+   * @param status
+   *          the HTTP status
+   * @param response
+   *          the body of the response
+   *
+   * @throws IOException
+   *           the response could not be sent
+   */
+  private void sendResponse(HttpExchange exchange, int status, String response)
+      throws IOException {
+    byte[] content = response.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, content.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(content);
+    }
+  }
+
+  /**
+   * Read the body of a request.
+   *
+   * @param in
+   *          the request body stream
+   *
+   * @return the body
+   *
+   * @throws IOException
+   *           the body could not be read
+   */
+  private String readBody(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int length;
+    while ((length = in.read(buffer)) != -1) {
+      out.write(buffer, 0, length);
+    }
+
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A light on the simulated bridge.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class SimulatedLight {
+
+    /**
+     * The ID of the light.
+     */
+    private final String id;
+
+    /**
+     * The name of the light.
+     */
+    private final String name;
+
+    /**
+     * {@code true} if the light is on.
+     */
+    private boolean on;
+
+    /**
+     * The brightness of the light.
+     */
+    private int brightness = 254;
+
+    /**
+     * The saturation of the light.
+     */
+    private int saturation = 254;
+
+    /**
+     * The hue of the light.
+     */
+    private int hue;
+
+    /**
+     * Construct a new light.
+     *
+     * @param id
+     *          the ID of the light
+     * @param name
+     *          the name of the light
+     */
+    SimulatedLight(String id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    /**
+     * Apply state changes to the light.
+     *
+     * @param changes
+     *          the attributes to change, unknown attributes are ignored
+     */
+    void applyState(Map<String, Object> changes) {
+      Object value = changes.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_ON);
+      if (value instanceof Boolean) {
+        on = (Boolean) value;
+      }
+      value = changes.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_BRIGHTNESS);
+      if (value instanceof Number) {
+        brightness = ((Number) value).intValue();
+      }
+      value = changes.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_SATURATION);
+      if (value instanceof Number) {
+        saturation = ((Number) value).intValue();
+      }
+      value = changes.get(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_HUE);
+      if (value instanceof Number) {
+        hue = ((Number) value).intValue();
+      }
+    }
+
+    /**
+     * Get the data the bridge gives for the light.
+     *
+     * @return the data
+     */
+    Map<String, Object> toData() {
+      Map<String, Object> state = Maps.newLinkedHashMap();
+      state.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_ON, on);
+      state.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_BRIGHTNESS, brightness);
+      state.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_SATURATION, saturation);
+      state.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_HUE, hue);
+      state.put(FIELD_STATE_REACHABLE, true);
+
+      Map<String, Object> data = Maps.newLinkedHashMap();
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME, name);
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE_UNIQUEID,
+          String.format("00:17:88:01:00:%02x:%02x-0b", Integer.parseInt(id) >> 8,
+              Integer.parseInt(id) & 0xff));
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_STATE, state);
+
+      return data;
+    }
+  }
+
+  /**
+   * A group on the simulated bridge.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class SimulatedGroup {
+
+    /**
+     * The name of the group.
+     */
+    private final String name;
+
+    /**
+     * The IDs of the lights in the group.
+     */
+    private final List<String> lightIds;
+
+    /**
+     * Construct a new group.
+     *
+     * @param name
+     *          the name of the group
+     * @param lightIds
+     *          the IDs of the lights in the group
+     */
+    SimulatedGroup(String name, Collection<String> lightIds) {
+      this.name = name;
+      this.lightIds = Lists.newArrayList(lightIds);
+    }
+
+    /**
+     * Get the data the bridge gives for the group.
+     *
+     * @return the data
+     */
+    Map<String, Object> toData() {
+      Map<String, Object> data = Maps.newLinkedHashMap();
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME, name);
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_TYPE,
+          PhilipsHueRestMessages.PHILIPS_HUE_GROUP_TYPE_LIGHT_GROUP);
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_LIGHTS, lightIds);
+
+      return data;
+    }
+  }
+
+  /**
+   * A scene on the simulated bridge.
+   *
+   * @author Keith M. Hughes
+   */
+  private static class SimulatedScene {
+
+    /**
+     * The name of the scene.
+     */
+    private final String name;
+
+    /**
+     * The IDs of the lights in the scene.
+     */
+    private final List<String> lightIds;
+
+    /**
+     * The state the scene puts its lights in.
+     */
+    private final Map<String, Object> state;
+
+    /**
+     * Construct a new scene.
+     *
+     * @param name
+     *          the name of the scene
+     * @param lightIds
+     *          the IDs of the lights in the scene
+     * @param state
+     *          the state the scene puts its lights in
+     */
+    SimulatedScene(String name, Collection<String> lightIds, Map<String, Object> state) {
+      this.name = name;
+      this.lightIds = Lists.newArrayList(lightIds);
+      this.state = Maps.newLinkedHashMap(state);
+    }
+
+    /**
+     * Get the data the bridge gives for the scene.
+     *
+     * @return the data
+     */
+    Map<String, Object> toData() {
+      Map<String, Object> data = Maps.newLinkedHashMap();
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_LIGHT_NAME, name);
+      data.put(PhilipsHueRestMessages.PHILIPS_HUE_FIELD_GROUP_LIGHTS, lightIds);
+
+      return data;
+    }
+  }
+}
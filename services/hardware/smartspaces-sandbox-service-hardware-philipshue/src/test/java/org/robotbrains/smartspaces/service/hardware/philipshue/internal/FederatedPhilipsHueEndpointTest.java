@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpoint;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueGroup;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLightState;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueScene;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.FederatedPhilipsHueEndpoint;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueBridgeClient;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.StandardPhilipsHueEndpoint;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the {@link FederatedPhilipsHueEndpoint}.
+ *
+ * @author Keith M. Hughes
+ */
+public class FederatedPhilipsHueEndpointTest {
+
+  /**
+   * How long each fake bridge takes to answer a state change, in
+   * milliseconds.
+   */
+  private static final long BRIDGE_LATENCY = 500;
+
+  private List<HttpServer> servers;
+  private FederatedPhilipsHueEndpoint endpoint;
+  private List<String> received;
+  private volatile boolean sameLightNames;
+
+  @Before
+  public void setup() throws Exception {
+    received = Collections.synchronizedList(Lists.newArrayList());
+    servers = Lists.newArrayList();
+
+    Log log = Mockito.mock(Log.class);
+    List<PhilipsHueEndpoint> bridges = Lists.newArrayList();
+    for (String floor : Lists.newArrayList("a", "b")) {
+      HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/api/user", (exchange) -> handleRequest(floor, exchange));
+      server.start();
+      servers.add(server);
+
+      PhilipsHueBridgeClient client = new PhilipsHueBridgeClient(
+          "http://127.0.0.1:" + server.getAddress().getPort() + "/api/user", log);
+      bridges.add(new StandardPhilipsHueEndpoint("bridge-" + floor, "user", client, log, null));
+    }
+
+    endpoint = new FederatedPhilipsHueEndpoint(bridges, log, null);
+    endpoint.startup();
+  }
+
+  @After
+  public void cleanup() {
+    endpoint.shutdown();
+    for (HttpServer server : servers) {
+      server.stop(0);
+    }
+  }
+
+  /**
+   * Test that lights from all bridges are found.
+   */
+  @Test
+  public void testScan() {
+    endpoint.scanForLights();
+
+    Assert.assertEquals(Lists.newArrayList("a-1", "a-2", "b-1", "b-2"), endpoint.getLightNames());
+    Assert.assertEquals("ub1", endpoint.getLightByName("b-1").getUniqueId());
+    Assert.assertSame(endpoint.getLightByName("a-2"), endpoint.getLightByUniqueId("ua2"));
+  }
+
+  /**
+   * Test that switching off all lights of all bridges goes to each bridge at
+   * the same time.
+   */
+  @Test
+  public void testParallelBridges() {
+    endpoint.scanForLights();
+
+    List<PhilipsHueLight> lights = Lists.newArrayList();
+    for (String name : endpoint.getLightNames()) {
+      lights.add(endpoint.getLightByName(name).setOn(false));
+    }
+
+    long start = System.currentTimeMillis();
+    endpoint.updateLightStates(lights).join();
+    long elapsed = System.currentTimeMillis() - start;
+
+    // Every light of each bridge is switched and they are all in the room
+    // group read at startup, so each bridge gets one command.
+    Assert.assertEquals(2, received.size());
+    Assert.assertTrue(received.contains("a PUT /groups/1/action {\"on\":false}"));
+    Assert.assertTrue(received.contains("b PUT /groups/1/action {\"on\":false}"));
+
+    // One after the other would be at least twice the latency.
+    Assert.assertTrue("Took " + elapsed, elapsed < 2 * BRIDGE_LATENCY);
+  }
+
+  /**
+   * Test that groups and scenes go to their own bridge, even after the
+   * bridges were scanned again.
+   */
+  @Test
+  public void testGroupAndSceneRouting() {
+    endpoint.scanForGroups();
+    endpoint.scanForScenes();
+    PhilipsHueGroup group = endpoint.getGroupByName("b-room");
+    PhilipsHueScene scene = null;
+    for (PhilipsHueScene bridgeScene : endpoint.getScenes()) {
+      if ("bridge-b".equals(bridgeScene.getBridgeHost())) {
+        scene = bridgeScene;
+      }
+    }
+
+    endpoint.scanForGroups();
+    endpoint.scanForScenes();
+
+    endpoint.updateGroupState(group, new PhilipsHueLightState().setBrightness(10)).join();
+    endpoint.recallScene(scene).join();
+    endpoint.updateGroupState(new PhilipsHueGroup("bridge-a",
+        PhilipsHueGroup.ALL_LIGHTS_GROUP_ID, "All lights", null, Lists.newArrayList("1", "2")),
+        new PhilipsHueLightState().setOn(true)).join();
+
+    Assert.assertEquals(Lists.newArrayList("b PUT /groups/1/action {\"bri\":10}",
+        "b PUT /groups/0/action {\"scene\":\"sb\"}", "a PUT /groups/0/action {\"on\":true}"),
+        received);
+  }
+
+  /**
+   * Test that names and control IDs on more than one bridge are rejected.
+   */
+  @Test
+  public void testNameCollisions() {
+    sameLightNames = true;
+    endpoint.scanForLights();
+    endpoint.scanForScenes();
+
+    Assert.assertEquals("ua1", endpoint.getLightByName("a-1").getUniqueId());
+    assertRejected(() -> endpoint.getLightByName("Lamp"));
+    assertRejected(() -> endpoint.getLightByControlId("1"));
+    assertRejected(() -> endpoint.getSceneByName("Relax"));
+    Assert.assertNull(endpoint.getLightByName("Porch"));
+  }
+
+  /**
+   * Assert that a lookup is rejected.
+   *
+   * @param lookup
+   *          the lookup
+   */
+  private void assertRejected(Runnable lookup) {
+    try {
+      lookup.run();
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Handle a request to a fake bridge.
+   *
+   * @param floor
+   *          the floor the bridge is on
+   * @param exchange
+   *          the HTTP exchange
+   */
+  private void handleRequest(String floor, HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestMethod();
+    String path = exchange.getRequestURI().getPath().substring("/api/user".length());
+
+    String response;
+    if ("GET".equals(method) && "/groups".equals(path)) {
+      response = String.format(
+          "{\"1\":{\"name\":\"%s-room\",\"type\":\"Room\",\"lights\":[\"1\",\"2\"]}}", floor);
+    } else if ("GET".equals(method) && "/scenes".equals(path)) {
+      response = String.format("{\"s%s\":{\"name\":\"Relax\",\"lights\":[\"1\"]}}", floor);
+    } else if ("GET".equals(method)) {
+      String state = "\"state\":{\"on\":true,\"bri\":255,\"sat\":255,\"hue\":4500}";
+      String secondName = sameLightNames ? "Lamp" : floor + "-2";
+      response = String.format("{\"1\":{\"name\":\"%1$s-1\",\"uniqueid\":\"u%1$s1\",%2$s},"
+          + "\"2\":{\"name\":\"%3$s\",\"uniqueid\":\"u%1$s2\",%2$s}}", floor, state,
+          secondName);
+    } else {
+      received.add(floor + " " + method + " " + path + " "
+          + PhilipsHueTestSupport.readBody(exchange.getRequestBody()));
+      try {
+        Thread.sleep(BRIDGE_LATENCY);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      response = "[]";
+    }
+
+    byte[] content = response.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, content.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(content);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
+
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueBridgeClient;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link PhilipsHueBridgeClient}.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueBridgeClientTest {
+  private HttpServer server;
+  private PhilipsHueBridgeClient client;
+  private AtomicInteger inFlight;
+  private AtomicInteger maximumInFlight;
+
+  @Before
+  public void setup() throws Exception {
+    inFlight = new AtomicInteger();
+    maximumInFlight = new AtomicInteger();
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/api/user/lights", this::handleLights);
+    server.createContext("/api/user/missing", (exchange) -> respond(exchange, 404, "none"));
+    server.start();
+
+    client = new PhilipsHueBridgeClient(
+        "http://127.0.0.1:" + server.getAddress().getPort() + "/api/user", 3,
+        Mockito.mock(Log.class));
+    client.startup();
+  }
+
+  @After
+  public void cleanup() {
+    client.shutdown();
+    server.stop(0);
+  }
+
+  /**
+   * Test that requests run in parallel, no more than the limit at a time.
+   */
+  @Test
+  public void testParallelRequests() throws Exception {
+    int numberRequests = 12;
+    List<CompletableFuture<String>> futures = Lists.newArrayList();
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < numberRequests; i++) {
+      futures.add(client.put("/lights/" + i + "/state", "{\"on\":true}"));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    long elapsed = System.currentTimeMillis() - start;
+
+    for (int i = 0; i < numberRequests; i++) {
+      Assert.assertEquals("[{\"success\":{\"/lights/" + i + "/state/on\":true}}]",
+          futures.get(i).join());
+    }
+    Assert.assertEquals(3, maximumInFlight.get());
+
+    // 12 requests of 100 msec each, 3 at a time.
+    Assert.assertTrue(elapsed < 1000);
+  }
+
+  /**
+   * Test that an HTTP error fails the future.
+   */
+  @Test(expected = CompletionException.class)
+  public void testHttpError() {
+    client.get("/missing").join();
+  }
+
+  /**
+   * Handle a light request, taking 100 msec.
+   *
+   * @param exchange
+   *          the HTTP exchange
+   */
+  private void handleLights(HttpExchange exchange) throws IOException {
+    int current = inFlight.incrementAndGet();
+    maximumInFlight.accumulateAndGet(current, Math::max);
+    try {
+      String body = PhilipsHueTestSupport.readBody(exchange.getRequestBody());
+      Thread.sleep(100);
+
+      String path = exchange.getRequestURI().getPath().substring("/api/user".length());
+      respond(exchange, 200,
+          "[{\"success\":{\"" + path + "/on\":" + body.contains("true") + "}}]");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      inFlight.decrementAndGet();
+    }
+  }
+
+  /**
+   * Send a response.
+   *
+   * @param exchange
+   *          the HTTP exchange
+   * @param status
+   *          the HTTP status
+   * @param body
+   *          the response body
+   */
+  private void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] content = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, content.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(content);
+    }
+  }
+}
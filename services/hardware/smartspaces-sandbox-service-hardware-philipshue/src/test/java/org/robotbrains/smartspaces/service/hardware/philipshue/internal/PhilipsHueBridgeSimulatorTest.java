@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
+
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueGroup;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLightState;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueBridgeClient;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueBridgeClient.PhilipsHueHttpStatusException;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.StandardPhilipsHueEndpoint;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.simulator.PhilipsHueBridgeSimulator;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Tests for the {@link PhilipsHueBridgeSimulator} driven by a
+ * {@link StandardPhilipsHueEndpoint}.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueBridgeSimulatorTest {
+  private PhilipsHueBridgeSimulator simulator;
+  private PhilipsHueBridgeClient client;
+  private StandardPhilipsHueEndpoint endpoint;
+
+  @Before
+  public void setup() {
+    simulator = new PhilipsHueBridgeSimulator(4);
+    simulator.startup();
+
+    Log log = Mockito.mock(Log.class);
+    client = new PhilipsHueBridgeClient(
+        "http://" + simulator.getHost() + "/api/" + simulator.getHueUser(), log);
+    endpoint = new StandardPhilipsHueEndpoint(simulator.getHost(), simulator.getHueUser(),
+        client, log, null);
+    endpoint.startup();
+  }
+
+  @After
+  public void cleanup() {
+    endpoint.shutdown();
+    simulator.shutdown();
+  }
+
+  /**
+   * Test that light changes reach the simulator and are acknowledged.
+   */
+  @Test
+  public void testLightStates() {
+    endpoint.scanForLights();
+    Assert.assertEquals(4, endpoint.getLightNames().size());
+
+    PhilipsHueLight light = endpoint.getLightByName("Light 2");
+    light.setOn(true).setBrightness(100);
+    endpoint.updateLightState(light);
+
+    Assert.assertTrue(simulator.isLightOn("2"));
+    Assert.assertEquals(100, simulator.getLightBrightness("2"));
+    Assert.assertFalse(simulator.isLightOn("1"));
+    Assert.assertTrue(light.getStateChanges().isEmpty());
+  }
+
+  /**
+   * Test group and scene changes.
+   */
+  @Test
+  public void testGroupsAndScenes() {
+    simulator.addGroup("Front", Lists.newArrayList("1", "2"));
+    Map<String, Object> sceneState = Maps.newHashMap();
+    sceneState.put("on", true);
+    sceneState.put("bri", 42);
+    simulator.addScene("Evening", Lists.newArrayList("3", "4"), sceneState);
+
+    endpoint.scanForLights();
+    endpoint.scanForGroups();
+    endpoint.scanForScenes();
+
+    PhilipsHueGroup front = endpoint.getGroupByName("Front");
+    endpoint.updateGroupState(front, new PhilipsHueLightState().setOn(true)).join();
+    Assert.assertTrue(simulator.isLightOn("1"));
+    Assert.assertTrue(simulator.isLightOn("2"));
+    Assert.assertFalse(simulator.isLightOn("3"));
+
+    endpoint.recallScene(endpoint.getSceneByName("Evening")).join();
+    Assert.assertTrue(simulator.isLightOn("4"));
+    Assert.assertEquals(42, simulator.getLightBrightness("3"));
+
+    PhilipsHueGroup created = endpoint.createGroup("Back",
+        Lists.newArrayList(endpoint.getLightByName("Light 3"), endpoint.getLightByName("Light 4")));
+    endpoint.deleteGroup(created);
+    Assert.assertEquals(2, simulator.getNumberStateChanges());
+  }
+
+  /**
+   * Test that injected errors fail the endpoint operation.
+   */
+  @Test(expected = SmartSpacesException.class)
+  public void testErrorInjection() {
+    simulator.setErrorRate(1.0);
+
+    endpoint.scanForGroups();
+  }
+
+  /**
+   * Test that requests over the rate limit are refused with the status a
+   * bridge uses for too many requests.
+   */
+  @Test
+  public void testRateLimit() {
+    simulator.setRequestsPerSecond(1);
+
+    client.get("/lights").join();
+    try {
+      client.get("/lights").join();
+      Assert.fail("Second request was not refused");
+    } catch (CompletionException e) {
+      PhilipsHueHttpStatusException statusException =
+          (PhilipsHueHttpStatusException) e.getCause();
+      Assert.assertEquals(PhilipsHueBridgeClient.HTTP_TOO_MANY_REQUESTS,
+          statusException.getStatus());
+      Assert.assertTrue(statusException.isThrottled());
+      Assert.assertEquals(1, simulator.getNumberRateLimited());
+    }
+  }
+
+  /**
+   * Test that the simulator delays requests.
+   */
+  @Test
+  public void testLatency() {
+    simulator.setLatency(200);
+
+    long start = System.currentTimeMillis();
+    endpoint.scanForLights();
+    Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
+
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueBridgeClient;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueCommandQueue;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link PhilipsHueCommandQueue}.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueCommandQueueTest {
+  private HttpServer server;
+  private PhilipsHueBridgeClient client;
+  private PhilipsHueCommandQueue queue;
+  private List<String> received;
+  private ExecutorService serverExecutor;
+
+  /**
+   * The request the server holds until {@link #releaseHeld} is counted down.
+   */
+  private volatile String heldRequest;
+  private final CountDownLatch heldReceived = new CountDownLatch(1);
+  private final CountDownLatch releaseHeld = new CountDownLatch(1);
+
+  /**
+   * The number of requests the server refuses with {@link #throttleStatus}.
+   */
+  private final AtomicInteger numberToThrottle = new AtomicInteger();
+  private volatile int throttleStatus;
+
+  @Before
+  public void setup() throws Exception {
+    received = Collections.synchronizedList(Lists.newArrayList());
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/api/user/lights", this::handleLights);
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    Log log = Mockito.mock(Log.class);
+    client = new PhilipsHueBridgeClient(
+        "http://127.0.0.1:" + server.getAddress().getPort() + "/api/user", log);
+    client.startup();
+
+    queue = new PhilipsHueCommandQueue(client, 10, log);
+    queue.startup();
+  }
+
+  @After
+  public void cleanup() {
+    queue.shutdown();
+    client.shutdown();
+    releaseHeld.countDown();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  /**
+   * Test that commands are paced by the token bucket.
+   */
+  @Test
+  public void testPacing() throws Exception {
+    List<CompletableFuture<String>> futures = Lists.newArrayList();
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 6; i++) {
+      futures.add(queue.submit("light:" + i, "/lights/" + i + "/state", "{\"bri\":1}", false));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    long elapsed = System.currentTimeMillis() - start;
+
+    Assert.assertEquals(6, received.size());
+
+    // The first command goes at once, the other 5 each wait 100 msec.
+    Assert.assertTrue(elapsed >= 400);
+  }
+
+  /**
+   * Test that waiting commands for the same light collapse to the latest.
+   */
+  @Test
+  public void testCoalescing() throws Exception {
+    // Hold the queue up so the rest of the commands wait.
+    queue.submit("light:0", "/lights/0/state", "{\"bri\":0}", false);
+
+    List<CompletableFuture<String>> futures = Lists.newArrayList();
+    for (int i = 1; i <= 20; i++) {
+      futures.add(queue.submit("light:1", "/lights/1/state", "{\"bri\":" + i + "}", false));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+    Assert.assertEquals(19, queue.getNumberCoalesced());
+    Assert.assertEquals(Lists.newArrayList("/lights/0/state {\"bri\":0}",
+        "/lights/1/state {\"bri\":20}"), received);
+  }
+
+  /**
+   * Test that a command superseding waiting commands is the only one sent.
+   */
+  @Test
+  public void testSuperseding() throws Exception {
+    // Hold the queue up so the rest of the commands wait.
+    queue.submit("light:0", "/lights/0/state", "{\"bri\":0}", false);
+
+    CompletableFuture<String> light1 =
+        queue.submit("light:1", "/lights/1/state", "{\"bri\":1}", false);
+    CompletableFuture<String> light2 =
+        queue.submit("light:2", "/lights/2/state", "{\"bri\":2}", false);
+    CompletableFuture<String> group = queue.submit("group:1", "/lights/group/state",
+        "{\"bri\":3}", false, Lists.newArrayList("light:1", "light:2"));
+    CompletableFuture.allOf(light1, light2, group).join();
+
+    Assert.assertEquals(Lists.newArrayList("/lights/0/state {\"bri\":0}",
+        "/lights/group/state {\"bri\":3}"), received);
+  }
+
+  /**
+   * Test that priority commands go ahead of waiting normal commands.
+   */
+  @Test
+  public void testPriority() throws Exception {
+    List<CompletableFuture<String>> futures = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      futures.add(queue.submit("light:" + i, "/lights/" + i + "/state", "{\"hue\":1}", false));
+    }
+    futures.add(queue.submit("light:9", "/lights/9/state", "{\"on\":false}", true));
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+    Assert.assertEquals(5, received.size());
+    Assert.assertTrue(received.indexOf("/lights/9/state {\"on\":false}") <= 1);
+  }
+
+  /**
+   * Test that commands submitted before startup or after shutdown fail at once
+   * rather than waiting in the queue.
+   */
+  @Test
+  public void testNotRunning() throws Exception {
+    PhilipsHueCommandQueue stopped =
+        new PhilipsHueCommandQueue(client, 10, Mockito.mock(Log.class));
+    Assert.assertTrue(stopped.submit("light:1", "/lights/1/state", "{\"bri\":1}", false)
+        .isCompletedExceptionally());
+
+    stopped.startup();
+    stopped.submit("light:1", "/lights/1/state", "{\"bri\":1}", false).join();
+    stopped.shutdown();
+
+    Assert.assertTrue(stopped.submit("light:1", "/lights/1/state", "{\"bri\":2}", false)
+        .isCompletedExceptionally());
+    Assert.assertEquals(0, stopped.getNumberPending());
+    Assert.assertEquals(Lists.newArrayList("/lights/1/state {\"bri\":1}"), received);
+  }
+
+  /**
+   * Test that a command is not sent while another with the same key is in
+   * flight, and that other keys are not held up by it.
+   */
+  @Test
+  public void testSameKeyInFlight() throws Exception {
+    heldRequest = "/lights/1/state {\"bri\":1}";
+    CompletableFuture<String> first =
+        queue.submit("light:1", "/lights/1/state", "{\"bri\":1}", false);
+    Assert.assertTrue(heldReceived.await(5, TimeUnit.SECONDS));
+
+    CompletableFuture<String> second =
+        queue.submit("light:1", "/lights/1/state", "{\"bri\":2}", false);
+    CompletableFuture<String> other =
+        queue.submit("light:2", "/lights/2/state", "{\"bri\":3}", false);
+
+    // The second command was submitted first, so it would have gone before the
+    // other light if it were not held back.
+    other.join();
+    Assert.assertFalse(first.isDone());
+    Assert.assertEquals(Lists.newArrayList(heldRequest, "/lights/2/state {\"bri\":3}"),
+        received);
+
+    releaseHeld.countDown();
+    CompletableFuture.allOf(first, second).join();
+    Assert.assertEquals(Lists.newArrayList(heldRequest, "/lights/2/state {\"bri\":3}",
+        "/lights/1/state {\"bri\":2}"), received);
+  }
+
+  /**
+   * Test that commands refused by the bridge because of the rate are sent
+   * again after backing off, for both statuses a bridge refuses them with.
+   */
+  @Test
+  public void testBackoff() throws Exception {
+    for (int status : new int[] { PhilipsHueBridgeClient.HTTP_TOO_MANY_REQUESTS,
+        HttpURLConnection.HTTP_UNAVAILABLE }) {
+      received.clear();
+      throttleStatus = status;
+      numberToThrottle.set(2);
+
+      long start = System.currentTimeMillis();
+      Assert.assertEquals("[]",
+          queue.submit("light:1", "/lights/1/state", "{\"bri\":1}", false).join());
+      long elapsed = System.currentTimeMillis() - start;
+
+      // Sent 3 times with backoffs of 250 and 500 msec between them.
+      Assert.assertEquals(3, received.size());
+      Assert.assertTrue(elapsed >= PhilipsHueCommandQueue.BACKOFF_DELAY_INITIAL * 3);
+    }
+
+    Assert.assertEquals(4, queue.getNumberThrottled());
+  }
+
+  /**
+   * Handle a light request.
+   *
+   * @param exchange
+   *          the HTTP exchange
+   */
+  private void handleLights(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath().substring("/api/user".length());
+    String request = path + " " + PhilipsHueTestSupport.readBody(exchange.getRequestBody());
+    received.add(request);
+    if (request.equals(heldRequest)) {
+      heldReceived.countDown();
+      try {
+        releaseHeld.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    if (numberToThrottle.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+      exchange.sendResponseHeaders(throttleStatus, -1);
+      exchange.close();
+
+      return;
+    }
+
+    byte[] content = "[]".getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, content.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(content);
+    }
+  }
+}
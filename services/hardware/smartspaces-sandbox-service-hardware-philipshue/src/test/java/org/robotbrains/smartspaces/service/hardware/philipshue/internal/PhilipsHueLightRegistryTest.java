@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
+
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueLightRegistry;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link PhilipsHueLightRegistry}.
+ *
+ * @author Keith M. Hughes
+ */
+public class PhilipsHueLightRegistryTest {
+  private PhilipsHueLightRegistry registry;
+  private List<PhilipsHueLight> lights;
+
+  @Before
+  public void setup() {
+    registry = new PhilipsHueLightRegistry();
+
+    lights = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      lights.add(new PhilipsHueLight("u" + i).setControlId(Integer.toString(i))
+          .setName("light-" + i));
+    }
+    registry.setLights(lights);
+  }
+
+  /**
+   * Test looking lights up by each of their keys.
+   */
+  @Test
+  public void testLookups() {
+    PhilipsHueLight light = lights.get(7);
+
+    Assert.assertSame(light, registry.getLightByName("light-7"));
+    Assert.assertSame(light, registry.getLightByUniqueId("u7"));
+    Assert.assertSame(light, registry.getLightByControlId("7"));
+    Assert.assertNull(registry.getLightByName("light-100"));
+
+    Assert.assertEquals(100, registry.getLightNames().size());
+    Assert.assertEquals("light-0", registry.getLightNames().get(0));
+  }
+
+  /**
+   * Test that a renamed light is only found by its new name.
+   */
+  @Test
+  public void testRename() {
+    PhilipsHueLight light = lights.get(3);
+    registry.renameLight(light, "porch");
+
+    Assert.assertEquals("porch", light.getName());
+    Assert.assertSame(light, registry.getLightByName("porch"));
+    Assert.assertNull(registry.getLightByName("light-3"));
+    Assert.assertTrue(registry.getLightNames().contains("porch"));
+    Assert.assertFalse(registry.getLightNames().contains("light-3"));
+  }
+
+  /**
+   * Test that readers always see a complete set of lights while the lights
+   * are being replaced and renamed.
+   */
+  @Test
+  public void testConcurrentReads() throws Exception {
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicInteger missing = new AtomicInteger();
+
+    List<Thread> readers = Lists.newArrayList();
+    for (int r = 0; r < 4; r++) {
+      Thread reader = new Thread(() -> {
+        while (running.get()) {
+          for (int i = 1; i < 100; i++) {
+            if (registry.getLightByName("light-" + i) == null
+                || registry.getLightByControlId(Integer.toString(i)) == null) {
+              missing.incrementAndGet();
+            }
+          }
+        }
+      });
+      reader.start();
+      readers.add(reader);
+    }
+
+    PhilipsHueLight renamed = lights.get(0);
+    for (int i = 0; i < 2000; i++) {
+      registry.setLights(lights);
+      registry.renameLight(renamed, (i % 2 == 0) ? "a" : "b");
+    }
+
+    running.set(false);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    Assert.assertEquals(0, missing.get());
+    Assert.assertSame(renamed, registry.getLightByName("b"));
+  }
+}
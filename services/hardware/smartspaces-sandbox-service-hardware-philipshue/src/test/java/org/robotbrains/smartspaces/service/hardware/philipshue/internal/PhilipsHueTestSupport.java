@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers shared by the Philips Hue tests.
+ *
+ * @author Keith M. Hughes
+ */
+public final class PhilipsHueTestSupport {
+
+  /**
+   * The size of the buffer for reading request bodies.
+   */
+  private static final int READ_BUFFER_SIZE = 1024;
+
+  /**
+   * Read a request body.
+   *
+   * @param in
+   *          the body stream
+   *
+   * @return the body
+   */
+  public static String readBody(InputStream in) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    byte[] buffer = new byte[READ_BUFFER_SIZE];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      content.write(buffer, 0, read);
+    }
+
+    return new String(content.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Do not construct.
+   */
+  private PhilipsHueTestSupport() {
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
+
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueStreamTransport;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A stream transport which keeps every datagram sent.
+ *
+ * @author Keith M. Hughes
+ */
+public class RecordingStreamTransport implements PhilipsHueStreamTransport {
+
+  /**
+   * The datagrams sent.
+   */
+  private final BlockingQueue<byte[]> datagrams = new LinkedBlockingQueue<>();
+
+  /**
+   * {@code true} if the transport is open.
+   */
+  private volatile boolean open;
+
+  @Override
+  public void open() {
+    open = true;
+  }
+
+  @Override
+  public void send(byte[] data, int length) {
+    datagrams.add(Arrays.copyOf(data, length));
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+
+  /**
+   * Is the transport open?
+   *
+   * @return {@code true} if open
+   */
+  public boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Get the datagrams sent.
+   *
+   * @return the datagrams, in the order sent
+   */
+  public BlockingQueue<byte[]> getDatagrams() {
+    return datagrams;
+  }
+}
@@ -16,18 +16,24 @@
 
 package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
 
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.SmartSpacesException;
+import io.smartspaces.evaluation.StandardExecutionContext;
 import io.smartspaces.sandbox.service.action.Action;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpoint;
 import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
 import io.smartspaces.sandbox.service.hardware.philipshue.internal.StandardPhilipsHueActionSource;
 import io.smartspaces.system.SmartSpacesEnvironment;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Tests for the Philips Hue action source.
@@ -70,9 +76,109 @@ public class StandardPhilipsHueActionSourceTest {
 
     stateArgs.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_STATE_ON, true);
 
-    action.perform(callArgs);
+    StandardExecutionContext context = new StandardExecutionContext(null, null);
+    context.setValues(callArgs);
+    action.perform(context);
 
     Mockito.verify(light1, Mockito.times(1)).setOn(true);
     Mockito.verify(light2, Mockito.never()).setOn(Mockito.anyBoolean());
   }
+
+  /**
+   * A scene gives each light its own full state and sends all of them to the
+   * endpoint in one update.
+   */
+  @Test
+  public void testSetScene() {
+    PhilipsHueLight light1 = new PhilipsHueLight("unique1").setControlId("1");
+    Mockito.when(endpoint.getLightByName("light1")).thenReturn(light1);
+    PhilipsHueLight light2 = new PhilipsHueLight("unique2").setControlId("2");
+    Mockito.when(endpoint.getLightByName("light2")).thenReturn(light2);
+    PhilipsHueLight light3 = new PhilipsHueLight("unique3").setControlId("3");
+    Mockito.when(endpoint.getLightByName("light3")).thenReturn(light3);
+    Mockito.when(endpoint.updateLightStates(Mockito.any()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    Map<String, Object> coloredState = Maps.newHashMap();
+    coloredState.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_STATE_ON, true);
+    coloredState.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_STATE_BRIGHTNESS, 100);
+    coloredState.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_STATE_XY,
+        Lists.newArrayList(0.41, 0.52));
+    coloredState.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_STATE_TRANSITION_TIME, 250);
+    Map<String, Object> coloredLight = Maps.newHashMap();
+    coloredLight.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_LIGHT_ID, "light1");
+    coloredLight.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_NEW_STATE, coloredState);
+
+    Map<String, Object> warmState = Maps.newHashMap();
+    warmState.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_STATE_COLOR_TEMPERATURE, 366);
+    Map<String, Object> warmLights = Maps.newHashMap();
+    warmLights.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_LIGHT_IDS,
+        Lists.newArrayList("light2", "light3"));
+    warmLights.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_NEW_STATE, warmState);
+
+    Map<String, Object> callArgs = Maps.newHashMap();
+    callArgs.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_LIGHTS,
+        Lists.newArrayList(coloredLight, warmLights));
+
+    StandardExecutionContext context = new StandardExecutionContext(null, null);
+    context.setValues(callArgs);
+    actionSource.getAction(StandardPhilipsHueActionSource.ACTION_NAME_LIGHT_SCENE_SET)
+        .perform(context);
+
+    Mockito.verify(endpoint, Mockito.times(1))
+        .updateLightStates(Lists.newArrayList(light1, light2, light3));
+
+    Assert.assertTrue(light1.isOn());
+    Assert.assertEquals(100, light1.getBrightness());
+    Assert.assertEquals(0.41, light1.getColorX(), 0.0);
+    Assert.assertEquals(0.52, light1.getColorY(), 0.0);
+    Assert.assertEquals(3, light1.getTransitionTime().intValue());
+    Assert.assertEquals(366, light2.getColorTemperature().intValue());
+    Assert.assertEquals(366, light3.getColorTemperature().intValue());
+    Assert.assertNull(light3.getTransitionTime());
+  }
+
+  /**
+   * A failed update of several lights fails the action.
+   */
+  @Test
+  public void testLightsUpdateFails() {
+    Mockito.when(endpoint.getLightByName("light1"))
+        .thenReturn(new PhilipsHueLight("unique1").setControlId("1"));
+    Mockito.when(endpoint.getLightByName("light2"))
+        .thenReturn(new PhilipsHueLight("unique2").setControlId("2"));
+    CompletableFuture<Void> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new SimpleSmartSpacesException("Bridge error"));
+    Mockito.when(endpoint.updateLightStates(Mockito.any())).thenReturn(failed);
+
+    Map<String, Object> stateArgs = Maps.newHashMap();
+    stateArgs.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_STATE_ON, true);
+    Map<String, Object> callArgs = Maps.newHashMap();
+    callArgs.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_LIGHT_IDS,
+        Lists.newArrayList("light1", "light2"));
+    callArgs.put(StandardPhilipsHueActionSource.LIGHT_ARGUMENT_NEW_STATE, stateArgs);
+
+    StandardExecutionContext context = new StandardExecutionContext(null, null);
+    context.setValues(callArgs);
+    try {
+      actionSource.getAction(StandardPhilipsHueActionSource.ACTION_NAME_LIGHT_STATE_SET)
+          .perform(context);
+      Assert.fail();
+    } catch (SmartSpacesException e) {
+      Assert.assertEquals("Bridge error", e.getCause().getMessage());
+    }
+  }
+
+  /**
+   * The same action instance should be returned for each lookup.
+   */
+  @Test
+  public void testActionReused() {
+    Action action1 =
+        actionSource.getAction(StandardPhilipsHueActionSource.ACTION_NAME_LIGHT_STATE_SET);
+    Action action2 =
+        actionSource.getAction(StandardPhilipsHueActionSource.ACTION_NAME_LIGHT_STATE_SET);
+
+    Assert.assertSame(action1, action2);
+  }
 }
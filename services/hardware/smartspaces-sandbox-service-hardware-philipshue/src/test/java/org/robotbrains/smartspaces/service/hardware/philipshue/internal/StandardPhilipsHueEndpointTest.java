@@ -0,0 +1,474 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
+
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpoint;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEndpointListener;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueEntertainmentStream;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueGroup;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLight;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueLightState;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueScene;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.PhilipsHueBridgeClient;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.StandardPhilipsHueEndpoint;
+import io.smartspaces.util.data.json.StandardJsonMapper;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests for the {@link StandardPhilipsHueEndpoint}.
+ *
+ * @author Keith M. Hughes
+ */
+public class StandardPhilipsHueEndpointTest {
+  private HttpServer server;
+  private StandardPhilipsHueEndpoint endpoint;
+  private List<String> received;
+  private volatile String lightsResponse;
+  private volatile String groupsResponse;
+
+  @Before
+  public void setup() throws Exception {
+    received = Collections.synchronizedList(Lists.newArrayList());
+    lightsResponse = newLightsResponse(false, 100);
+    groupsResponse = "{\"1\":{\"name\":\"Kitchen\",\"type\":\"Room\",\"lights\":[\"1\",\"2\"]}}";
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/api/user", this::handleRequest);
+    server.start();
+
+    Log log = Mockito.mock(Log.class);
+    PhilipsHueBridgeClient client = new PhilipsHueBridgeClient(
+        "http://127.0.0.1:" + server.getAddress().getPort() + "/api/user", log);
+    endpoint = new StandardPhilipsHueEndpoint("127.0.0.1", "user", client, log, null);
+    endpoint.startup();
+  }
+
+  @After
+  public void cleanup() {
+    endpoint.shutdown();
+    server.stop(0);
+  }
+
+  /**
+   * Test reading the groups and scenes from the bridge.
+   */
+  @Test
+  public void testScanGroupsAndScenes() {
+    endpoint.scanForGroups();
+    endpoint.scanForScenes();
+
+    Assert.assertEquals(1, endpoint.getGroups().size());
+    PhilipsHueGroup group = endpoint.getGroupByName("Kitchen");
+    Assert.assertEquals("1", group.getId());
+    Assert.assertEquals("Room", group.getType());
+    Assert.assertTrue(group.getLightControlIds().containsAll(Lists.newArrayList("1", "2")));
+    Assert.assertEquals(2, group.getLightControlIds().size());
+
+    PhilipsHueScene scene = endpoint.getSceneByName("Relax");
+    Assert.assertEquals("abc", scene.getId());
+    Assert.assertEquals(3, scene.getLightControlIds().size());
+  }
+
+  /**
+   * Test that lights matching a group are changed with one group command.
+   */
+  @Test
+  public void testLightsMatchingGroup() {
+    endpoint.scanForGroups();
+
+    List<PhilipsHueLight> lights = Lists.newArrayList(newLight("1").setOn(true),
+        newLight("2").setOn(true));
+    endpoint.updateLightStates(lights).join();
+
+    Assert.assertEquals(Lists.newArrayList(
+        "PUT /groups/1/action {\"on\":true,\"sat\":255,\"bri\":255,\"hue\":4500}"), received);
+  }
+
+  /**
+   * Test that the groups are known as soon as the endpoint has started.
+   */
+  @Test
+  public void testGroupsScannedAtStartup() {
+    Assert.assertNotNull(endpoint.getGroupByName("Kitchen"));
+
+    List<PhilipsHueLight> lights = Lists.newArrayList(newLight("1").setOn(false),
+        newLight("2").setOn(false));
+    endpoint.updateLightStates(lights).join();
+
+    Assert.assertEquals(Lists.newArrayList(
+        "PUT /groups/1/action {\"on\":false,\"sat\":255,\"bri\":255,\"hue\":4500}"),
+        received);
+  }
+
+  /**
+   * Test that polling picks up groups made on the bridge by something else.
+   */
+  @Test
+  public void testPollingScansGroups() throws Exception {
+    BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    endpoint.addListener(new PhilipsHueEndpointListener() {
+      @Override
+      public void onPhilipsHueLightFound(PhilipsHueEndpoint source, PhilipsHueLight light) {
+        events.add("found " + light.getName());
+      }
+
+      @Override
+      public void onPhilipsHueLightStateChange(PhilipsHueEndpoint source, PhilipsHueLight light,
+          PhilipsHueLightState changes) {
+        events.add("change " + light.getName());
+      }
+    });
+    Assert.assertNull(endpoint.getGroupByName("Den"));
+
+    groupsResponse = "{\"1\":{\"name\":\"Kitchen\",\"type\":\"Room\",\"lights\":[\"1\",\"2\"]},"
+        + "\"2\":{\"name\":\"Den\",\"type\":\"Room\",\"lights\":[\"2\"]}}";
+    endpoint.startPolling(20, TimeUnit.MILLISECONDS);
+
+    // Groups are scanned before lights in each poll.
+    Assert.assertEquals("found Lamp", events.poll(5, TimeUnit.SECONDS));
+    Assert.assertEquals(2, endpoint.getGroups().size());
+    Assert.assertEquals("2", endpoint.getGroupByName("Den").getId());
+  }
+
+  /**
+   * Test that lights with different states are changed one by one.
+   */
+  @Test
+  public void testLightsNotMatchingGroup() {
+    endpoint.scanForGroups();
+
+    List<PhilipsHueLight> lights = Lists.newArrayList(newLight("1").setOn(true),
+        newLight("2").setOn(false));
+    endpoint.updateLightStates(lights).join();
+
+    Assert.assertEquals(2, received.size());
+    Assert.assertTrue(received
+        .contains("PUT /lights/1/state {\"on\":true,\"sat\":255,\"bri\":255,\"hue\":4500}"));
+    Assert.assertTrue(received
+        .contains("PUT /lights/2/state {\"on\":false,\"sat\":255,\"bri\":255,\"hue\":4500}"));
+  }
+
+  /**
+   * Test that lights sharing a state in a scene use a group command and the
+   * rest are changed one by one with their full state.
+   */
+  @Test
+  public void testSceneWithMixedStates() {
+    endpoint.scanForGroups();
+
+    PhilipsHueLight colored = newLight("3");
+    new PhilipsHueLightState().setOn(true).setColorXy(0.41, 0.52).setTransitionTime(4)
+        .applyTo(colored);
+    PhilipsHueLight warm = newLight("4");
+    new PhilipsHueLightState().setOn(true).setColorTemperature(366).applyTo(warm);
+
+    List<PhilipsHueLight> lights = Lists.newArrayList(newLight("1").setOn(false), colored,
+        newLight("2").setOn(false), warm);
+    endpoint.updateLightStates(lights).join();
+
+    Assert.assertEquals(3, received.size());
+    Assert.assertTrue(received
+        .contains("PUT /groups/1/action {\"on\":false,\"sat\":255,\"bri\":255,\"hue\":4500}"));
+    Assert.assertTrue(received.contains("PUT /lights/3/state {\"on\":true,\"sat\":255,"
+        + "\"bri\":255,\"hue\":4500,\"xy\":[0.41,0.52],\"transitiontime\":4}"));
+    Assert.assertTrue(received.contains(
+        "PUT /lights/4/state {\"on\":true,\"sat\":255,\"bri\":255,\"hue\":4500,\"ct\":366}"));
+  }
+
+  /**
+   * Test creating a group and then changing it.
+   */
+  @Test
+  public void testCreateGroup() {
+    PhilipsHueGroup group =
+        endpoint.createGroup("Desk", Lists.newArrayList(newLight("3"), newLight("4")));
+    Assert.assertEquals("7", group.getId());
+    Assert.assertSame(group, endpoint.getGroupByName("Desk"));
+
+    endpoint.updateGroupState(group, new PhilipsHueLightState().setBrightness(10)).join();
+
+    Assert.assertEquals(Lists.newArrayList(
+        "POST /groups {\"name\":\"Desk\",\"type\":\"LightGroup\",\"lights\":[\"3\",\"4\"]}",
+        "PUT /groups/7/action {\"bri\":10}"), received);
+  }
+
+  /**
+   * Test recalling a scene.
+   */
+  @Test
+  public void testRecallScene() {
+    endpoint.scanForScenes();
+
+    endpoint.recallScene(endpoint.getSceneByName("Relax")).join();
+
+    Assert.assertEquals(Lists.newArrayList("PUT /groups/0/action {\"scene\":\"abc\"}"),
+        received);
+  }
+
+  /**
+   * Test that only attributes the bridge has not acknowledged are sent.
+   */
+  @Test
+  public void testDeltaUpdates() {
+    endpoint.scanForLights();
+    PhilipsHueLight light = endpoint.getLightByName("Lamp");
+    Assert.assertEquals(100, light.getAcknowledgedState().getBrightness().intValue());
+
+    // Nothing changed, so nothing is sent.
+    endpoint.updateLightState(light.setOn(false));
+    Assert.assertTrue(received.isEmpty());
+
+    endpoint.updateLightState(light.setOn(true));
+    endpoint.updateLightState(light.setBrightness(50));
+    endpoint.updateLightState(light.setBrightness(50));
+
+    Assert.assertEquals(Lists.newArrayList("PUT /lights/1/state {\"on\":true}",
+        "PUT /lights/1/state {\"bri\":50}"), received);
+    Assert.assertEquals(new PhilipsHueLightState().setOn(true).setBrightness(50).setSaturation(200)
+        .setHue(1000).setColorXy(0.3, 0.3), light.getAcknowledgedState());
+  }
+
+  /**
+   * Test that a renamed light is found by its new name and not its old one.
+   */
+  @Test
+  public void testRenameLight() {
+    endpoint.scanForLights();
+    PhilipsHueLight light = endpoint.getLightByName("Lamp");
+
+    endpoint.renameLight(light, "Porch");
+
+    Assert.assertEquals(Lists.newArrayList("PUT /lights/1 {\"name\":\"Porch\"}"), received);
+    Assert.assertSame(light, endpoint.getLightByName("Porch"));
+    Assert.assertNull(endpoint.getLightByName("Lamp"));
+    Assert.assertSame(light, endpoint.getLightByUniqueId("u1"));
+    Assert.assertSame(light, endpoint.getLightByControlId("1"));
+    Assert.assertEquals(Lists.newArrayList("Desk", "Porch"), endpoint.getLightNames());
+  }
+
+  /**
+   * Test that polling reports only the lights which changed on the bridge.
+   */
+  @Test
+  public void testPolling() throws Exception {
+    BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    endpoint.addListener(new PhilipsHueEndpointListener() {
+      @Override
+      public void onPhilipsHueLightFound(PhilipsHueEndpoint source, PhilipsHueLight light) {
+        events.add("found " + light.getName());
+      }
+
+      @Override
+      public void onPhilipsHueLightStateChange(PhilipsHueEndpoint source, PhilipsHueLight light,
+          PhilipsHueLightState changes) {
+        events.add("change " + light.getName() + " " + changes);
+      }
+    });
+
+    endpoint.scanForLights();
+    Assert.assertEquals("found Lamp", events.poll());
+    Assert.assertEquals("found Desk", events.poll());
+
+    PhilipsHueLight lamp = endpoint.getLightByName("Lamp");
+    PhilipsHueLight desk = endpoint.getLightByName("Desk");
+
+    // Switched on with a wall switch.
+    lightsResponse = newLightsResponse(true, 100);
+    endpoint.startPolling(20, TimeUnit.MILLISECONDS);
+
+    Assert.assertEquals("change Lamp " + new PhilipsHueLightState().setOn(true),
+        events.poll(5, TimeUnit.SECONDS));
+    Assert.assertTrue(lamp.isOn());
+
+    lightsResponse = newLightsResponse(true, 30);
+    Assert.assertEquals("change Desk " + new PhilipsHueLightState().setBrightness(30),
+        events.poll(5, TimeUnit.SECONDS));
+    Assert.assertEquals(30, desk.getBrightness());
+
+    endpoint.stopPolling();
+    Assert.assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Test that a state applied to a light on one thread is never seen half
+   * applied on another.
+   */
+  @Test
+  public void testConcurrentStateChanges() throws Exception {
+    PhilipsHueLightState first = new PhilipsHueLightState().setOn(true).setBrightness(10)
+        .setSaturation(20).setHue(30).setColorXy(0.1, 0.2);
+    PhilipsHueLightState second = new PhilipsHueLightState().setOn(false).setBrightness(200)
+        .setSaturation(210).setHue(220).setColorXy(0.5, 0.6);
+    PhilipsHueLight light = newLight("1");
+    first.applyTo(light);
+    PhilipsHueLightState firstDesired = light.getDesiredState();
+    second.applyTo(light);
+    PhilipsHueLightState secondDesired = light.getDesiredState();
+
+    AtomicBoolean done = new AtomicBoolean();
+    Thread writer = new Thread(() -> {
+      while (!done.get()) {
+        first.applyTo(light);
+        second.applyTo(light);
+      }
+    });
+    writer.start();
+    try {
+      for (int i = 0; i < 20000; i++) {
+        PhilipsHueLightState desired = light.getDesiredState();
+        Assert.assertTrue(desired.toString(),
+            desired.equals(firstDesired) || desired.equals(secondDesired));
+      }
+    } finally {
+      done.set(true);
+      writer.join(5000);
+    }
+  }
+
+  /**
+   * Test that an entertainment stream switches streaming on and off for its
+   * area.
+   */
+  @Test
+  public void testEntertainmentStreamActivation() {
+    endpoint.scanForGroups();
+
+    PhilipsHueEntertainmentStream stream = endpoint.newEntertainmentStream(
+        endpoint.getGroupByName("Kitchen"), new RecordingStreamTransport(), 25);
+    stream.startup();
+    stream.shutdown();
+
+    Assert.assertEquals(Lists.newArrayList("PUT /groups/1 {\"stream\":{\"active\":true}}",
+        "PUT /groups/1 {\"stream\":{\"active\":false}}"), received);
+  }
+
+  /**
+   * Create a new light.
+   *
+   * @param controlId
+   *          the control ID of the light
+   *
+   * @return the light
+   */
+  private PhilipsHueLight newLight(String controlId) {
+    return new PhilipsHueLight("unique" + controlId).setControlId(controlId)
+        .setName("light" + controlId);
+  }
+
+  /**
+   * Handle a request to the fake bridge.
+   *
+   * @param exchange
+   *          the HTTP exchange
+   */
+  private void handleRequest(HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestMethod();
+    String path = exchange.getRequestURI().getPath().substring("/api/user".length());
+
+    String response;
+    if ("GET".equals(method) && "/groups".equals(path)) {
+      response = groupsResponse;
+    } else if ("GET".equals(method) && "/lights".equals(path)) {
+      response = lightsResponse;
+    } else if ("GET".equals(method) && "/scenes".equals(path)) {
+      response = "{\"abc\":{\"name\":\"Relax\",\"lights\":[\"1\",\"2\",\"3\"]}}";
+    } else if ("POST".equals(method) && "/groups".equals(path)) {
+      received.add(
+          method + " " + path + " " + PhilipsHueTestSupport.readBody(exchange.getRequestBody()));
+      response = "[{\"success\":{\"id\":\"7\"}}]";
+    } else if ("PUT".equals(method) && path.matches("/groups/\\d+")) {
+      received.add(
+          method + " " + path + " " + PhilipsHueTestSupport.readBody(exchange.getRequestBody()));
+      response = "[{\"success\":{\"" + path + "/stream/active\":true}}]";
+    } else if ("PUT".equals(method)) {
+      String body = PhilipsHueTestSupport.readBody(exchange.getRequestBody());
+      received.add(method + " " + path + " " + body);
+      response = newSuccessResponse(path, body);
+    } else {
+      received.add(
+          method + " " + path + " " + PhilipsHueTestSupport.readBody(exchange.getRequestBody()));
+      response = "[]";
+    }
+
+    byte[] content = response.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, content.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(content);
+    }
+  }
+
+  /**
+   * Create the lights list the bridge gives.
+   *
+   * @param lampOn
+   *          {@code true} if the lamp light is on
+   * @param deskBrightness
+   *          the brightness of the desk light
+   *
+   * @return the lights list
+   */
+  private String newLightsResponse(boolean lampOn, int deskBrightness) {
+    return "{\"1\":{\"name\":\"Lamp\",\"uniqueid\":\"u1\",\"type\":\"Extended color light\","
+        + "\"state\":{\"on\":" + lampOn + ",\"bri\":100,\"sat\":200,\"hue\":1000,"
+        + "\"xy\":[0.3,0.3],\"reachable\":true},\"capabilities\":{\"streaming\":{}}},"
+        + "\"2\":{\"name\":\"Desk\",\"uniqueid\":\"u2\",\"state\":{\"on\":true,\"bri\":"
+        + deskBrightness + "}}}";
+  }
+
+  /**
+   * Create the response the bridge gives for a successful state change.
+   *
+   * @param path
+   *          the path of the request
+   * @param body
+   *          the body of the request
+   *
+   * @return the response
+   */
+  private String newSuccessResponse(String path, String body) {
+    List<String> successes = Lists.newArrayList();
+    for (Map.Entry<String, Object> entry : StandardJsonMapper.INSTANCE.parseObject(body)
+        .entrySet()) {
+      Object value = entry.getValue();
+      successes.add(String.format("{\"success\":{\"%s/%s\":%s}}", path, entry.getKey(),
+          value instanceof String ? "\"" + value + "\"" : value));
+    }
+
+    return "[" + String.join(",", successes) + "]";
+  }
+}
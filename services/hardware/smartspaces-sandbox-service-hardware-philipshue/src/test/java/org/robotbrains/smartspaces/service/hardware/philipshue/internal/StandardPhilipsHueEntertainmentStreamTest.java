@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2016 Keith M. Hughes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package org.robotbrains.smartspaces.service.hardware.philipshue.internal;
+
+import io.smartspaces.SimpleSmartSpacesException;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueStreamFrame;
+import io.smartspaces.sandbox.service.hardware.philipshue.PhilipsHueStreamTransport;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.StandardPhilipsHueEntertainmentStream;
+import io.smartspaces.sandbox.service.hardware.philipshue.internal.UdpPhilipsHueStreamTransport;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.logging.Log;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link StandardPhilipsHueEntertainmentStream}.
+ *
+ * @author Keith M. Hughes
+ */
+public class StandardPhilipsHueEntertainmentStreamTest {
+  private RecordingStreamTransport transport;
+  private List<Boolean> activations;
+  private StandardPhilipsHueEntertainmentStream stream;
+
+  @Before
+  public void setup() {
+    transport = new RecordingStreamTransport();
+    activations = Lists.newArrayList();
+    stream = new StandardPhilipsHueEntertainmentStream(transport, 50, activations::add,
+        Mockito.mock(Log.class));
+  }
+
+  @After
+  public void cleanup() {
+    stream.shutdown();
+  }
+
+  /**
+   * Test that starting and stopping the stream switches the area and the
+   * transport.
+   */
+  @Test
+  public void testLifecycle() throws Exception {
+    stream.startup();
+    Assert.assertTrue(transport.isOpen());
+
+    // Nothing is sent before the first frame.
+    Assert.assertNull(transport.getDatagrams().poll(100, TimeUnit.MILLISECONDS));
+
+    stream.shutdown();
+    Assert.assertFalse(transport.isOpen());
+    Assert.assertEquals(Lists.newArrayList(true, false), activations);
+  }
+
+  /**
+   * Test that the area is switched off again if the transport cannot be
+   * opened.
+   */
+  @Test
+  public void testOpenFails() {
+    PhilipsHueStreamTransport failingTransport = new RecordingStreamTransport() {
+      @Override
+      public void open() {
+        throw new SimpleSmartSpacesException("Handshake failed");
+      }
+    };
+    StandardPhilipsHueEntertainmentStream failingStream = new StandardPhilipsHueEntertainmentStream(
+        failingTransport, 50, activations::add, Mockito.mock(Log.class));
+
+    try {
+      failingStream.startup();
+      Assert.fail();
+    } catch (SimpleSmartSpacesException e) {
+      // Expected.
+    }
+
+    Assert.assertEquals(Lists.newArrayList(true, false), activations);
+
+    // Not running, so shutting down does nothing.
+    failingStream.shutdown();
+    Assert.assertEquals(Lists.newArrayList(true, false), activations);
+  }
+
+  /**
+   * Test the encoding of a frame.
+   */
+  @Test
+  public void testEncoding() throws Exception {
+    stream.submitFrame(new PhilipsHueStreamFrame(2).setColor(3, 0xffff, 0x0100, 0)
+        .setColor(12, 1, 2, 3));
+    stream.startup();
+
+    byte[] message = transport.getDatagrams().poll(5, TimeUnit.SECONDS);
+    Assert.assertEquals(StandardPhilipsHueEntertainmentStream.HEADER_LENGTH
+        + 2 * StandardPhilipsHueEntertainmentStream.LIGHT_LENGTH, message.length);
+    Assert.assertEquals("HueStream", new String(message, 0, 9, StandardCharsets.US_ASCII));
+    Assert.assertArrayEquals(new byte[] { 1, 0, 0, 0, 0, 0, 0 },
+        Arrays.copyOfRange(message, 9, 16));
+    Assert.assertArrayEquals(new byte[] { 0, 0, 3, (byte) 0xff, (byte) 0xff, 1, 0, 0, 0 },
+        Arrays.copyOfRange(message, 16, 25));
+    Assert.assertArrayEquals(new byte[] { 0, 0, 12, 0, 1, 0, 2, 0, 3 },
+        Arrays.copyOfRange(message, 25, 34));
+
+    // The latest frame is repeated with the next sequence number.
+    byte[] repeat = transport.getDatagrams().poll(5, TimeUnit.SECONDS);
+    Assert.assertEquals(1, repeat[11]);
+    Assert.assertArrayEquals(Arrays.copyOfRange(message, 16, 34),
+        Arrays.copyOfRange(repeat, 16, 34));
+  }
+
+  /**
+   * Test that only the latest frame is sent.
+   */
+  @Test
+  public void testLatestFrameOnly() throws Exception {
+    PhilipsHueStreamFrame frame = new PhilipsHueStreamFrame(1);
+    for (int i = 1; i <= 10; i++) {
+      stream.submitFrame(frame.setColor(1, i, i, i));
+    }
+    stream.startup();
+
+    byte[] message = transport.getDatagrams().poll(5, TimeUnit.SECONDS);
+    Assert.assertEquals(10, message[StandardPhilipsHueEntertainmentStream.HEADER_LENGTH + 4]);
+    Assert.assertEquals(9, stream.getNumberFramesReplaced());
+  }
+
+  /**
+   * Test that frames with more lights than a message holds are split.
+   */
+  @Test
+  public void testSplitFrame() throws Exception {
+    PhilipsHueStreamFrame frame = new PhilipsHueStreamFrame(4);
+    for (int i = 0; i < 25; i++) {
+      frame.setColor(i, i, i, i);
+    }
+    stream.submitFrame(frame);
+    stream.startup();
+
+    List<Integer> lengths = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      lengths.add(transport.getDatagrams().poll(5, TimeUnit.SECONDS).length);
+    }
+    int header = StandardPhilipsHueEntertainmentStream.HEADER_LENGTH;
+    int light = StandardPhilipsHueEntertainmentStream.LIGHT_LENGTH;
+    Assert.assertEquals(
+        Lists.newArrayList(header + 10 * light, header + 10 * light, header + 5 * light),
+        lengths);
+  }
+
+  /**
+   * Test that frames are sent at the frame rate.
+   */
+  @Test
+  public void testFrameRate() throws Exception {
+    stream.submitFrame(new PhilipsHueStreamFrame(1).setColor(1, 0, 0, 0));
+    long start = System.nanoTime();
+    stream.startup();
+
+    int numberFrames = 25;
+    for (int i = 0; i < numberFrames; i++) {
+      Assert.assertNotNull(transport.getDatagrams().poll(5, TimeUnit.SECONDS));
+    }
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    // The first frame goes at once and each of the others a period after the
+    // one before, 20 msec at 50 frames a second.
+    long period = TimeUnit.SECONDS.toMillis(1) / 50;
+    Assert.assertTrue("Took " + elapsed, elapsed >= (numberFrames - 1) * period);
+    Assert.assertTrue("Took " + elapsed, elapsed < 4 * numberFrames * period);
+  }
+
+  /**
+   * Test that frame rates out of range are refused.
+   */
+  @Test(expected = SimpleSmartSpacesException.class)
+  public void testFrameRateTooHigh() {
+    new StandardPhilipsHueEntertainmentStream(transport,
+        StandardPhilipsHueEntertainmentStream.FRAMES_PER_SECOND_MAXIMUM + 1, activations::add,
+        Mockito.mock(Log.class));
+  }
+
+  /**
+   * Test sending frames over plain UDP.
+   */
+  @Test
+  public void testUdpTransport() throws Exception {
+    try (DatagramSocket receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+      receiver.setSoTimeout(5000);
+
+      UdpPhilipsHueStreamTransport udpTransport =
+          new UdpPhilipsHueStreamTransport("127.0.0.1", receiver.getLocalPort());
+      StandardPhilipsHueEntertainmentStream udpStream = new StandardPhilipsHueEntertainmentStream(
+          udpTransport, 25, activations::add, Mockito.mock(Log.class));
+      udpStream.submitFrame(new PhilipsHueStreamFrame(1).setColor(5, 10, 20, 30));
+      udpStream.startup();
+      try {
+        DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+        receiver.receive(packet);
+
+        Assert.assertEquals(StandardPhilipsHueEntertainmentStream.HEADER_LENGTH
+            + StandardPhilipsHueEntertainmentStream.LIGHT_LENGTH, packet.getLength());
+        Assert.assertEquals("HueStream",
+            new String(packet.getData(), 0, 9, StandardCharsets.US_ASCII));
+      } finally {
+        udpStream.shutdown();
+      }
+    }
+  }
+}